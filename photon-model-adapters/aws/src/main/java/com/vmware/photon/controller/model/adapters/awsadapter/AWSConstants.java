@@ -24,6 +24,7 @@ public class AWSConstants {
     public static final String AWS_SUBNET_ID = "awsSubnetId";
     public static final String AWS_GATEWAY_ID = "awsGatewayID";
     public static final String AWS_VPC_ROUTE_TABLE_ID = "awsMainRouteTableID";
+    public static final String AWS_INSTANCE_FINGERPRINT = "awsInstanceFingerprint";
     public static final String AWS_MAIN_ROUTE_ASSOCIATION = "association.main";
     public static final String INSTANCE_STATE = "instance-state-name";
     public static final String INSTANCE_STATE_RUNNING = "running";
@@ -61,6 +62,14 @@ public class AWSConstants {
             + AWSConstants.class.getSimpleName() + ".CLIENT_CACHE_INITIAL_SIZE";
     public static int CLIENT_CACHE_INITIAL_SIZE = Integer.getInteger(
             PROPERTY_NAME_CLIENT_CACHE_INITIAL_SIZE, 16);
+    public static final String PROPERTY_NAME_CLIENT_CACHE_MAX_IDLE_MINUTES = UriPaths.PROPERTY_PREFIX
+            + AWSConstants.class.getSimpleName() + ".CLIENT_CACHE_MAX_IDLE_MINUTES";
+    public static int CLIENT_CACHE_MAX_IDLE_MINUTES = Integer.getInteger(
+            PROPERTY_NAME_CLIENT_CACHE_MAX_IDLE_MINUTES, 30);
+    public static final String PROPERTY_NAME_CLIENT_SHUTDOWN_DELAY_MINUTES = UriPaths.PROPERTY_PREFIX
+            + AWSConstants.class.getSimpleName() + ".CLIENT_SHUTDOWN_DELAY_MINUTES";
+    public static int CLIENT_SHUTDOWN_DELAY_MINUTES = Integer.getInteger(
+            PROPERTY_NAME_CLIENT_SHUTDOWN_DELAY_MINUTES, 10);
     public static final String PROPERTY_NAME_THREAD_POOL_CACHE_MAX_SIZE = UriPaths.PROPERTY_PREFIX
             + AWSConstants.class.getSimpleName() + ".THREAD_POOL_CACHE_MAX_SIZE";
     public static int THREAD_POOL_CACHE_MAX_SIZE = Integer.getInteger(
@@ -16,16 +16,20 @@ package com.vmware.photon.controller.model.adapters.awsadapter;
 import static com.vmware.photon.controller.model.adapters.awsadapter.AWSUtils.DEFAULT_SECURITY_GROUP_DESC;
 import static com.vmware.photon.controller.model.adapters.awsadapter.AWSUtils.DEFAULT_SECURITY_GROUP_NAME;
 import static com.vmware.photon.controller.model.adapters.awsadapter.AWSUtils.buildRules;
-import static com.vmware.photon.controller.model.adapters.awsadapter.AWSUtils.createSecurityGroup;
 import static com.vmware.photon.controller.model.adapters.awsadapter.AWSUtils.getSecurityGroup;
-import static com.vmware.photon.controller.model.adapters.awsadapter.AWSUtils.updateIngressRules;
 
 import java.net.URI;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Consumer;
 
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.ec2.AmazonEC2AsyncClient;
 import com.amazonaws.services.ec2.model.AuthorizeSecurityGroupEgressRequest;
+import com.amazonaws.services.ec2.model.AuthorizeSecurityGroupIngressRequest;
+import com.amazonaws.services.ec2.model.CreateSecurityGroupRequest;
+import com.amazonaws.services.ec2.model.CreateSecurityGroupResult;
 import com.amazonaws.services.ec2.model.DeleteSecurityGroupRequest;
 import com.amazonaws.services.ec2.model.DescribeSecurityGroupsRequest;
 import com.amazonaws.services.ec2.model.DescribeSecurityGroupsResult;
@@ -39,6 +43,7 @@ import com.vmware.photon.controller.model.adapters.util.AdapterUtils;
 import com.vmware.photon.controller.model.resources.FirewallService.FirewallState;
 import com.vmware.photon.controller.model.resources.FirewallService.FirewallState.Allow;
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationContext;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.services.common.AuthCredentialsService.AuthCredentialsServiceState;
 
@@ -136,28 +141,46 @@ public class AWSFirewallService extends StatelessService {
             handleStages(requestState);
             break;
         case PROVISION_SECURITY_GROUP:
-            String sgName = requestState.firewall.name;
+            CreateSecurityGroupRequest createRequest = new CreateSecurityGroupRequest()
+                    .withDescription(DEFAULT_SECURITY_GROUP_DESC)
+                    .withGroupName(requestState.firewall.name);
             String vpcId = getCustomProperty(requestState, AWSConstants.AWS_VPC_ID);
-            requestState.securityGroupID = createSecurityGroup(
-                    requestState.client, sgName, DEFAULT_SECURITY_GROUP_DESC, vpcId);
-            requestState.firewall.id = requestState.securityGroupID;
-
-            updateFirewallProperties(SECURITY_GROUP_ID,
-                    requestState.securityGroupID, requestState,
-                    FirewallStage.UPDATE_RULES);
+            // set vpc for the security group if provided
+            if (vpcId != null) {
+                createRequest = createRequest.withVpcId(vpcId);
+            }
+            requestState.client.createSecurityGroupAsync(createRequest,
+                    handler(requestState, (CreateSecurityGroupResult result) -> {
+                        requestState.securityGroupID = result.getGroupId();
+                        requestState.firewall.id = requestState.securityGroupID;
+
+                        updateFirewallProperties(SECURITY_GROUP_ID,
+                                requestState.securityGroupID, requestState,
+                                FirewallStage.UPDATE_RULES);
+                    }));
             break;
         case UPDATE_RULES:
-            updateIngressRules(requestState.client,
-                    requestState.firewall.ingress, requestState.securityGroupID);
-            updateEgressRules(requestState.client,
-                    requestState.firewall.egress, requestState.securityGroupID);
-            requestState.stage = FirewallStage.FINISHED;
-            handleStages(requestState);
+            AuthorizeSecurityGroupIngressRequest ingressRequest = new AuthorizeSecurityGroupIngressRequest()
+                    .withGroupId(requestState.securityGroupID)
+                    .withIpPermissions(buildRules(requestState.firewall.ingress));
+            AuthorizeSecurityGroupEgressRequest egressRequest = new AuthorizeSecurityGroupEgressRequest()
+                    .withGroupId(requestState.securityGroupID)
+                    .withIpPermissions(buildRules(requestState.firewall.egress));
+            requestState.client.authorizeSecurityGroupIngressAsync(ingressRequest,
+                    handler(requestState, ingressResult -> requestState.client
+                            .authorizeSecurityGroupEgressAsync(egressRequest,
+                                    handler(requestState, egressResult -> {
+                                        requestState.stage = FirewallStage.FINISHED;
+                                        handleStages(requestState);
+                                    }))));
             break;
         case REMOVE_SECURITY_GROUP:
-            deleteSecurityGroup(requestState.client, requestState.firewall.id);
-            updateFirewallProperties(SECURITY_GROUP_ID, AWSUtils.NO_VALUE,
-                    requestState, FirewallStage.FINISHED);
+            DeleteSecurityGroupRequest deleteRequest = new DeleteSecurityGroupRequest()
+                    .withGroupId(requestState.firewall.id);
+            requestState.client.deleteSecurityGroupAsync(deleteRequest,
+                    handler(requestState, result -> updateFirewallProperties(
+                            SECURITY_GROUP_ID, AWSUtils.NO_VALUE, requestState,
+                            FirewallStage.FINISHED)));
             break;
         case FAILED:
             if (requestState.firewallRequest.taskReference != null) {
@@ -187,6 +210,35 @@ public class AWSFirewallService extends StatelessService {
         return null;
     }
 
+    /**
+     * Returns a handler for an EC2 call of the given request, which moves the request on once the
+     * call completes. The EC2 calls run on the executor of the client, so that no host thread is
+     * held for their round trip.
+     */
+    private <REQ extends AmazonWebServiceRequest, RES> AsyncHandler<REQ, RES> handler(
+            AWSFirewallRequestState requestState, Consumer<RES> onSuccess) {
+        OperationContext opContext = OperationContext.getOperationContext();
+        return new AsyncHandler<REQ, RES>() {
+            @Override
+            public void onError(Exception exception) {
+                OperationContext.restoreOperationContext(opContext);
+                requestState.stage = FirewallStage.FAILED;
+                requestState.error = exception;
+                handleStages(requestState);
+            }
+
+            @Override
+            public void onSuccess(REQ request, RES result) {
+                OperationContext.restoreOperationContext(opContext);
+                try {
+                    onSuccess.accept(result);
+                } catch (Throwable t) {
+                    onError(t instanceof Exception ? (Exception) t : new Exception(t));
+                }
+            }
+        };
+    }
+
     private void updateFirewallProperties(String key, String value,
             AWSFirewallRequestState requestState, FirewallStage next) {
         if (requestState.firewall.customProperties == null) {
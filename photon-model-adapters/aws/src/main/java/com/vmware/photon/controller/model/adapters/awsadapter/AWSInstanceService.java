@@ -29,6 +29,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -191,10 +192,7 @@ public class AWSInstanceService extends StatelessService {
             getVMFirewalls(aws, AWSStages.SECURITY_GROUPS_ALLOCATION);
             break;
         case SECURITY_GROUPS_ALLOCATION:
-            aws.securityGroupIds = allocateSecurityGroups(aws);
-            aws.subnetId = getSubnetId(aws);
-            aws.stage = AWSStages.CREATE;
-            handleAllocation(aws);
+            allocateSecurityGroupsAsync(aws, AWSStages.CREATE);
             break;
         case CREATE:
             createInstance(aws);
@@ -714,6 +712,34 @@ public class AWSInstanceService extends StatelessService {
         return regionId;
     }
 
+    /*
+     * Looks up or creates the security groups of the instance. The EC2 calls involved are chained
+     * and partly conditional, so they run as a whole on the executor of the EC2 client rather than
+     * on a host thread.
+     */
+    private void allocateSecurityGroupsAsync(AWSAllocation aws, AWSStages next) {
+        OperationContext opContext = OperationContext.getOperationContext();
+        try {
+            aws.amazonEC2Client.getExecutorService().execute(() -> {
+                OperationContext.restoreOperationContext(opContext);
+                try {
+                    aws.securityGroupIds = allocateSecurityGroups(aws);
+                    aws.subnetId = getSubnetId(aws);
+                    aws.stage = next;
+                } catch (Throwable t) {
+                    aws.error = t;
+                    aws.stage = AWSStages.ERROR;
+                }
+                handleAllocation(aws);
+            });
+        } catch (RejectedExecutionException e) {
+            // the executor of the client is shut down, e.g. the client was evicted from the cache
+            aws.error = e;
+            aws.stage = AWSStages.ERROR;
+            handleAllocation(aws);
+        }
+    }
+
     /*
      * Helper method to get amazon subnet id provided in the description custom properties
      */
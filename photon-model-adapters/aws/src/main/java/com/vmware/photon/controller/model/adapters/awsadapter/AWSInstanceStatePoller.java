@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.awsadapter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.ec2.AmazonEC2AsyncClient;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Filter;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.Reservation;
+
+import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.photon.controller.model.adapterapi.ComputeInstanceRequest;
+import com.vmware.photon.controller.model.adapters.util.AdapterUtils;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Waits for instances to reach a desired state, with one poller per EC2 client, i.e. per
+ * endpoint and region. Each tick checks all the instances being waited for with a single
+ * DescribeInstances call, filtered by instance id, per {@link #MAX_INSTANCE_IDS_PER_REQUEST}
+ * instances, and invokes the consumers of the instances in the desired state.
+ *
+ * The interval between ticks starts at {@link #MIN_INTERVAL_MILLIS_PROPERTY}, and is doubled up
+ * to {@link #MAX_INTERVAL_MILLIS_PROPERTY} while no instance reaches its state or AWS throttles
+ * the calls. It is reset when an instance is added or reaches its state.
+ *
+ * A watch fails when it expires or when its instance can not be described, but not because of
+ * transient errors, which are retried on the next tick. A consumer that throws only fails its own
+ * watch, and every tick completes and schedules the next one whatever the outcome of its calls,
+ * so that the other watches keep being polled.
+ */
+public class AWSInstanceStatePoller {
+    public static final String MIN_INTERVAL_MILLIS_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "AWSInstanceStatePoller.minIntervalMillis";
+    private static final int DEFAULT_MIN_INTERVAL_MILLIS = 5000;
+
+    public static final String MAX_INTERVAL_MILLIS_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "AWSInstanceStatePoller.maxIntervalMillis";
+    private static final int DEFAULT_MAX_INTERVAL_MILLIS = 30000;
+
+    // AWS accepts up to 200 values per filter
+    public static final int MAX_INSTANCE_IDS_PER_REQUEST = 200;
+
+    private static final String INSTANCE_ID_FILTER = "instance-id";
+    private static final String AWS_REQUEST_LIMIT_EXCEEDED_ERROR_CODE = "RequestLimitExceeded";
+
+    private static final ConcurrentHashMap<AmazonEC2AsyncClient, AWSInstanceStatePoller> pollers = new ConcurrentHashMap<>();
+
+    private static class Watch {
+        final String instanceId;
+        final String desiredState;
+        final Consumer<Instance> consumer;
+        final Consumer<Throwable> onFailure;
+        final long expirationTimeMicros;
+
+        Watch(String instanceId, String desiredState, Consumer<Instance> consumer,
+                Consumer<Throwable> onFailure, long expirationTimeMicros) {
+            this.instanceId = instanceId;
+            this.desiredState = desiredState;
+            this.consumer = consumer;
+            this.onFailure = onFailure;
+            this.expirationTimeMicros = expirationTimeMicros;
+        }
+    }
+
+    private final AmazonEC2AsyncClient amazonEC2Client;
+    private final ServiceHost host;
+    private final long minIntervalMicros;
+    private final long maxIntervalMicros;
+
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+    private long intervalMicros;
+    // true while a tick is scheduled or running
+    private boolean active;
+    // true once the poller had nothing left to wait for and was dropped
+    private boolean closed;
+
+    private final AtomicInteger describeCount = new AtomicInteger();
+
+    AWSInstanceStatePoller(AmazonEC2AsyncClient amazonEC2Client, ServiceHost host,
+            long minIntervalMicros, long maxIntervalMicros) {
+        this.amazonEC2Client = amazonEC2Client;
+        this.host = host;
+        this.minIntervalMicros = minIntervalMicros;
+        this.maxIntervalMicros = maxIntervalMicros;
+        this.intervalMicros = minIntervalMicros;
+    }
+
+    /**
+     * Invokes the consumer once the instance is in the desired state, using the poller of the
+     * client. The provisioning task of the request is failed if the instance does not reach the
+     * state before the expiration time, if set, or if it can not be described.
+     */
+    public static void waitForState(AmazonEC2AsyncClient amazonEC2Client, String instanceId,
+            String desiredState, Consumer<Instance> consumer,
+            ComputeInstanceRequest computeRequest, StatelessService service,
+            long expirationTimeMicros) {
+        Consumer<Throwable> onFailure = t -> {
+            service.logSevere(t.getMessage());
+            AdapterUtils.sendFailurePatchToProvisioningTask(service,
+                    computeRequest.taskReference, t);
+        };
+        Watch watch = new Watch(instanceId, desiredState, consumer, onFailure,
+                expirationTimeMicros);
+        pollers.compute(amazonEC2Client, (k, poller) -> {
+            if (poller != null && poller.add(watch)) {
+                return poller;
+            }
+            poller = new AWSInstanceStatePoller(amazonEC2Client, service.getHost(),
+                    TimeUnit.MILLISECONDS.toMicros(Integer.getInteger(
+                            MIN_INTERVAL_MILLIS_PROPERTY, DEFAULT_MIN_INTERVAL_MILLIS)),
+                    TimeUnit.MILLISECONDS.toMicros(Integer.getInteger(
+                            MAX_INTERVAL_MILLIS_PROPERTY, DEFAULT_MAX_INTERVAL_MILLIS)));
+            poller.add(watch);
+            return poller;
+        });
+    }
+
+    void watch(String instanceId, String desiredState, Consumer<Instance> consumer,
+            Consumer<Throwable> onFailure, long expirationTimeMicros) {
+        add(new Watch(instanceId, desiredState, consumer, onFailure, expirationTimeMicros));
+    }
+
+    /**
+     * Adds the watch, scheduling a tick if none is pending.
+     *
+     * @return false if the poller was closed, in which case the watch is not added
+     */
+    private boolean add(Watch watch) {
+        synchronized (this) {
+            if (this.closed) {
+                return false;
+            }
+            this.watches.add(watch);
+            this.intervalMicros = this.minIntervalMicros;
+            if (this.active) {
+                return true;
+            }
+            this.active = true;
+        }
+        schedule(this.minIntervalMicros);
+        return true;
+    }
+
+    private void schedule(long delayMicros) {
+        this.host.schedule(this::tick, delayMicros, TimeUnit.MICROSECONDS);
+    }
+
+    private void tick() {
+        long now = Utils.getNowMicrosUtc();
+        Map<String, List<Watch>> watchesByInstanceId = new HashMap<>();
+        for (Watch watch : this.watches) {
+            if (watch.expirationTimeMicros > 0 && now > watch.expirationTimeMicros) {
+                this.watches.remove(watch);
+                String msg = String.format(
+                        "Compute with instance id %s did not reach desired %s state in the required time interval.",
+                        watch.instanceId, watch.desiredState);
+                fail(watch, new RuntimeException(msg));
+                continue;
+            }
+            watchesByInstanceId.computeIfAbsent(watch.instanceId, k -> new ArrayList<>())
+                    .add(watch);
+        }
+
+        if (watchesByInstanceId.isEmpty()) {
+            onTickCompletion(false);
+            return;
+        }
+
+        List<String> instanceIds = new ArrayList<>(watchesByInstanceId.keySet());
+        int batchCount = (instanceIds.size() + MAX_INSTANCE_IDS_PER_REQUEST - 1)
+                / MAX_INSTANCE_IDS_PER_REQUEST;
+        AtomicInteger pendingBatches = new AtomicInteger(batchCount);
+        AtomicBoolean progress = new AtomicBoolean();
+        for (int i = 0; i < instanceIds.size(); i += MAX_INSTANCE_IDS_PER_REQUEST) {
+            describe(instanceIds.subList(i,
+                    Math.min(i + MAX_INSTANCE_IDS_PER_REQUEST, instanceIds.size())),
+                    watchesByInstanceId, pendingBatches, progress);
+        }
+    }
+
+    /**
+     * Describes the given instances and completes the watches of those in the desired state.
+     *
+     * If the call fails with a transient error, the instances are checked again on the next tick.
+     * Otherwise the error is not known to be caused by a given instance, so the instances are
+     * described again in two halves, until the failing instances are isolated and only their
+     * watches are failed.
+     */
+    private void describe(List<String> batch, Map<String, List<Watch>> watchesByInstanceId,
+            AtomicInteger pendingBatches, AtomicBoolean progress) {
+        DescribeInstancesRequest request = new DescribeInstancesRequest()
+                .withFilters(new Filter(INSTANCE_ID_FILTER, new ArrayList<>(batch)));
+        AsyncHandler<DescribeInstancesRequest, DescribeInstancesResult> handler =
+                new AsyncHandler<DescribeInstancesRequest, DescribeInstancesResult>() {
+
+                    @Override
+                    public void onError(Exception exception) {
+                        try {
+                            if (isTransient(exception)) {
+                                return;
+                            }
+                            if (batch.size() > 1) {
+                                int half = batch.size() / 2;
+                                pendingBatches.incrementAndGet();
+                                describe(batch.subList(0, half), watchesByInstanceId,
+                                        pendingBatches, progress);
+                                describe(batch.subList(half, batch.size()), watchesByInstanceId,
+                                        pendingBatches, progress);
+                                return;
+                            }
+                            for (Watch watch : watchesByInstanceId.get(batch.get(0))) {
+                                if (AWSInstanceStatePoller.this.watches.remove(watch)) {
+                                    fail(watch, exception);
+                                }
+                            }
+                        } finally {
+                            onBatchCompletion(pendingBatches, progress);
+                        }
+                    }
+
+                    @Override
+                    public void onSuccess(DescribeInstancesRequest request,
+                            DescribeInstancesResult result) {
+                        try {
+                            // instances not known to AWS yet are just missing from the result
+                            List<Instance> instances = result.getReservations().stream()
+                                    .map(Reservation::getInstances)
+                                    .flatMap(List::stream)
+                                    .collect(Collectors.toList());
+                            for (Instance instance : instances) {
+                                List<Watch> instanceWatches = watchesByInstanceId
+                                        .get(instance.getInstanceId());
+                                if (instanceWatches == null) {
+                                    continue;
+                                }
+                                for (Watch watch : instanceWatches) {
+                                    if (instance.getState().getName()
+                                            .equals(watch.desiredState)
+                                            && AWSInstanceStatePoller.this.watches
+                                                    .remove(watch)) {
+                                        progress.set(true);
+                                        complete(watch, instance);
+                                    }
+                                }
+                            }
+                        } finally {
+                            onBatchCompletion(pendingBatches, progress);
+                        }
+                    }
+                };
+        this.describeCount.incrementAndGet();
+        try {
+            this.amazonEC2Client.describeInstancesAsync(request, handler);
+        } catch (Exception e) {
+            // the call was not sent, e.g. because the executor of the client rejected it
+            handler.onError(e);
+        }
+    }
+
+    /**
+     * Returns whether the instances of a failed call are checked again on the next tick rather
+     * than failed: the call was throttled by AWS, failed on the AWS side or on the client side,
+     * e.g. because of a network error, or was rejected by the executor of the client.
+     */
+    private static boolean isTransient(Exception exception) {
+        if (exception instanceof RejectedExecutionException) {
+            return true;
+        }
+        if (!(exception instanceof AmazonServiceException)) {
+            return exception instanceof AmazonClientException;
+        }
+        AmazonServiceException serviceException = (AmazonServiceException) exception;
+        return AWS_REQUEST_LIMIT_EXCEEDED_ERROR_CODE.equals(serviceException.getErrorCode())
+                || serviceException.getErrorType() == ErrorType.Service
+                || serviceException.getStatusCode()
+                        >= Operation.STATUS_CODE_SERVER_FAILURE_THRESHOLD;
+    }
+
+    private void onBatchCompletion(AtomicInteger pendingBatches, AtomicBoolean progress) {
+        if (pendingBatches.decrementAndGet() == 0) {
+            onTickCompletion(progress.get());
+        }
+    }
+
+    /**
+     * Schedules the next tick, backing off if no instance reached its state, or closes the
+     * poller if there is nothing left to wait for.
+     */
+    private void onTickCompletion(boolean progress) {
+        long delayMicros;
+        boolean closed;
+        synchronized (this) {
+            if (this.watches.isEmpty()) {
+                this.active = false;
+                this.closed = true;
+            } else if (progress) {
+                this.intervalMicros = this.minIntervalMicros;
+            } else {
+                this.intervalMicros = Math.min(this.intervalMicros * 2, this.maxIntervalMicros);
+            }
+            delayMicros = this.intervalMicros;
+            closed = this.closed;
+        }
+        if (closed) {
+            pollers.remove(this.amazonEC2Client, this);
+            return;
+        }
+        schedule(delayMicros);
+    }
+
+    /**
+     * Invokes the consumer of the watch, failing the watch if the consumer throws.
+     */
+    private void complete(Watch watch, Instance instance) {
+        try {
+            watch.consumer.accept(instance);
+        } catch (Throwable t) {
+            fail(watch, t);
+        }
+    }
+
+    private void fail(Watch watch, Throwable t) {
+        try {
+            watch.onFailure.accept(t);
+        } catch (Throwable e) {
+            this.host.log(Level.WARNING, "Failed to fail the watch of instance %s: %s",
+                    watch.instanceId, Utils.toString(e));
+        }
+    }
+
+    synchronized long getIntervalMicros() {
+        return this.intervalMicros;
+    }
+
+    synchronized boolean isClosed() {
+        return this.closed;
+    }
+
+    int getDescribeCount() {
+        return this.describeCount.get();
+    }
+}
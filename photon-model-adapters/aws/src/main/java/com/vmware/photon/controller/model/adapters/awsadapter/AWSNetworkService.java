@@ -22,9 +22,13 @@ import static com.vmware.photon.controller.model.adapters.awsadapter.AWSConstant
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Consumer;
 
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.ec2.AmazonEC2AsyncClient;
 import com.amazonaws.services.ec2.model.AttachInternetGatewayRequest;
+import com.amazonaws.services.ec2.model.CreateInternetGatewayRequest;
 import com.amazonaws.services.ec2.model.CreateInternetGatewayResult;
 import com.amazonaws.services.ec2.model.CreateRouteRequest;
 import com.amazonaws.services.ec2.model.CreateSubnetRequest;
@@ -56,6 +60,7 @@ import com.vmware.photon.controller.model.adapters.util.AdapterUtils;
 import com.vmware.photon.controller.model.resources.NetworkService.NetworkState;
 import com.vmware.photon.controller.model.tasks.ProvisionNetworkTaskService.ProvisionNetworkTaskState;
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationContext;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.services.common.AuthCredentialsService.AuthCredentialsServiceState;
 
@@ -158,43 +163,70 @@ public class AWSNetworkService extends StatelessService {
             handleStages(awsNet);
             break;
         case PROVISION_VPC:
-            String vpcID = createVPC(awsNet.network.subnetCIDR, awsNet.client);
-            updateNetworkProperties(AWS_VPC_ID, vpcID, awsNet,
-                    NetworkStage.PROVISION_SUBNET);
+            CreateVpcRequest vpcRequest = new CreateVpcRequest()
+                    .withCidrBlock(awsNet.network.subnetCIDR);
+            awsNet.client.createVpcAsync(vpcRequest,
+                    handler(awsNet, (CreateVpcResult result) -> updateNetworkProperties(
+                            AWS_VPC_ID, result.getVpc().getVpcId(), awsNet,
+                            NetworkStage.PROVISION_SUBNET)));
             break;
         case PROVISION_SUBNET:
-            String subnetID = createSubnet(awsNet.network.subnetCIDR,
-                    getCustomProperty(awsNet, AWS_VPC_ID), awsNet.client);
-            updateNetworkProperties(AWS_SUBNET_ID, subnetID, awsNet,
-                    NetworkStage.PROVISION_GATEWAY);
+            CreateSubnetRequest subnetRequest = new CreateSubnetRequest()
+                    .withCidrBlock(awsNet.network.subnetCIDR)
+                    .withVpcId(getCustomProperty(awsNet, AWS_VPC_ID));
+            awsNet.client.createSubnetAsync(subnetRequest,
+                    handler(awsNet, (CreateSubnetResult result) -> updateNetworkProperties(
+                            AWS_SUBNET_ID, result.getSubnet().getSubnetId(), awsNet,
+                            NetworkStage.PROVISION_GATEWAY)));
             break;
         case PROVISION_GATEWAY:
-            String gatewayID = createInternetGateway(awsNet.client);
-            attachInternetGateway(getCustomProperty(awsNet, AWS_VPC_ID), gatewayID,
-                    awsNet.client);
-            updateNetworkProperties(AWS_GATEWAY_ID, gatewayID, awsNet,
-                    NetworkStage.PROVISION_ROUTE);
+            awsNet.client.createInternetGatewayAsync(new CreateInternetGatewayRequest(),
+                    handler(awsNet, (CreateInternetGatewayResult result) -> {
+                        String gatewayID = result.getInternetGateway().getInternetGatewayId();
+                        AttachInternetGatewayRequest attachRequest = new AttachInternetGatewayRequest()
+                                .withVpcId(getCustomProperty(awsNet, AWS_VPC_ID))
+                                .withInternetGatewayId(gatewayID);
+                        awsNet.client.attachInternetGatewayAsync(attachRequest,
+                                handler(awsNet, attachResult -> updateNetworkProperties(
+                                        AWS_GATEWAY_ID, gatewayID, awsNet,
+                                        NetworkStage.PROVISION_ROUTE)));
+                    }));
             break;
         case PROVISION_ROUTE:
-            RouteTable routeTable = getMainRouteTable(
-                    awsNet.network.customProperties.get(AWS_VPC_ID), awsNet.client);
-            createInternetRoute(getCustomProperty(awsNet, AWS_GATEWAY_ID),
-                    routeTable.getRouteTableId(), ROUTE_DEST_ALL, awsNet.client);
-            updateNetworkProperties(AWS_VPC_ROUTE_TABLE_ID,
-                    routeTable.getRouteTableId(), awsNet, NetworkStage.FINISHED);
+            awsNet.client.describeRouteTablesAsync(
+                    getMainRouteTableRequest(getCustomProperty(awsNet, AWS_VPC_ID)),
+                    handler(awsNet, (DescribeRouteTablesResult result) -> {
+                        // if nothing found error thrown, otherwise should be 1
+                        String routeTableID = result.getRouteTables().get(0).getRouteTableId();
+                        CreateRouteRequest routeRequest = new CreateRouteRequest()
+                                .withGatewayId(getCustomProperty(awsNet, AWS_GATEWAY_ID))
+                                .withRouteTableId(routeTableID)
+                                .withDestinationCidrBlock(ROUTE_DEST_ALL);
+                        awsNet.client.createRouteAsync(routeRequest,
+                                handler(awsNet, routeResult -> updateNetworkProperties(
+                                        AWS_VPC_ROUTE_TABLE_ID, routeTableID, awsNet,
+                                        NetworkStage.FINISHED)));
+                    }));
             break;
         case REMOVE_GATEWAY:
-            detachInternetGateway(getCustomProperty(awsNet, AWS_VPC_ID),
-                    getCustomProperty(awsNet, AWS_GATEWAY_ID), awsNet.client);
-            deleteInternetGateway(getCustomProperty(awsNet, AWS_GATEWAY_ID),
-                    awsNet.client);
-            updateNetworkProperties(AWS_GATEWAY_ID, AWSUtils.NO_VALUE, awsNet,
-                    NetworkStage.REMOVE_SUBNET);
+            String removedGatewayID = getCustomProperty(awsNet, AWS_GATEWAY_ID);
+            DetachInternetGatewayRequest detachRequest = new DetachInternetGatewayRequest()
+                    .withVpcId(getCustomProperty(awsNet, AWS_VPC_ID))
+                    .withInternetGatewayId(removedGatewayID);
+            awsNet.client.detachInternetGatewayAsync(detachRequest,
+                    handler(awsNet, detachResult -> awsNet.client.deleteInternetGatewayAsync(
+                            new DeleteInternetGatewayRequest()
+                                    .withInternetGatewayId(removedGatewayID),
+                            handler(awsNet, deleteResult -> updateNetworkProperties(
+                                    AWS_GATEWAY_ID, AWSUtils.NO_VALUE, awsNet,
+                                    NetworkStage.REMOVE_SUBNET)))));
             break;
         case REMOVE_SUBNET:
-            deleteSubnet(getCustomProperty(awsNet, AWS_SUBNET_ID), awsNet.client);
-            updateNetworkProperties(AWS_SUBNET_ID, AWSUtils.NO_VALUE, awsNet,
-                    NetworkStage.REMOVE_ROUTE);
+            DeleteSubnetRequest deleteSubnetRequest = new DeleteSubnetRequest()
+                    .withSubnetId(getCustomProperty(awsNet, AWS_SUBNET_ID));
+            awsNet.client.deleteSubnetAsync(deleteSubnetRequest,
+                    handler(awsNet, result -> updateNetworkProperties(AWS_SUBNET_ID,
+                            AWSUtils.NO_VALUE, awsNet, NetworkStage.REMOVE_ROUTE)));
             break;
         case REMOVE_ROUTE:
             // only need to update the document, the AWS artifact will be
@@ -203,9 +235,11 @@ public class AWSNetworkService extends StatelessService {
                     awsNet, NetworkStage.REMOVE_VPC);
             break;
         case REMOVE_VPC:
-            deleteVPC(getCustomProperty(awsNet, AWS_VPC_ID), awsNet.client);
-            updateNetworkProperties(AWS_VPC_ID, AWSUtils.NO_VALUE, awsNet,
-                    NetworkStage.FINISHED);
+            DeleteVpcRequest deleteVpcRequest = new DeleteVpcRequest()
+                    .withVpcId(getCustomProperty(awsNet, AWS_VPC_ID));
+            awsNet.client.deleteVpcAsync(deleteVpcRequest,
+                    handler(awsNet, result -> updateNetworkProperties(AWS_VPC_ID,
+                            AWSUtils.NO_VALUE, awsNet, NetworkStage.FINISHED)));
             break;
         case FAILED:
             if (awsNet.networkRequest.taskReference != null) {
@@ -231,6 +265,35 @@ public class AWSNetworkService extends StatelessService {
         return aws.network.customProperties.get(key);
     }
 
+    /**
+     * Returns a handler for an EC2 call of the given request, which moves the request on once the
+     * call completes. The EC2 calls run on the executor of the client, so that no host thread is
+     * held for their round trip.
+     */
+    private <REQ extends AmazonWebServiceRequest, RES> AsyncHandler<REQ, RES> handler(
+            AWSNetworkRequestState aws, Consumer<RES> onSuccess) {
+        OperationContext opContext = OperationContext.getOperationContext();
+        return new AsyncHandler<REQ, RES>() {
+            @Override
+            public void onError(Exception exception) {
+                OperationContext.restoreOperationContext(opContext);
+                aws.stage = NetworkStage.FAILED;
+                aws.error = exception;
+                handleStages(aws);
+            }
+
+            @Override
+            public void onSuccess(REQ request, RES result) {
+                OperationContext.restoreOperationContext(opContext);
+                try {
+                    onSuccess.accept(result);
+                } catch (Throwable t) {
+                    onError(t instanceof Exception ? (Exception) t : new Exception(t));
+                }
+            }
+        };
+    }
+
     private void updateNetworkProperties(String key, String value,
             AWSNetworkRequestState aws, NetworkStage next) {
         if (aws.network.customProperties == null) {
@@ -418,18 +481,21 @@ public class AWSNetworkService extends StatelessService {
      */
     public RouteTable getMainRouteTable(String vpcID,
             AmazonEC2AsyncClient client) {
+        DescribeRouteTablesResult result = client
+                .describeRouteTables(getMainRouteTableRequest(vpcID));
+
+        // if nothing found error thrown, otherwise should be 1
+        return result.getRouteTables().get(0);
+
+    }
+
+    private DescribeRouteTablesRequest getMainRouteTableRequest(String vpcID) {
         // build filter list
         List<Filter> filters = new ArrayList<>();
         filters.add(AWSUtils.getFilter(AWSUtils.AWS_FILTER_VPC_ID, vpcID));
         filters.add(AWSUtils.getFilter(AWS_MAIN_ROUTE_ASSOCIATION, "true"));
 
-        DescribeRouteTablesRequest req = new DescribeRouteTablesRequest()
-                .withFilters(filters);
-        DescribeRouteTablesResult result = client.describeRouteTables(req);
-
-        // if nothing found error thrown, otherwise should be 1
-        return result.getRouteTables().get(0);
-
+        return new DescribeRouteTablesRequest().withFilters(filters);
     }
 
     /*
@@ -18,11 +18,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatchAsyncClient;
@@ -44,9 +50,11 @@ import com.vmware.photon.controller.model.resources.ComputeDescriptionService.Co
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeStateWithDescription;
 import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService.SingleResourceStatsCollectionTaskState;
 import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService.SingleResourceTaskCollectionStage;
+import com.vmware.photon.controller.model.tasks.monitoring.StatsCollectionTaskService;
 
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.OperationContext;
+import com.vmware.xenon.common.OperationJoin;
 import com.vmware.xenon.common.ServiceStats.ServiceStat;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
@@ -56,6 +64,11 @@ import com.vmware.xenon.services.common.AuthCredentialsService.AuthCredentialsSe
 
 /**
  * Service to gather stats on AWS.
+ *
+ * A request listing several {@link ComputeStatsRequest#resourceLinks} is served in batch: the
+ * computes, their parents and credentials are fetched once per batch, the CloudWatch calls of all
+ * the instances are issued through a bounded window of concurrent requests, and the results are
+ * fanned out into one {@link ComputeStats} per compute, returned in a single patch.
  */
 public class AWSStatsService extends StatelessService {
     private AWSClientManager clientManager;
@@ -63,6 +76,10 @@ public class AWSStatsService extends StatelessService {
     public static final String AWS_COLLECTION_PERIOD_SECONDS = UriPaths.PROPERTY_PREFIX + "AWSStatsService.collectionPeriod";
     private static final int DEFAULT_AWS_COLLECTION_PERIOD_SECONDS = 300;
 
+    public static final String AWS_BATCH_MAX_CONCURRENT_REQUESTS = UriPaths.PROPERTY_PREFIX
+            + "AWSStatsService.batchMaxConcurrentRequests";
+    private static final int DEFAULT_AWS_BATCH_MAX_CONCURRENT_REQUESTS = 20;
+
     public AWSStatsService() {
         super.toggleOption(ServiceOption.INSTRUMENTATION, true);
         this.clientManager = AWSClientManagerFactory
@@ -86,6 +103,12 @@ public class AWSStatsService extends StatelessService {
             AWSConstants.DISK_WRITE_OPS, AWSConstants.NETWORK_IN,
             AWSConstants.NETWORK_OUT };
 
+    // CloudWatch publishes the CPU credit metrics only for the burstable performance instances
+    private static final String[] CPU_CREDIT_METRIC_NAMES = { AWSConstants.CPU_CREDIT_USAGE,
+            AWSConstants.CPU_CREDIT_BALANCE };
+    private static final Pattern BURSTABLE_INSTANCE_TYPE_PATTERN = Pattern
+            .compile("^t\\d+[a-z]*\\..*");
+
     private static final String[] STATISTICS = { "Average", "SampleCount" };
     private static final String NAMESPACE = "AWS/EC2";
     private static final String DIMENSION_INSTANCE_ID = "InstanceId";
@@ -114,6 +137,8 @@ public class AWSStatsService extends StatelessService {
         public AmazonCloudWatchAsyncClient statsClient;
         public AmazonCloudWatchAsyncClient billingClient;
         public boolean isComputeHost;
+        // set when the compute is collected as part of a batch
+        public AWSBatchStatsDataHolder batch;
 
         public AWSStatsDataHolder() {
             this.statsResponse = new ComputeStats();
@@ -122,8 +147,25 @@ public class AWSStatsService extends StatelessService {
         }
     }
 
+    /**
+     * Context of a batch stats request, holding the stats of all its computes until the last one
+     * is collected.
+     */
+    private class AWSBatchStatsDataHolder {
+        public ComputeStatsRequest statsRequest;
+        public List<ComputeStats> statsList = new ArrayList<>();
+        public AtomicInteger numPendingComputes;
+        public AtomicBoolean failed = new AtomicBoolean();
+        public Queue<AWSBatchRequestHandler> pendingRequests = new ConcurrentLinkedQueue<>();
+        public AtomicInteger numInFlightRequests = new AtomicInteger();
+        public int maxInFlightRequests = Integer.getInteger(AWS_BATCH_MAX_CONCURRENT_REQUESTS,
+                DEFAULT_AWS_BATCH_MAX_CONCURRENT_REQUESTS);
+    }
+
     @Override
     public void handleStart(Operation startPost) {
+        // the stats of all the computes of ComputeStatsRequest.resourceLinks are reported
+        StatsCollectionTaskService.registerBatchStatsAdapter(getSelfLink());
         super.handleStart(startPost);
     }
 
@@ -147,11 +189,175 @@ public class AWSStatsService extends StatelessService {
             AdapterUtils.sendPatchToProvisioningTask(this, statsRequest.taskReference);
             return;
         }
+        if (statsRequest.resourceLinks != null && !statsRequest.resourceLinks.isEmpty()) {
+            AWSBatchStatsDataHolder batch = new AWSBatchStatsDataHolder();
+            batch.statsRequest = statsRequest;
+            getBatchDescriptions(batch);
+            return;
+        }
         AWSStatsDataHolder statsData = new AWSStatsDataHolder();
         statsData.statsRequest = statsRequest;
         getVMDescription(statsData);
     }
 
+    /**
+     * Gets the descriptions of all the computes of the batch. The compute hosts are collected one
+     * by one, as for a single compute request, since their stats are account wide. The instances
+     * are grouped by parent, so that the parent and its credentials are fetched once per group.
+     */
+    private void getBatchDescriptions(AWSBatchStatsDataHolder batch) {
+        List<Operation> getOps = new ArrayList<>();
+        for (String resourceLink : batch.statsRequest.resourceLinks) {
+            getOps.add(Operation.createGet(UriUtils.extendUriWithQuery(
+                    UriUtils.buildUri(getHost(), resourceLink),
+                    UriUtils.URI_PARAM_ODATA_EXPAND, Boolean.TRUE.toString())));
+        }
+        OperationJoin.create(getOps).setCompletion((ops, exs) -> {
+            if (exs != null) {
+                failBatch(batch, exs.values().iterator().next());
+                return;
+            }
+            List<AWSStatsDataHolder> hosts = new ArrayList<>();
+            Map<String, List<AWSStatsDataHolder>> instancesByParent = new HashMap<>();
+            for (Operation op : ops.values()) {
+                AWSStatsDataHolder statsData = new AWSStatsDataHolder();
+                statsData.statsRequest = batch.statsRequest;
+                statsData.batch = batch;
+                statsData.computeDesc = op.getBody(ComputeStateWithDescription.class);
+                statsData.isComputeHost = isComputeHost(statsData.computeDesc.description);
+                if (statsData.isComputeHost) {
+                    hosts.add(statsData);
+                } else {
+                    instancesByParent.computeIfAbsent(statsData.computeDesc.parentLink,
+                            k -> new ArrayList<>()).add(statsData);
+                }
+            }
+            batch.numPendingComputes = new AtomicInteger(ops.size());
+            hosts.forEach(this::getParentAuth);
+            instancesByParent.values().forEach(this::getBatchParentDescription);
+        }).sendWith(this);
+    }
+
+    private void getBatchParentDescription(List<AWSStatsDataHolder> instances) {
+        AWSStatsDataHolder first = instances.get(0);
+        Consumer<Operation> onSuccess = (op) -> {
+            ComputeStateWithDescription parentDesc = op.getBody(ComputeStateWithDescription.class);
+            Consumer<Operation> onAuthSuccess = (authOp) -> {
+                AuthCredentialsServiceState parentAuth = authOp
+                        .getBody(AuthCredentialsServiceState.class);
+                for (AWSStatsDataHolder statsData : instances) {
+                    statsData.parentDesc = parentDesc;
+                    statsData.parentAuth = parentAuth;
+                    queueEC2Stats(statsData);
+                }
+            };
+            AdapterUtils.getServiceState(this, parentDesc.description.authCredentialsLink,
+                    onAuthSuccess, getFailureConsumer(first));
+        };
+        URI parentUri = UriUtils.extendUriWithQuery(
+                UriUtils.buildUri(getHost(), first.computeDesc.parentLink),
+                UriUtils.URI_PARAM_ODATA_EXPAND,
+                Boolean.TRUE.toString());
+        AdapterUtils.getServiceState(this, parentUri, onSuccess, getFailureConsumer(first));
+    }
+
+    /**
+     * Queues the CloudWatch requests of an instance of the batch.
+     */
+    private void queueEC2Stats(AWSStatsDataHolder statsData) {
+        AWSBatchStatsDataHolder batch = statsData.batch;
+        getAWSAsyncStatsClient(statsData);
+        if (statsData.statsClient == null) {
+            // the client manager has failed the task already
+            batch.failed.set(true);
+            return;
+        }
+        String[] metricNames = getMetricNames(statsData.computeDesc);
+        int collectionPeriod = Integer.getInteger(AWS_COLLECTION_PERIOD_SECONDS,
+                DEFAULT_AWS_COLLECTION_PERIOD_SECONDS);
+        for (String metricName : metricNames) {
+            GetMetricStatisticsRequest metricRequest = buildMetricRequest(statsData, metricName,
+                    collectionPeriod, false);
+            AWSStatsHandler resultHandler = new AWSStatsHandler(this, statsData,
+                    metricNames.length, false);
+            batch.pendingRequests.add(new AWSBatchRequestHandler(batch, statsData.statsClient,
+                    metricRequest, metricName, resultHandler));
+        }
+        sendPendingRequests(batch);
+    }
+
+    /**
+     * Sends the queued CloudWatch requests of the batch, keeping at most the configured number of
+     * requests in flight.
+     */
+    private void sendPendingRequests(AWSBatchStatsDataHolder batch) {
+        while (!batch.pendingRequests.isEmpty() && !batch.failed.get()) {
+            int inFlight = batch.numInFlightRequests.get();
+            if (inFlight >= batch.maxInFlightRequests) {
+                // the next response sends the next request
+                return;
+            }
+            if (!batch.numInFlightRequests.compareAndSet(inFlight, inFlight + 1)) {
+                continue;
+            }
+            AWSBatchRequestHandler request = batch.pendingRequests.poll();
+            if (request == null) {
+                batch.numInFlightRequests.decrementAndGet();
+                continue;
+            }
+            try {
+                request.send();
+            } catch (Exception e) {
+                // the request was not sent, e.g. because the executor of the client rejected it;
+                // it is handled as a failed request, without recursing into this loop
+                request.resultHandler.onMetricError(request.metricName, e);
+                batch.numInFlightRequests.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Adds the stats of a compute to the batch, and patches the task once all the computes of the
+     * batch are collected.
+     */
+    private void completeBatchCompute(AWSBatchStatsDataHolder batch, ComputeStats stats) {
+        synchronized (batch.statsList) {
+            batch.statsList.add(stats);
+        }
+        if (batch.numPendingComputes.decrementAndGet() != 0 || batch.failed.get()) {
+            return;
+        }
+        SingleResourceStatsCollectionTaskState respBody = new SingleResourceStatsCollectionTaskState();
+        respBody.taskStage = SingleResourceTaskCollectionStage
+                .valueOf(batch.statsRequest.nextStage);
+        respBody.statsAdapterReference = UriUtils.buildUri(getHost(), SELF_LINK);
+        respBody.statsList = batch.statsList;
+        sendRequest(Operation.createPatch(batch.statsRequest.taskReference).setBody(respBody));
+    }
+
+    private void failBatch(AWSBatchStatsDataHolder batch, Throwable t) {
+        if (batch.failed.compareAndSet(false, true)) {
+            AdapterUtils.sendFailurePatchToProvisioningTask(this,
+                    batch.statsRequest.taskReference, t);
+        }
+    }
+
+    /**
+     * Returns the metrics to collect for the given instance. The CPU credit metrics are only
+     * requested for burstable instances, or when the instance type is not known.
+     */
+    private static String[] getMetricNames(ComputeStateWithDescription computeDesc) {
+        String instanceType = computeDesc.description != null
+                ? computeDesc.description.instanceType : null;
+        if (instanceType == null
+                || BURSTABLE_INSTANCE_TYPE_PATTERN.matcher(instanceType).matches()) {
+            return METRIC_NAMES;
+        }
+        List<String> metricNames = new ArrayList<>(Arrays.asList(METRIC_NAMES));
+        metricNames.removeAll(Arrays.asList(CPU_CREDIT_METRIC_NAMES));
+        return metricNames.toArray(new String[metricNames.size()]);
+    }
+
     private void getVMDescription(AWSStatsDataHolder statsData) {
         Consumer<Operation> onSuccess = (op) -> {
             statsData.computeDesc = op.getBody(ComputeStateWithDescription.class);
@@ -198,6 +404,10 @@ public class AWSStatsService extends StatelessService {
 
     private Consumer<Throwable> getFailureConsumer(AWSStatsDataHolder statsData) {
         return ((t) -> {
+            if (statsData.batch != null) {
+                failBatch(statsData.batch, t);
+                return;
+            }
             AdapterUtils.sendFailurePatchToProvisioningTask(this,
                     statsData.statsRequest.taskReference, t);
         });
@@ -209,7 +419,7 @@ public class AWSStatsService extends StatelessService {
             getBillingStats(statsData);
             return;
         }
-        getEC2Stats(statsData, METRIC_NAMES, false);
+        getEC2Stats(statsData, getMetricNames(statsData.computeDesc), false);
     }
 
     /**
@@ -224,29 +434,8 @@ public class AWSStatsService extends StatelessService {
         getAWSAsyncStatsClient(statsData);
         int collectionPeriod = Integer.getInteger(AWS_COLLECTION_PERIOD_SECONDS, DEFAULT_AWS_COLLECTION_PERIOD_SECONDS);
         for (String metricName : metricNames) {
-            GetMetricStatisticsRequest metricRequest = new GetMetricStatisticsRequest();
-            // get datapoint for the for the passed in time window.
-            setRequestCollectionWindow(
-                    TimeUnit.MINUTES.toMicros(MAX_METRIC_COLLECTION_WINDOW_IN_MINUTES),
-                    statsData.statsRequest.lastCollectionTimeMicrosUtc,
-                    metricRequest);
-            metricRequest.setPeriod(collectionPeriod);
-            metricRequest.setStatistics(Arrays.asList(STATISTICS));
-            metricRequest.setNamespace(NAMESPACE);
-
-            // Provide instance id dimension only if it is not aggregate stats.
-            if (!isAggregateStats) {
-                List<Dimension> dimensions = new ArrayList<>();
-                Dimension dimension = new Dimension();
-                dimension.setName(DIMENSION_INSTANCE_ID);
-                String instanceId = statsData.computeDesc.id;
-                dimension.setValue(instanceId);
-                dimensions.add(dimension);
-                metricRequest.setDimensions(dimensions);
-            }
-
-            metricRequest.setMetricName(metricName);
-
+            GetMetricStatisticsRequest metricRequest = buildMetricRequest(statsData, metricName,
+                    collectionPeriod, isAggregateStats);
             logFine("Retrieving %s metric from AWS", metricName);
             AsyncHandler<GetMetricStatisticsRequest, GetMetricStatisticsResult> resultHandler = new AWSStatsHandler(
                     this, statsData, metricNames.length, isAggregateStats);
@@ -254,6 +443,33 @@ public class AWSStatsService extends StatelessService {
         }
     }
 
+    private GetMetricStatisticsRequest buildMetricRequest(AWSStatsDataHolder statsData,
+            String metricName, int collectionPeriod, boolean isAggregateStats) {
+        GetMetricStatisticsRequest metricRequest = new GetMetricStatisticsRequest();
+        // get datapoint for the for the passed in time window.
+        setRequestCollectionWindow(
+                TimeUnit.MINUTES.toMicros(MAX_METRIC_COLLECTION_WINDOW_IN_MINUTES),
+                statsData.statsRequest.lastCollectionTimeMicrosUtc,
+                metricRequest);
+        metricRequest.setPeriod(collectionPeriod);
+        metricRequest.setStatistics(Arrays.asList(STATISTICS));
+        metricRequest.setNamespace(NAMESPACE);
+
+        // Provide instance id dimension only if it is not aggregate stats.
+        if (!isAggregateStats) {
+            List<Dimension> dimensions = new ArrayList<>();
+            Dimension dimension = new Dimension();
+            dimension.setName(DIMENSION_INSTANCE_ID);
+            String instanceId = statsData.computeDesc.id;
+            dimension.setValue(instanceId);
+            dimensions.add(dimension);
+            metricRequest.setDimensions(dimensions);
+        }
+
+        metricRequest.setMetricName(metricName);
+        return metricRequest;
+    }
+
     private void getBillingStats(AWSStatsDataHolder statsData) {
         getAWSAsyncBillingClient(statsData);
         Dimension dimension = new Dimension();
@@ -353,8 +569,7 @@ public class AWSStatsService extends StatelessService {
         @Override
         public void onError(Exception exception) {
             OperationContext.restoreOperationContext(this.opContext);
-            AdapterUtils.sendFailurePatchToProvisioningTask(this.service,
-                    this.statsData.statsRequest.taskReference, exception);
+            getFailureConsumer(this.statsData).accept(exception);
         }
 
         @Override
@@ -423,8 +638,7 @@ public class AWSStatsService extends StatelessService {
 
                 getEC2Stats(this.statsData, AGGREGATE_METRIC_NAMES_ACROSS_INSTANCES, true);
             } catch (Exception e) {
-                AdapterUtils.sendFailurePatchToProvisioningTask(this.service,
-                        this.statsData.statsRequest.taskReference, e);
+                getFailureConsumer(this.statsData).accept(e);
             }
         }
     }
@@ -450,8 +664,7 @@ public class AWSStatsService extends StatelessService {
         @Override
         public void onError(Exception exception) {
             OperationContext.restoreOperationContext(this.opContext);
-            AdapterUtils.sendFailurePatchToProvisioningTask(this.service,
-                    this.statsData.statsRequest.taskReference, exception);
+            getFailureConsumer(this.statsData).accept(exception);
         }
 
         @Override
@@ -475,38 +688,110 @@ public class AWSStatsService extends StatelessService {
                             .put(AWSStatsNormalizer.getNormalizedStatKeyValue(result.getLabel()),
                                     statDatapoints);
                 }
+                onResponse();
+            } catch (Exception e) {
+                getFailureConsumer(this.statsData).accept(e);
+            }
+        }
 
-                if (this.statsData.numResponses.incrementAndGet() == this.numOfMetrics) {
-                    // Put the number of API requests as a stat
-                    ServiceStat apiCallCountStat = new ServiceStat();
-                    apiCallCountStat.latestValue = this.numOfMetrics;
-                    if (this.isAggregateStats) {
-                        // Number of Aggregate metrics + 1 call for cost metric
-                        apiCallCountStat.latestValue += 1;
-                    }
-                    apiCallCountStat.sourceTimeMicrosUtc = Utils.getNowMicrosUtc();
-                    apiCallCountStat.unit = PhotonModelConstants.UNIT_COUNT;
-                    this.statsData.statsResponse.statValues.put(PhotonModelConstants.API_CALL_COUNT,
-                            Collections.singletonList(apiCallCountStat));
+        /**
+         * Leaves the metric out of the stats of the compute, so that a metric that can not be
+         * read does not fail the other computes of a batch.
+         */
+        public void onMetricError(String metricName, Exception exception) {
+            try {
+                OperationContext.restoreOperationContext(this.opContext);
+                logWarning("Failed to get the %s metric of %s: %s", metricName,
+                        this.statsData.computeDesc.documentSelfLink, exception.getMessage());
+                onResponse();
+            } catch (Exception e) {
+                getFailureConsumer(this.statsData).accept(e);
+            }
+        }
 
-                    SingleResourceStatsCollectionTaskState respBody = new SingleResourceStatsCollectionTaskState();
+        private void onResponse() {
+            if (this.statsData.numResponses.incrementAndGet() == this.numOfMetrics) {
+                // Put the number of API requests as a stat
+                ServiceStat apiCallCountStat = new ServiceStat();
+                apiCallCountStat.latestValue = this.numOfMetrics;
+                if (this.isAggregateStats) {
+                    // Number of Aggregate metrics + 1 call for cost metric
+                    apiCallCountStat.latestValue += 1;
+                }
+                apiCallCountStat.sourceTimeMicrosUtc = Utils.getNowMicrosUtc();
+                apiCallCountStat.unit = PhotonModelConstants.UNIT_COUNT;
+                this.statsData.statsResponse.statValues.put(PhotonModelConstants.API_CALL_COUNT,
+                        Collections.singletonList(apiCallCountStat));
+
+                if (this.statsData.batch != null) {
                     this.statsData.statsResponse.computeLink = this.statsData.computeDesc.documentSelfLink;
-                    respBody.taskStage = SingleResourceTaskCollectionStage
-                            .valueOf(this.statsData.statsRequest.nextStage);
-                    respBody.statsAdapterReference = UriUtils.buildUri(getHost(), SELF_LINK);
-                    respBody.statsList = new ArrayList<>();
-                    respBody.statsList.add(this.statsData.statsResponse);
-                    this.service.sendRequest(
-                            Operation.createPatch(this.statsData.statsRequest.taskReference)
-                                    .setBody(respBody));
+                    completeBatchCompute(this.statsData.batch, this.statsData.statsResponse);
+                    return;
                 }
-            } catch (Exception e) {
-                AdapterUtils.sendFailurePatchToProvisioningTask(this.service,
-                        this.statsData.statsRequest.taskReference, e);
+                SingleResourceStatsCollectionTaskState respBody = new SingleResourceStatsCollectionTaskState();
+                this.statsData.statsResponse.computeLink = this.statsData.computeDesc.documentSelfLink;
+                respBody.taskStage = SingleResourceTaskCollectionStage
+                        .valueOf(this.statsData.statsRequest.nextStage);
+                respBody.statsAdapterReference = UriUtils.buildUri(getHost(), SELF_LINK);
+                respBody.statsList = new ArrayList<>();
+                respBody.statsList.add(this.statsData.statsResponse);
+                this.service.sendRequest(
+                        Operation.createPatch(this.statsData.statsRequest.taskReference)
+                                .setBody(respBody));
             }
         }
     }
 
+    /**
+     * Handler of a CloudWatch request of a batch, sending the next queued request of the batch
+     * once the response is handled. A failed request only leaves its metric out of the stats of
+     * its compute, rather than failing the whole batch.
+     */
+    private class AWSBatchRequestHandler implements
+            AsyncHandler<GetMetricStatisticsRequest, GetMetricStatisticsResult> {
+
+        private final AWSBatchStatsDataHolder batch;
+        private final AmazonCloudWatchAsyncClient statsClient;
+        private final GetMetricStatisticsRequest request;
+        private final String metricName;
+        private final AWSStatsHandler resultHandler;
+
+        public AWSBatchRequestHandler(AWSBatchStatsDataHolder batch,
+                AmazonCloudWatchAsyncClient statsClient, GetMetricStatisticsRequest request,
+                String metricName, AWSStatsHandler resultHandler) {
+            this.batch = batch;
+            this.statsClient = statsClient;
+            this.request = request;
+            this.metricName = metricName;
+            this.resultHandler = resultHandler;
+        }
+
+        /**
+         * Sends the request. Throws if the request could not be sent.
+         */
+        public void send() {
+            this.statsClient.getMetricStatisticsAsync(this.request, this);
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            this.resultHandler.onMetricError(this.metricName, exception);
+            sendNextRequest();
+        }
+
+        @Override
+        public void onSuccess(GetMetricStatisticsRequest request,
+                GetMetricStatisticsResult result) {
+            this.resultHandler.onSuccess(request, result);
+            sendNextRequest();
+        }
+
+        private void sendNextRequest() {
+            this.batch.numInFlightRequests.decrementAndGet();
+            sendPendingRequests(this.batch);
+        }
+    }
+
     /**
      * Returns if the given compute description is a compute host or not.
      */
@@ -137,6 +137,10 @@ public class AWSUtils {
 
     }
 
+    /**
+     * Creates a CloudWatch client. The credentials are not validated by this method; the
+     * AWSClientManager validates them asynchronously when caching the client.
+     */
     public static AmazonCloudWatchAsyncClient getStatsAsyncClient(
             AuthCredentialsServiceState credentials, String region,
             ExecutorService executorService, boolean isMockRequest) {
@@ -151,10 +155,6 @@ public class AWSUtils {
         }
 
         client.setRegion(Region.getRegion(Regions.fromName(region)));
-        // make a call to validate credentials
-        if (!isMockRequest) {
-            client.describeAlarms();
-        }
         return client;
     }
 
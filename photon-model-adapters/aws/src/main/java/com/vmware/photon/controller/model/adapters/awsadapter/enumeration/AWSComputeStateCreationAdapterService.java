@@ -13,6 +13,8 @@
 
 package com.vmware.photon.controller.model.adapters.awsadapter.enumeration;
 
+import static com.vmware.photon.controller.model.adapters.awsadapter.AWSConstants.AWS_INSTANCE_FINGERPRINT;
+import static com.vmware.photon.controller.model.adapters.awsadapter.util.AWSEnumerationUtils.computeInstanceFingerprint;
 import static com.vmware.photon.controller.model.adapters.awsadapter.util.AWSEnumerationUtils.getCDsRepresentingVMsInLocalSystemCreatedByEnumerationQuery;
 import static com.vmware.photon.controller.model.adapters.awsadapter.util.AWSEnumerationUtils.getKeyForComputeDescriptionFromCD;
 import static com.vmware.photon.controller.model.adapters.awsadapter.util.AWSEnumerationUtils.getKeyForComputeDescriptionFromInstance;
@@ -49,10 +51,12 @@ import com.vmware.photon.controller.model.adapters.util.AdapterUtils;
 import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
 import com.vmware.photon.controller.model.resources.ComputeService;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.KnownTagCache;
 import com.vmware.photon.controller.model.resources.NetworkInterfaceService;
 import com.vmware.photon.controller.model.resources.NetworkInterfaceService.NetworkInterfaceState;
 import com.vmware.photon.controller.model.resources.NetworkService.NetworkState;
 import com.vmware.photon.controller.model.resources.TagService;
+import com.vmware.photon.controller.model.resources.TagService.TagState;
 
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.OperationJoin;
@@ -208,11 +212,15 @@ public class AWSComputeStateCreationAdapterService extends StatelessService {
         allTags.addAll(create);
         allTags.addAll(update);
 
-        // POST each of the tags. If a tag exists it won't be created again. We don't want the name
-        // tags, so filter them out
-        List<Operation> operations = allTags.stream()
+        // POST each of the tags not known to exist on this node yet. If a tag exists it won't be
+        // created again. We don't want the name tags, so filter them out
+        KnownTagCache knownTags = KnownTagCache.getInstance(getHost());
+        List<TagState> unknownTags = allTags.stream()
                 .filter(t -> !AWSConstants.AWS_TAG_NAME.equals(t.getKey()))
                 .map(t -> mapTagToTagState(t, context.computeState.tenantLinks))
+                .filter(tagState -> !knownTags.isKnown(tagState))
+                .collect(Collectors.toList());
+        List<Operation> operations = unknownTags.stream()
                 .map(tagState -> Operation.createPost(this, TagService.FACTORY_LINK)
                         .setBody(tagState)).collect(Collectors.toList());
 
@@ -227,6 +235,7 @@ public class AWSComputeStateCreationAdapterService extends StatelessService {
                     return;
                 }
 
+                unknownTags.forEach(knownTags::addKnown);
                 context.creationStage = next;
                 handleComputeStateCreateOrUpdate(context);
             }).sendWith(this);
@@ -303,14 +312,18 @@ public class AWSComputeStateCreationAdapterService extends StatelessService {
                 || context.computeState.instancesToBeUpdated.size() == 0) {
             logInfo("No instances need to be updated in the local system");
         } else {
-            logInfo("Need to update %d compute states in the local system",
-                    context.computeState.instancesToBeUpdated.size());
+            int unchangedCount = 0;
             for (String instanceId : context.computeState.instancesToBeUpdated
                     .keySet()) {
-                populateComputeStateAndNetworksForUpdates(context,
+                if (!populateComputeStateAndNetworksForUpdates(context,
                         context.computeState.instancesToBeUpdated.get(instanceId),
-                        context.computeState.computeStatesToBeUpdated.get(instanceId));
+                        context.computeState.computeStatesToBeUpdated.get(instanceId))) {
+                    unchangedCount++;
+                }
             }
+            logInfo("Need to update %d compute states in the local system, %d are unchanged",
+                    context.computeState.instancesToBeUpdated.size() - unchangedCount,
+                    unchangedCount);
         }
         context.creationStage = next;
         handleComputeStateCreateOrUpdate(context);
@@ -333,6 +346,8 @@ public class AWSComputeStateCreationAdapterService extends StatelessService {
         ComputeService.ComputeState computeState = mapInstanceToComputeState(instance,
                 context.computeState.parentComputeLink, context.computeState.resourcePoolLink,
                 descLink, context.computeState.tenantLinks);
+        computeState.customProperties.put(AWS_INSTANCE_FINGERPRINT,
+                computeInstanceFingerprint(instance, computeState));
 
         // Create operations
         List<Operation> networkOperations = mapInstanceIPAddressToNICCreationOperations(
@@ -348,9 +363,10 @@ public class AWSComputeStateCreationAdapterService extends StatelessService {
 
     /**
      * Populates the compute state / network link associated with an AWS VM instance and creates an operation for PATCHing existing
-     * compute and network interfaces .
+     * compute and network interfaces . No operations are created if the instance did not change since it was last enumerated.
+     * @return false if the instance did not change
      */
-    private void populateComputeStateAndNetworksForUpdates(AWSComputeServiceCreationContext context,
+    private boolean populateComputeStateAndNetworksForUpdates(AWSComputeServiceCreationContext context,
             Instance instance, ComputeState existingComputeState) {
         // Operation for update to compute state.
         ComputeService.ComputeState computeState = mapInstanceToComputeState(instance,
@@ -358,6 +374,13 @@ public class AWSComputeStateCreationAdapterService extends StatelessService {
                 existingComputeState.descriptionLink,
                 context.computeState.tenantLinks);
 
+        String fingerprint = computeInstanceFingerprint(instance, computeState);
+        if (existingComputeState.customProperties != null && fingerprint.equals(
+                existingComputeState.customProperties.get(AWS_INSTANCE_FINGERPRINT))) {
+            return false;
+        }
+        computeState.customProperties.put(AWS_INSTANCE_FINGERPRINT, fingerprint);
+
         String existingNICLink = null;
         // NIC - Private
         if (instance.getPrivateIpAddress() != null) {
@@ -399,7 +422,7 @@ public class AWSComputeStateCreationAdapterService extends StatelessService {
         Operation patchComputeState = createPatchOperation(this,
                 computeState, existingComputeState.documentSelfLink);
         context.enumerationOperations.add(patchComputeState);
-
+        return true;
     }
 
     /**
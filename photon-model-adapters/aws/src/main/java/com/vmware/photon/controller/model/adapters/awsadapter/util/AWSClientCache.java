@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.awsadapter.util;
+
+import java.util.ArrayList;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Concurrent cache of AWS clients. Lookups do not lock the cache and a client is created at most
+ * once per key, without blocking the lookups of the other keys.
+ *
+ * The cache is bounded: once it holds more than the maximum number of clients, the least recently
+ * used one is evicted. Clients not used for longer than the maximum idle time are evicted as
+ * well. Requests that got an evicted client before may still be using it, so evicted clients are
+ * shut down with the given handler only once the shutdown delay has passed. The remaining clients
+ * are shut down when the cache is cleared.
+ */
+public class AWSClientCache<T> {
+
+    private static class CacheEntry<T> {
+        private final T client;
+        private volatile long lastAccessMicros;
+
+        private CacheEntry(T client) {
+            this.client = client;
+            this.lastAccessMicros = Utils.getNowMicrosUtc();
+        }
+    }
+
+    private static class EvictedClient<T> {
+        private final T client;
+        private final long evictionMicros;
+
+        private EvictedClient(T client) {
+            this.client = client;
+            this.evictionMicros = Utils.getNowMicrosUtc();
+        }
+    }
+
+    private final ConcurrentHashMap<String, CacheEntry<T>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<EvictedClient<T>> evictedClients = new ConcurrentLinkedQueue<>();
+    private final int maxSize;
+    private final long maxIdleMicros;
+    private final long shutdownDelayMicros;
+    private final Consumer<T> shutdownHandler;
+    private final AtomicBoolean shutdownScheduled = new AtomicBoolean();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong lastIdleCheckMicros = new AtomicLong(Utils.getNowMicrosUtc());
+
+    public AWSClientCache(int maxSize, long maxIdleMicros, long shutdownDelayMicros,
+            Consumer<T> shutdownHandler) {
+        this.maxSize = maxSize;
+        this.maxIdleMicros = maxIdleMicros;
+        this.shutdownDelayMicros = shutdownDelayMicros;
+        this.shutdownHandler = shutdownHandler;
+    }
+
+    /**
+     * Returns the client cached for the given key. If there is none, creates one with the given
+     * factory and caches it. Exceptions thrown by the factory are propagated and nothing is
+     * cached.
+     */
+    public T getOrCreate(String key, Function<String, T> factory) {
+        evictIdleClients();
+        shutdownEvictedClients();
+
+        CacheEntry<T> entry = this.entries.get(key);
+        if (entry == null) {
+            boolean[] created = new boolean[1];
+            entry = this.entries.computeIfAbsent(key, k -> {
+                created[0] = true;
+                return new CacheEntry<>(factory.apply(k));
+            });
+            entry.lastAccessMicros = Utils.getNowMicrosUtc();
+            if (created[0]) {
+                this.missCount.incrementAndGet();
+                evictLeastRecentlyUsedClients(entry);
+            } else {
+                this.hitCount.incrementAndGet();
+            }
+        } else {
+            entry.lastAccessMicros = Utils.getNowMicrosUtc();
+            this.hitCount.incrementAndGet();
+        }
+        return entry.client;
+    }
+
+    /**
+     * Evicts the given client, if it is still the one cached for the key, e.g. because its
+     * credentials turned out to be invalid. Like the other evicted clients, it is shut down once
+     * the shutdown delay has passed.
+     */
+    public void invalidate(String key, T client) {
+        CacheEntry<T> entry = this.entries.get(key);
+        if (entry != null && entry.client == client) {
+            evict(key, entry);
+        }
+    }
+
+    /**
+     * Shuts down the evicted clients whose shutdown delay has passed. If evicted clients are left,
+     * schedules the next shutdown on the given host, so that the clients are shut down even if
+     * the cache is not accessed anymore.
+     */
+    public void shutdownEvictedClients(ServiceHost host) {
+        long delayMicros = shutdownEvictedClients();
+        if (delayMicros < 0 || !this.shutdownScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        host.schedule(() -> {
+            this.shutdownScheduled.set(false);
+            shutdownEvictedClients(host);
+        }, delayMicros, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Removes and shuts down all the clients, including the evicted clients not shut down yet.
+     */
+    public void clear() {
+        for (String key : new ArrayList<>(this.entries.keySet())) {
+            CacheEntry<T> entry = this.entries.remove(key);
+            if (entry != null) {
+                this.shutdownHandler.accept(entry.client);
+            }
+        }
+        EvictedClient<T> evicted;
+        while ((evicted = this.evictedClients.poll()) != null) {
+            this.shutdownHandler.accept(evicted.client);
+        }
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    /**
+     * Returns the number of evicted clients waiting to be shut down.
+     */
+    public int getEvictedCount() {
+        return this.evictedClients.size();
+    }
+
+    /**
+     * Evicts the least recently used clients, except for the given one which is about to be
+     * returned.
+     */
+    private void evictLeastRecentlyUsedClients(CacheEntry<T> accessed) {
+        while (this.entries.size() > this.maxSize) {
+            Entry<String, CacheEntry<T>> eldest = null;
+            for (Entry<String, CacheEntry<T>> entry : this.entries.entrySet()) {
+                if (entry.getValue() == accessed) {
+                    continue;
+                }
+                if (eldest == null
+                        || entry.getValue().lastAccessMicros < eldest.getValue().lastAccessMicros) {
+                    eldest = entry;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            evict(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Evicts the idle clients. The check runs at most twice per idle period, on the thread that
+     * happens to access the cache at that time.
+     */
+    private void evictIdleClients() {
+        long now = Utils.getNowMicrosUtc();
+        long lastCheck = this.lastIdleCheckMicros.get();
+        if (now - lastCheck < this.maxIdleMicros / 2
+                || !this.lastIdleCheckMicros.compareAndSet(lastCheck, now)) {
+            return;
+        }
+        for (Entry<String, CacheEntry<T>> entry : this.entries.entrySet()) {
+            if (now - entry.getValue().lastAccessMicros > this.maxIdleMicros) {
+                evict(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes the given entry from the cache, if it is still cached, and queues its client to be
+     * shut down.
+     */
+    private void evict(String key, CacheEntry<T> entry) {
+        if (this.entries.remove(key, entry)) {
+            this.evictionCount.incrementAndGet();
+            this.evictedClients.add(new EvictedClient<>(entry.client));
+        }
+    }
+
+    /**
+     * Shuts down the evicted clients whose shutdown delay has passed. Returns the time left until
+     * the next evicted client is due, in microseconds, or -1 if there is none left.
+     */
+    private long shutdownEvictedClients() {
+        long now = Utils.getNowMicrosUtc();
+        EvictedClient<T> evicted;
+        while ((evicted = this.evictedClients.peek()) != null) {
+            long dueMicros = evicted.evictionMicros + this.shutdownDelayMicros;
+            if (dueMicros > now) {
+                return dueMicros - now;
+            }
+            if (this.evictedClients.remove(evicted)) {
+                this.shutdownHandler.accept(evicted.client);
+            }
+        }
+        return -1;
+    }
+}
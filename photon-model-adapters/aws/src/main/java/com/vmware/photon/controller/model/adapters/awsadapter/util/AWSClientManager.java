@@ -14,44 +14,61 @@
 package com.vmware.photon.controller.model.adapters.awsadapter.util;
 
 import static com.vmware.photon.controller.model.adapters.awsadapter.AWSConstants.AwsClientType;
-import static com.vmware.photon.controller.model.adapters.awsadapter.AWSConstants.CLIENT_CACHE_INITIAL_SIZE;
+import static com.vmware.photon.controller.model.adapters.awsadapter.AWSConstants.CLIENT_CACHE_MAX_IDLE_MINUTES;
 import static com.vmware.photon.controller.model.adapters.awsadapter.AWSConstants.CLIENT_CACHE_MAX_SIZE;
-import static com.vmware.photon.controller.model.adapters.awsadapter.AWSConstants.THREAD_POOL_CACHE_INITIAL_SIZE;
-import static com.vmware.photon.controller.model.adapters.awsadapter.AWSConstants.THREAD_POOL_CACHE_MAX_SIZE;
+import static com.vmware.photon.controller.model.adapters.awsadapter.AWSConstants.CLIENT_SHUTDOWN_DELAY_MINUTES;
 import static com.vmware.photon.controller.model.adapters.awsadapter.AWSUriPaths.AWS;
 import static com.vmware.photon.controller.model.adapters.awsadapter.AWSUtils.TILDA;
 import static com.vmware.photon.controller.model.adapters.awsadapter.AWSUtils.awaitTermination;
 
 import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.cloudwatch.AmazonCloudWatchAsyncClient;
+import com.amazonaws.services.cloudwatch.model.DescribeAlarmsRequest;
+import com.amazonaws.services.cloudwatch.model.DescribeAlarmsResult;
 import com.amazonaws.services.ec2.AmazonEC2AsyncClient;
 import com.amazonaws.services.s3.transfer.TransferManager;
 
 import com.vmware.photon.controller.model.adapters.awsadapter.AWSUtils;
+import com.vmware.photon.controller.model.adapters.util.AdapterIOExecutor;
 import com.vmware.photon.controller.model.adapters.util.AdapterUtils;
-import com.vmware.photon.controller.model.adapters.util.LRUCache;
 import com.vmware.xenon.common.ServiceHost;
 import com.vmware.xenon.common.StatelessService;
-import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.AuthCredentialsService.AuthCredentialsServiceState;
 
 /**
  * Holds the cache for managing the AWS Clients used to make calls to AWS from the photon model adapters.
+ *
+ * The cache is concurrent, so looking up a client does not serialize the adapters on a single
+ * lock, and evicts the clients idle for longer than
+ * {@link AWSConstants#CLIENT_CACHE_MAX_IDLE_MINUTES}. Evicted clients are shut down
+ * {@link AWSConstants#CLIENT_SHUTDOWN_DELAY_MINUTES} later, on the host of the service that last
+ * used the cache, so that the calls already made with them can complete. The hit, miss and
+ * eviction counts of the cache are published as stats of the services using it.
+ *
+ * The AWS clients run their calls on the {@link AdapterIOExecutor} of the host, with a separate
+ * queue and concurrency quota per AWS account, so that a busy account does not hold all the
+ * threads.
  */
 public class AWSClientManager {
 
+    public static final String STAT_NAME_CLIENT_CACHE_HIT_COUNT = "ClientCacheHitCount";
+    public static final String STAT_NAME_CLIENT_CACHE_MISS_COUNT = "ClientCacheMissCount";
+    public static final String STAT_NAME_CLIENT_CACHE_EVICTION_COUNT = "ClientCacheEvictionCount";
+    public static final String STAT_NAME_CLIENT_CACHE_SIZE = "ClientCacheSize";
+
     private static final Logger logger = Logger.getLogger(AWSClientManager.class.getName());
     // Flag for determining the type of AWS client managed by this client manager.
     private AwsClientType awsClientType;
-    private LRUCache<String, AmazonEC2AsyncClient> ec2ClientCache;
-    private LRUCache<String, AmazonCloudWatchAsyncClient> cloudWatchClientCache;
-    private LRUCache<String, TransferManager> s3ClientCache;
-    private LRUCache<URI, ExecutorService> executorCache;
+    private AWSClientCache<AmazonEC2AsyncClient> ec2ClientCache;
+    private AWSClientCache<AmazonCloudWatchAsyncClient> cloudWatchClientCache;
+    private AWSClientCache<TransferManager> s3ClientCache;
+    private final ConcurrentHashMap<URI, ExecutorService> executorCache = new ConcurrentHashMap<>();
 
     public AWSClientManager() {
         this(AwsClientType.EC2);
@@ -59,16 +76,20 @@ public class AWSClientManager {
 
     public AWSClientManager(AwsClientType awsClientType) {
         this.awsClientType = awsClientType;
+        long maxIdleMicros = TimeUnit.MINUTES.toMicros(CLIENT_CACHE_MAX_IDLE_MINUTES);
+        long shutdownDelayMicros = TimeUnit.MINUTES.toMicros(CLIENT_SHUTDOWN_DELAY_MINUTES);
         switch (awsClientType) {
         case EC2:
-            this.ec2ClientCache = new LRUCache<>(CLIENT_CACHE_INITIAL_SIZE, CLIENT_CACHE_MAX_SIZE);
+            this.ec2ClientCache = new AWSClientCache<>(CLIENT_CACHE_MAX_SIZE, maxIdleMicros,
+                    shutdownDelayMicros, c -> c.shutdown());
             return;
         case CLOUD_WATCH:
-            this.cloudWatchClientCache = new LRUCache<>(CLIENT_CACHE_INITIAL_SIZE,
-                    CLIENT_CACHE_MAX_SIZE);
+            this.cloudWatchClientCache = new AWSClientCache<>(CLIENT_CACHE_MAX_SIZE,
+                    maxIdleMicros, shutdownDelayMicros, c -> c.shutdown());
             return;
         case S3:
-            this.s3ClientCache = new LRUCache<>(CLIENT_CACHE_INITIAL_SIZE, CLIENT_CACHE_MAX_SIZE);
+            this.s3ClientCache = new AWSClientCache<>(CLIENT_CACHE_MAX_SIZE, maxIdleMicros,
+                    shutdownDelayMicros, c -> c.shutdownNow());
             return;
         default:
             String msg = "The specified AWS client type " + awsClientType
@@ -86,7 +107,7 @@ public class AWSClientManager {
      * @param service The stateless service making the request and for which the executor pool needs to be allocated.
      * @return The AWSClient
      */
-    public synchronized AmazonEC2AsyncClient getOrCreateEC2Client(
+    public AmazonEC2AsyncClient getOrCreateEC2Client(
             AuthCredentialsServiceState credentials,
             String regionId, StatelessService service, URI parentTaskLink, boolean isEnumeration) {
         if (this.awsClientType != AwsClientType.EC2) {
@@ -95,13 +116,9 @@ public class AWSClientManager {
         }
         AmazonEC2AsyncClient amazonEC2Client = null;
         String cacheKey = credentials.documentSelfLink + TILDA + regionId;
-        if (this.ec2ClientCache.containsKey(cacheKey)) {
-            return this.ec2ClientCache.get(cacheKey);
-        }
         try {
-            amazonEC2Client = AWSUtils
-                    .getAsyncClient(credentials, regionId, getExecutor(service.getHost()));
-            this.ec2ClientCache.put(cacheKey, amazonEC2Client);
+            amazonEC2Client = this.ec2ClientCache.getOrCreate(cacheKey, key -> AWSUtils
+                    .getAsyncClient(credentials, regionId, getClientExecutor(service, credentials)));
         } catch (Throwable e) {
             service.logSevere(e);
             if (isEnumeration) {
@@ -112,18 +129,22 @@ public class AWSClientManager {
                         parentTaskLink, e);
             }
         }
+        publishCacheStats(service, this.ec2ClientCache, credentials);
+        this.ec2ClientCache.shutdownEvictedClients(service.getHost());
         return amazonEC2Client;
     }
 
     /**
      * Get or create a CloudWatch Client instance that will be used to get stats from AWS.
+     * The credentials of a new client are validated asynchronously; if they turn out to be
+     * invalid the client is evicted from the cache.
      * @param credentials The auth credentials to be used for the client creation
      * @param regionId The region of the AWS client
      * @param service The stateless service for which the operation is being performed.
      * @param isMock Indicates if this a mock request
      * @return
      */
-    public synchronized AmazonCloudWatchAsyncClient getOrCreateCloudWatchClient(
+    public AmazonCloudWatchAsyncClient getOrCreateCloudWatchClient(
             AuthCredentialsServiceState credentials,
             String regionId, StatelessService service,
             URI parentTaskLink, boolean isMock) {
@@ -133,22 +154,28 @@ public class AWSClientManager {
         }
         String cacheKey = credentials.documentSelfLink + TILDA + regionId;
         AmazonCloudWatchAsyncClient amazonCloudWatchClient = null;
-        if (this.cloudWatchClientCache.containsKey(cacheKey)) {
-            return this.cloudWatchClientCache.get(cacheKey);
-        }
+        // the client created by this call, if any; it is validated once it is in the cache
+        AmazonCloudWatchAsyncClient[] createdClient = new AmazonCloudWatchAsyncClient[1];
         try {
-            amazonCloudWatchClient = AWSUtils.getStatsAsyncClient(credentials,
-                    regionId, getExecutor(service.getHost()), isMock);
-            this.cloudWatchClientCache.put(cacheKey, amazonCloudWatchClient);
+            amazonCloudWatchClient = this.cloudWatchClientCache.getOrCreate(cacheKey, key -> {
+                createdClient[0] = AWSUtils.getStatsAsyncClient(credentials, regionId,
+                        getClientExecutor(service, credentials), isMock);
+                return createdClient[0];
+            });
         } catch (Throwable e) {
             service.logSevere(e);
             AdapterUtils.sendFailurePatchToProvisioningTask(service,
                     parentTaskLink, e);
         }
+        if (createdClient[0] != null && !isMock && !AWSUtils.isAwsClientMock()) {
+            validateCredentials(cacheKey, createdClient[0], service);
+        }
+        publishCacheStats(service, this.cloudWatchClientCache, credentials);
+        this.cloudWatchClientCache.shutdownEvictedClients(service.getHost());
         return amazonCloudWatchClient;
     }
 
-    public synchronized TransferManager getOrCreateS3AsyncClient(
+    public TransferManager getOrCreateS3AsyncClient(
             AuthCredentialsServiceState credentials,
             String regionId, StatelessService service, URI parentTaskLink) {
         if (this.awsClientType != AwsClientType.S3) {
@@ -156,38 +183,71 @@ public class AWSClientManager {
                     "This client manager supports only AWS " + this.awsClientType + " clients.");
         }
         String cacheKey = credentials.documentSelfLink + TILDA + regionId;
-        if (this.s3ClientCache.containsKey(cacheKey)) {
-            return this.s3ClientCache.get(cacheKey);
-        }
         try {
-            TransferManager s3AsyncClient = AWSUtils
-                    .getS3AsyncClient(credentials, regionId, getExecutor(service.getHost()));
-            this.s3ClientCache.put(cacheKey, s3AsyncClient);
-            return s3AsyncClient;
+            return this.s3ClientCache.getOrCreate(cacheKey, key -> AWSUtils
+                    .getS3AsyncClient(credentials, regionId, getClientExecutor(service, credentials)));
         } catch (Throwable t) {
             service.logSevere(t);
             AdapterUtils.sendFailurePatchToProvisioningTask(service, parentTaskLink, t);
             return null;
+        } finally {
+            publishCacheStats(service, this.s3ClientCache, credentials);
+            this.s3ClientCache.shutdownEvictedClients(service.getHost());
         }
     }
 
+    /**
+     * Makes a call to validate the credentials of a new CloudWatch client, without blocking the
+     * caller. The client is evicted from the cache if the call fails.
+     */
+    private void validateCredentials(String cacheKey, AmazonCloudWatchAsyncClient client,
+            StatelessService service) {
+        client.describeAlarmsAsync(new DescribeAlarmsRequest(),
+                new AsyncHandler<DescribeAlarmsRequest, DescribeAlarmsResult>() {
+                    @Override
+                    public void onError(Exception exception) {
+                        service.logWarning("Invalid credentials for CloudWatch client %s: %s",
+                                cacheKey, exception.getMessage());
+                        AWSClientManager.this.cloudWatchClientCache.invalidate(cacheKey, client);
+                    }
+
+                    @Override
+                    public void onSuccess(DescribeAlarmsRequest request,
+                            DescribeAlarmsResult result) {
+                    }
+                });
+    }
+
+    /**
+     * Publishes the counters of the given cache, and of the executor queue of the AWS account, as
+     * stats of the service.
+     */
+    private void publishCacheStats(StatelessService service, AWSClientCache<?> cache,
+            AuthCredentialsServiceState credentials) {
+        String prefix = this.awsClientType.name();
+        service.setStat(prefix + STAT_NAME_CLIENT_CACHE_HIT_COUNT, cache.getHitCount());
+        service.setStat(prefix + STAT_NAME_CLIENT_CACHE_MISS_COUNT, cache.getMissCount());
+        service.setStat(prefix + STAT_NAME_CLIENT_CACHE_EVICTION_COUNT,
+                cache.getEvictionCount());
+        service.setStat(prefix + STAT_NAME_CLIENT_CACHE_SIZE, cache.size());
+        AdapterIOExecutor.getInstance(service.getHost()).publishStats(service,
+                getExecutorQueueName(credentials));
+    }
+
     /**
      * Clears out the client cache and all the resources associated with each of the AWS clients.
      */
-    public synchronized void cleanUp() {
+    public void cleanUp() {
         switch (this.awsClientType) {
         case CLOUD_WATCH:
-            this.cloudWatchClientCache.values().forEach(c -> c.shutdown());
             this.cloudWatchClientCache.clear();
             break;
 
         case EC2:
-            this.ec2ClientCache.values().forEach(c -> c.shutdown());
             this.ec2ClientCache.clear();
             break;
 
         case S3:
-            this.s3ClientCache.values().forEach(c -> c.shutdownNow());
             this.s3ClientCache.clear();
             break;
 
@@ -198,53 +258,42 @@ public class AWSClientManager {
     }
 
     /**
-     * Returns the executor pool associated with the service host. In case one does not exist already,
-     * creates a new one and saves that in a cache.
+     * Returns the executor associated with the service host. In case one does not exist already,
+     * creates a new one on the shared adapter executor of the host and saves that in a cache.
      */
-    public synchronized ExecutorService getExecutor(ServiceHost host) {
-        ExecutorService executorService;
-        URI hostURI = host.getPublicUri();
-        if (this.executorCache == null) {
-            this.executorCache = new LRUCache<URI, ExecutorService>(
-                    THREAD_POOL_CACHE_INITIAL_SIZE, THREAD_POOL_CACHE_MAX_SIZE);
-        }
-        executorService = this.executorCache.get(hostURI);
-        if (executorService == null) {
-            executorService = allocateExecutor(host.getPublicUri(), Utils.DEFAULT_THREAD_COUNT);
-            this.executorCache.put(hostURI, executorService);
-        }
-        return executorService;
+    public ExecutorService getExecutor(ServiceHost host) {
+        return this.executorCache.computeIfAbsent(host.getPublicUri(),
+                uri -> AdapterIOExecutor.getInstance(host).getExecutor(null, AWS));
     }
 
     /**
-     * Allocates a fixed size thread pool for the given service host.
+     * Returns the executor handed to an AWS client, queuing the calls of the client under its
+     * AWS account. Shutting down an AWS client shuts down its executor as well, so each client
+     * gets its own executor, which leaves the shared pool running when shut down. The async calls
+     * of the clients submit their work from host threads, where a rejected task would fail no
+     * operation, so the calls made once the queue is full run on the calling thread.
      */
-    private ExecutorService allocateExecutor(URI uri, int threadCount) {
-        return Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, uri + AWS + "/" + Utils.getNowMicrosUtc());
-            }
-        });
+    private ExecutorService getClientExecutor(StatelessService service,
+            AuthCredentialsServiceState credentials) {
+        return AdapterIOExecutor.getInstance(service.getHost()).getExecutor(service,
+                getExecutorQueueName(credentials));
+    }
+
+    private static String getExecutorQueueName(AuthCredentialsServiceState credentials) {
+        return AWS + TILDA + credentials.documentSelfLink;
     }
 
     /**
      * Method to clear out the cache that saves the references to the executuors per host.
      */
     private void cleanupExecutorCache() {
-        if (this.executorCache == null) {
-            return;
-        }
-        for (ExecutorService executorService : this.executorCache.values()) {
-            // Adding this check as the Amazon client shutdown also shuts down the associated
-            // executor pool.
-            if (!executorService.isShutdown()) {
+        for (URI hostUri : this.executorCache.keySet()) {
+            ExecutorService executorService = this.executorCache.remove(hostUri);
+            if (executorService != null && !executorService.isShutdown()) {
                 executorService.shutdown();
                 awaitTermination(logger, executorService);
             }
-            this.executorCache.clear();
         }
-
     }
 
     /**
@@ -13,22 +13,18 @@
 
 package com.vmware.photon.controller.model.adapters.awsadapter.util;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import org.joda.time.LocalDate;
@@ -62,25 +58,28 @@ public class AWSCsvBillParser {
     public static final String DETAILED_CSV_DATE_FORMAT_YYYY_MM_DD_HH_MM_SS = "yyyy-MM-dd HH:mm:ss";
     public static final String INVOICE_TOTAL = "InvoiceTotal";
     public static final String ACCOUNT_TOTAL = "AccountTotal";
+    public static final String LINE_ITEM = "LineItem";
 
+    private static final DateTimeFormatter DETAILED_CSV_DATE_FORMATTER = DateTimeFormat
+            .forPattern(DETAILED_CSV_DATE_FORMAT_YYYY_MM_DD_HH_MM_SS);
+
+    /**
+     * Parses the zipped detailed bill. The CSV is streamed out of the zip file, without
+     * extracting it to the disk.
+     */
     public Map<String, AwsAccountDetailDto> parseDetailedCsvBill(
             List<String> ignorableInvoiceCharge, Path csvBillZipFilePath,
             LocalDate monthDate) throws IOException {
 
-        Path workingDirPath = csvBillZipFilePath.getParent();
-        unzip(csvBillZipFilePath.toString(), workingDirPath.toString());
-        String unzippedCsvFilePathStr = csvBillZipFilePath.toString()
-                .substring(0, csvBillZipFilePath.toString().lastIndexOf('.'));
-        Path unzippedCsvFilePath = Paths.get(unzippedCsvFilePathStr);
-
-        Map<String, AwsAccountDetailDto> accountToDetailsMap;
-        try (InputStream extractedObjectContentInputStream = new FileInputStream(
-                unzippedCsvFilePath.toFile())) {
-            accountToDetailsMap = parseDetailedCsvBill(extractedObjectContentInputStream,
-                    ignorableInvoiceCharge);
-        } finally {
-            Files.deleteIfExists(unzippedCsvFilePath);
+        Map<String, AwsAccountDetailDto> accountToDetailsMap = new HashMap<>();
+        try (ZipInputStream zipInputStream = new ZipInputStream(
+                Files.newInputStream(csvBillZipFilePath))) {
+            if (zipInputStream.getNextEntry() == null) {
+                throw new IOException("No CSV bill found in '" + csvBillZipFilePath + "'");
+            }
+            parseDetailedCsvBill(zipInputStream, ignorableInvoiceCharge, accountToDetailsMap, 0);
         }
+        subtractSignUpCharges(accountToDetailsMap);
 
         for (Map.Entry<String, AwsAccountDetailDto> accountDetailEntry : accountToDetailsMap
                 .entrySet()) {
@@ -90,6 +89,9 @@ public class AWSCsvBillParser {
         return accountToDetailsMap;
     }
 
+    /**
+     * Parses the detailed bill with a CSV reader that maps each row by its headers.
+     */
     public Map<String, AwsAccountDetailDto> parseDetailedCsvBill(InputStream inputStream,
             Collection<String> ignorableInvoiceCharge)
             throws IOException {
@@ -120,21 +122,56 @@ public class AWSCsvBillParser {
 
             Map<String, AwsAccountDetailDto> monthlyBill = new HashMap<>();
             cellProcessorArray = processorList.toArray(cellProcessorArray);
-            Map<String, Object> rowMap;
-            while ((rowMap = mapReader.read(header, cellProcessorArray)) != null) {
-                readRow(rowMap, monthlyBill, tagHeaders, ignorableInvoiceCharge);
-            }
-            // Subtract the sign up charge from the account cost
-            for (AwsAccountDetailDto awsAccountDetail : monthlyBill.values()) {
-                Double signUpCharge = awsAccountDetail.signUpCharge;
-                if (signUpCharge != 0) {
-                    awsAccountDetail.cost = awsAccountDetail.cost - signUpCharge;
-                }
+            MappedBillRow row = new MappedBillRow(tagHeaders);
+            while ((row.rowMap = mapReader.read(header, cellProcessorArray)) != null) {
+                readRow(row, monthlyBill, ignorableInvoiceCharge);
             }
+            subtractSignUpCharges(monthlyBill);
             return monthlyBill;
         }
     }
 
+    /**
+     * Streams the rows of the detailed bill into the given monthly bill. The columns are looked
+     * up by their position in the header and each row is read into the same buffer, so that only
+     * the fields used by the bill are ever turned into strings.
+     *
+     * The parsing can be resumed over a bill that has grown since it was last parsed (AWS keeps
+     * appending to the bill of the current month) by passing in the monthly bill and the offset
+     * returned by the previous call. The sign up charges are not subtracted from the account
+     * costs; call {@link #subtractSignUpCharges(Map)} once the whole bill is parsed.
+     *
+     * @param inputStream The uncompressed CSV bill, from its beginning.
+     * @param startOffset The offset, in bytes, of the first row to parse. The rows before it,
+     *        but the header, are skipped.
+     * @return The offset, in bytes, right after the last parsed row.
+     */
+    public long parseDetailedCsvBill(InputStream inputStream,
+            Collection<String> ignorableInvoiceCharge,
+            Map<String, AwsAccountDetailDto> monthlyBill, long startOffset) throws IOException {
+        DetailedCsvRowReader row = new DetailedCsvRowReader(inputStream);
+        if (!row.readHeader()) {
+            return row.getOffset();
+        }
+        row.skipTo(startOffset);
+        while (row.next()) {
+            readRow(row, monthlyBill, ignorableInvoiceCharge);
+        }
+        return row.getOffset();
+    }
+
+    /**
+     * Subtracts the one-time sign up charges from the costs of the accounts.
+     */
+    public void subtractSignUpCharges(Map<String, AwsAccountDetailDto> monthlyBill) {
+        for (AwsAccountDetailDto awsAccountDetail : monthlyBill.values()) {
+            Double signUpCharge = awsAccountDetail.signUpCharge;
+            if (signUpCharge != 0) {
+                awsAccountDetail.cost = awsAccountDetail.cost - signUpCharge;
+            }
+        }
+    }
+
     public String getCsvBillFileName(int month, int year, String accountId, boolean isZipFile) {
         StringBuilder monthStrBuffer = new StringBuilder();
         if (month <= 9) {
@@ -155,42 +192,23 @@ public class AWSCsvBillParser {
         return awsBillFileName;
     }
 
-    private void unzip(String zipFileName, String outputFolder) throws IOException {
-        try (ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(zipFileName))) {
-            ZipEntry zipEntry = zipInputStream.getNextEntry();
-            String outputFileName = zipEntry.getName();
-            File outputFile = new File(outputFolder, outputFileName);
-
-            try (FileOutputStream fileOutputStream = new FileOutputStream(outputFile)) {
-                int len;
-                byte[] buffer = new byte[1024 * 64];
-                while ((len = zipInputStream.read(buffer)) > 0) {
-                    fileOutputStream.write(buffer, 0, len);
-                }
-                zipInputStream.closeEntry();
-            }
-        } catch (Exception e) {
-            throw e;
-        }
-    }
-
     /**
      * This method reads each row of the AWS bill file, ignores the values that
      * are not required, creates or updates the corresponding entry in
      * monthlyBill Map.
      **/
-    private void readRow(Map<String, Object> rowMap, Map<String, AwsAccountDetailDto> monthlyBill,
-            List<String> tagHeaders, Collection<String> ignorableInvoiceCharge) {
-        final String linkedAccountId = getStringFieldValue(rowMap,
-                DetailedCsvHeaders.LINKED_ACCOUNT_ID);
-        String serviceName = getStringFieldValue(rowMap, DetailedCsvHeaders.PRODUCT_NAME);
-        String subscriptionId = getStringFieldValue(rowMap, DetailedCsvHeaders.SUBSCRIPTION_ID);
+    private void readRow(BillRow row, Map<String, AwsAccountDetailDto> monthlyBill,
+            Collection<String> ignorableInvoiceCharge) {
+        final String linkedAccountId = getStringFieldValue(row,
+                DetailedCsvColumn.LINKED_ACCOUNT_ID);
+        String serviceName = getStringFieldValue(row, DetailedCsvColumn.PRODUCT_NAME);
+        String subscriptionId = getStringFieldValue(row, DetailedCsvColumn.SUBSCRIPTION_ID);
         // For all rows except summary rows this is not null.
         if (subscriptionId == null || subscriptionId.length() == 0 || serviceName == null
                 || serviceName.length() == 0) {
             // Reads the summary lines in bill file, which consists of the
             // account cost and puts it in the monthly bill map
-            readSummaryRow(rowMap, linkedAccountId, serviceName, monthlyBill,
+            readSummaryRow(row, linkedAccountId, serviceName, monthlyBill,
                     ignorableInvoiceCharge);
             return;
         }
@@ -198,23 +216,18 @@ public class AWSCsvBillParser {
                 linkedAccountId);
         AwsServiceDetailDto serviceDetail = createOrGetServiceDetailObject(accountDeatils,
                 serviceName);
-        // Get the UsageStartTime for this lineItem.
-        // LocalDateTime usageStartTimeFromCsv = (LocalDateTime)
-        // rowMap.get(DetailedCsvHeaders.USAGE_START_DATE);
-
-        Double resourceCost = getResourceCost(rowMap);
+        Double resourceCost = getResourceCost(row);
         // In case we do not have resource id, this might be unknown
         // cost(unallocated) or one of summary line items {otherCost
         // (recurring charges for reserved instance) or sign up charges(which we
         // have to ignore)}
-        String resourceId = getStringFieldValue(rowMap, DetailedCsvHeaders.RESOURCE_ID);
+        String resourceId = getStringFieldValue(row, DetailedCsvColumn.RESOURCE_ID);
         if (resourceId == null || resourceId.length() == 0) {
             // Check if this row has usageStartTime, if so set otherCost for
             // day, otherwise set it as common for month, can divide later for
             // all days
-            if (rowMap.get(DetailedCsvHeaders.USAGE_START_DATE) != null) {
-                LocalDateTime usageStartTimeFromCsv = (LocalDateTime) rowMap
-                        .get(DetailedCsvHeaders.USAGE_START_DATE);
+            LocalDateTime usageStartTimeFromCsv = row.getUsageStartDate();
+            if (usageStartTimeFromCsv != null) {
                 Long millisForBillHour = getMillisForHour(usageStartTimeFromCsv);
                 serviceDetail.addToOtherCosts(millisForBillHour, resourceCost);
                 // Adding zero as direct cost for this entity to allow
@@ -227,46 +240,43 @@ public class AWSCsvBillParser {
             return;
         }
 
-        LocalDateTime usageStartTimeFromCsv = (LocalDateTime) rowMap
-                .get(DetailedCsvHeaders.USAGE_START_DATE);
+        LocalDateTime usageStartTimeFromCsv = row.getUsageStartDate();
         Long millisForBillHour = getMillisForHour(usageStartTimeFromCsv);
         serviceDetail.addToDirectCosts(millisForBillHour, resourceCost);
-        AwsResourceDetailDto resourceDetail = createOrGetResourceDetailObject(rowMap, serviceDetail,
+        AwsResourceDetailDto resourceDetail = createOrGetResourceDetailObject(row, serviceDetail,
                 resourceId);
         resourceDetail.addToDirectCosts(millisForBillHour, resourceCost);
-        setLatestResourceValues(rowMap, tagHeaders, resourceDetail);
+        setLatestResourceValues(row, usageStartTimeFromCsv, resourceDetail);
     }
 
     private Long getMillisForHour(LocalDateTime usageStartTime) {
         return usageStartTime.toDateTime().getMillis();
     }
 
-    private Double getResourceCost(Map<String, Object> rowMap) {
+    private Double getResourceCost(BillRow row) {
         Double resourceCost = 0d;
-        if (rowMap.containsKey(DetailedCsvHeaders.BLENDED_COST)) {
-            resourceCost = getAmountFieldValue(rowMap, DetailedCsvHeaders.BLENDED_COST);
-        } else if (rowMap.containsKey(DetailedCsvHeaders.COST)) {
-            resourceCost = getAmountFieldValue(rowMap, DetailedCsvHeaders.COST);
+        if (row.hasColumn(DetailedCsvColumn.BLENDED_COST)) {
+            resourceCost = getAmountFieldValue(row, DetailedCsvColumn.BLENDED_COST);
+        } else if (row.hasColumn(DetailedCsvColumn.COST)) {
+            resourceCost = getAmountFieldValue(row, DetailedCsvColumn.COST);
         }
         return resourceCost;
     }
 
-    private void setLatestResourceValues(Map<String, Object> rowMap, List<String> tagHeaders,
+    private void setLatestResourceValues(BillRow row, LocalDateTime usageStartTimeFromCsv,
             AwsResourceDetailDto resourceDetail) {
-        LocalDateTime usageStartTimeFromCsv = (LocalDateTime) rowMap
-                .get(DetailedCsvHeaders.USAGE_START_DATE);
         LocalDateTime existingUsageStartTime = null;
         if (resourceDetail.usageStartTime != null) {
             existingUsageStartTime = new LocalDateTime(resourceDetail.usageStartTime);
         }
         if (existingUsageStartTime == null
                 || existingUsageStartTime.compareTo(usageStartTimeFromCsv) <= 0) {
-            resourceDetail.itemDescription = getStringFieldValue(rowMap,
-                    DetailedCsvHeaders.ITEM_DESCRIPTION);
+            resourceDetail.itemDescription = getStringFieldValue(row,
+                    DetailedCsvColumn.ITEM_DESCRIPTION);
             resourceDetail.usageStartTime = usageStartTimeFromCsv.toDate().getTime();
-            resourceDetail.tags = getTagsForResources(rowMap, tagHeaders);
+            resourceDetail.tags = row.getTags();
             boolean isRowMarkedAsReserved = convertReservedInstance(
-                    getStringFieldValue(rowMap, DetailedCsvHeaders.IS_RESERVED_INSTANCE));
+                    getStringFieldValue(row, DetailedCsvColumn.IS_RESERVED_INSTANCE));
             boolean isResourceReservedForThisHour;
             Long millisForBillDay = getMillisForHour(usageStartTimeFromCsv);
             if (existingUsageStartTime != null
@@ -286,39 +296,38 @@ public class AWSCsvBillParser {
         }
     }
 
-    private AwsResourceDetailDto createOrGetResourceDetailObject(Map<String, Object> rowMap,
+    private AwsResourceDetailDto createOrGetResourceDetailObject(BillRow row,
             AwsServiceDetailDto serviceDetail, String resourceId) {
         AwsResourceDetailDto resourceDetail = serviceDetail.getResourceDetail(resourceId);
         if (resourceDetail == null) {
             resourceDetail = new AwsResourceDetailDto();
-            resourceDetail.availabilityZone = ((String) rowMap
-                    .get(DetailedCsvHeaders.AVAILABILITY_ZONE));
+            resourceDetail.availabilityZone = row.get(DetailedCsvColumn.AVAILABILITY_ZONE);
             resourceDetail.type = "OTHERS";
             serviceDetail.addToResourceDetailMap(resourceId, resourceDetail);
         }
         return resourceDetail;
     }
 
-    private String getStringFieldValue(Map<String, Object> rowMap, String fieldName) {
-        Object obj = rowMap.get(fieldName);
-        if (obj != null) {
-            return obj.toString();
+    private String getStringFieldValue(BillRow row, DetailedCsvColumn column) {
+        String value = row.get(column);
+        if (value != null) {
+            return value;
         }
         return "";
     }
 
-    private Double getAmountFieldValue(Map<String, Object> rowMap, String fieldName) {
-        Object obj = rowMap.get(fieldName);
-        if (obj != null) {
-            return Double.valueOf(obj.toString());
+    private Double getAmountFieldValue(BillRow row, DetailedCsvColumn column) {
+        String value = row.get(column);
+        if (value != null) {
+            return Double.valueOf(value);
         }
         return 0d;
     }
 
-    private boolean matchFieldValue(Map<String, Object> rowMap, String fieldName, String value) {
-        Object fieldObj = rowMap.get(fieldName);
-        if (fieldObj != null) {
-            if (fieldObj.toString().equalsIgnoreCase(value)) {
+    private boolean matchFieldValue(BillRow row, DetailedCsvColumn column, String value) {
+        String fieldValue = row.get(column);
+        if (fieldValue != null) {
+            if (fieldValue.equalsIgnoreCase(value)) {
                 return true;
             }
         }
@@ -365,20 +374,7 @@ public class AWSCsvBillParser {
         }
     }
 
-    private Map<String, String> getTagsForResources(Map<String, Object> rowMap,
-            List<String> tagHeaders) {
-        Map<String, String> tagMappings = new HashMap<>();
-        for (String tagKey : tagHeaders) {
-            String tagValue = (String) rowMap.get(tagKey);
-            if (tagValue != null) {
-                // tags are always like [user | somethingelse]:tagFamily
-                tagMappings.put(tagKey.split(TAG_KEY_DELIMITTER)[1], tagValue);
-            }
-        }
-        return tagMappings;
-    }
-
-    private void readSummaryRow(Map<String, Object> rowMap, String linkedAccountId,
+    private void readSummaryRow(BillRow row, String linkedAccountId,
             String productName,
             Map<String, AwsAccountDetailDto> accountDetails,
             Collection<String> ignorableInvoiceCharge) {
@@ -387,32 +383,32 @@ public class AWSCsvBillParser {
             // The AccountId is not obtained from LinkedAccountId in case of
             // non-consolidated bills and has to be fetched from PayerAccountId
             // column from the bill file
-            awsAccountDetail = accountDetails.get(rowMap.get(DetailedCsvHeaders.PAYER_ACCOUNT_ID));
+            awsAccountDetail = accountDetails.get(row.get(DetailedCsvColumn.PAYER_ACCOUNT_ID));
         } else {
             awsAccountDetail = accountDetails.get(linkedAccountId);
         }
-        if (matchFieldValue(rowMap, DetailedCsvHeaders.RECORD_TYPE, DetailedCsvHeaders.LINE_ITEM)) {
+        if (matchFieldValue(row, DetailedCsvColumn.RECORD_TYPE, LINE_ITEM)) {
             // If the RecordType is LineItem then it is either sign up charge or
             // recurring charges for reserved purchase
-            if (matchFieldValue(rowMap, DetailedCsvHeaders.OPERATION,
+            if (matchFieldValue(row, DetailedCsvColumn.OPERATION,
                     RUN_INSTANCES)) {
                 // If the Operation is RunInstances, it is recurring charge
                 AwsServiceDetailDto serviceDetail = createOrGetServiceDetailObject(
                         createOrGetAccountDetailObject(accountDetails, linkedAccountId),
                         productName);
-                serviceDetail.addToReservedRecurringCost(getResourceCost(rowMap));
-            } else if (getStringFieldValue(rowMap, DetailedCsvHeaders.ITEM_DESCRIPTION)
+                serviceDetail.addToReservedRecurringCost(getResourceCost(row));
+            } else if (getStringFieldValue(row, DetailedCsvColumn.ITEM_DESCRIPTION)
                     .startsWith(SIGN_UP_CHARGE)) {
                 // Subtract the one-time subscription charge from the account
                 // cost since the one-time subscription charge is divided among
                 // the total cost of all months
-                awsAccountDetail.signUpCharge = getResourceCost(rowMap);
+                awsAccountDetail.signUpCharge = getResourceCost(row);
                 ignorableInvoiceCharge
-                        .add(getStringFieldValue(rowMap, DetailedCsvHeaders.INVOICE_ID));
+                        .add(getStringFieldValue(row, DetailedCsvColumn.INVOICE_ID));
             }
-        } else if (matchFieldValue(rowMap, DetailedCsvHeaders.RECORD_TYPE,
+        } else if (matchFieldValue(row, DetailedCsvColumn.RECORD_TYPE,
                 INVOICE_TOTAL)
-                || matchFieldValue(rowMap, DetailedCsvHeaders.RECORD_TYPE,
+                || matchFieldValue(row, DetailedCsvColumn.RECORD_TYPE,
                         ACCOUNT_TOTAL)) {
             // If the RecordType is InvoiceTotal, this is the account monthly
             // cost for non-consolidated bills, ie, for primary accounts with no
@@ -420,8 +416,8 @@ public class AWSCsvBillParser {
             // If the RecordType is AccountTotal, this is the account monthly
             // cost for consolidated bills
             if (!ignorableInvoiceCharge
-                    .contains(getStringFieldValue(rowMap, DetailedCsvHeaders.INVOICE_ID))) {
-                awsAccountDetail.cost = getResourceCost(rowMap);
+                    .contains(getStringFieldValue(row, DetailedCsvColumn.INVOICE_ID))) {
+                awsAccountDetail.cost = getResourceCost(row);
             }
         }
     }
@@ -457,9 +453,9 @@ public class AWSCsvBillParser {
         if (header == null) {
             return false;
         }
-        if (header.getClass().getComponentType().isInstance(DetailedCsvHeaders.BLENDED_COST)) {
+        if (header.getClass().getComponentType().isInstance(DetailedCsvColumn.BLENDED_COST.header)) {
             for (int i = 0; i < header.length; i++) {
-                if (DetailedCsvHeaders.BLENDED_COST.equals(header[i])) {
+                if (DetailedCsvColumn.BLENDED_COST.header.equals(header[i])) {
                     return true;
                 }
             }
@@ -492,22 +488,367 @@ public class AWSCsvBillParser {
         }
     }
 
-    private static class DetailedCsvHeaders {
-        static final String COST = "Cost";
-        static final String PAYER_ACCOUNT_ID = "PayerAccountId";
-        static final String LINKED_ACCOUNT_ID = "LinkedAccountId";
-        static final String BLENDED_COST = "BlendedCost";
-        static final String USAGE_START_DATE = "UsageStartDate";
-        static final String PRODUCT_NAME = "ProductName";
-        static final String RESOURCE_ID = "ResourceId";
-        static final String AVAILABILITY_ZONE = "AvailabilityZone";
-        static final String IS_RESERVED_INSTANCE = "ReservedInstance";
-        static final String ITEM_DESCRIPTION = "ItemDescription";
-        static final String RECORD_TYPE = "RecordType";
-        static final String LINE_ITEM = "LineItem";
-        static final String SUBSCRIPTION_ID = "SubscriptionId";
-        static final String OPERATION = "Operation";
-        static final String INVOICE_ID = "InvoiceID";
+    private enum DetailedCsvColumn {
+        COST("Cost"),
+        PAYER_ACCOUNT_ID("PayerAccountId"),
+        LINKED_ACCOUNT_ID("LinkedAccountId"),
+        BLENDED_COST("BlendedCost"),
+        USAGE_START_DATE("UsageStartDate"),
+        PRODUCT_NAME("ProductName"),
+        RESOURCE_ID("ResourceId"),
+        AVAILABILITY_ZONE("AvailabilityZone"),
+        IS_RESERVED_INSTANCE("ReservedInstance"),
+        ITEM_DESCRIPTION("ItemDescription"),
+        RECORD_TYPE("RecordType"),
+        SUBSCRIPTION_ID("SubscriptionId"),
+        OPERATION("Operation"),
+        INVOICE_ID("InvoiceID");
+
+        final String header;
+
+        DetailedCsvColumn(String header) {
+            this.header = header;
+        }
+    }
+
+    /**
+     * The values of the current row of the bill.
+     */
+    private interface BillRow {
+        boolean hasColumn(DetailedCsvColumn column);
+
+        /**
+         * Returns the value of the column in the current row, or {@code null} if it is empty.
+         */
+        String get(DetailedCsvColumn column);
+
+        LocalDateTime getUsageStartDate();
+
+        Map<String, String> getTags();
+    }
+
+    /**
+     * A row read by the {@link CsvMapReader}.
+     */
+    private static class MappedBillRow implements BillRow {
+        private final List<String> tagHeaders;
+        Map<String, Object> rowMap;
+
+        MappedBillRow(List<String> tagHeaders) {
+            this.tagHeaders = tagHeaders;
+        }
+
+        @Override
+        public boolean hasColumn(DetailedCsvColumn column) {
+            return this.rowMap.containsKey(column.header);
+        }
+
+        @Override
+        public String get(DetailedCsvColumn column) {
+            return (String) this.rowMap.get(column.header);
+        }
+
+        @Override
+        public LocalDateTime getUsageStartDate() {
+            return (LocalDateTime) this.rowMap.get(DetailedCsvColumn.USAGE_START_DATE.header);
+        }
+
+        @Override
+        public Map<String, String> getTags() {
+            Map<String, String> tagMappings = new HashMap<>();
+            for (String tagKey : this.tagHeaders) {
+                String tagValue = (String) this.rowMap.get(tagKey);
+                if (tagValue != null) {
+                    // tags are always like [user | somethingelse]:tagFamily
+                    tagMappings.put(tagKey.split(TAG_KEY_DELIMITTER)[1], tagValue);
+                }
+            }
+            return tagMappings;
+        }
+    }
+
+    /**
+     * Reads the bill one row at a time into a reusable buffer. The unquoted bytes of the fields
+     * are stored one after the other and each field is located by the offset at which it ends,
+     * so that a field is only decoded when its value is used.
+     */
+    private static class DetailedCsvRowReader implements BillRow {
+        private static final int BUFFER_SIZE = 64 * 1024;
+        private static final byte[] COMMENT_PREFIX = AWS_SKIP_COMMENTS
+                .getBytes(StandardCharsets.UTF_8);
+
+        private final InputStream inputStream;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int bufferPosition;
+        private int bufferLimit;
+        // offset in the stream of the start of the buffer
+        private long bufferOffset;
+
+        private byte[] row = new byte[1024];
+        private int rowLength;
+        private int[] fieldEnds = new int[32];
+        private int fieldCount;
+
+        private final int[] columnIndices = new int[DetailedCsvColumn.values().length];
+        private int[] tagIndices;
+        private String[] tagKeys;
+
+        // consecutive rows mostly share their usage start date, which is parsed only once
+        private byte[] lastUsageStartDate = new byte[0];
+        private LocalDateTime lastUsageStartTime;
+
+        DetailedCsvRowReader(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        /**
+         * Reads the header and resolves the positions of the columns of the bill.
+         */
+        boolean readHeader() throws IOException {
+            if (!next()) {
+                return false;
+            }
+            String[] header = new String[this.fieldCount];
+            Map<String, Integer> indexByHeader = new HashMap<>();
+            for (int i = 0; i < this.fieldCount; i++) {
+                header[i] = decode(i);
+                indexByHeader.put(header[i], i);
+            }
+            for (DetailedCsvColumn column : DetailedCsvColumn.values()) {
+                this.columnIndices[column.ordinal()] = indexByHeader
+                        .getOrDefault(column.header, -1);
+            }
+            int tagStart = Math.min(getDetailedProcessors(header).length, header.length);
+            this.tagIndices = new int[header.length - tagStart];
+            this.tagKeys = new String[this.tagIndices.length];
+            for (int i = 0; i < this.tagIndices.length; i++) {
+                this.tagIndices[i] = tagStart + i;
+                // tags are always like [user | somethingelse]:tagFamily
+                this.tagKeys[i] = header[tagStart + i].split(TAG_KEY_DELIMITTER)[1];
+            }
+            return true;
+        }
+
+        long getOffset() {
+            return this.bufferOffset + this.bufferPosition;
+        }
+
+        void skipTo(long offset) throws IOException {
+            long remaining = offset - getOffset();
+            if (remaining <= 0) {
+                return;
+            }
+            int buffered = this.bufferLimit - this.bufferPosition;
+            if (remaining <= buffered) {
+                this.bufferPosition += (int) remaining;
+                return;
+            }
+            remaining -= buffered;
+            this.bufferOffset += this.bufferLimit;
+            this.bufferPosition = 0;
+            this.bufferLimit = 0;
+            while (remaining > 0) {
+                long skipped = this.inputStream.skip(remaining);
+                if (skipped <= 0) {
+                    if (this.inputStream.read() < 0) {
+                        throw new IOException("Offset " + offset + " is past the end of the bill");
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+                this.bufferOffset += skipped;
+            }
+        }
+
+        /**
+         * Reads the next row, skipping blank lines and comments.
+         */
+        boolean next() throws IOException {
+            while (readRow()) {
+                if (this.fieldCount > 1 || this.rowLength > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean readRow() throws IOException {
+            this.rowLength = 0;
+            this.fieldCount = 0;
+            int b = read();
+            if (b < 0) {
+                return false;
+            }
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (b < 0) {
+                        throw new IOException("Unterminated quoted field at offset "
+                                + getOffset());
+                    }
+                    if (b != '"') {
+                        append(b);
+                    } else if (peek() == '"') {
+                        append(read());
+                    } else {
+                        quoted = false;
+                    }
+                } else if (b == ',') {
+                    endField();
+                } else if (b == '\n' || b < 0) {
+                    endField();
+                    return true;
+                } else if (b == '\r') {
+                    if (peek() == '\n') {
+                        read();
+                    }
+                    endField();
+                    return true;
+                } else if (b == '"' && this.rowLength == fieldStart(this.fieldCount)) {
+                    quoted = true;
+                } else {
+                    append(b);
+                    if (isComment()) {
+                        skipLine();
+                        this.fieldCount = 1;
+                        this.rowLength = 0;
+                        this.fieldEnds[0] = 0;
+                        return true;
+                    }
+                }
+                b = read();
+            }
+        }
+
+        private boolean isComment() {
+            if (this.fieldCount != 0 || this.rowLength != COMMENT_PREFIX.length) {
+                return false;
+            }
+            for (int i = 0; i < COMMENT_PREFIX.length; i++) {
+                if (this.row[i] != COMMENT_PREFIX[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void skipLine() throws IOException {
+            int b;
+            do {
+                b = read();
+            } while (b >= 0 && b != '\n');
+        }
+
+        private int read() throws IOException {
+            if (this.bufferPosition == this.bufferLimit && !fill()) {
+                return -1;
+            }
+            return this.buffer[this.bufferPosition++] & 0xff;
+        }
+
+        private int peek() throws IOException {
+            if (this.bufferPosition == this.bufferLimit && !fill()) {
+                return -1;
+            }
+            return this.buffer[this.bufferPosition] & 0xff;
+        }
+
+        private boolean fill() throws IOException {
+            this.bufferOffset += this.bufferLimit;
+            this.bufferPosition = 0;
+            this.bufferLimit = 0;
+            int read = this.inputStream.read(this.buffer);
+            if (read <= 0) {
+                return false;
+            }
+            this.bufferLimit = read;
+            return true;
+        }
+
+        private void append(int b) {
+            if (this.rowLength == this.row.length) {
+                this.row = Arrays.copyOf(this.row, this.row.length * 2);
+            }
+            this.row[this.rowLength++] = (byte) b;
+        }
+
+        private void endField() {
+            if (this.fieldCount == this.fieldEnds.length) {
+                this.fieldEnds = Arrays.copyOf(this.fieldEnds, this.fieldEnds.length * 2);
+            }
+            this.fieldEnds[this.fieldCount++] = this.rowLength;
+        }
+
+        private int fieldStart(int index) {
+            return index == 0 ? 0 : this.fieldEnds[index - 1];
+        }
+
+        private String decode(int index) {
+            int start = fieldStart(index);
+            int length = this.fieldEnds[index] - start;
+            if (length == 0) {
+                return null;
+            }
+            return new String(this.row, start, length, StandardCharsets.UTF_8);
+        }
+
+        private int getFieldIndex(DetailedCsvColumn column) {
+            int index = this.columnIndices[column.ordinal()];
+            return index < this.fieldCount ? index : -1;
+        }
+
+        @Override
+        public boolean hasColumn(DetailedCsvColumn column) {
+            return this.columnIndices[column.ordinal()] >= 0;
+        }
+
+        @Override
+        public String get(DetailedCsvColumn column) {
+            int index = getFieldIndex(column);
+            return index < 0 ? null : decode(index);
+        }
+
+        @Override
+        public LocalDateTime getUsageStartDate() {
+            int index = getFieldIndex(DetailedCsvColumn.USAGE_START_DATE);
+            if (index < 0 || fieldStart(index) == this.fieldEnds[index]) {
+                return null;
+            }
+            int start = fieldStart(index);
+            int end = this.fieldEnds[index];
+            if (!isLastUsageStartDate(start, end)) {
+                this.lastUsageStartDate = Arrays.copyOfRange(this.row, start, end);
+                this.lastUsageStartTime = DETAILED_CSV_DATE_FORMATTER.parseLocalDateTime(
+                        new String(this.lastUsageStartDate, StandardCharsets.UTF_8));
+            }
+            return this.lastUsageStartTime;
+        }
+
+        private boolean isLastUsageStartDate(int start, int end) {
+            if (end - start != this.lastUsageStartDate.length) {
+                return false;
+            }
+            for (int i = start; i < end; i++) {
+                if (this.row[i] != this.lastUsageStartDate[i - start]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Map<String, String> getTags() {
+            Map<String, String> tagMappings = new HashMap<>();
+            for (int i = 0; i < this.tagIndices.length; i++) {
+                if (this.tagIndices[i] < this.fieldCount) {
+                    String tagValue = decode(this.tagIndices[i]);
+                    if (tagValue != null) {
+                        tagMappings.put(this.tagKeys[i], tagValue);
+                    }
+                }
+            }
+            return tagMappings;
+        }
     }
 
     public enum AwsServices {
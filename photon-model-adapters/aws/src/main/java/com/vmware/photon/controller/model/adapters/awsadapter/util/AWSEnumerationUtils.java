@@ -28,6 +28,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -47,6 +48,7 @@ import com.vmware.photon.controller.model.resources.TagService.TagState;
 import com.vmware.photon.controller.model.tasks.ResourceEnumerationTaskService;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
 import com.vmware.xenon.services.common.QueryTask.Query;
 import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
@@ -217,6 +219,38 @@ public class AWSEnumerationUtils {
         return computeState;
     }
 
+    /**
+     * Computes a fingerprint of the compute state mapped from an instance, and of the network
+     * interfaces mapped from its addresses. It covers everything enumeration keeps up to date:
+     * name, power state, instance type, addresses, tags, VPC and OS type.
+     *
+     * The fingerprint is stored on the compute state, so that instances which did not change
+     * since the last enumeration are not updated again.
+     */
+    public static String computeInstanceFingerprint(Instance instance,
+            ComputeState computeState) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(computeState.name).append('\n');
+        sb.append(computeState.powerState).append('\n');
+        // the description link of an existing compute is not derived from the instance
+        sb.append(instance.getInstanceType()).append('\n');
+        sb.append(computeState.resourcePoolLink).append('\n');
+        sb.append(computeState.creationTimeMicros).append('\n');
+        sb.append(instance.getPublicIpAddress()).append('\n');
+        sb.append(instance.getPrivateIpAddress()).append('\n');
+        if (computeState.customProperties != null) {
+            sb.append(computeState.customProperties.get(AWS_VPC_ID)).append('\n');
+            sb.append(computeState.customProperties.get(CUSTOM_OS_TYPE)).append('\n');
+        }
+        if (computeState.tagLinks != null) {
+            sb.append(new TreeSet<>(computeState.tagLinks)).append('\n');
+        }
+        if (computeState.tenantLinks != null) {
+            sb.append(new TreeSet<>(computeState.tenantLinks));
+        }
+        return Utils.computeHash(sb);
+    }
+
     public static TagState mapTagToTagState(Tag tag, List<String> tenantLinks) {
         TagState tagState = new TagState();
         tagState.key = tag.getKey() == null ? "" : tag.getKey();
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.awsadapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonServiceException.ErrorType;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.ec2.AmazonEC2AsyncClient;
+import com.amazonaws.services.ec2.model.DescribeInstancesRequest;
+import com.amazonaws.services.ec2.model.DescribeInstancesResult;
+import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
+import com.amazonaws.services.ec2.model.Reservation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.helpers.BaseModelTest;
+
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Tests for the {@link AWSInstanceStatePoller} class.
+ */
+public class AWSInstanceStatePollerTest extends BaseModelTest {
+    private static final long MIN_INTERVAL_MICROS = TimeUnit.MILLISECONDS.toMicros(10);
+    private static final long MAX_INTERVAL_MICROS = TimeUnit.MILLISECONDS.toMicros(80);
+    private static final String RUNNING = "running";
+
+    /**
+     * Answers DescribeInstances calls from the instance states it holds, recording the instance
+     * ids of every call. Calls including an invalid instance id fail as a whole, as AWS does.
+     */
+    private static class StubEC2Client extends AmazonEC2AsyncClient {
+        final Map<String, String> states = new ConcurrentHashMap<>();
+        final List<Set<String>> requestedIds = new ArrayList<>();
+        final AtomicInteger throttledCalls = new AtomicInteger();
+        final AtomicInteger rejectedCalls = new AtomicInteger();
+        final AtomicInteger serverErrorCalls = new AtomicInteger();
+        final AtomicInteger clientErrorCalls = new AtomicInteger();
+        final Set<String> invalidIds = ConcurrentHashMap.newKeySet();
+
+        StubEC2Client() {
+            super(new BasicAWSCredentials("accessKey", "secretKey"),
+                    Executors.newSingleThreadExecutor());
+        }
+
+        @Override
+        public Future<DescribeInstancesResult> describeInstancesAsync(
+                DescribeInstancesRequest request,
+                AsyncHandler<DescribeInstancesRequest, DescribeInstancesResult> handler) {
+            Set<String> ids = new HashSet<>(request.getFilters().get(0).getValues());
+            List<Instance> instances = new ArrayList<>();
+            synchronized (this.requestedIds) {
+                this.requestedIds.add(ids);
+                for (String id : ids) {
+                    String state = this.states.get(id);
+                    if (state != null) {
+                        instances.add(new Instance().withInstanceId(id)
+                                .withState(new InstanceState().withName(state)));
+                    }
+                }
+            }
+            if (this.rejectedCalls.getAndDecrement() > 0) {
+                throw new RejectedExecutionException("Adapter queue is full");
+            }
+            if (this.throttledCalls.getAndDecrement() > 0) {
+                AmazonServiceException e = new AmazonServiceException("Request limit exceeded.");
+                e.setErrorCode("RequestLimitExceeded");
+                e.setStatusCode(503);
+                handler.onError(e);
+                return null;
+            }
+            if (this.serverErrorCalls.getAndDecrement() > 0) {
+                AmazonServiceException e = new AmazonServiceException("Internal error.");
+                e.setErrorCode("InternalError");
+                e.setErrorType(ErrorType.Service);
+                e.setStatusCode(500);
+                handler.onError(e);
+                return null;
+            }
+            if (this.clientErrorCalls.getAndDecrement() > 0) {
+                handler.onError(new AmazonClientException("Unable to execute HTTP request"));
+                return null;
+            }
+            if (ids.stream().anyMatch(this.invalidIds::contains)) {
+                AmazonServiceException e = new AmazonServiceException("Invalid id.");
+                e.setErrorCode("InvalidInstanceID.Malformed");
+                e.setErrorType(ErrorType.Client);
+                e.setStatusCode(400);
+                handler.onError(e);
+                return null;
+            }
+
+            handler.onSuccess(request, new DescribeInstancesResult()
+                    .withReservations(new Reservation().withInstances(instances)));
+            return null;
+        }
+
+        /**
+         * Sets the state of the given instances at once, between two calls.
+         */
+        void putStates(String state, String... ids) {
+            synchronized (this.requestedIds) {
+                for (String id : ids) {
+                    this.states.put(id, state);
+                }
+            }
+        }
+
+        List<Set<String>> getRequestedIds() {
+            synchronized (this.requestedIds) {
+                return new ArrayList<>(this.requestedIds);
+            }
+        }
+    }
+
+    private StubEC2Client client;
+    private AWSInstanceStatePoller poller;
+    private Map<String, Instance> reached;
+    private Map<String, Throwable> failed;
+
+    @Before
+    public void setUpPoller() {
+        this.client = new StubEC2Client();
+        this.poller = new AWSInstanceStatePoller(this.client, getHost(), MIN_INTERVAL_MICROS,
+                MAX_INTERVAL_MICROS);
+        this.reached = new ConcurrentHashMap<>();
+        this.failed = new ConcurrentHashMap<>();
+    }
+
+    @After
+    public void tearDownPoller() {
+        this.client.shutdown();
+    }
+
+    @Test
+    public void testInstancesAreCheckedInOneCall() throws Throwable {
+        this.client.states.put("i-1", RUNNING);
+        this.client.states.put("i-2", "pending");
+        // i-3 is not known to AWS yet
+        for (String id : Arrays.asList("i-1", "i-2", "i-3")) {
+            waitForRunning(id);
+        }
+
+        getHost().waitFor("i-1 did not reach its state", () -> this.reached.containsKey("i-1"));
+        assertEquals(new HashSet<>(Arrays.asList("i-1", "i-2", "i-3")),
+                this.client.getRequestedIds().get(0));
+
+        this.client.putStates(RUNNING, "i-2", "i-3");
+        getHost().waitFor("instances did not reach their state", () -> this.reached.size() == 3);
+        getHost().waitFor("poller was not closed", () -> this.poller.isClosed());
+
+        // every call checked all the instances still waited for
+        for (Set<String> ids : this.client.getRequestedIds()) {
+            assertTrue(ids.contains("i-2") && ids.contains("i-3"));
+        }
+        assertEquals(this.client.getRequestedIds().size(), this.poller.getDescribeCount());
+        assertEquals("i-2", this.reached.get("i-2").getInstanceId());
+    }
+
+    @Test
+    public void testInstancesAreCheckedInBatches() throws Throwable {
+        int instanceCount = AWSInstanceStatePoller.MAX_INSTANCE_IDS_PER_REQUEST + 50;
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < instanceCount; i++) {
+            ids.add("i-" + i);
+        }
+        this.client.putStates(RUNNING, ids.toArray(new String[ids.size()]));
+        // a longer interval so that all the watches are added before the first tick
+        long intervalMicros = TimeUnit.MILLISECONDS.toMicros(500);
+        this.poller = new AWSInstanceStatePoller(this.client, getHost(), intervalMicros,
+                intervalMicros);
+        ids.forEach(this::waitForRunning);
+
+        getHost().waitFor("instances did not reach their state",
+                () -> this.reached.size() == instanceCount);
+        getHost().waitFor("poller was not closed", () -> this.poller.isClosed());
+
+        List<Set<String>> requestedIds = this.client.getRequestedIds();
+        assertEquals(2, requestedIds.size());
+        assertEquals(AWSInstanceStatePoller.MAX_INSTANCE_IDS_PER_REQUEST,
+                requestedIds.get(0).size());
+        assertEquals(50, requestedIds.get(1).size());
+        Set<String> allIds = new HashSet<>(requestedIds.get(0));
+        allIds.addAll(requestedIds.get(1));
+        assertEquals(new HashSet<>(ids), allIds);
+    }
+
+    @Test
+    public void testExpiredWatchFails() throws Throwable {
+        this.client.states.put("i-1", "pending");
+        this.client.states.put("i-2", "pending");
+        this.poller.watch("i-1", RUNNING, instance -> this.reached.put("i-1", instance),
+                t -> this.failed.put("i-1", t),
+                Utils.getNowMicrosUtc() + TimeUnit.MILLISECONDS.toMicros(50));
+        waitForRunning("i-2");
+
+        getHost().waitFor("i-1 did not expire", () -> this.failed.containsKey("i-1"));
+        assertTrue(this.failed.get("i-1").getMessage().contains("i-1"));
+
+        // the expired instance is not checked anymore, the other one still is
+        int callCount = this.poller.getDescribeCount();
+        getHost().waitFor("i-2 was not checked again",
+                () -> this.poller.getDescribeCount() > callCount + 1);
+        List<Set<String>> requestedIds = this.client.getRequestedIds();
+        assertEquals(Collections.singleton("i-2"), requestedIds.get(requestedIds.size() - 1));
+
+        this.client.states.put("i-2", RUNNING);
+        getHost().waitFor("i-2 did not reach its state", () -> this.reached.containsKey("i-2"));
+        getHost().waitFor("poller was not closed", () -> this.poller.isClosed());
+        assertFalse(this.reached.containsKey("i-1"));
+        assertEquals(1, this.failed.size());
+    }
+
+    @Test
+    public void testIntervalBacksOffWithoutProgress() throws Throwable {
+        this.client.states.put("i-1", "pending");
+        waitForRunning("i-1");
+
+        getHost().waitFor("interval did not back off",
+                () -> this.poller.getIntervalMicros() == MAX_INTERVAL_MICROS);
+
+        this.client.states.put("i-1", RUNNING);
+        getHost().waitFor("i-1 did not reach its state", () -> this.reached.containsKey("i-1"));
+    }
+
+    @Test
+    public void testThrottledCallsAreRetried() throws Throwable {
+        this.client.throttledCalls.set(2);
+        this.client.states.put("i-1", RUNNING);
+        waitForRunning("i-1");
+
+        getHost().waitFor("i-1 did not reach its state", () -> this.reached.containsKey("i-1"));
+        assertEquals(3, this.poller.getDescribeCount());
+    }
+
+    @Test
+    public void testRejectedCallsAreRetried() throws Throwable {
+        this.client.rejectedCalls.set(2);
+        this.client.states.put("i-1", RUNNING);
+        waitForRunning("i-1");
+
+        getHost().waitFor("i-1 did not reach its state", () -> this.reached.containsKey("i-1"));
+        assertEquals(3, this.poller.getDescribeCount());
+        assertTrue(this.failed.isEmpty());
+    }
+
+    @Test
+    public void testTransientErrorsAreRetried() throws Throwable {
+        this.client.serverErrorCalls.set(1);
+        this.client.clientErrorCalls.set(1);
+        this.client.states.put("i-1", RUNNING);
+        this.client.states.put("i-2", RUNNING);
+        waitForRunning("i-1");
+        waitForRunning("i-2");
+
+        getHost().waitFor("instances did not reach their state", () -> this.reached.size() == 2);
+        assertEquals(3, this.poller.getDescribeCount());
+        assertTrue(this.failed.isEmpty());
+    }
+
+    @Test
+    public void testInvalidInstanceOnlyFailsItsWatch() throws Throwable {
+        this.client.invalidIds.add("i-bad");
+        this.client.states.put("i-1", RUNNING);
+        this.client.states.put("i-2", "pending");
+        for (String id : Arrays.asList("i-1", "i-2", "i-bad")) {
+            waitForRunning(id);
+        }
+
+        getHost().waitFor("i-bad did not fail", () -> this.failed.containsKey("i-bad"));
+        getHost().waitFor("i-1 did not reach its state", () -> this.reached.containsKey("i-1"));
+        assertTrue(this.failed.get("i-bad") instanceof AmazonServiceException);
+
+        // the valid instances are still checked
+        this.client.states.put("i-2", RUNNING);
+        getHost().waitFor("i-2 did not reach its state", () -> this.reached.containsKey("i-2"));
+        getHost().waitFor("poller was not closed", () -> this.poller.isClosed());
+        assertEquals(1, this.failed.size());
+    }
+
+    @Test
+    public void testThrowingConsumerOnlyFailsItsWatch() throws Throwable {
+        this.client.states.put("i-1", RUNNING);
+        this.client.states.put("i-2", "pending");
+        IllegalStateException failure = new IllegalStateException("consumer failed");
+        this.poller.watch("i-1", RUNNING, instance -> {
+            throw failure;
+        }, t -> this.failed.put("i-1", t), 0);
+        waitForRunning("i-2");
+
+        getHost().waitFor("i-1 did not fail", () -> this.failed.containsKey("i-1"));
+        assertSame(failure, this.failed.get("i-1"));
+
+        // the poller keeps polling the other watches
+        this.client.states.put("i-2", RUNNING);
+        getHost().waitFor("i-2 did not reach its state", () -> this.reached.containsKey("i-2"));
+        getHost().waitFor("poller was not closed", () -> this.poller.isClosed());
+        assertEquals(1, this.failed.size());
+    }
+
+    private void waitForRunning(String instanceId) {
+        this.poller.watch(instanceId, RUNNING,
+                instance -> this.reached.put(instanceId, instance),
+                t -> this.failed.put(instanceId, t), 0);
+    }
+}
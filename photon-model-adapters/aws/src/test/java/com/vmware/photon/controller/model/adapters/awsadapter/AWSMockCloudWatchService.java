@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.awsadapter;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Mock of the CloudWatch GetMetricStatistics API, used through
+ * {@link AWSUtils#AWS_CLOUDWATCH_ENDPOINT} when the AWS clients are mocked. Returns a single
+ * datapoint for every request and counts the requests per instance.
+ */
+public class AWSMockCloudWatchService extends StatelessService {
+
+    public static final String SELF_LINK = "/aws-mock/cloudwatch";
+
+    public static final double MOCK_VALUE = 42.0;
+
+    private static final String PARAM_METRIC_NAME = "MetricName";
+    private static final String PARAM_DIMENSION_VALUE = "Dimensions.member.1.Value";
+
+    private static final String RESPONSE_TEMPLATE = "<GetMetricStatisticsResponse "
+            + "xmlns=\"http://monitoring.amazonaws.com/doc/2010-08-01/\">"
+            + "<GetMetricStatisticsResult><Datapoints><member>"
+            + "<Timestamp>%s</Timestamp><SampleCount>1.0</SampleCount>"
+            + "<Average>%s</Average><Unit>Count</Unit>"
+            + "</member></Datapoints><Label>%s</Label></GetMetricStatisticsResult>"
+            + "<ResponseMetadata><RequestId>%s</RequestId></ResponseMetadata>"
+            + "</GetMetricStatisticsResponse>";
+
+    public final Map<String, AtomicInteger> requestCountByInstanceId = new ConcurrentHashMap<>();
+
+    @Override
+    public void handlePost(Operation op) {
+        Map<String, String> params;
+        try {
+            params = parseForm(op);
+        } catch (UnsupportedEncodingException e) {
+            op.fail(e);
+            return;
+        }
+        String instanceId = params.get(PARAM_DIMENSION_VALUE);
+        if (instanceId != null) {
+            this.requestCountByInstanceId.computeIfAbsent(instanceId, k -> new AtomicInteger())
+                    .incrementAndGet();
+        }
+        op.setContentType("text/xml");
+        op.setBody(String.format(RESPONSE_TEMPLATE, Instant.now().toString(), MOCK_VALUE,
+                params.get(PARAM_METRIC_NAME), Utils.getNowMicrosUtc()));
+        op.complete();
+    }
+
+    private static Map<String, String> parseForm(Operation op)
+            throws UnsupportedEncodingException {
+        Object body = op.getBodyRaw();
+        String form = body instanceof byte[]
+                ? new String((byte[]) body, StandardCharsets.UTF_8) : String.valueOf(body);
+        Map<String, String> params = new HashMap<>();
+        for (String param : form.split("&")) {
+            String[] keyValue = param.split("=", 2);
+            if (keyValue.length == 2) {
+                params.put(URLDecoder.decode(keyValue[0], "UTF-8"),
+                        URLDecoder.decode(keyValue[1], "UTF-8"));
+            }
+        }
+        return params;
+    }
+}
@@ -14,18 +14,27 @@
 package com.vmware.photon.controller.model.adapters.awsadapter;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 
 import static com.vmware.photon.controller.model.adapters.awsadapter.AWSUtils.TILDA;
 import static com.vmware.photon.controller.model.adapters.awsadapter.AWSUtils.getRegionId;
+import static com.vmware.photon.controller.model.adapters.awsadapter.util.AWSEnumerationUtils.computeInstanceFingerprint;
 import static com.vmware.photon.controller.model.adapters.awsadapter.util.AWSEnumerationUtils.getInstanceTypeFromComputeDescriptionKey;
 import static com.vmware.photon.controller.model.adapters.awsadapter.util.AWSEnumerationUtils.getKeyForComputeDescriptionFromInstance;
 import static com.vmware.photon.controller.model.adapters.awsadapter.util.AWSEnumerationUtils.getRegionIdFromComputeDescriptionKey;
+import static com.vmware.photon.controller.model.adapters.awsadapter.util.AWSEnumerationUtils.mapInstanceToComputeState;
+
+import java.util.Collections;
 
 import com.amazonaws.services.ec2.model.Instance;
+import com.amazonaws.services.ec2.model.InstanceState;
 import com.amazonaws.services.ec2.model.Placement;
+import com.amazonaws.services.ec2.model.Tag;
 
 import org.junit.Test;
 
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+
 public class TestAWSEnumerationUtils {
 
     public static final String AWS_INSTANCE_ID = "i-345678";
@@ -61,4 +70,51 @@ public class TestAWSEnumerationUtils {
 
     }
 
+    @Test
+    public void testInstanceFingerprintTracksMappedFields() throws Throwable {
+        // running
+        Instance awsInstance = createInstance(16, "10.0.0.1",
+                new Tag("a", "1"), new Tag("b", "2"));
+        String fingerprint = fingerprint(awsInstance);
+
+        // the order of the tags does not matter
+        assertEquals(fingerprint, fingerprint(createInstance(16, "10.0.0.1",
+                new Tag("b", "2"), new Tag("a", "1"))));
+
+        // stopped
+        assertNotEquals(fingerprint, fingerprint(createInstance(80, "10.0.0.1",
+                new Tag("a", "1"), new Tag("b", "2"))));
+        assertNotEquals(fingerprint, fingerprint(createInstance(16, "10.0.0.2",
+                new Tag("a", "1"), new Tag("b", "2"))));
+        assertNotEquals(fingerprint, fingerprint(createInstance(16, "10.0.0.1",
+                new Tag("a", "1"), new Tag("b", "3"))));
+    }
+
+    @Test
+    public void testInstanceFingerprintTracksInstanceType() throws Throwable {
+        Instance awsInstance = createInstance(16, "10.0.0.1", new Tag("a", "1"));
+        String fingerprint = fingerprint(awsInstance);
+
+        // resized, while the compute keeps its description
+        awsInstance.setInstanceType("t2.large");
+        assertNotEquals(fingerprint, fingerprint(awsInstance));
+    }
+
+    private static Instance createInstance(int stateCode, String privateIpAddress,
+            Tag... tags) {
+        Instance awsInstance = new Instance();
+        awsInstance.setInstanceId(AWS_INSTANCE_ID);
+        awsInstance.setInstanceType(AWS_INSTANCE_TYPE);
+        awsInstance.setVpcId(AWS_VPC_ID);
+        awsInstance.setState(new InstanceState().withCode(stateCode));
+        awsInstance.setPrivateIpAddress(privateIpAddress);
+        awsInstance.withTags(tags);
+        return awsInstance;
+    }
+
+    private static String fingerprint(Instance awsInstance) {
+        ComputeState computeState = mapInstanceToComputeState(awsInstance, "/parent", "/pool",
+                "/description", Collections.singletonList("/tenant"));
+        return computeInstanceFingerprint(awsInstance, computeState);
+    }
 }
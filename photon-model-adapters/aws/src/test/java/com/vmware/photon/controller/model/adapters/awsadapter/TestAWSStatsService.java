@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.awsadapter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import static com.vmware.photon.controller.model.adapters.awsadapter.TestAWSSetupUtils.createAWSComputeHost;
+import static com.vmware.photon.controller.model.adapters.awsadapter.TestAWSSetupUtils.createAWSResourcePool;
+import static com.vmware.photon.controller.model.adapters.awsadapter.TestAWSSetupUtils.createAWSVMResource;
+import static com.vmware.photon.controller.model.adapters.awsadapter.TestAWSSetupUtils.setAwsClientMockInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.PhotonModelServices;
+import com.vmware.photon.controller.model.adapterapi.ComputeStatsRequest;
+import com.vmware.photon.controller.model.adapterapi.ComputeStatsResponse.ComputeStats;
+import com.vmware.photon.controller.model.adapters.awsadapter.util.AWSStatsNormalizer;
+import com.vmware.photon.controller.model.constants.PhotonModelConstants;
+import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
+import com.vmware.photon.controller.model.tasks.PhotonModelTaskServices;
+import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService.SingleResourceStatsCollectionTaskState;
+import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService.SingleResourceTaskCollectionStage;
+import com.vmware.xenon.common.BasicReusableHostTestCase;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.test.TestContext;
+
+/**
+ * Tests the batched stats collection of {@link AWSStatsService} against a mock CloudWatch
+ * endpoint.
+ */
+public class TestAWSStatsService extends BasicReusableHostTestCase {
+    private static final int VM_COUNT = 5;
+    private static final String FIXED_PERFORMANCE_INSTANCE_TYPE = "m4.large";
+
+    private AWSMockCloudWatchService cloudWatchService;
+
+    @Before
+    public void setUp() throws Exception {
+        try {
+            PhotonModelServices.startServices(this.host);
+            PhotonModelTaskServices.startServices(this.host);
+            AWSAdapters.startServices(this.host);
+            this.cloudWatchService = new AWSMockCloudWatchService();
+            this.host.startServiceAndWait(this.cloudWatchService,
+                    AWSMockCloudWatchService.SELF_LINK, null);
+
+            this.host.setTimeoutSeconds(60);
+
+            this.host.waitForServiceAvailable(PhotonModelServices.LINKS);
+            this.host.waitForServiceAvailable(PhotonModelTaskServices.LINKS);
+            this.host.waitForServiceAvailable(AWSAdapters.LINKS);
+        } catch (Throwable e) {
+            throw new Exception(e);
+        }
+        setAwsClientMockInfo(true, this.host.getUri().toString());
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        setAwsClientMockInfo(false, null);
+    }
+
+    @Test
+    public void testBatchStatsCollection() throws Throwable {
+        ResourcePoolState pool = createAWSResourcePool(this.host);
+        ComputeState computeHost = createAWSComputeHost(this.host, pool.documentSelfLink,
+                "accessKey", "secretKey", true, this.host.getUri().toString(), null);
+        List<String> vmLinks = new ArrayList<>();
+        Map<String, String> instanceIdByLink = new HashMap<>();
+        for (int i = 0; i < VM_COUNT; i++) {
+            ComputeState vm = createAWSVMResource(this.host, computeHost.documentSelfLink,
+                    pool.documentSelfLink, TestAWSStatsService.class, null);
+            vmLinks.add(vm.documentSelfLink);
+            instanceIdByLink.put(vm.documentSelfLink, vm.id);
+        }
+        // the CPU credit metrics are not requested for fixed performance instances
+        ComputeState fixedPerformanceVm = this.host.getServiceState(null, ComputeState.class,
+                UriUtils.buildUri(this.host, vmLinks.get(0)));
+        ComputeDescription fixedPerformanceDesc = new ComputeDescription();
+        fixedPerformanceDesc.instanceType = FIXED_PERFORMANCE_INSTANCE_TYPE;
+        this.host.sendAndWaitExpectSuccess(Operation.createPatch(
+                UriUtils.buildUri(this.host, fixedPerformanceVm.descriptionLink))
+                .setBody(fixedPerformanceDesc));
+
+        SingleResourceStatsCollectionTaskState[] result = new SingleResourceStatsCollectionTaskState[1];
+        TestContext ctx = this.host.testCreate(1);
+        String taskLink = UUID.randomUUID().toString();
+        this.host.startService(Operation.createPost(UriUtils.buildUri(this.host, taskLink)),
+                new StatelessService() {
+                    @Override
+                    public void handlePatch(Operation op) {
+                        result[0] = op.getBody(SingleResourceStatsCollectionTaskState.class);
+                        op.complete();
+                        if (result[0].failureMessage != null) {
+                            ctx.failIteration(new IllegalStateException(result[0].failureMessage));
+                            return;
+                        }
+                        ctx.completeIteration();
+                    }
+                });
+
+        ComputeStatsRequest statsRequest = new ComputeStatsRequest();
+        statsRequest.resourceReference = UriUtils.buildUri(this.host, vmLinks.get(0));
+        statsRequest.resourceLinks = vmLinks;
+        statsRequest.nextStage = SingleResourceTaskCollectionStage.UPDATE_STATS.name();
+        statsRequest.taskReference = UriUtils.buildUri(this.host, taskLink);
+        this.host.sendAndWaitExpectSuccess(Operation.createPatch(
+                UriUtils.buildUri(this.host, AWSUriPaths.AWS_STATS_ADAPTER))
+                .setBody(statsRequest));
+        ctx.await();
+
+        // one patch back, with the stats of every instance fanned out into its own entry
+        assertEquals(VM_COUNT, result[0].statsList.size());
+        String cpuKey = AWSStatsNormalizer.getNormalizedStatKeyValue(AWSConstants.CPU_UTILIZATION);
+        for (ComputeStats stats : result[0].statsList) {
+            String instanceId = instanceIdByLink.get(stats.computeLink);
+            assertNotNull(instanceId);
+            List<ServiceStat> cpuStats = stats.statValues.get(cpuKey);
+            assertEquals(1, cpuStats.size());
+            assertEquals(AWSMockCloudWatchService.MOCK_VALUE, cpuStats.get(0).latestValue, 0);
+
+            int requestCount = this.cloudWatchService.requestCountByInstanceId.get(instanceId)
+                    .get();
+            int expectedRequestCount = AWSStatsService.METRIC_NAMES.length;
+            if (stats.computeLink.equals(fixedPerformanceVm.documentSelfLink)) {
+                expectedRequestCount -= 2;
+            }
+            assertEquals(expectedRequestCount, requestCount);
+            assertEquals(requestCount, stats.statValues.get(PhotonModelConstants.API_CALL_COUNT)
+                    .get(0).latestValue, 0);
+        }
+    }
+}
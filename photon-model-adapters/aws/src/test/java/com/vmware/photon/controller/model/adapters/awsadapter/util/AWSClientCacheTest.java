@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.awsadapter.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link AWSClientCache}
+ */
+public class AWSClientCacheTest {
+    private static final int MAXIMUM_SIZE = 3;
+    private static final String KEY = "key-";
+    private static final long SHUTDOWN_DELAY_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private List<Object> shutdownClients = new ArrayList<>();
+
+    private AWSClientCache<Object> createCache(long maxIdleMicros) {
+        return new AWSClientCache<>(MAXIMUM_SIZE, maxIdleMicros, SHUTDOWN_DELAY_MICROS,
+                this.shutdownClients::add);
+    }
+
+    @Test
+    public void testClientIsCreatedOnce() {
+        AWSClientCache<Object> cache = createCache(TimeUnit.HOURS.toMicros(1));
+        Object client = cache.getOrCreate(KEY + 0, k -> new Object());
+        assertSame(client, cache.getOrCreate(KEY + 0, k -> new Object()));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedClientIsEvicted() throws Throwable {
+        AWSClientCache<Object> cache = createCache(TimeUnit.HOURS.toMicros(1));
+        List<Object> clients = new ArrayList<>();
+        for (int i = 0; i < MAXIMUM_SIZE; i++) {
+            clients.add(cache.getOrCreate(KEY + i, k -> new Object()));
+            Thread.sleep(1);
+        }
+        // accessing the eldest client keeps it in the cache when a new client is added
+        cache.getOrCreate(KEY + 0, k -> new Object());
+        Thread.sleep(1);
+        cache.getOrCreate(KEY + MAXIMUM_SIZE, k -> new Object());
+
+        assertEquals(MAXIMUM_SIZE, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertSame(clients.get(0), cache.getOrCreate(KEY + 0, k -> new Object()));
+        assertNotSame(clients.get(1), cache.getOrCreate(KEY + 1, k -> new Object()));
+        // evicted clients are not shut down before the shutdown delay
+        assertTrue(this.shutdownClients.isEmpty());
+        assertEquals(2, cache.getEvictedCount());
+    }
+
+    @Test
+    public void testIdleClientIsEvicted() throws Throwable {
+        AWSClientCache<Object> cache = createCache(TimeUnit.MILLISECONDS.toMicros(10));
+        Object client = cache.getOrCreate(KEY + 0, k -> new Object());
+        Thread.sleep(50);
+        cache.getOrCreate(KEY + 1, k -> new Object());
+
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(this.shutdownClients.isEmpty());
+        assertNotSame(client, cache.getOrCreate(KEY + 0, k -> new Object()));
+    }
+
+    @Test
+    public void testClientInUseIsNotShutDownWhenEvicted() {
+        AWSClientCache<Object> cache = createCache(TimeUnit.HOURS.toMicros(1));
+        Object client = cache.getOrCreate(KEY + 0, k -> new Object());
+        // the client is still in use while newer clients evict it
+        for (int i = 1; i <= MAXIMUM_SIZE; i++) {
+            cache.getOrCreate(KEY + i, k -> new Object());
+        }
+        assertEquals(1, cache.getEvictionCount());
+        assertFalse(this.shutdownClients.contains(client));
+
+        // a newly created client is never the one evicted, even if it is the eldest
+        AWSClientCache<Object> singleClientCache = new AWSClientCache<>(1,
+                TimeUnit.HOURS.toMicros(1), SHUTDOWN_DELAY_MICROS, this.shutdownClients::add);
+        singleClientCache.getOrCreate(KEY + 0, k -> new Object());
+        Object newClient = singleClientCache.getOrCreate(KEY + 1, k -> new Object());
+        assertEquals(1, singleClientCache.size());
+        assertSame(newClient, singleClientCache.getOrCreate(KEY + 1, k -> new Object()));
+
+        // clearing the cache shuts down the evicted clients as well
+        cache.clear();
+        assertEquals(MAXIMUM_SIZE + 1, this.shutdownClients.size());
+        assertTrue(this.shutdownClients.contains(client));
+        assertEquals(0, cache.getEvictedCount());
+    }
+
+    @Test
+    public void testEvictedClientIsShutDownAfterDelay() throws Throwable {
+        AWSClientCache<Object> cache = new AWSClientCache<>(MAXIMUM_SIZE,
+                TimeUnit.HOURS.toMicros(1), TimeUnit.MILLISECONDS.toMicros(10),
+                this.shutdownClients::add);
+        Object client = cache.getOrCreate(KEY + 0, k -> new Object());
+        cache.invalidate(KEY + 0, client);
+        cache.getOrCreate(KEY + 1, k -> new Object());
+        assertFalse(this.shutdownClients.contains(client));
+
+        Thread.sleep(50);
+        cache.getOrCreate(KEY + 1, k -> new Object());
+        assertEquals(1, this.shutdownClients.size());
+        assertSame(client, this.shutdownClients.get(0));
+        assertEquals(0, cache.getEvictedCount());
+    }
+
+    @Test
+    public void testInvalidate() {
+        AWSClientCache<Object> cache = createCache(TimeUnit.HOURS.toMicros(1));
+        Object client = cache.getOrCreate(KEY + 0, k -> new Object());
+        // a client that is not cached anymore is ignored
+        cache.invalidate(KEY + 0, new Object());
+        assertEquals(1, cache.size());
+
+        cache.invalidate(KEY + 0, client);
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictedCount());
+        assertTrue(this.shutdownClients.isEmpty());
+    }
+
+    @Test
+    public void testFailedCreationIsNotCached() {
+        AWSClientCache<Object> cache = createCache(TimeUnit.HOURS.toMicros(1));
+        try {
+            cache.getOrCreate(KEY + 0, k -> {
+                throw new IllegalArgumentException("invalid credentials");
+            });
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(0, cache.size());
+    }
+}
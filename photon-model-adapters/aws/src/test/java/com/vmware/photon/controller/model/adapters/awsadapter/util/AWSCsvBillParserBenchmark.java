@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.awsadapter.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.joda.time.LocalDate;
+import org.joda.time.LocalDateTime;
+import org.joda.time.LocalTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.vmware.photon.controller.model.adapters.aws.dto.AwsAccountDetailDto;
+
+/**
+ * Compares the streaming parser of the detailed bill with extracting the bill to a file and
+ * parsing it with the {@code CsvMapReader}, on a synthetic bill. With the default row count the
+ * extracted bill is about 2 GB.
+ *
+ * Run with:
+ * <pre>
+ * mvn test-compile exec:java -pl photon-model-adapters/aws -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.vmware.photon.controller.model.adapters.awsadapter.util.AWSCsvBillParserBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class AWSCsvBillParserBenchmark {
+    private static final String HEADER = "\"InvoiceID\",\"PayerAccountId\",\"LinkedAccountId\","
+            + "\"RecordType\",\"RecordId\",\"ProductName\",\"RateId\",\"SubscriptionId\","
+            + "\"PricingPlanId\",\"UsageType\",\"Operation\",\"AvailabilityZone\","
+            + "\"ReservedInstance\",\"ItemDescription\",\"UsageStartDate\",\"UsageEndDate\","
+            + "\"UsageQuantity\",\"BlendedRate\",\"BlendedCost\",\"UnBlendedRate\","
+            + "\"UnBlendedCost\",\"ResourceId\",\"user:Description\",\"user:Geo\","
+            + "\"user:Name\",\"user:testTag\",\"user:testTag2\"";
+    private static final String ROW_FORMAT = "\"81400131\",\"123456789\",\"%s\",\"LineItem\","
+            + "\"%d\",\"Amazon Elastic Compute Cloud\",\"13401830\",\"65634040\",\"936332\","
+            + "\"USW1-BoxUsage:t2.micro\",\"RunInstances\",\"us-west-1a\",\"N\","
+            + "\"$0.017 per On Demand Linux t2.micro Instance Hour\",\"%s\",\"%s\","
+            + "\"1.00000000\",\"0.0170000000\",\"0.01700000\",\"0.0170000000\",\"0.01700000\","
+            + "\"i-%08x\",\"\",\"us-west\",\"instance-%d\",\"\",\"\"\n";
+    private static final String TOTAL_FORMAT = "\"\",\"123456789\",\"%s\",\"AccountTotal\","
+            + "\"\",\"\",\"\",\"\",\"\",\"\",\"\",\"\",\"\",\"Total for linked account# %s\","
+            + "\"\",\"\",\"\",\"\",\"100\",\"\",\"100\",\"\",\"\",\"\",\"\",\"\",\"\"\n";
+    private static final String[] ACCOUNTS = { "123456789", "555555555" };
+    private static final int INSTANCE_COUNT = 1000;
+    private static final LocalDate MONTH = new LocalDate(2016, 9, 1);
+
+    @Param("5000000")
+    public int rowCount;
+
+    private Path workingDirPath;
+    private Path billZipPath;
+    private AWSCsvBillParser parser = new AWSCsvBillParser();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.workingDirPath = Files.createTempDirectory("aws-bill-benchmark");
+        this.billZipPath = this.workingDirPath.resolve(this.parser.getCsvBillFileName(
+                MONTH.getMonthOfYear(), MONTH.getYear(), ACCOUNTS[0], true));
+        DateTimeFormatter formatter = DateTimeFormat
+                .forPattern(AWSCsvBillParser.DETAILED_CSV_DATE_FORMAT_YYYY_MM_DD_HH_MM_SS);
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(
+                Files.newOutputStream(this.billZipPath));
+                Writer writer = new BufferedWriter(new OutputStreamWriter(zipOutputStream,
+                        StandardCharsets.UTF_8))) {
+            zipOutputStream.putNextEntry(new ZipEntry(this.parser.getCsvBillFileName(
+                    MONTH.getMonthOfYear(), MONTH.getYear(), ACCOUNTS[0], false)));
+            writer.write(HEADER);
+            writer.write('\n');
+            LocalDateTime start = MONTH.toLocalDateTime(LocalTime.MIDNIGHT);
+            for (int i = 0; i < this.rowCount; i++) {
+                int instance = i % INSTANCE_COUNT;
+                LocalDateTime usageStart = start.plusHours(i / INSTANCE_COUNT % (24 * 30));
+                writer.write(String.format(ROW_FORMAT, ACCOUNTS[instance % ACCOUNTS.length], i,
+                        formatter.print(usageStart), formatter.print(usageStart.plusHours(1)),
+                        instance, instance));
+            }
+            for (String account : ACCOUNTS) {
+                writer.write(String.format(TOTAL_FORMAT, account, account));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.billZipPath);
+        Files.deleteIfExists(this.workingDirPath);
+    }
+
+    /**
+     * Extracts the bill to a file and parses it with the {@code CsvMapReader}.
+     */
+    @Benchmark
+    public Map<String, AwsAccountDetailDto> extractAndParse() throws IOException {
+        Path csvPath = this.workingDirPath.resolve("bill.csv");
+        try (ZipInputStream zipInputStream = new ZipInputStream(
+                Files.newInputStream(this.billZipPath))) {
+            zipInputStream.getNextEntry();
+            Files.copy(zipInputStream, csvPath);
+        }
+        try (InputStream csvInputStream = Files.newInputStream(csvPath)) {
+            return this.parser.parseDetailedCsvBill(csvInputStream, new ArrayList<>());
+        } finally {
+            Files.deleteIfExists(csvPath);
+        }
+    }
+
+    /**
+     * Streams the bill out of the zip file.
+     */
+    @Benchmark
+    public Map<String, AwsAccountDetailDto> stream() throws IOException {
+        return this.parser.parseDetailedCsvBill(new ArrayList<>(), this.billZipPath, MONTH);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AWSCsvBillParserBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.awsadapter.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipInputStream;
+
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.adapters.aws.dto.AwsAccountDetailDto;
+import com.vmware.photon.controller.model.adapters.awsadapter.TestAWSCostAdapterService;
+import com.vmware.photon.controller.model.adapters.awsadapter.TestAWSSetupUtils;
+import com.vmware.photon.controller.model.tasks.TestUtils;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Unit test for {@link AWSCsvBillParser}
+ */
+public class AWSCsvBillParserTest {
+    private static final LocalDate MONTH = new LocalDate(2016, 9, 1);
+
+    private AWSCsvBillParser parser = new AWSCsvBillParser();
+    private Path billZipPath;
+    private byte[] bill;
+
+    @Before
+    public void setUp() throws Throwable {
+        this.billZipPath = TestUtils.getTestResourcePath(TestAWSCostAdapterService.class,
+                TestAWSSetupUtils.SAMPLE_AWS_BILL);
+        try (ZipInputStream zipInputStream = new ZipInputStream(
+                Files.newInputStream(this.billZipPath))) {
+            zipInputStream.getNextEntry();
+            this.bill = readFully(zipInputStream);
+        }
+    }
+
+    @Test
+    public void testStreamingParserMatchesMapParser() throws Throwable {
+        List<String> mappedIgnorable = new ArrayList<>();
+        Map<String, AwsAccountDetailDto> mapped = this.parser.parseDetailedCsvBill(
+                new ByteArrayInputStream(this.bill), mappedIgnorable);
+        mapped.values().forEach(account -> account.month = MONTH.toDate().getTime());
+
+        List<String> streamedIgnorable = new ArrayList<>();
+        Map<String, AwsAccountDetailDto> streamed = this.parser.parseDetailedCsvBill(
+                streamedIgnorable, this.billZipPath, MONTH);
+
+        assertFalse(streamed.isEmpty());
+        assertEquals(Utils.toJson(mapped), Utils.toJson(streamed));
+        assertEquals(mappedIgnorable, streamedIgnorable);
+    }
+
+    @Test
+    public void testResumeFromOffset() throws Throwable {
+        Set<String> ignorable = new HashSet<>();
+        Map<String, AwsAccountDetailDto> expected = new HashMap<>();
+        long end = this.parser.parseDetailedCsvBill(new ByteArrayInputStream(this.bill),
+                ignorable, expected, 0);
+        assertEquals(this.bill.length, end);
+
+        // parse the bill as it was half way through the month, then the rows added since
+        int cut = 0;
+        int lineCount = 0;
+        while (lineCount < 6) {
+            if (this.bill[cut++] == '\n') {
+                lineCount++;
+            }
+        }
+        ignorable.clear();
+        Map<String, AwsAccountDetailDto> resumed = new HashMap<>();
+        long offset = this.parser.parseDetailedCsvBill(
+                new ByteArrayInputStream(this.bill, 0, cut), ignorable, resumed, 0);
+        assertEquals(cut, offset);
+        offset = this.parser.parseDetailedCsvBill(new ByteArrayInputStream(this.bill),
+                ignorable, resumed, offset);
+
+        assertEquals(end, offset);
+        assertEquals(Utils.toJson(expected), Utils.toJson(resumed));
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = inputStream.read(buffer)) > 0) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -124,6 +124,16 @@ public class AzureConstants {
     public static final String VM_REST_API_VERSION = "2016-03-30";
     public static final String LIST_VM_URI = BASE_URI_FOR_REST
             + "/subscriptions/{subscriptionId}/providers/Microsoft.Compute/virtualMachines";
+    // listing the instance view of all the VMs requires a newer version
+    public static final String VM_STATUS_REST_API_VERSION = "2017-03-30";
+    public static final String QUERY_PARAM_STATUS_ONLY = "statusOnly";
+
+    // Network REST constants
+    public static final String NETWORK_REST_API_VERSION = "2016-09-01";
+    public static final String LIST_NETWORK_INTERFACES_URI = BASE_URI_FOR_REST
+            + "/subscriptions/{subscriptionId}/providers/Microsoft.Network/networkInterfaces";
+    public static final String LIST_PUBLIC_IP_ADDRESSES_URI = BASE_URI_FOR_REST
+            + "/subscriptions/{subscriptionId}/providers/Microsoft.Network/publicIPAddresses";
 
     //Storage accounts REST constants
     public static final String STORAGE_ACCOUNT_REST_API_VERSION = "2016-01-01";
@@ -19,12 +19,12 @@ import static com.vmware.photon.controller.model.adapterapi.EndpointConfigReques
 import static com.vmware.photon.controller.model.adapterapi.EndpointConfigRequest.USER_LINK_KEY;
 import static com.vmware.photon.controller.model.adapterapi.EndpointConfigRequest.ZONE_KEY;
 import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.cleanUpHttpClient;
+import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.getAdapterExecutor;
 import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.getAzureConfig;
 import static com.vmware.xenon.common.Operation.STATUS_CODE_UNAUTHORIZED;
 
 import java.util.HashMap;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
 import java.util.function.BiConsumer;
 
 import com.microsoft.azure.management.resources.SubscriptionClient;
@@ -58,15 +58,6 @@ import com.vmware.xenon.services.common.AuthCredentialsService.AuthCredentialsSe
 public class AzureEndpointAdapterService extends StatelessService {
     public static final String SELF_LINK = AzureUriPaths.AZURE_ENDPOINT_CONFIG_ADAPTER;
 
-    private ExecutorService executorService;
-
-    @Override
-    public void handleStart(Operation startPost) {
-        this.executorService = getHost().allocateExecutor(this);
-
-        super.handleStart(startPost);
-    }
-
     @Override
     public void handlePatch(Operation op) {
         if (!op.hasBody()) {
@@ -87,7 +78,7 @@ public class AzureEndpointAdapterService extends StatelessService {
                 SubscriptionClient subscriptionClient = new SubscriptionClientImpl(
                         AzureConstants.BASE_URI, getAzureConfig(credentials),
                         httpClient.newBuilder(),
-                        getRetrofitBuilder());
+                        getRetrofitBuilder(credentials));
 
                 subscriptionClient.getSubscriptionsOperations().getAsync(
                         credentials.userLink, new ServiceCallback<Subscription>() {
@@ -156,9 +147,9 @@ public class AzureEndpointAdapterService extends StatelessService {
         };
     }
 
-    private Retrofit.Builder getRetrofitBuilder() {
+    private Retrofit.Builder getRetrofitBuilder(AuthCredentialsServiceState parentAuth) {
         Retrofit.Builder builder = new Retrofit.Builder();
-        builder.callbackExecutor(this.executorService);
+        builder.callbackExecutor(getAdapterExecutor(this, parentAuth));
         return builder;
     }
 }
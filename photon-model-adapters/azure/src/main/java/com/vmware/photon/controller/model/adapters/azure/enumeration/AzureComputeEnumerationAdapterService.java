@@ -20,17 +20,21 @@ import static com.vmware.photon.controller.model.adapters.azure.constants.AzureC
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.AZURE_RESOURCE_GROUP_NAME;
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.AZURE_STORAGE_ACCOUNT_URI;
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.LINUX_OPERATING_SYSTEM;
+import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.LIST_NETWORK_INTERFACES_URI;
+import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.LIST_PUBLIC_IP_ADDRESSES_URI;
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.LIST_VM_URI;
+import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.NETWORK_REST_API_VERSION;
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.QUERY_PARAM_API_VERSION;
+import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.QUERY_PARAM_STATUS_ONLY;
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.VM_REST_API_VERSION;
+import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.VM_STATUS_REST_API_VERSION;
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.WINDOWS_OPERATING_SYSTEM;
-import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.awaitTermination;
-import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.cleanUpHttpClient;
-import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.getAzureConfig;
 import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.getResourceGroupName;
 import static com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription.ENVIRONMENT_NAME_AZURE;
 
 import java.net.URI;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -43,36 +47,34 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
 
 import com.microsoft.azure.credentials.ApplicationTokenCredentials;
-import com.microsoft.azure.management.compute.ComputeManagementClient;
-import com.microsoft.azure.management.compute.ComputeManagementClientImpl;
 import com.microsoft.azure.management.compute.models.ImageReference;
-import com.microsoft.azure.management.compute.models.InstanceViewStatus;
 import com.microsoft.azure.management.compute.models.NetworkInterfaceReference;
-import com.microsoft.azure.management.network.NetworkManagementClient;
-import com.microsoft.azure.management.network.NetworkManagementClientImpl;
-import com.microsoft.azure.management.network.models.NetworkInterface;
-import com.microsoft.azure.management.network.models.PublicIPAddress;
-import com.microsoft.rest.ServiceResponse;
 
-import okhttp3.OkHttpClient;
 
-import retrofit2.Retrofit;
 
 import com.vmware.photon.controller.model.ComputeProperties.OSType;
 import com.vmware.photon.controller.model.UriPaths;
 import com.vmware.photon.controller.model.adapterapi.ComputeEnumerateResourceRequest;
 import com.vmware.photon.controller.model.adapterapi.EnumerationAction;
-import com.vmware.photon.controller.model.adapters.azure.AzureAsyncCallback;
 import com.vmware.photon.controller.model.adapters.azure.AzureUriPaths;
 import com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants;
+import com.vmware.photon.controller.model.adapters.azure.model.network.IPConfiguration;
+import com.vmware.photon.controller.model.adapters.azure.model.network.NetworkInterface;
+import com.vmware.photon.controller.model.adapters.azure.model.network.NetworkInterfaceListResult;
+import com.vmware.photon.controller.model.adapters.azure.model.network.PublicIPAddress;
+import com.vmware.photon.controller.model.adapters.azure.model.network.PublicIPAddressListResult;
+import com.vmware.photon.controller.model.adapters.azure.model.vm.InstanceView;
+import com.vmware.photon.controller.model.adapters.azure.model.vm.InstanceViewStatus;
 import com.vmware.photon.controller.model.adapters.azure.model.vm.VirtualMachine;
 import com.vmware.photon.controller.model.adapters.azure.model.vm.VirtualMachineListResult;
+import com.vmware.photon.controller.model.adapters.azure.utils.AzureClientManager;
 import com.vmware.photon.controller.model.adapters.util.AdapterUriUtil;
 import com.vmware.photon.controller.model.adapters.util.AdapterUtils;
 import com.vmware.photon.controller.model.adapters.util.enums.EnumerationStages;
@@ -120,8 +122,6 @@ public class AzureComputeEnumerationAdapterService extends StatelessService {
 
     public static final List<String> AZURE_VM_TERMINATION_STATES = Arrays.asList("Deleting", "Deleted");
 
-    private static final String EXPAND_INSTANCE_VIEW_PARAM = "instanceView";
-
     /**
      * Substages to handle Azure VM data collection.
      */
@@ -140,21 +140,6 @@ public class AzureComputeEnumerationAdapterService extends StatelessService {
         FINISHED
     }
 
-    private ExecutorService executorService;
-
-    @Override
-    public void handleStart(Operation startPost) {
-        this.executorService = getHost().allocateExecutor(this);
-        super.handleStart(startPost);
-    }
-
-    @Override
-    public void handleStop(Operation delete) {
-        this.executorService.shutdown();
-        awaitTermination(this, this.executorService);
-        super.handleStop(delete);
-    }
-
     /**
      * The enumeration service context that holds all the information needed to determine the list
      * of instances that need to be represented in the system.
@@ -176,6 +161,8 @@ public class AzureComputeEnumerationAdapterService extends StatelessService {
         Map<String, DiskState> diskStates = new ConcurrentHashMap<>();
         Map<String, StorageDescription> storageDescriptions = new ConcurrentHashMap<>();
         Map<String, String> networkInterfaceIds = new ConcurrentHashMap<>();
+        // Ids of the first network interface of the VMs, by VM id
+        Map<String, String> vmNetworkInterfaceIds = new ConcurrentHashMap<>();
         Map<String, String> computeDescriptionIds = new ConcurrentHashMap<>();
         // Compute States for patching additional fields.
         Map<String, ComputeState> computeStatesForPatching = new ConcurrentHashMap<>();
@@ -186,12 +173,6 @@ public class AzureComputeEnumerationAdapterService extends StatelessService {
         public Operation azureComputeAdapterOperation;
         // Azure specific fields
         ApplicationTokenCredentials credentials;
-        public OkHttpClient.Builder clientBuilder;
-        public OkHttpClient httpClient;
-
-        // Azure clients
-        NetworkManagementClient networkClient;
-        ComputeManagementClient computeClient;
 
         EnumerationContext(ComputeEnumerateResourceRequest request, Operation op) {
             this.enumRequest = request;
@@ -229,7 +210,8 @@ public class AzureComputeEnumerationAdapterService extends StatelessService {
         case CLIENT:
             if (ctx.credentials == null) {
                 try {
-                    ctx.credentials = getAzureConfig(ctx.parentAuth);
+                    ctx.credentials = AzureClientManager.getInstance()
+                            .getCredentials(this, ctx.parentAuth);
                 } catch (Throwable e) {
                     logSevere(e);
                     ctx.error = e;
@@ -238,18 +220,6 @@ public class AzureComputeEnumerationAdapterService extends StatelessService {
                     return;
                 }
             }
-            if (ctx.httpClient == null) {
-                try {
-                    // Creating a shared singleton Http client instance
-                    // Reference https://square.github.io/okhttp/3.x/okhttp/okhttp3/OkHttpClient.html
-                    // TODO: https://github.com/Azure/azure-sdk-for-java/issues/1000
-                    ctx.httpClient = new OkHttpClient();
-                    ctx.clientBuilder = ctx.httpClient.newBuilder();
-                } catch (Exception e) {
-                    handleError(ctx, e);
-                    return;
-                }
-            }
             ctx.stage = EnumerationStages.ENUMERATE;
             handleEnumerationRequest(ctx);
             break;
@@ -289,13 +259,11 @@ public class AzureComputeEnumerationAdapterService extends StatelessService {
             break;
         case FINISHED:
             ctx.azureComputeAdapterOperation.complete();
-            cleanUpHttpClient(this, ctx.httpClient);
             logInfo("Enumeration finished for %s", getEnumKey(ctx));
             this.ongoingEnumerations.remove(getEnumKey(ctx));
             break;
         case ERROR:
             ctx.azureComputeAdapterOperation.fail(ctx.error);
-            cleanUpHttpClient(this, ctx.httpClient);
             logWarning("Enumeration error for %s", getEnumKey(ctx));
             this.ongoingEnumerations.remove(getEnumKey(ctx));
             break;
@@ -304,7 +272,6 @@ public class AzureComputeEnumerationAdapterService extends StatelessService {
             logSevere(msg);
             ctx.error = new IllegalStateException(msg);
             ctx.azureComputeAdapterOperation.fail(ctx.error);
-            cleanUpHttpClient(this, ctx.httpClient);
             this.ongoingEnumerations.remove(getEnumKey(ctx));
         }
     }
@@ -601,6 +568,12 @@ public class AzureComputeEnumerationAdapterService extends StatelessService {
                 String vmId = virtualMachine.id.toLowerCase();
                 ctx.virtualMachines.put(vmId, virtualMachine);
                 ctx.vmIds.add(vmId);
+                if (virtualMachine.properties.networkProfile != null
+                        && !virtualMachine.properties.networkProfile.getNetworkInterfaces()
+                                .isEmpty()) {
+                    ctx.vmNetworkInterfaceIds.put(vmId, virtualMachine.properties.networkProfile
+                            .getNetworkInterfaces().get(0).getId().toLowerCase());
+                }
             }
 
             logFine("Processing %d VMs", ctx.vmIds.size());
@@ -1114,6 +1087,11 @@ public class AzureComputeEnumerationAdapterService extends StatelessService {
                 }).sendWith(this);
     }
 
+    /**
+     * Patches the power state, creation time and public IP address of the compute states. The
+     * instance views of the VMs, the network interfaces and the public IP addresses are listed
+     * for the whole subscription and joined in memory, rather than read VM by VM.
+     */
     private void patchAdditionalFields(EnumerationContext ctx) {
         if (ctx.computeStatesForPatching.size() == 0) {
             logInfo("No compute states available to patch additional fields");
@@ -1122,161 +1100,211 @@ public class AzureComputeEnumerationAdapterService extends StatelessService {
             return;
         }
 
-        // Patching power state and network Information. Hence 2.
-        // If we patch more fields, this number should be increased accordingly.
-        int numberOfAdditionalFieldsToPatch = 2;
-        Iterator<Entry<String, ComputeState>> iterator = ctx.computeStatesForPatching.entrySet()
-                .iterator();
-        AtomicInteger numOfPatches = new AtomicInteger(
-                ctx.computeStatesForPatching.size() * numberOfAdditionalFieldsToPatch);
-        while (iterator.hasNext()) {
-            Entry<String, ComputeState> csEntry = iterator.next();
-            ComputeState computeState = csEntry.getValue();
-            patchAdditionalFieldsHelper(ctx, computeState, numOfPatches);
-        }
-    }
+        Map<String, InstanceView> instanceViews = new ConcurrentHashMap<>();
+        Map<String, String> publicIPAddressIds = new ConcurrentHashMap<>();
+        Map<String, String> publicIPAddresses = new ConcurrentHashMap<>();
 
-    private void patchAdditionalFieldsHelper(EnumerationContext ctx, ComputeState resource,
-            AtomicInteger numOfPatches) {
-        String resourceGroupName = getResourceGroupName(resource.id);
-        String vmName = resource.name;
-        patchVMInstanceDetails(ctx, resource, resourceGroupName, vmName, numOfPatches);
-        patchVMNetworkDetails(ctx, resource, resourceGroupName, vmName, numOfPatches);
-    }
+        // Listing instance views, network interfaces and public IP addresses. Hence 3.
+        AtomicInteger numOfLists = new AtomicInteger(3);
+        Runnable onListCompletion = () -> {
+            if (numOfLists.decrementAndGet() == 0) {
+                patchComputeResources(ctx, instanceViews, publicIPAddressIds, publicIPAddresses);
+            }
+        };
 
-    private void patchVMInstanceDetails(EnumerationContext ctx, ComputeState resource,
-            String resourceGroupName, String vmName, AtomicInteger numOfPatches) {
-        ComputeManagementClient computeClient = getComputeManagementClient(ctx);
-        computeClient.getVirtualMachinesOperations().getAsync(resourceGroupName, vmName,
-                EXPAND_INSTANCE_VIEW_PARAM,
-                new AzureAsyncCallback<com.microsoft.azure.management.compute.models.VirtualMachine>() {
-                    @Override
-                    public void onError(Throwable e) {
-                        // TODO: https://jira-hzn.eng.vmware.com/browse/VSYM-2765
-                        logWarning("Error getting compute: %s", e.getMessage());
-                        // There was an error for this compute. Log and move on.
-                        numOfPatches.decrementAndGet();
+        URI vmsUri = UriUtils.extendUriWithQuery(UriUtils.buildUri(AdapterUriUtil
+                .expandUriPathTemplate(LIST_VM_URI, ctx.parentAuth.userLink)),
+                QUERY_PARAM_API_VERSION, VM_STATUS_REST_API_VERSION,
+                QUERY_PARAM_STATUS_ONLY, Boolean.TRUE.toString());
+        listAzureResources(ctx, vmsUri, VirtualMachineListResult.class, result -> {
+            if (result.value != null) {
+                for (VirtualMachine vm : result.value) {
+                    if (vm.properties != null && vm.properties.instanceView != null) {
+                        instanceViews.put(vm.id.toLowerCase(), vm.properties.instanceView);
                     }
-
-                    @Override
-                    public void onSuccess(
-                            ServiceResponse<com.microsoft.azure.management.compute.models.VirtualMachine> result) {
-                        com.microsoft.azure.management.compute.models.VirtualMachine machine = result
-                                .getBody();
-                        for (InstanceViewStatus status : machine.getInstanceView().getStatuses()) {
-                            if (status.getCode()
-                                    .equals(AzureConstants.AZURE_VM_PROVISIONING_STATE_SUCCEEDED)) {
-                                resource.creationTimeMicros = TimeUnit.MILLISECONDS
-                                        .toMicros(status.getTime().getMillis());
-                            } else if (status.getCode()
-                                    .equals(AzureConstants.AZURE_VM_POWER_STATE_RUNNING)) {
-                                resource.powerState = PowerState.ON;
-                            } else if (status.getCode()
-                                    .equals(AzureConstants.AZURE_VM_POWER_STATE_DEALLOCATED)) {
-                                resource.powerState = PowerState.OFF;
-                            }
+                }
+            }
+            return result.nextLink;
+        }, onListCompletion);
+
+        URI networkInterfacesUri = UriUtils.extendUriWithQuery(UriUtils.buildUri(AdapterUriUtil
+                .expandUriPathTemplate(LIST_NETWORK_INTERFACES_URI, ctx.parentAuth.userLink)),
+                QUERY_PARAM_API_VERSION, NETWORK_REST_API_VERSION);
+        listAzureResources(ctx, networkInterfacesUri, NetworkInterfaceListResult.class, result -> {
+            if (result.value != null) {
+                for (NetworkInterface networkInterface : result.value) {
+                    // TODO: https://jira-hzn.eng.vmware.com/browse/VSYM-1473
+                    if (networkInterface.properties != null
+                            && networkInterface.properties.ipConfigurations != null
+                            && !networkInterface.properties.ipConfigurations.isEmpty()) {
+                        IPConfiguration ipConfiguration = networkInterface.properties
+                                .ipConfigurations.get(0);
+                        if (ipConfiguration.properties != null
+                                && ipConfiguration.properties.publicIPAddress != null) {
+                            publicIPAddressIds.put(networkInterface.id.toLowerCase(),
+                                    ipConfiguration.properties.publicIPAddress.getId()
+                                            .toLowerCase());
                         }
-                        patchComputeResource(ctx, resource, numOfPatches);
                     }
-                });
+                }
+            }
+            return result.nextLink;
+        }, onListCompletion);
+
+        URI publicIPAddressesUri = UriUtils.extendUriWithQuery(UriUtils.buildUri(AdapterUriUtil
+                .expandUriPathTemplate(LIST_PUBLIC_IP_ADDRESSES_URI, ctx.parentAuth.userLink)),
+                QUERY_PARAM_API_VERSION, NETWORK_REST_API_VERSION);
+        listAzureResources(ctx, publicIPAddressesUri, PublicIPAddressListResult.class, result -> {
+            if (result.value != null) {
+                for (PublicIPAddress publicIPAddress : result.value) {
+                    if (publicIPAddress.properties != null
+                            && publicIPAddress.properties.ipAddress != null) {
+                        publicIPAddresses.put(publicIPAddress.id.toLowerCase(),
+                                publicIPAddress.properties.ipAddress);
+                    }
+                }
+            }
+            return result.nextLink;
+        }, onListCompletion);
     }
 
     /**
-     * Gets the network links from the compute resource.
-     * Obtains the Network state information from Azure.
+     * Lists Azure resources page by page. The page consumer returns the link to the next page, if
+     * any. A failed request is logged and ends the listing, so that the enumeration carries on
+     * with the resources retrieved so far.
      */
-    private void patchVMNetworkDetails(EnumerationContext ctx, ComputeState resource,
-            String resourceGroupName, String vmName, AtomicInteger numOfPatches) {
-        // TODO: https://jira-hzn.eng.vmware.com/browse/VSYM-1473
-        if (resource.networkInterfaceLinks != null) {
-            String networkLink = resource.networkInterfaceLinks.get(0);
-            Operation.createGet(getHost(), networkLink).setCompletion((o, e) -> {
-                if (e != null) {
-                    // TODO: https://jira-hzn.eng.vmware.com/browse/VSYM-2765
-                    logWarning("Error getting network interface link: %s", e.getMessage());
-                    // There was an error for this compute. Log and move on.
-                    numOfPatches.decrementAndGet();
-                    return;
-                }
-                NetworkInterfaceState state = o.getBody(NetworkInterfaceState.class);
-                String networkInterfaceName = UriUtils.getLastPathSegment(state.id);
-
-                NetworkManagementClient client = getNetworkManagementClient(ctx);
-                client.getNetworkInterfacesOperations().getAsync(resourceGroupName,
-                        networkInterfaceName, null, new AzureAsyncCallback<NetworkInterface>() {
-                            @Override
-                            public void onError(Throwable e) {
-                                // TODO: https://jira-hzn.eng.vmware.com/browse/VSYM-2765
-                                logWarning("Error getting network interface details: %s", e.getMessage());
-                                // There was an error for this compute. Log and move on.
-                                numOfPatches.decrementAndGet();
-                            }
-
-                            @Override
-                            public void onSuccess(ServiceResponse<NetworkInterface> result) {
-                                NetworkInterface networkInterface = result.getBody();
-                                if (networkInterface.getIpConfigurations() != null
-                                        && !networkInterface.getIpConfigurations().isEmpty()
-                                        && networkInterface.getIpConfigurations().get(0)
-                                        .getPublicIPAddress() != null) {
-                                    String publicIPAddressId = networkInterface
-                                            .getIpConfigurations()
-                                            .get(0).getPublicIPAddress().getId();
-                                    String publicIPAddressName = UriUtils
-                                            .getLastPathSegment(publicIPAddressId);
-
-                                    getPublicIpAddress(ctx, resource, resourceGroupName, publicIPAddressName, numOfPatches);
-                                } else {
-                                    // There was no public IP address for this compute. Log and move on.
-                                    logInfo("No public IP found for [%s]", vmName);
-                                    numOfPatches.decrementAndGet();
-                                }
-                            }
-                        });
-            }).sendWith(this);
-        } else {
-            // There was no network for this compute. Log and move on.
-            logInfo("No network links found for [%s]", vmName);
-            numOfPatches.decrementAndGet();
+    private <T> void listAzureResources(EnumerationContext ctx, URI uri, Class<T> resultType,
+            Function<T, String> pageConsumer, Runnable onCompletion) {
+        Operation operation = Operation.createGet(uri);
+        operation.addRequestHeader(Operation.ACCEPT_HEADER, Operation.MEDIA_TYPE_APPLICATION_JSON);
+        operation.addRequestHeader(Operation.CONTENT_TYPE_HEADER, Operation.MEDIA_TYPE_APPLICATION_JSON);
+        try {
+            operation.addRequestHeader(Operation.AUTHORIZATION_HEADER,
+                    AUTH_HEADER_BEARER_PREFIX + ctx.credentials.getToken());
+        } catch (Exception ex) {
+            logWarning("Error getting token for %s: %s", uri.getPath(), ex.getMessage());
+            onCompletion.run();
+            return;
         }
+
+        operation.setCompletion((op, er) -> {
+            if (er != null) {
+                // TODO: https://jira-hzn.eng.vmware.com/browse/VSYM-2765
+                logWarning("Error listing %s: %s", uri.getPath(), er.getMessage());
+                onCompletion.run();
+                return;
+            }
+
+            String nextLink = pageConsumer.apply(op.getBody(resultType));
+            if (nextLink != null) {
+                listAzureResources(ctx, UriUtils.buildUri(nextLink), resultType, pageConsumer,
+                        onCompletion);
+            } else {
+                onCompletion.run();
+            }
+        });
+        sendRequest(operation);
     }
 
     /**
-     * Gets the public IP address from the VM and patches the compute state.
+     * Updates the compute states with the details retrieved from Azure. Each compute state is
+     * updated with a single request, and only if any of its fields changed.
      */
-    private void getPublicIpAddress(EnumerationContext ctx, ComputeState resource,
-            String resourceGroupName, String publicIPAddressName, AtomicInteger numOfPatches) {
-        NetworkManagementClient client = getNetworkManagementClient(ctx);
-        client.getPublicIPAddressesOperations().getAsync(resourceGroupName,
-                publicIPAddressName,
-                null, new AzureAsyncCallback<PublicIPAddress>() {
-                    @Override
-                    public void onError(Throwable e) {
-                        // TODO: https://jira-hzn.eng.vmware.com/browse/VSYM-2765
-                        logWarning("Error getting public IP: %s", e.getMessage());
-                        numOfPatches.decrementAndGet();
-                    }
+    private void patchComputeResources(EnumerationContext ctx,
+            Map<String, InstanceView> instanceViews, Map<String, String> publicIPAddressIds,
+            Map<String, String> publicIPAddresses) {
+        List<Operation> patchOps = new ArrayList<>();
+        for (ComputeState resource : getChangedComputeStates(ctx.computeStatesForPatching.values(),
+                ctx.vmNetworkInterfaceIds, instanceViews, publicIPAddressIds,
+                publicIPAddresses)) {
+            patchOps.add(Operation
+                    .createPost(getHost(), ComputeService.FACTORY_LINK)
+                    .setBody(resource));
+        }
+
+        if (patchOps.isEmpty()) {
+            logInfo("No compute states changed");
+            ctx.subStage = ComputeEnumerationSubStages.DELETE_COMPUTE_STATES;
+            handleSubStage(ctx);
+            return;
+        }
 
-                    @Override
-                    public void onSuccess(ServiceResponse<PublicIPAddress> result) {
-                        PublicIPAddress publicIp = result.getBody();
-                        resource.address = publicIp.getIpAddress();
-                        patchComputeResource(ctx, resource, numOfPatches);
+        OperationJoin.create(patchOps)
+                .setCompletion((ops, exs) -> {
+                    if (exs != null) {
+                        exs.values().forEach(ex -> logWarning("Error: %s", ex.getMessage()));
                     }
-                });
+
+                    logInfo("Finished patching %d compute states", patchOps.size());
+                    ctx.subStage = ComputeEnumerationSubStages.DELETE_COMPUTE_STATES;
+                    handleSubStage(ctx);
+                }).sendWith(this);
     }
 
-    private void patchComputeResource(EnumerationContext ctx, ComputeState resource, AtomicInteger numOfPatches) {
-        Operation computePatchOp = Operation
-                .createPost(getHost(), ComputeService.FACTORY_LINK)
-                .setBody(resource);
-        sendRequest(computePatchOp);
+    /**
+     * Applies the details retrieved from Azure to the compute states, all keyed by lower case
+     * Azure id, and returns the compute states that changed.
+     */
+    static List<ComputeState> getChangedComputeStates(Collection<ComputeState> resources,
+            Map<String, String> vmNetworkInterfaceIds, Map<String, InstanceView> instanceViews,
+            Map<String, String> publicIPAddressIds, Map<String, String> publicIPAddresses) {
+        List<ComputeState> changedResources = new ArrayList<>();
+        for (ComputeState resource : resources) {
+            boolean changed = applyInstanceView(resource, instanceViews.get(resource.id));
+
+            String networkInterfaceId = vmNetworkInterfaceIds.get(resource.id);
+            String publicIPAddressId = networkInterfaceId == null ? null
+                    : publicIPAddressIds.get(networkInterfaceId);
+            String address = publicIPAddressId == null ? null
+                    : publicIPAddresses.get(publicIPAddressId);
+            if (address != null && !address.equals(resource.address)) {
+                resource.address = address;
+                changed = true;
+            }
 
-        if (numOfPatches.decrementAndGet() == 0) {
-            logInfo("Finished patching compute states");
-            ctx.subStage = ComputeEnumerationSubStages.DELETE_COMPUTE_STATES;
-            handleSubStage(ctx);
+            if (changed) {
+                changedResources.add(resource);
+            }
         }
+        return changedResources;
+    }
+
+    /**
+     * Sets the power state and creation time of the compute state from the instance view of the
+     * VM.
+     *
+     * @return whether the compute state changed
+     */
+    private static boolean applyInstanceView(ComputeState resource, InstanceView instanceView) {
+        if (instanceView == null || instanceView.statuses == null) {
+            return false;
+        }
+
+        boolean changed = false;
+        for (InstanceViewStatus status : instanceView.statuses) {
+            if (AzureConstants.AZURE_VM_PROVISIONING_STATE_SUCCEEDED.equals(status.code)
+                    && status.time != null) {
+                Long creationTimeMicros;
+                try {
+                    creationTimeMicros = TimeUnit.MILLISECONDS.toMicros(
+                            OffsetDateTime.parse(status.time).toInstant().toEpochMilli());
+                } catch (DateTimeParseException e) {
+                    Utils.log(AzureComputeEnumerationAdapterService.class, SELF_LINK,
+                            Level.WARNING, "Invalid provisioning time %s of %s", status.time,
+                            resource.id);
+                    continue;
+                }
+                changed |= !creationTimeMicros.equals(resource.creationTimeMicros);
+                resource.creationTimeMicros = creationTimeMicros;
+            } else if (AzureConstants.AZURE_VM_POWER_STATE_RUNNING.equals(status.code)) {
+                changed |= resource.powerState != PowerState.ON;
+                resource.powerState = PowerState.ON;
+            } else if (AzureConstants.AZURE_VM_POWER_STATE_DEALLOCATED.equals(status.code)) {
+                changed |= resource.powerState != PowerState.OFF;
+                resource.powerState = PowerState.OFF;
+            }
+        }
+        return changed;
     }
 
     private void handleError(EnumerationContext ctx, Throwable e) {
@@ -1306,32 +1334,6 @@ public class AzureComputeEnumerationAdapterService extends StatelessService {
                 + imageReference.getSku() + ":" + imageReference.getVersion();
     }
 
-    private Retrofit.Builder getRetrofitBuilder() {
-        Retrofit.Builder builder = new Retrofit.Builder();
-        builder.callbackExecutor(this.executorService);
-        return builder;
-    }
-
-    private ComputeManagementClient getComputeManagementClient(EnumerationContext ctx) {
-        if (ctx.computeClient == null) {
-            ctx.computeClient = new ComputeManagementClientImpl(
-                    AzureConstants.BASE_URI, ctx.credentials, ctx.clientBuilder,
-                    getRetrofitBuilder());
-            ctx.computeClient.setSubscriptionId(ctx.parentAuth.userLink);
-        }
-        return ctx.computeClient;
-    }
-
-    private NetworkManagementClient getNetworkManagementClient(EnumerationContext ctx) {
-        if (ctx.networkClient == null) {
-            ctx.networkClient = new NetworkManagementClientImpl(
-                    AzureConstants.BASE_URI, ctx.credentials, ctx.clientBuilder,
-                    getRetrofitBuilder());
-            ctx.networkClient.setSubscriptionId(ctx.parentAuth.userLink);
-        }
-        return ctx.networkClient;
-    }
-
     /**
      * Return Instance normalized OS Type.
      */
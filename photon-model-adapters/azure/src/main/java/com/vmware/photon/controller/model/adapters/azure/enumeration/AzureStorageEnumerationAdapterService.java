@@ -27,9 +27,7 @@ import static com.vmware.photon.controller.model.adapters.azure.constants.AzureC
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.QUERY_PARAM_API_VERSION;
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.STORAGE_ACCOUNT_REST_API_VERSION;
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.STORAGE_CONNECTION_STRING;
-import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.awaitTermination;
-import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.cleanUpHttpClient;
-import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.getAzureConfig;
+import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.getAdapterExecutor;
 import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.getResourceGroupName;
 
 import java.io.IOException;
@@ -45,7 +43,6 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
@@ -73,6 +70,7 @@ import com.vmware.photon.controller.model.adapters.azure.AzureUriPaths;
 import com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants;
 import com.vmware.photon.controller.model.adapters.azure.model.storage.StorageAccount;
 import com.vmware.photon.controller.model.adapters.azure.model.storage.StorageAccountResultList;
+import com.vmware.photon.controller.model.adapters.azure.utils.AzureClientManager;
 import com.vmware.photon.controller.model.adapters.util.AdapterUriUtil;
 import com.vmware.photon.controller.model.adapters.util.AdapterUtils;
 import com.vmware.photon.controller.model.adapters.util.enums.EnumerationStages;
@@ -123,21 +121,6 @@ public class AzureStorageEnumerationAdapterService extends StatelessService {
         FINISHED
     }
 
-    private ExecutorService executorService;
-
-    @Override
-    public void handleStart(Operation startPost) {
-        this.executorService = getHost().allocateExecutor(this);
-        super.handleStart(startPost);
-    }
-
-    @Override
-    public void handleStop(Operation delete) {
-        this.executorService.shutdown();
-        awaitTermination(this, this.executorService);
-        super.handleStop(delete);
-    }
-
     /**
      * The local service context that is created to identify and create a representative set of storage descriptions
      * that are required to be created in the system based on the enumeration data received from Azure.
@@ -217,7 +200,8 @@ public class AzureStorageEnumerationAdapterService extends StatelessService {
         case CLIENT:
             if (context.credentials == null) {
                 try {
-                    context.credentials = getAzureConfig(context.parentAuth);
+                    context.credentials = AzureClientManager.getInstance()
+                            .getCredentials(this, context.parentAuth);
                 } catch (Throwable e) {
                     logSevere(e);
                     context.error = e;
@@ -228,11 +212,8 @@ public class AzureStorageEnumerationAdapterService extends StatelessService {
             }
             if (context.httpClient == null) {
                 try {
-                    // Creating a shared singleton Http client instance
-                    // Reference https://square.github.io/okhttp/3.x/okhttp/okhttp3/OkHttpClient.html
-                    // TODO: https://github.com/Azure/azure-sdk-for-java/issues/1000
-                    // TODO: https://jira-hzn.eng.vmware.com/browse/VSYM-2775
-                    context.httpClient = new OkHttpClient();
+                    // shared by all the Azure adapters, must not be shut down
+                    context.httpClient = AzureClientManager.getInstance().getHttpClient();
                     context.clientBuilder = context.httpClient.newBuilder();
                 } catch (Exception e) {
                     handleError(context, e);
@@ -278,13 +259,11 @@ public class AzureStorageEnumerationAdapterService extends StatelessService {
             break;
         case FINISHED:
             context.azureStorageAdapterOperation.complete();
-            cleanUpHttpClient(this, context.httpClient);
             logInfo("Enumeration finished for %s", getEnumKey(context));
             this.ongoingEnumerations.remove(getEnumKey(context));
             break;
         case ERROR:
             context.azureStorageAdapterOperation.fail(context.error);
-            cleanUpHttpClient(this, context.httpClient);
             logWarning("Enumeration error for %s", getEnumKey(context));
             this.ongoingEnumerations.remove(getEnumKey(context));
             break;
@@ -292,7 +271,6 @@ public class AzureStorageEnumerationAdapterService extends StatelessService {
             String msg = String.format("Unknown Azure enumeration stage %s ", context.stage.toString());
             logSevere(msg);
             context.error = new IllegalStateException(msg);
-            cleanUpHttpClient(this, context.httpClient);
             this.ongoingEnumerations.remove(getEnumKey(context));
         }
     }
@@ -1156,15 +1134,16 @@ public class AzureStorageEnumerationAdapterService extends StatelessService {
         if (ctx.storageClient == null) {
             ctx.storageClient = new StorageManagementClientImpl(
                     AzureConstants.BASE_URI, ctx.credentials, ctx.clientBuilder,
-                    getRetrofitBuilder());
+                    getRetrofitBuilder(ctx.parentAuth));
             ctx.storageClient.setSubscriptionId(ctx.parentAuth.userLink);
         }
         return ctx.storageClient;
     }
 
-    private Retrofit.Builder getRetrofitBuilder() {
+    private Retrofit.Builder getRetrofitBuilder(
+            AuthCredentialsService.AuthCredentialsServiceState parentAuth) {
         Retrofit.Builder builder = new Retrofit.Builder();
-        builder.callbackExecutor(this.executorService);
+        builder.callbackExecutor(getAdapterExecutor(this, parentAuth));
         return builder;
     }
 
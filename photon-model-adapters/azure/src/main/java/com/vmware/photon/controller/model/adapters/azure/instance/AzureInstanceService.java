@@ -25,8 +25,8 @@ import static com.vmware.photon.controller.model.adapters.azure.constants.AzureC
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.PROVIDER_REGISTRED_STATE;
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.PROVISIONING_STATE_SUCCEEDED;
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.STORAGE_NAMESPACE;
-import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.awaitTermination;
 import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.cleanUpHttpClient;
+import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.getAdapterExecutor;
 import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.getAzureConfig;
 import static com.vmware.photon.controller.model.constants.PhotonModelConstants.CLOUD_CONFIG_DEFAULT_FILE_INDEX;
 import static com.vmware.xenon.common.Operation.STATUS_CODE_UNAUTHORIZED;
@@ -44,7 +44,6 @@ import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -164,22 +163,6 @@ public class AzureInstanceService extends StatelessService {
         static final int MAX_WAITS = 10;
     }
 
-    private ExecutorService executorService;
-
-    @Override
-    public void handleStart(Operation startPost) {
-        this.executorService = getHost().allocateExecutor(this);
-
-        super.handleStart(startPost);
-    }
-
-    @Override
-    public void handleStop(Operation delete) {
-        this.executorService.shutdown();
-        awaitTermination(this, this.executorService);
-        super.handleStop(delete);
-    }
-
     @Override
     public void handlePatch(Operation op) {
         if (!op.hasBody()) {
@@ -354,7 +337,7 @@ public class AzureInstanceService extends StatelessService {
 
         SubscriptionClient subscriptionClient = new SubscriptionClientImpl(
                 AzureConstants.BASE_URI, ctx.credentials, ctx.clientBuilder,
-                getRetrofitBuilder());
+                getRetrofitBuilder(ctx.parentAuth));
 
         subscriptionClient.getSubscriptionsOperations().getAsync(
                 ctx.parentAuth.userLink, new ServiceCallback<Subscription>() {
@@ -1447,9 +1430,9 @@ public class AzureInstanceService extends StatelessService {
         return (t) -> handleError(ctx, t);
     }
 
-    private Retrofit.Builder getRetrofitBuilder() {
+    private Retrofit.Builder getRetrofitBuilder(AuthCredentialsServiceState parentAuth) {
         Retrofit.Builder builder = new Retrofit.Builder();
-        builder.callbackExecutor(this.executorService);
+        builder.callbackExecutor(getAdapterExecutor(this, parentAuth));
         return builder;
     }
 
@@ -1470,7 +1453,7 @@ public class AzureInstanceService extends StatelessService {
         if (ctx.resourceManagementClient == null) {
             ResourceManagementClient client = new ResourceManagementClientImpl(
                     AzureConstants.BASE_URI, ctx.credentials, ctx.clientBuilder,
-                    getRetrofitBuilder());
+                    getRetrofitBuilder(ctx.parentAuth));
             client.setSubscriptionId(ctx.parentAuth.userLink);
             ctx.resourceManagementClient = client;
         }
@@ -1481,7 +1464,7 @@ public class AzureInstanceService extends StatelessService {
         if (ctx.networkManagementClient == null) {
             NetworkManagementClient client = new NetworkManagementClientImpl(
                     AzureConstants.BASE_URI, ctx.credentials, ctx.clientBuilder,
-                    getRetrofitBuilder());
+                    getRetrofitBuilder(ctx.parentAuth));
             client.setSubscriptionId(ctx.parentAuth.userLink);
             ctx.networkManagementClient = client;
         }
@@ -1492,7 +1475,7 @@ public class AzureInstanceService extends StatelessService {
         if (ctx.storageManagementClient == null) {
             StorageManagementClient client = new StorageManagementClientImpl(
                     AzureConstants.BASE_URI, ctx.credentials, ctx.clientBuilder,
-                    getRetrofitBuilder());
+                    getRetrofitBuilder(ctx.parentAuth));
             client.setSubscriptionId(ctx.parentAuth.userLink);
             ctx.storageManagementClient = client;
         }
@@ -1503,7 +1486,7 @@ public class AzureInstanceService extends StatelessService {
         if (ctx.computeManagementClient == null) {
             ComputeManagementClient client = new ComputeManagementClientImpl(
                     AzureConstants.BASE_URI, ctx.credentials, ctx.clientBuilder,
-                    getRetrofitBuilder());
+                    getRetrofitBuilder(ctx.parentAuth));
             client.setSubscriptionId(ctx.parentAuth.userLink);
             ctx.computeManagementClient = client;
         }
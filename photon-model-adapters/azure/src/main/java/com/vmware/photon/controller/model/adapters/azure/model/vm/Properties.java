@@ -29,4 +29,5 @@ public class Properties {
     public NetworkProfile networkProfile;
     public OSProfile osProfile;
     public String provisioningState;
+    public InstanceView instanceView;
 }
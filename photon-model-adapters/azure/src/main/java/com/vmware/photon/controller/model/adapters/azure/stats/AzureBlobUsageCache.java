@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.azure.stats;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Remembers the used bytes of page blobs along with the ETag of the blob they were computed for,
+ * so that the page ranges of a blob are only read again once the blob changes.
+ *
+ * Blobs not seen for longer than {@link #MAX_IDLE_MINUTES_PROPERTY}, e.g. because they or their
+ * storage account were deleted, are evicted.
+ */
+public class AzureBlobUsageCache {
+    public static final String MAX_IDLE_MINUTES_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "AzureBlobUsageCache.maxIdleMinutes";
+    private static final int DEFAULT_MAX_IDLE_MINUTES = 24 * 60;
+
+    private static final AzureBlobUsageCache INSTANCE = new AzureBlobUsageCache(
+            TimeUnit.MINUTES.toMicros(Integer.getInteger(MAX_IDLE_MINUTES_PROPERTY,
+                    DEFAULT_MAX_IDLE_MINUTES)));
+
+    private static class Entry {
+        final String etag;
+        final long usedBytes;
+        volatile long lastSeenMicros = Utils.getNowMicrosUtc();
+
+        Entry(String etag, long usedBytes) {
+            this.etag = etag;
+            this.usedBytes = usedBytes;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long maxIdleMicros;
+
+    AzureBlobUsageCache(long maxIdleMicros) {
+        this.maxIdleMicros = maxIdleMicros;
+    }
+
+    public static AzureBlobUsageCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the used bytes of the blob, if they were computed for the given ETag.
+     *
+     * @param blobUri
+     * @param etag the current ETag of the blob
+     * @return null if the used bytes are not known or the blob changed since
+     */
+    public Long get(String blobUri, String etag) {
+        Entry entry = this.entries.get(blobUri);
+        if (entry == null || !Objects.equals(entry.etag, etag)) {
+            return null;
+        }
+        entry.lastSeenMicros = Utils.getNowMicrosUtc();
+        return entry.usedBytes;
+    }
+
+    public void put(String blobUri, String etag, long usedBytes) {
+        this.entries.put(blobUri, new Entry(etag, usedBytes));
+    }
+
+    /**
+     * Evicts the blobs not seen for longer than the max idle time.
+     */
+    public void evictIdle() {
+        long now = Utils.getNowMicrosUtc();
+        this.entries.values().removeIf(e -> now - e.lastSeenMicros > this.maxIdleMicros);
+    }
+
+    int size() {
+        return this.entries.size();
+    }
+}
@@ -13,30 +13,30 @@
 
 package com.vmware.photon.controller.model.adapters.azure.stats;
 
-import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.awaitTermination;
-
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import com.microsoft.azure.credentials.ApplicationTokenCredentials;
 
+import com.vmware.photon.controller.model.UriPaths;
 import com.vmware.photon.controller.model.adapterapi.ComputeStatsRequest;
 import com.vmware.photon.controller.model.adapterapi.ComputeStatsResponse;
 import com.vmware.photon.controller.model.adapterapi.ComputeStatsResponse.ComputeStats;
 import com.vmware.photon.controller.model.adapters.azure.AzureUriPaths;
 import com.vmware.photon.controller.model.adapters.util.AdapterUtils;
 import com.vmware.photon.controller.model.constants.PhotonModelConstants;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsBlockService.ResourceMetricsBlock;
 import com.vmware.photon.controller.model.monitoring.ResourceMetricsService;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsService.ResourceMetrics;
 import com.vmware.photon.controller.model.resources.ComputeService;
+import com.vmware.photon.controller.model.tasks.monitoring.StatsUtil;
 
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.OperationJoin;
@@ -46,6 +46,11 @@ import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.NumericRange;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.common.QueryTask.QueryTerm.MatchType;
 import com.vmware.xenon.services.common.ServiceUriPaths;
 
 /**
@@ -53,11 +58,18 @@ import com.vmware.xenon.services.common.ServiceUriPaths;
  * compute host level.
  * It is called per compute host to collect the metrics.
  *
+ * Only the metrics collected within the last {@link #WINDOW_MINUTES_PROPERTY} minutes are read,
+ * with a single query for all the VMs of the host, and the latest value of each VM is used.
  */
 public class AzureComputeHostStatsGatherer extends StatelessService {
     public static final String SELF_LINK = AzureUriPaths.AZURE_COMPUTE_HOST_STATS_GATHERER;
 
-    private ExecutorService executorService;
+    public static final String WINDOW_MINUTES_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "AzureComputeHostStatsGatherer.windowMinutes";
+    private static final int DEFAULT_WINDOW_MINUTES = 60;
+
+    // stays below the default limit of clauses of a boolean query
+    private static final int MAX_COMPUTES_PER_QUERY = 512;
 
     private enum ComputeHostMetricsStages {
         GET_COMPUTE_HOST,
@@ -66,19 +78,6 @@ public class AzureComputeHostStatsGatherer extends StatelessService {
         ERROR
     }
 
-    @Override
-    public void handleStart(Operation startPost) {
-        this.executorService = getHost().allocateExecutor(this);
-        super.handleStart(startPost);
-    }
-
-    @Override
-    public void handleStop(Operation delete) {
-        this.executorService.shutdown();
-        awaitTermination(this, this.executorService);
-        super.handleStop(delete);
-    }
-
     private class AzureStatsDataHolder {
         public ComputeStatsRequest statsRequest;
         public ComputeStats statsResponse;
@@ -87,7 +86,6 @@ public class AzureComputeHostStatsGatherer extends StatelessService {
         public ComputeService.ComputeStateWithDescription computeHost;
         public ApplicationTokenCredentials credentials;
         public ComputeHostMetricsStages stage;
-        public AtomicInteger numResponses = new AtomicInteger(0);
         public Throwable error;
 
         public AzureStatsDataHolder(Operation op) {
@@ -188,7 +186,7 @@ public class AzureComputeHostStatsGatherer extends StatelessService {
     }
 
     /**
-     * Get all the children computes and create a query task for each to query the metrics.
+     * Get all the children computes and query their latest metrics.
      */
     private void handleComputeQueryCompletion(Operation operation, Throwable failure,
             AzureStatsDataHolder statsData) {
@@ -217,68 +215,118 @@ public class AzureComputeHostStatsGatherer extends StatelessService {
             return;
         }
 
-        // Create multiple operations, one each for a VM compute.
-        List<Operation> statOperations = new ArrayList<>(computeCount);
-        for (String computeLink : queryResult.results.documentLinks) {
-            Operation statsOp = getStatsQueryTaskOperation(statsData, computeLink);
-            statOperations.add(statsOp);
+        long windowStartMicros = Utils.getNowMicrosUtc() - TimeUnit.MINUTES.toMicros(
+                Integer.getInteger(WINDOW_MINUTES_PROPERTY, DEFAULT_WINDOW_MINUTES));
+        boolean metricsBlocksEnabled = StatsUtil.isMetricsBlocksEnabled();
+
+        // A single query covers all the VMs, unless there are more than a boolean query can hold.
+        List<String> computeLinks = queryResult.results.documentLinks;
+        List<Operation> statOperations = new ArrayList<>();
+        for (int i = 0; i < computeLinks.size(); i += MAX_COMPUTES_PER_QUERY) {
+            List<String> links = computeLinks.subList(i,
+                    Math.min(i + MAX_COMPUTES_PER_QUERY, computeLinks.size()));
+            statOperations.add(metricsBlocksEnabled
+                    ? getMetricsBlocksQueryTaskOperation(statsData, links, windowStartMicros)
+                    : getStatsQueryTaskOperation(statsData, links, windowStartMicros));
         }
 
         OperationJoin.create(statOperations)
                 .setCompletion((ops, failures) -> handleQueryTaskResponseAndConsolidateStats(ops,
-                        failures, statsData))
+                        failures, statsData, metricsBlocksEnabled, windowStartMicros))
                 .sendWith(this);
     }
 
     /**
-     * Create a query task for each compute VM and return the operation.
+     * Create a query task for the metrics of the given compute VMs collected since the beginning
+     * of the window, and return the operation.
      */
-    private Operation getStatsQueryTaskOperation(AzureStatsDataHolder statsData, String computeLink) {
-        String computeId = UriUtils.getLastPathSegment(computeLink);
-        URI queryUri = UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_QUERY_TASKS);
-        QueryTask.QuerySpecification querySpec = new QueryTask.QuerySpecification();
+    private Operation getStatsQueryTaskOperation(AzureStatsDataHolder statsData,
+            List<String> computeLinks, long windowStartMicros) {
+        Query.Builder selfLinkClause = Query.Builder.create(Occurance.MUST_OCCUR);
+        for (String computeLink : computeLinks) {
+            // metric links are made of the compute id and the timestamp
+            String selfLinkPrefix = UriUtils.buildUriPath(ResourceMetricsService.FACTORY_LINK,
+                    UriUtils.getLastPathSegment(computeLink)) + StatsUtil.SEPARATOR;
+            selfLinkClause.addFieldClause(ServiceDocument.FIELD_NAME_SELF_LINK, selfLinkPrefix,
+                    MatchType.PREFIX, Occurance.SHOULD_OCCUR);
+        }
 
-        String kind = Utils.buildKind(ResourceMetricsService.ResourceMetrics.class);
-        QueryTask.Query kindClause = new QueryTask.Query().setTermPropertyName(
-                ServiceDocument.FIELD_NAME_KIND).setTermMatchValue(kind);
-        querySpec.query.addBooleanClause(kindClause);
+        Query query = Query.Builder.create()
+                .addKindFieldClause(ResourceMetrics.class)
+                .addRangeClause(ResourceMetrics.FIELD_NAME_TIMESTAMP,
+                        NumericRange.createLongRange(windowStartMicros, Long.MAX_VALUE, true,
+                                false))
+                .addClause(selfLinkClause.build())
+                .build();
 
-        String selfLinkValue = UriUtils
-                .buildUriPath(ResourceMetricsService.FACTORY_LINK, computeId);
+        return createQueryTaskOperation(statsData, query);
+    }
 
-        QueryTask.Query selfLinkClause = new QueryTask.Query()
-                .setTermMatchType(QueryTask.QueryTerm.MatchType.PREFIX)
-                .setTermPropertyName(ServiceDocument.FIELD_NAME_SELF_LINK)
-                .setTermMatchValue(selfLinkValue);
-        querySpec.query.addBooleanClause(selfLinkClause);
+    /**
+     * Create a query task for the metric blocks of the given compute VMs that overlap the window,
+     * and return the operation.
+     */
+    private Operation getMetricsBlocksQueryTaskOperation(AzureStatsDataHolder statsData,
+            List<String> computeLinks, long windowStartMicros) {
+        Query query = Query.Builder.create()
+                .addKindFieldClause(ResourceMetricsBlock.class)
+                .addInClause(ResourceMetricsBlock.FIELD_NAME_RESOURCE_LINK, computeLinks)
+                .addRangeClause(ResourceMetricsBlock.FIELD_NAME_BLOCK_END,
+                        NumericRange.createLongRange(windowStartMicros, Long.MAX_VALUE, false,
+                                false))
+                .build();
+
+        return createQueryTaskOperation(statsData, query);
+    }
 
-        QueryTask task = QueryTask.create(querySpec).setDirect(true);
-        task.querySpec.options = EnumSet.of(QueryTask.QuerySpecification.QueryOption.EXPAND_CONTENT);
+    private Operation createQueryTaskOperation(AzureStatsDataHolder statsData, Query query) {
+        QueryTask task = QueryTask.Builder.createDirectTask()
+                .setQuery(query)
+                .addOption(QueryOption.EXPAND_CONTENT)
+                .build();
         task.tenantLinks = statsData.computeHost.tenantLinks;
-        Operation queryOp = Operation
-                .createPost(queryUri)
+        return Operation
+                .createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_QUERY_TASKS))
                 .setBody(task);
-        return queryOp;
     }
 
     /**
      * Consolidates all the query task responses into one response and patches back.
      */
     private void handleQueryTaskResponseAndConsolidateStats(Map<Long, Operation> ops,
-            Map<Long, Throwable> failures, AzureStatsDataHolder statsData) {
+            Map<Long, Throwable> failures, AzureStatsDataHolder statsData,
+            boolean metricsBlocksEnabled, long windowStartMicros) {
         try {
             if (failures != null) {
-                sendFailurePatch(statsData, failures.get(0L));
+                sendFailurePatch(statsData, failures.values().iterator().next());
                 return;
             }
-            List<QueryTask> items = new ArrayList<>(ops.size());
 
+            List<ResourceMetrics> metrics = new ArrayList<>();
             for (Operation op : ops.values()) {
                 QueryTask queryResult = op.getBody(QueryTask.class);
-                items.add(queryResult);
+                if (queryResult.results == null || queryResult.results.documents == null) {
+                    continue;
+                }
+                if (metricsBlocksEnabled) {
+                    List<ResourceMetricsBlock> blocks = new ArrayList<>();
+                    for (Object document : queryResult.results.documents.values()) {
+                        blocks.add(Utils.fromJson(document, ResourceMetricsBlock.class));
+                    }
+                    for (ResourceMetrics metric : StatsUtil.toResourceMetrics(blocks, null)) {
+                        if (metric.timestampMicrosUtc >= windowStartMicros) {
+                            metrics.add(metric);
+                        }
+                    }
+                } else {
+                    for (Object document : queryResult.results.documents.values()) {
+                        metrics.add(Utils.fromJson(document, ResourceMetrics.class));
+                    }
+                }
             }
 
-            statsData.statsResponse = aggregateComputeStatsResponses(statsData, items);
+            statsData.statsResponse = aggregateComputeStatsResponses(
+                    statsData.computeHost.documentSelfLink, metrics);
             statsData.stage = ComputeHostMetricsStages.FINISHED;
             handleMetricDiscovery(statsData);
         } catch (Throwable t) {
@@ -287,44 +335,53 @@ public class AzureComputeHostStatsGatherer extends StatelessService {
     }
 
     /**
-     * Aggregates stats from all the compute VMs to make up compute Host stats.
+     * Aggregates stats from all the compute VMs to make up compute Host stats: the latest value
+     * of each metric of each VM is averaged across the VMs reporting the metric.
      */
-    private ComputeStats aggregateComputeStatsResponses(
-            AzureStatsDataHolder statsData, List<QueryTask> items) {
-        int numberOfComputeResponse = items.size();
-        ComputeStats computeStats = new ComputeStats();
-        computeStats.computeLink = statsData.computeHost.documentSelfLink;
-
-        Map<String, ServiceStat> statMap = new HashMap<>();
-        // Gather all the stats in a single response.
-        for (QueryTask queryResult : items) {
-            if (queryResult.results.documents != null) {
-                for (String key : queryResult.results.documents.keySet()) {
-                    ResourceMetricsService.ResourceMetrics metric = Utils
-                            .fromJson(queryResult.results.documents.get(key),
-                            ResourceMetricsService.ResourceMetrics.class);
-                    for (Map.Entry<String, Double> entry : metric.entries.entrySet()) {
-                        String metricName = entry.getKey();
-                        if (statMap.containsKey(metricName)) {
-                            statMap.get(metricName).latestValue += entry.getValue();
-                        } else {
-                            ServiceStat stat = new ServiceStat();
-                            stat.latestValue = entry.getValue();
-                            statMap.put(metricName, stat);
-                        }
-                    }
+    static ComputeStats aggregateComputeStatsResponses(String computeHostLink,
+            List<ResourceMetrics> metrics) {
+        // latest data point of each metric, by resource id
+        Map<String, Map<String, ResourceMetrics>> latestByMetric = new HashMap<>();
+        for (ResourceMetrics metric : metrics) {
+            if (metric.entries == null || metric.timestampMicrosUtc == null) {
+                continue;
+            }
+            String metricKey = UriUtils.getLastPathSegment(metric.documentSelfLink);
+            String resourceId = metricKey.substring(0,
+                    Math.max(0, metricKey.lastIndexOf(StatsUtil.SEPARATOR)));
+            for (String metricName : metric.entries.keySet()) {
+                if (metricName.endsWith(PhotonModelConstants.LAST_SUCCESSFUL_STATS_COLLECTION_TIME)) {
+                    continue;
+                }
+                Map<String, ResourceMetrics> latest = latestByMetric.get(metricName);
+                if (latest == null) {
+                    latest = new HashMap<>();
+                    latestByMetric.put(metricName, latest);
+                }
+                ResourceMetrics current = latest.get(resourceId);
+                if (current == null || current.timestampMicrosUtc < metric.timestampMicrosUtc) {
+                    latest.put(resourceId, metric);
                 }
             }
         }
 
+        ComputeStats computeStats = new ComputeStats();
+        computeStats.computeLink = computeHostLink;
         computeStats.statValues = new ConcurrentSkipListMap<>();
-        // Divide each metric value by the number of computes to get an average value.
-        for (String key : statMap.keySet()) {
-            ServiceStat serviceStatValue = statMap.get(key);
-            serviceStatValue.unit = PhotonModelConstants.getUnitForMetric(key);
-            serviceStatValue.sourceTimeMicrosUtc = Utils.getNowMicrosUtc();
-            serviceStatValue.latestValue = serviceStatValue.latestValue / numberOfComputeResponse;
-            computeStats.statValues.put(key, Collections.singletonList(serviceStatValue));
+        for (Map.Entry<String, Map<String, ResourceMetrics>> entry : latestByMetric.entrySet()) {
+            String metricName = entry.getKey();
+            double sum = 0;
+            long sourceTimeMicros = 0;
+            for (ResourceMetrics metric : entry.getValue().values()) {
+                sum += metric.entries.get(metricName);
+                sourceTimeMicros = Math.max(sourceTimeMicros, metric.timestampMicrosUtc);
+            }
+            ServiceStat stat = new ServiceStat();
+            stat.name = metricName;
+            stat.unit = PhotonModelConstants.getUnitForMetric(metricName);
+            stat.sourceTimeMicrosUtc = sourceTimeMicros;
+            stat.latestValue = sum / entry.getValue().size();
+            computeStats.statValues.put(metricName, Collections.singletonList(stat));
         }
 
         return computeStats;
@@ -18,22 +18,22 @@ import static com.vmware.photon.controller.model.adapters.azure.constants.AzureC
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.QUERY_PARAM_API_VERSION;
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.STORAGE_ACCOUNT_REST_API_VERSION;
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.STORAGE_CONNECTION_STRING;
-import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.awaitTermination;
-import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.cleanUpHttpClient;
-import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.getAzureConfig;
+import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.getAdapterExecutor;
 import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.getResourceGroupName;
 
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import com.microsoft.azure.credentials.ApplicationTokenCredentials;
@@ -43,7 +43,6 @@ import com.microsoft.azure.management.storage.StorageManagementClientImpl;
 import com.microsoft.azure.management.storage.models.StorageAccountKeys;
 import com.microsoft.azure.storage.CloudStorageAccount;
 import com.microsoft.azure.storage.StorageException;
-import com.microsoft.azure.storage.blob.CloudBlob;
 import com.microsoft.azure.storage.blob.CloudBlobClient;
 import com.microsoft.azure.storage.blob.CloudBlobContainer;
 import com.microsoft.azure.storage.blob.CloudPageBlob;
@@ -54,6 +53,7 @@ import com.microsoft.rest.ServiceResponse;
 import okhttp3.OkHttpClient;
 import retrofit2.Retrofit;
 
+import com.vmware.photon.controller.model.UriPaths;
 import com.vmware.photon.controller.model.adapterapi.ComputeStatsRequest;
 import com.vmware.photon.controller.model.adapterapi.ComputeStatsResponse;
 import com.vmware.photon.controller.model.adapters.azure.AzureAsyncCallback;
@@ -61,6 +61,7 @@ import com.vmware.photon.controller.model.adapters.azure.AzureUriPaths;
 import com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants;
 import com.vmware.photon.controller.model.adapters.azure.model.storage.StorageAccount;
 import com.vmware.photon.controller.model.adapters.azure.model.storage.StorageAccountResultList;
+import com.vmware.photon.controller.model.adapters.azure.utils.AzureClientManager;
 import com.vmware.photon.controller.model.adapters.util.AdapterUriUtil;
 import com.vmware.photon.controller.model.adapters.util.AdapterUtils;
 import com.vmware.photon.controller.model.constants.PhotonModelConstants;
@@ -75,11 +76,19 @@ import com.vmware.xenon.services.common.AuthCredentialsService;
 
 /**
  * This service collects the used bytes and the total bytes of blobs (disks or not) per compute host.
+ *
+ * The used bytes of the blobs are cached by {@link AzureBlobUsageCache}, so each collection
+ * lists the blobs but only reads the page ranges of the blobs that changed.
  */
 public class AzureComputeHostStorageStatsGatherer extends StatelessService {
     public static final String SELF_LINK = AzureUriPaths.AZURE_COMPUTE_HOST_STORAGE_STATS_GATHERER;
 
-    private ExecutorService executorService;
+    /**
+     * Number of blobs of a storage account whose page ranges are read concurrently.
+     */
+    public static final String BLOB_PARALLELISM_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "AzureComputeHostStorageStatsGatherer.blobParallelism";
+    private static final int DEFAULT_BLOB_PARALLELISM = 4;
 
     private enum StorageMetricsStages {
         GET_PARENT_AUTH,
@@ -91,19 +100,6 @@ public class AzureComputeHostStorageStatsGatherer extends StatelessService {
         ERROR
     }
 
-    @Override
-    public void handleStart(Operation startPost) {
-        this.executorService = getHost().allocateExecutor(this);
-        super.handleStart(startPost);
-    }
-
-    @Override
-    public void handleStop(Operation delete) {
-        this.executorService.shutdown();
-        awaitTermination(this, this.executorService);
-        super.handleStop(delete);
-    }
-
     private class AzureStorageStatsDataHolder {
         public ComputeService.ComputeStateWithDescription computeHostDesc;
         public AuthCredentialsService.AuthCredentialsServiceState parentAuth;
@@ -112,11 +108,11 @@ public class AzureComputeHostStorageStatsGatherer extends StatelessService {
         public ComputeStatsResponse.ComputeStats statsResponse;
         public StorageMetricsStages stage;
         public Operation azureStorageStatsOperation;
-        public long utilizedBytes = 0;
+        public AtomicLong utilizedBytes = new AtomicLong();
+        public AtomicBoolean failed = new AtomicBoolean();
 
         // Storage account specific properties
         Map<String, StorageAccount> storageAccounts = new ConcurrentHashMap<>();
-        List<CloudBlob> snapshots = Collections.synchronizedList(new ArrayList<>());
 
         // Azure clients
         StorageManagementClient storageClient;
@@ -172,7 +168,8 @@ public class AzureComputeHostStorageStatsGatherer extends StatelessService {
         case GET_CLIENT:
             if (dataHolder.credentials == null) {
                 try {
-                    dataHolder.credentials = getAzureConfig(dataHolder.parentAuth);
+                    dataHolder.credentials = AzureClientManager.getInstance()
+                            .getCredentials(this, dataHolder.parentAuth);
                 } catch (Throwable e) {
                     logSevere(e);
                     dataHolder.error = e;
@@ -183,11 +180,8 @@ public class AzureComputeHostStorageStatsGatherer extends StatelessService {
             }
             if (dataHolder.httpClient == null) {
                 try {
-                    // Creating a shared singleton Http client instance
-                    // Reference https://square.github.io/okhttp/3.x/okhttp/okhttp3/OkHttpClient.html
-                    // TODO: https://github.com/Azure/azure-sdk-for-java/issues/1000
-                    // TODO: https://jira-hzn.eng.vmware.com/browse/VSYM-2775
-                    dataHolder.httpClient = new OkHttpClient();
+                    // shared by all the Azure adapters, must not be shut down
+                    dataHolder.httpClient = AzureClientManager.getInstance().getHttpClient();
                     dataHolder.clientBuilder = dataHolder.httpClient.newBuilder();
                 } catch (Exception e) {
                     handleError(dataHolder, e);
@@ -206,12 +200,10 @@ public class AzureComputeHostStorageStatsGatherer extends StatelessService {
         case FINISHED:
             dataHolder.azureStorageStatsOperation.setBody(dataHolder.statsResponse);
             dataHolder.azureStorageStatsOperation.complete();
-            cleanUpHttpClient(this, dataHolder.httpClient);
             logInfo("Storage utilization stats collection complete for compute host %s", dataHolder.computeHostDesc.id);
             break;
         case ERROR:
             dataHolder.azureStorageStatsOperation.fail(dataHolder.error);
-            cleanUpHttpClient(this, dataHolder.httpClient);
             logWarning("Storage utilization stats collection failed for compute host %s", dataHolder.computeHostDesc.id);
             break;
         default:
@@ -300,8 +292,7 @@ public class AzureComputeHostStorageStatsGatherer extends StatelessService {
 
     private void getBlobUsedBytes(AzureStorageStatsDataHolder statsData,
             StorageMetricsStages next) {
-        String metricName = PhotonModelConstants.STORAGE_USED_BYTES;
-        List<ServiceStats.ServiceStat> statDatapoints = new ArrayList<>();
+        AzureBlobUsageCache.getInstance().evictIdle();
         StorageManagementClient storageClient = getStorageManagementClient(statsData);
         AtomicInteger accountsCount = new AtomicInteger(statsData.storageAccounts.size());
         for (Map.Entry<String, StorageAccount> account : statsData.storageAccounts.entrySet()) {
@@ -316,100 +307,168 @@ public class AzureComputeHostStorageStatsGatherer extends StatelessService {
                         public void onSuccess(ServiceResponse<StorageAccountKeys> result) {
                             logInfo("Retrieved the storage account keys for storage account [%s].",
                                     account.getValue().name);
-                            accountsCount.decrementAndGet();
                             StorageAccountKeys keys = result.getBody();
                             String storageConnectionString = String
                                     .format(STORAGE_CONNECTION_STRING, account.getValue().name,
                                             keys.getKey1());
 
+                            // listing the blobs is blocking, do not hold the callback thread
+                            ExecutorService executor = getAdapterExecutor(
+                                    AzureComputeHostStorageStatsGatherer.this,
+                                    statsData.parentAuth);
                             try {
-                                CloudStorageAccount storageAccount = CloudStorageAccount
-                                        .parse(storageConnectionString);
-                                CloudBlobClient blobClient = storageAccount.createCloudBlobClient();
-                                Iterable<CloudBlobContainer> containerList = blobClient.listContainers();
-
-                                for (CloudBlobContainer container : containerList) {
-                                    for (ListBlobItem blobItem : container.listBlobs()) {
-
-                                        if (blobItem instanceof CloudPageBlob) {
-                                            CloudPageBlob pageBlob = (CloudPageBlob) blobItem;
-                                            // Due to concurrency issues: We can only get the used bytes of a blob
-                                            // only by creating a snapshot and getting the page ranges of the snapshot
-                                            // TODO https://jira-hzn.eng.vmware.com/browse/VSYM-3445
-                                            CloudBlob blobSnapshot = pageBlob.createSnapshot();
-                                            statsData.snapshots.add(blobSnapshot);
-                                            CloudPageBlob pageBlobSnapshot = (CloudPageBlob) blobSnapshot;
-                                            ArrayList<PageRange> pages = pageBlobSnapshot.downloadPageRanges();
-
-                                            // TODO store disk utilized bytes more granularly
-                                            // https://jira-hzn.eng.vmware.com/browse/VSYM-3355
-                                            for (PageRange pageRange : pages) {
-                                                statsData.utilizedBytes += pageRange.getEndOffset()
-                                                        - pageRange.getStartOffset();
+                                executor.submit(() -> getAccountUsedBytes(statsData,
+                                        storageConnectionString, usedBytes -> {
+                                            statsData.utilizedBytes.addAndGet(usedBytes);
+                                            if (accountsCount.decrementAndGet() == 0) {
+                                                finishBlobUsedBytes(statsData, next);
                                             }
-                                        }
-                                    }
-                                }
-                            } catch (Exception e) {
+                                        }));
+                            } catch (RejectedExecutionException e) {
                                 handleError(statsData, e);
-                                return;
-                            } finally {
-                                // Delete snapshot - otherwise snapshot blobs will accumulate in the
-                                // Azure account
-                                if (statsData.snapshots.size() > 0) {
-                                    synchronized (statsData.snapshots) {
-                                        Iterator<CloudBlob> snapshotIterator = statsData.snapshots.iterator();
-                                        while (snapshotIterator.hasNext()) {
-                                            try {
-                                                CloudBlob snapshot = snapshotIterator.next();
-                                                snapshot.deleteIfExists();
-                                                snapshotIterator.remove();
-                                            } catch (StorageException e) {
-                                                handleError(statsData, e);
-                                                continue;
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                            // if all storage accounts were processed, create ServiceStat and finish
-                            if (accountsCount.get() == 0) {
-                                if (statsData.utilizedBytes != 0) {
-                                    ServiceStats.ServiceStat stat = new ServiceStats.ServiceStat();
-                                    stat.latestValue = statsData.utilizedBytes;
-                                    stat.sourceTimeMicrosUtc = TimeUnit.MILLISECONDS.toMicros(Utils.getNowMicrosUtc());
-                                    stat.unit = PhotonModelConstants.getUnitForMetric(metricName);
-                                    statDatapoints.add(stat);
-                                }
-                                statsData.statsResponse.statValues.put(metricName, statDatapoints);
-                                if (statsData.statsResponse.statValues.size() == 1) {
-                                    statsData.statsResponse.computeLink = statsData.computeHostDesc.documentSelfLink;
-                                }
-                                statsData.stage = next;
-                                handleStorageMetricDiscovery(statsData);
                             }
                         }
                     });
         }
     }
 
+    /**
+     * Lists the page blobs of a storage account and sums their used bytes. The page ranges are
+     * only read for the blobs that changed since they were last read, by a bounded number of
+     * tasks. The page ranges are read from the blob itself rather than from a snapshot: a blob
+     * changing meanwhile has a new ETag and is read again on the next collection.
+     */
+    private void getAccountUsedBytes(AzureStorageStatsDataHolder statsData,
+            String storageConnectionString, Consumer<Long> onCompletion) {
+        if (statsData.failed.get()) {
+            // another storage account failed the request already
+            return;
+        }
+        AzureBlobUsageCache cache = AzureBlobUsageCache.getInstance();
+        AtomicLong usedBytes = new AtomicLong();
+        Queue<CloudPageBlob> changedBlobs = new ConcurrentLinkedQueue<>();
+        try {
+            CloudStorageAccount storageAccount = CloudStorageAccount
+                    .parse(storageConnectionString);
+            CloudBlobClient blobClient = storageAccount.createCloudBlobClient();
+            for (CloudBlobContainer container : blobClient.listContainers()) {
+                for (ListBlobItem blobItem : container.listBlobs(null, true)) {
+                    if (!(blobItem instanceof CloudPageBlob)) {
+                        continue;
+                    }
+                    CloudPageBlob pageBlob = (CloudPageBlob) blobItem;
+                    Long cachedBytes = cache.get(pageBlob.getUri().toString(),
+                            pageBlob.getProperties().getEtag());
+                    if (cachedBytes != null) {
+                        usedBytes.addAndGet(cachedBytes);
+                    } else {
+                        changedBlobs.add(pageBlob);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            handleError(statsData, e);
+            return;
+        }
+
+        if (changedBlobs.isEmpty()) {
+            onCompletion.accept(usedBytes.get());
+            return;
+        }
+
+        logFine("Reading the page ranges of %d changed blobs", changedBlobs.size());
+        int parallelism = Math.min(changedBlobs.size(), Integer.getInteger(
+                BLOB_PARALLELISM_PROPERTY, DEFAULT_BLOB_PARALLELISM));
+        AtomicInteger remainingTasks = new AtomicInteger(parallelism);
+        ExecutorService executor = getAdapterExecutor(this, statsData.parentAuth);
+        for (int i = 0; i < parallelism; i++) {
+            Runnable task = () -> {
+                CloudPageBlob pageBlob;
+                while ((pageBlob = changedBlobs.poll()) != null) {
+                    try {
+                        long blobUsedBytes = 0;
+                        // TODO store disk utilized bytes more granularly
+                        // https://jira-hzn.eng.vmware.com/browse/VSYM-3355
+                        for (PageRange pageRange : pageBlob.downloadPageRanges()) {
+                            blobUsedBytes += pageRange.getEndOffset()
+                                    - pageRange.getStartOffset();
+                        }
+                        cache.put(pageBlob.getUri().toString(),
+                                pageBlob.getProperties().getEtag(), blobUsedBytes);
+                        usedBytes.addAndGet(blobUsedBytes);
+                    } catch (StorageException e) {
+                        // e.g. the blob was deleted since listed
+                        logWarning("Cannot read the page ranges of blob %s: %s",
+                                pageBlob.getUri(), e.getMessage());
+                    }
+                }
+                if (remainingTasks.decrementAndGet() == 0) {
+                    onCompletion.accept(usedBytes.get());
+                }
+            };
+            try {
+                executor.submit(task);
+            } catch (RejectedExecutionException e) {
+                if (i == 0) {
+                    handleError(statsData, e);
+                    return;
+                }
+                // the tasks already submitted read the remaining blobs
+                if (remainingTasks.addAndGet(i - parallelism) == 0) {
+                    onCompletion.accept(usedBytes.get());
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Creates the used bytes stat once all the storage accounts are processed.
+     */
+    private void finishBlobUsedBytes(AzureStorageStatsDataHolder statsData,
+            StorageMetricsStages next) {
+        String metricName = PhotonModelConstants.STORAGE_USED_BYTES;
+        List<ServiceStats.ServiceStat> statDatapoints = new ArrayList<>();
+        if (statsData.utilizedBytes.get() != 0) {
+            ServiceStats.ServiceStat stat = new ServiceStats.ServiceStat();
+            stat.latestValue = statsData.utilizedBytes.get();
+            stat.sourceTimeMicrosUtc = Utils.getNowMicrosUtc();
+            stat.unit = PhotonModelConstants.getUnitForMetric(metricName);
+            statDatapoints.add(stat);
+        }
+        statsData.statsResponse.statValues.put(metricName, statDatapoints);
+        if (statsData.statsResponse.statValues.size() == 1) {
+            statsData.statsResponse.computeLink = statsData.computeHostDesc.documentSelfLink;
+        }
+        statsData.stage = next;
+        handleStorageMetricDiscovery(statsData);
+    }
+
     private StorageManagementClient getStorageManagementClient(AzureStorageStatsDataHolder dataholder) {
         if (dataholder.storageClient == null) {
             dataholder.storageClient = new StorageManagementClientImpl(
                     AzureConstants.BASE_URI, dataholder.credentials, dataholder.clientBuilder,
-                    getRetrofitBuilder());
+                    getRetrofitBuilder(dataholder.parentAuth));
             dataholder.storageClient.setSubscriptionId(dataholder.parentAuth.userLink);
         }
         return dataholder.storageClient;
     }
 
-    private Retrofit.Builder getRetrofitBuilder() {
+    private Retrofit.Builder getRetrofitBuilder(
+            AuthCredentialsService.AuthCredentialsServiceState parentAuth) {
         Retrofit.Builder builder = new Retrofit.Builder();
-        builder.callbackExecutor(this.executorService);
+        builder.callbackExecutor(getAdapterExecutor(this, parentAuth));
         return builder;
     }
 
     private void handleError(AzureStorageStatsDataHolder dataHolder, Throwable e) {
+        if (!dataHolder.failed.compareAndSet(false, true)) {
+            // the storage accounts are processed concurrently, only the first error fails the
+            // request
+            logWarning("Failed at stage %s with exception: %s", dataHolder.stage,
+                    e.getMessage());
+            return;
+        }
         logSevere("Failed at stage %s with exception: %s", dataHolder.stage, Utils.toString(e));
         dataHolder.error = e;
         dataHolder.stage = StorageMetricsStages.ERROR;
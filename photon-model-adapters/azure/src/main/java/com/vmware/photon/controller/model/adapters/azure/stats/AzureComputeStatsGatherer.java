@@ -14,7 +14,7 @@
 package com.vmware.photon.controller.model.adapters.azure.stats;
 
 import static com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants.AZURE_DIAGNOSTIC_STORAGE_ACCOUNT_LINK;
-import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.awaitTermination;
+import static com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils.getAdapterExecutor;
 
 import java.io.IOException;
 import java.net.URI;
@@ -25,7 +25,6 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
@@ -56,8 +55,8 @@ import com.vmware.photon.controller.model.adapters.azure.model.stats.Location;
 import com.vmware.photon.controller.model.adapters.azure.model.stats.MetricAvailability;
 import com.vmware.photon.controller.model.adapters.azure.model.stats.MetricDefinitions;
 import com.vmware.photon.controller.model.adapters.azure.model.stats.TableInfo;
+import com.vmware.photon.controller.model.adapters.azure.utils.AzureClientManager;
 import com.vmware.photon.controller.model.adapters.azure.utils.AzureStatsNormalizer;
-import com.vmware.photon.controller.model.adapters.azure.utils.AzureUtils;
 import com.vmware.photon.controller.model.adapters.util.AdapterUtils;
 import com.vmware.photon.controller.model.constants.PhotonModelConstants;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeStateWithDescription;
@@ -93,21 +92,6 @@ public class AzureComputeStatsGatherer extends StatelessService {
             AzureConstants.PERCENT_MEMORY_AVAILABLE, AzureConstants.PERCENT_MEMORY_USED,
             AzureConstants.DISK_READ_BYTES_PER_SECOND, AzureConstants.DISK_WRITE_BYTES_PER_SECOND };
 
-    private ExecutorService executorService;
-
-    @Override
-    public void handleStart(Operation startPost) {
-        this.executorService = getHost().allocateExecutor(this);
-        super.handleStart(startPost);
-    }
-
-    @Override
-    public void handleStop(Operation delete) {
-        this.executorService.shutdown();
-        awaitTermination(this, this.executorService);
-        super.handleStop(delete);
-    }
-
     private class AzureStatsDataHolder {
         public ComputeStateWithDescription computeDesc;
         public ComputeStateWithDescription parentDesc;
@@ -244,7 +228,8 @@ public class AzureComputeStatsGatherer extends StatelessService {
     private void getAzureApplicationTokenCredential(AzureStatsDataHolder statsData) {
         if (statsData.credentials == null) {
             try {
-                statsData.credentials = AzureUtils.getAzureConfig(statsData.parentAuth);
+                statsData.credentials = AzureClientManager.getInstance()
+                        .getCredentials(this, statsData.parentAuth);
             } catch (Exception e) {
                 logSevere(e);
             }
@@ -358,7 +343,7 @@ public class AzureComputeStatsGatherer extends StatelessService {
             request.setTimestamp(timeStamp);
             request.setMetricName(metricName);
             AzureMetricsHandler handler = new AzureMetricsHandler(this, statsData);
-            getMetricStatisticsAsync(request, handler);
+            getMetricStatisticsAsync(statsData.parentAuth, request, handler);
         }
     }
 
@@ -415,19 +400,21 @@ public class AzureComputeStatsGatherer extends StatelessService {
     }
 
     /**
-     * Uses the executorService to kick of a new Callable,
+     * Uses the executor of the subscription to kick of a new Callable,
      * which in turn patches back to the AsyncHandler that is passed.
      *
+     * @param parentAuth
+     * The auth state of the subscription the request is queued under.
      * @param request
      * The request object
      * @param asyncHandler
      * The Asynchronous handler that will be called.
      * @return
      */
-    public void getMetricStatisticsAsync(
+    public void getMetricStatisticsAsync(AuthCredentialsServiceState parentAuth,
             final AzureMetricRequest request,
             final AsyncHandler<AzureMetricRequest, AzureMetricResponse> asyncHandler) {
-        this.executorService.submit(new Runnable() {
+        getAdapterExecutor(this, parentAuth).submit(new Runnable() {
             @Override
             public void run() {
                 AzureMetricResponse response = new AzureMetricResponse();
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.azure.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.microsoft.aad.adal4j.AuthenticationContext;
+import com.microsoft.aad.adal4j.AuthenticationResult;
+import com.microsoft.aad.adal4j.ClientCredential;
+import com.microsoft.azure.credentials.ApplicationTokenCredentials;
+import com.microsoft.azure.credentials.AzureEnvironment;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.AuthCredentialsService.AuthCredentialsServiceState;
+
+/**
+ * Holds the Azure credentials and the http client shared by the Azure adapters, so that the AAD
+ * tokens and the TLS connections to Azure are reused across enumeration cycles and stats
+ * requests.
+ *
+ * The credentials are cached by auth link and subscription. Their token is acquired once and
+ * refreshed shortly before it expires, instead of on every request. Credentials not used for
+ * longer than {@link #MAX_IDLE_SECONDS_PROPERTY} are evicted.
+ *
+ * All the SDK clients are built from the single {@link #getHttpClient()}, and so share its
+ * connection pool and dispatcher. The clients must not shut it down.
+ */
+public class AzureClientManager {
+    public static final String MAX_IDLE_SECONDS_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "AzureClientManager.maxIdleSeconds";
+    public static final String TOKEN_REFRESH_MARGIN_SECONDS_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "AzureClientManager.tokenRefreshMarginSeconds";
+    public static final String MAX_REQUESTS_PER_HOST_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "AzureClientManager.maxRequestsPerHost";
+
+    private static final int DEFAULT_MAX_IDLE_SECONDS = 30 * 60;
+    private static final int DEFAULT_TOKEN_REFRESH_MARGIN_SECONDS = 5 * 60;
+    // all the management calls go to the same host
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = 64;
+
+    public static final String STAT_NAME_CREDENTIALS_CACHE_HIT_COUNT = "AzureCredentialsCacheHitCount";
+    public static final String STAT_NAME_CREDENTIALS_CACHE_MISS_COUNT = "AzureCredentialsCacheMissCount";
+    public static final String STAT_NAME_CREDENTIALS_CACHE_EVICTION_COUNT = "AzureCredentialsCacheEvictionCount";
+    public static final String STAT_NAME_CREDENTIALS_CACHE_SIZE = "AzureCredentialsCacheSize";
+    public static final String STAT_NAME_TOKEN_ACQUIRE_COUNT = "AzureTokenAcquireCount";
+
+    private static final AzureClientManager INSTANCE = new AzureClientManager(
+            TimeUnit.SECONDS.toMicros(Integer.getInteger(MAX_IDLE_SECONDS_PROPERTY,
+                    DEFAULT_MAX_IDLE_SECONDS)),
+            TimeUnit.SECONDS.toMicros(Integer.getInteger(TOKEN_REFRESH_MARGIN_SECONDS_PROPERTY,
+                    DEFAULT_TOKEN_REFRESH_MARGIN_SECONDS)));
+
+    private final ConcurrentHashMap<String, CachedTokenCredentials> credentials =
+            new ConcurrentHashMap<>();
+    private final long maxIdleMicros;
+    private final long tokenRefreshMarginMicros;
+    private volatile OkHttpClient httpClient;
+
+    // runs the token requests of adal4j, which would otherwise create a thread per request
+    private final ExecutorService tokenExecutor;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong tokenAcquireCount = new AtomicLong();
+    private final AtomicLong lastIdleCheckMicros = new AtomicLong(Utils.getNowMicrosUtc());
+
+    AzureClientManager(long maxIdleMicros, long tokenRefreshMarginMicros) {
+        this.maxIdleMicros = maxIdleMicros;
+        this.tokenRefreshMarginMicros = tokenRefreshMarginMicros;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.tokenExecutor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "azure-token-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static AzureClientManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the credentials cached for the auth link and subscription of the given auth state.
+     * If there are none, or the cached ones were created from a different key or secret, new
+     * credentials are cached. The token is acquired on first use.
+     *
+     * The counters of the cache are published as stats of the calling service.
+     */
+    public ApplicationTokenCredentials getCredentials(StatelessService service,
+            AuthCredentialsServiceState parentAuth) {
+        evictIdleCredentials();
+
+        String clientId = parentAuth.privateKeyId;
+        String clientKey = parentAuth.privateKey;
+        String tenantId = parentAuth.customProperties.get(AzureConstants.AZURE_TENANT_ID);
+        String cacheKey = parentAuth.documentSelfLink + "~" + parentAuth.userLink;
+
+        CachedTokenCredentials cached = this.credentials.compute(cacheKey, (k, c) -> {
+            if (c != null && Objects.equals(c.getClientId(), clientId)
+                    && Objects.equals(c.getSecret(), clientKey)
+                    && Objects.equals(c.getDomain(), tenantId)) {
+                this.hitCount.incrementAndGet();
+                return c;
+            }
+            if (c != null) {
+                // the auth state was updated
+                this.evictionCount.incrementAndGet();
+            }
+            this.missCount.incrementAndGet();
+            return new CachedTokenCredentials(clientId, tenantId, clientKey,
+                    AzureEnvironment.AZURE);
+        });
+        cached.lastAccessMicros = Utils.getNowMicrosUtc();
+        if (service != null) {
+            publishStats(service);
+        }
+        return cached;
+    }
+
+    /**
+     * Returns the http client the Azure SDK clients are built from, through
+     * {@link OkHttpClient#newBuilder()}.
+     */
+    public OkHttpClient getHttpClient() {
+        if (this.httpClient == null) {
+            synchronized (this) {
+                if (this.httpClient == null) {
+                    Dispatcher dispatcher = new Dispatcher();
+                    int maxRequestsPerHost = Integer.getInteger(MAX_REQUESTS_PER_HOST_PROPERTY,
+                            DEFAULT_MAX_REQUESTS_PER_HOST);
+                    dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(),
+                            2 * maxRequestsPerHost));
+                    dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+                    this.httpClient = new OkHttpClient.Builder()
+                            .dispatcher(dispatcher)
+                            .build();
+                }
+            }
+        }
+        return this.httpClient;
+    }
+
+    /**
+     * Publishes the counters of the cache as stats of the service.
+     */
+    private void publishStats(StatelessService service) {
+        service.setStat(STAT_NAME_CREDENTIALS_CACHE_HIT_COUNT, this.hitCount.get());
+        service.setStat(STAT_NAME_CREDENTIALS_CACHE_MISS_COUNT, this.missCount.get());
+        service.setStat(STAT_NAME_CREDENTIALS_CACHE_EVICTION_COUNT, this.evictionCount.get());
+        service.setStat(STAT_NAME_CREDENTIALS_CACHE_SIZE, this.credentials.size());
+        service.setStat(STAT_NAME_TOKEN_ACQUIRE_COUNT, this.tokenAcquireCount.get());
+    }
+
+    /**
+     * Drops all the cached credentials and closes the idle connections.
+     */
+    public void cleanUp() {
+        this.credentials.clear();
+        OkHttpClient client = this.httpClient;
+        if (client != null) {
+            client.connectionPool().evictAll();
+        }
+    }
+
+    int size() {
+        return this.credentials.size();
+    }
+
+    long getTokenAcquireCount() {
+        return this.tokenAcquireCount.get();
+    }
+
+    /**
+     * Evicts the idle credentials. The check runs at most twice per idle period, on the thread
+     * that happens to access the cache at that time.
+     */
+    private void evictIdleCredentials() {
+        long now = Utils.getNowMicrosUtc();
+        long lastCheck = this.lastIdleCheckMicros.get();
+        if (now - lastCheck < this.maxIdleMicros / 2
+                || !this.lastIdleCheckMicros.compareAndSet(lastCheck, now)) {
+            return;
+        }
+        List<String> idle = new ArrayList<>();
+        for (Entry<String, CachedTokenCredentials> entry : this.credentials.entrySet()) {
+            if (now - entry.getValue().lastAccessMicros > this.maxIdleMicros) {
+                idle.add(entry.getKey());
+            }
+        }
+        for (String key : idle) {
+            CachedTokenCredentials c = this.credentials.get(key);
+            if (c != null && now - c.lastAccessMicros > this.maxIdleMicros
+                    && this.credentials.remove(key, c)) {
+                this.evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Acquires a token from AAD. Overridden by the tests.
+     */
+    protected AuthenticationResult acquireToken(ApplicationTokenCredentials credentials)
+            throws Exception {
+        AuthenticationContext context = new AuthenticationContext(
+                credentials.getEnvironment().getAuthenticationEndpoint()
+                        + credentials.getDomain(),
+                credentials.getEnvironment().isValidateAuthority(), this.tokenExecutor);
+        return context.acquireToken(credentials.getEnvironment().getTokenAudience(),
+                new ClientCredential(credentials.getClientId(), credentials.getSecret()), null)
+                .get();
+    }
+
+    /**
+     * Credentials keeping their token until shortly before it expires. The SDK clients ask for
+     * the token on every request, and refresh it when a request is rejected.
+     */
+    class CachedTokenCredentials extends ApplicationTokenCredentials {
+        private AuthenticationResult authenticationResult;
+        private long refreshAtMicros;
+        volatile long lastAccessMicros = Utils.getNowMicrosUtc();
+
+        CachedTokenCredentials(String clientId, String domain, String secret,
+                AzureEnvironment environment) {
+            super(clientId, domain, secret, environment);
+        }
+
+        @Override
+        public synchronized String getToken() throws IOException {
+            this.lastAccessMicros = Utils.getNowMicrosUtc();
+            if (this.authenticationResult == null
+                    || this.authenticationResult.getAccessToken() == null
+                    || this.lastAccessMicros >= this.refreshAtMicros) {
+                refreshToken();
+            }
+            return this.authenticationResult.getAccessToken();
+        }
+
+        @Override
+        public synchronized void refreshToken() throws IOException {
+            AuthenticationResult result;
+            try {
+                result = acquireToken(this);
+            } catch (Exception e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            AzureClientManager.this.tokenAcquireCount.incrementAndGet();
+
+            long expiresAtMicros = result.getExpiresOnDate() != null
+                    ? TimeUnit.MILLISECONDS.toMicros(result.getExpiresOnDate().getTime())
+                    : Utils.getNowMicrosUtc();
+            this.authenticationResult = result;
+            this.refreshAtMicros = expiresAtMicros
+                    - AzureClientManager.this.tokenRefreshMarginMicros;
+        }
+    }
+}
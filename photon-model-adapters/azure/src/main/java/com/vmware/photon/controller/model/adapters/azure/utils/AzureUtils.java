@@ -22,7 +22,9 @@ import com.microsoft.azure.credentials.ApplicationTokenCredentials;
 import com.microsoft.azure.credentials.AzureEnvironment;
 import okhttp3.OkHttpClient;
 
+import com.vmware.photon.controller.model.adapters.azure.AzureUriPaths;
 import com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants;
+import com.vmware.photon.controller.model.adapters.util.AdapterIOExecutor;
 
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.services.common.AuthCredentialsService.AuthCredentialsServiceState;
@@ -34,6 +36,20 @@ public class AzureUtils {
     private static final int EXECUTOR_SHUTDOWN_INTERVAL_MINUTES = 5;
     private static final Pattern RESOURCE_GROUP_NAME_PATTERN = Pattern.compile(".*/resourcegroups/([^/]*)");
 
+    /**
+     * Returns the executor running the tasks of the given Azure subscription on the shared adapter
+     * executor of the host. The tasks are queued per subscription, which Azure throttles the
+     * calls by, so that a busy subscription does not hold up the others. It is also used as the
+     * callback executor of the Retrofit clients, which can not report a rejected callback, so the
+     * tasks submitted once the queue is full run on the submitting thread. The executor does not
+     * need to be shut down; shutting it down leaves the shared executor running.
+     */
+    public static ExecutorService getAdapterExecutor(StatelessService service,
+            AuthCredentialsServiceState parentAuth) {
+        return AdapterIOExecutor.getInstance(service.getHost()).getExecutor(service,
+                AzureUriPaths.PROVISIONING_AZURE + "~" + parentAuth.userLink);
+    }
+
     /**
      * Waits for termination of given executor service.
      */
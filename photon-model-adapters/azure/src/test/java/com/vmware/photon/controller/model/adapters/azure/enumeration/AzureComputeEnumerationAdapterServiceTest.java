@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.azure.enumeration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants;
+import com.vmware.photon.controller.model.adapters.azure.model.vm.InstanceView;
+import com.vmware.photon.controller.model.adapters.azure.model.vm.InstanceViewStatus;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.photon.controller.model.resources.ComputeService.PowerState;
+
+/**
+ * Unit test for {@link AzureComputeEnumerationAdapterService}
+ */
+public class AzureComputeEnumerationAdapterServiceTest {
+    private static final String VM_ID = "/subscriptions/sub/resourcegroups/rg/providers/"
+            + "microsoft.compute/virtualmachines/vm-1";
+    private static final String NIC_ID = "/subscriptions/sub/resourcegroups/rg/providers/"
+            + "microsoft.network/networkinterfaces/nic-1";
+    private static final String PUBLIC_IP_ID = "/subscriptions/sub/resourcegroups/rg/providers/"
+            + "microsoft.network/publicipaddresses/ip-1";
+    private static final String ADDRESS = "10.0.0.1";
+    private static final String CREATION_TIME = "2016-10-01T10:00:00.000+00:00";
+    private static final long CREATION_TIME_MICROS = TimeUnit.MILLISECONDS.toMicros(
+            OffsetDateTime.parse(CREATION_TIME).toInstant().toEpochMilli());
+
+    private final Map<String, String> vmNetworkInterfaceIds = new HashMap<>();
+    private final Map<String, InstanceView> instanceViews = new HashMap<>();
+    private final Map<String, String> publicIPAddressIds = new HashMap<>();
+    private final Map<String, String> publicIPAddresses = new HashMap<>();
+
+    @Test
+    public void testUnchangedComputeStateIsSkipped() {
+        ComputeState resource = createComputeState();
+        addInstanceView(AzureConstants.AZURE_VM_POWER_STATE_RUNNING, CREATION_TIME);
+        addPublicIPAddress(ADDRESS);
+
+        assertTrue(getChangedComputeStates(resource).isEmpty());
+        assertEquals(PowerState.ON, resource.powerState);
+        assertEquals(Long.valueOf(CREATION_TIME_MICROS), resource.creationTimeMicros);
+        assertEquals(ADDRESS, resource.address);
+    }
+
+    @Test
+    public void testMissingDetailsDoNotChangeComputeState() {
+        ComputeState resource = createComputeState();
+        assertTrue(getChangedComputeStates(resource).isEmpty());
+
+        // a network interface without public IP address
+        this.vmNetworkInterfaceIds.put(VM_ID, NIC_ID);
+        this.instanceViews.put(VM_ID, new InstanceView());
+        assertTrue(getChangedComputeStates(resource).isEmpty());
+
+        this.publicIPAddressIds.put(NIC_ID, PUBLIC_IP_ID);
+        assertTrue(getChangedComputeStates(resource).isEmpty());
+        assertEquals(ADDRESS, resource.address);
+        assertEquals(PowerState.ON, resource.powerState);
+    }
+
+    @Test
+    public void testChangedPowerStateIsPatched() {
+        ComputeState resource = createComputeState();
+        addInstanceView(AzureConstants.AZURE_VM_POWER_STATE_DEALLOCATED, CREATION_TIME);
+
+        List<ComputeState> changed = getChangedComputeStates(resource);
+        assertEquals(1, changed.size());
+        assertSame(resource, changed.get(0));
+        assertEquals(PowerState.OFF, resource.powerState);
+    }
+
+    @Test
+    public void testChangedCreationTimeIsPatched() {
+        ComputeState resource = createComputeState();
+        resource.creationTimeMicros = null;
+        addInstanceView(AzureConstants.AZURE_VM_POWER_STATE_RUNNING, CREATION_TIME);
+
+        assertEquals(Arrays.asList(resource), getChangedComputeStates(resource));
+        assertEquals(Long.valueOf(CREATION_TIME_MICROS), resource.creationTimeMicros);
+
+        // an invalid provisioning time is ignored
+        addInstanceView(AzureConstants.AZURE_VM_POWER_STATE_RUNNING, "yesterday");
+        assertTrue(getChangedComputeStates(resource).isEmpty());
+        assertEquals(Long.valueOf(CREATION_TIME_MICROS), resource.creationTimeMicros);
+    }
+
+    @Test
+    public void testChangedAddressIsPatched() {
+        ComputeState resource = createComputeState();
+        resource.address = null;
+        addPublicIPAddress(ADDRESS);
+
+        assertEquals(Arrays.asList(resource), getChangedComputeStates(resource));
+        assertEquals(ADDRESS, resource.address);
+
+        addPublicIPAddress("10.0.0.2");
+        assertEquals(Arrays.asList(resource), getChangedComputeStates(resource));
+        assertEquals("10.0.0.2", resource.address);
+    }
+
+    @Test
+    public void testOnlyChangedComputeStatesArePatched() {
+        ComputeState unchanged = createComputeState();
+        ComputeState changed = createComputeState();
+        changed.id = VM_ID + "-changed";
+        addInstanceView(AzureConstants.AZURE_VM_POWER_STATE_RUNNING, CREATION_TIME);
+        this.instanceViews.put(changed.id, createInstanceView(
+                AzureConstants.AZURE_VM_POWER_STATE_DEALLOCATED, CREATION_TIME));
+
+        assertEquals(Collections.singletonList(changed), AzureComputeEnumerationAdapterService
+                .getChangedComputeStates(Arrays.asList(unchanged, changed),
+                        this.vmNetworkInterfaceIds, this.instanceViews,
+                        this.publicIPAddressIds, this.publicIPAddresses));
+    }
+
+    private List<ComputeState> getChangedComputeStates(ComputeState resource) {
+        return AzureComputeEnumerationAdapterService.getChangedComputeStates(
+                Collections.singletonList(resource), this.vmNetworkInterfaceIds,
+                this.instanceViews, this.publicIPAddressIds, this.publicIPAddresses);
+    }
+
+    private ComputeState createComputeState() {
+        ComputeState resource = new ComputeState();
+        resource.id = VM_ID;
+        resource.powerState = PowerState.ON;
+        resource.creationTimeMicros = CREATION_TIME_MICROS;
+        resource.address = ADDRESS;
+        return resource;
+    }
+
+    private void addInstanceView(String powerState, String creationTime) {
+        this.instanceViews.put(VM_ID, createInstanceView(powerState, creationTime));
+    }
+
+    private InstanceView createInstanceView(String powerState, String creationTime) {
+        InstanceViewStatus provisioningStatus = new InstanceViewStatus();
+        provisioningStatus.code = AzureConstants.AZURE_VM_PROVISIONING_STATE_SUCCEEDED;
+        provisioningStatus.time = creationTime;
+        InstanceViewStatus powerStatus = new InstanceViewStatus();
+        powerStatus.code = powerState;
+
+        InstanceView instanceView = new InstanceView();
+        instanceView.statuses = new ArrayList<>(Arrays.asList(provisioningStatus, powerStatus));
+        return instanceView;
+    }
+
+    private void addPublicIPAddress(String address) {
+        this.vmNetworkInterfaceIds.put(VM_ID, NIC_ID);
+        this.publicIPAddressIds.put(NIC_ID, PUBLIC_IP_ID);
+        this.publicIPAddresses.put(PUBLIC_IP_ID, address);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.azure.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link AzureBlobUsageCache}
+ */
+public class AzureBlobUsageCacheTest {
+    private static final String BLOB = "https://account.blob.core.windows.net/vhds/disk.vhd";
+
+    @Test
+    public void testUsedBytesAreKeptUntilBlobChanges() {
+        AzureBlobUsageCache cache = new AzureBlobUsageCache(TimeUnit.HOURS.toMicros(1));
+        assertNull(cache.get(BLOB, "etag-1"));
+
+        cache.put(BLOB, "etag-1", 512);
+        assertEquals(512L, cache.get(BLOB, "etag-1").longValue());
+        assertNull(cache.get(BLOB, "etag-2"));
+
+        cache.put(BLOB, "etag-2", 1024);
+        assertEquals(1024L, cache.get(BLOB, "etag-2").longValue());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testIdleBlobsAreEvicted() throws InterruptedException {
+        AzureBlobUsageCache cache = new AzureBlobUsageCache(TimeUnit.MILLISECONDS.toMicros(10));
+        cache.put(BLOB, "etag-1", 512);
+        cache.evictIdle();
+        assertEquals(1, cache.size());
+
+        Thread.sleep(50);
+        cache.evictIdle();
+        assertEquals(0, cache.size());
+    }
+}
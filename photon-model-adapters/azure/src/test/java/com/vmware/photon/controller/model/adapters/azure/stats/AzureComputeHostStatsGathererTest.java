@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.azure.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.adapterapi.ComputeStatsResponse.ComputeStats;
+import com.vmware.photon.controller.model.constants.PhotonModelConstants;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsService;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsService.ResourceMetrics;
+import com.vmware.photon.controller.model.tasks.monitoring.StatsUtil;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
+import com.vmware.xenon.common.UriUtils;
+
+/**
+ * Unit test for {@link AzureComputeHostStatsGatherer}
+ */
+public class AzureComputeHostStatsGathererTest {
+    private static final String CPU = PhotonModelConstants.CPU_UTILIZATION_PERCENT;
+    private static final String MEMORY = PhotonModelConstants.MEMORY_USED_PERCENT;
+
+    @Test
+    public void testLatestValuesAreAveraged() {
+        ComputeStats stats = AzureComputeHostStatsGatherer.aggregateComputeStatsResponses(
+                "/resources/compute/host", Arrays.asList(
+                        metrics("vm-1", 100, CPU, 90.0),
+                        metrics("vm-1", 200, CPU, 10.0),
+                        metrics("vm-2", 150, CPU, 30.0),
+                        metrics("vm-2", 150, MEMORY, 40.0),
+                        metrics("vm-2", 300,
+                                PhotonModelConstants.LAST_SUCCESSFUL_STATS_COLLECTION_TIME,
+                                300.0)));
+
+        assertEquals("/resources/compute/host", stats.computeLink);
+        assertEquals(2, stats.statValues.size());
+
+        // the older value of vm-1 is ignored
+        ServiceStat cpu = stats.statValues.get(CPU).get(0);
+        assertEquals(20.0, cpu.latestValue, 0);
+        assertEquals(200L, cpu.sourceTimeMicrosUtc.longValue());
+
+        // only vm-2 reports memory
+        ServiceStat memory = stats.statValues.get(MEMORY).get(0);
+        assertEquals(40.0, memory.latestValue, 0);
+
+        assertFalse(stats.statValues
+                .containsKey(PhotonModelConstants.LAST_SUCCESSFUL_STATS_COLLECTION_TIME));
+    }
+
+    private static ResourceMetrics metrics(String computeId, long timestampMicros,
+            String metricName, double value) {
+        ResourceMetrics metrics = new ResourceMetrics();
+        metrics.documentSelfLink = UriUtils.buildUriPath(ResourceMetricsService.FACTORY_LINK,
+                StatsUtil.getMetricKey(computeId, timestampMicros));
+        metrics.timestampMicrosUtc = timestampMicros;
+        metrics.entries = new HashMap<>();
+        metrics.entries.put(metricName, value);
+        return metrics;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.azure.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.aad.adal4j.AuthenticationResult;
+import com.microsoft.azure.credentials.ApplicationTokenCredentials;
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.adapters.azure.constants.AzureConstants;
+import com.vmware.xenon.services.common.AuthCredentialsService.AuthCredentialsServiceState;
+
+/**
+ * Unit test for {@link AzureClientManager}
+ */
+public class AzureClientManagerTest {
+
+    /**
+     * Hands out tokens valid for the given number of seconds, without calling AAD.
+     */
+    private static class TestClientManager extends AzureClientManager {
+        private final long expiresInSeconds;
+        private int tokenIndex;
+
+        TestClientManager(long maxIdleMicros, long tokenRefreshMarginMicros,
+                long expiresInSeconds) {
+            super(maxIdleMicros, tokenRefreshMarginMicros);
+            this.expiresInSeconds = expiresInSeconds;
+        }
+
+        @Override
+        protected AuthenticationResult acquireToken(ApplicationTokenCredentials credentials) {
+            return new AuthenticationResult("Bearer", "token-" + (++this.tokenIndex), null,
+                    this.expiresInSeconds, null, null, false);
+        }
+    }
+
+    @Test
+    public void testCredentialsAreCachedByAuthAndSubscription() {
+        AzureClientManager manager = new TestClientManager(TimeUnit.MINUTES.toMicros(30), 0, 3600);
+
+        ApplicationTokenCredentials c1 = manager.getCredentials(null, auth("auth-1", "sub-1", "s"));
+        assertSame(c1, manager.getCredentials(null, auth("auth-1", "sub-1", "s")));
+        assertNotSame(c1, manager.getCredentials(null, auth("auth-1", "sub-2", "s")));
+        assertNotSame(c1, manager.getCredentials(null, auth("auth-2", "sub-1", "s")));
+        assertEquals(3, manager.size());
+
+        // an updated secret replaces the cached credentials
+        ApplicationTokenCredentials c2 = manager.getCredentials(null, auth("auth-1", "sub-1", "t"));
+        assertNotSame(c1, c2);
+        assertEquals("t", c2.getSecret());
+        assertEquals(3, manager.size());
+    }
+
+    @Test
+    public void testIdleCredentialsAreEvicted() throws InterruptedException {
+        AzureClientManager manager = new TestClientManager(TimeUnit.MILLISECONDS.toMicros(10), 0,
+                3600);
+
+        ApplicationTokenCredentials c1 = manager.getCredentials(null, auth("auth-1", "sub-1", "s"));
+        Thread.sleep(50);
+        manager.getCredentials(null, auth("auth-2", "sub-1", "s"));
+        assertEquals(1, manager.size());
+        assertNotSame(c1, manager.getCredentials(null, auth("auth-1", "sub-1", "s")));
+    }
+
+    @Test
+    public void testTokenIsRefreshedAheadOfExpiry() throws Exception {
+        // tokens expire in one hour, and are renewed up to five minutes before
+        AzureClientManager manager = new TestClientManager(TimeUnit.MINUTES.toMicros(30),
+                TimeUnit.MINUTES.toMicros(5), 3600);
+        ApplicationTokenCredentials credentials = manager.getCredentials(null,
+                auth("auth-1", "sub-1", "s"));
+        assertEquals("token-1", credentials.getToken());
+        assertEquals("token-1", credentials.getToken());
+        assertEquals(1, manager.getTokenAcquireCount());
+
+        // rejected by Azure
+        credentials.refreshToken();
+        assertEquals("token-2", credentials.getToken());
+
+        // tokens expiring within the margin are renewed on every use
+        manager = new TestClientManager(TimeUnit.MINUTES.toMicros(30),
+                TimeUnit.MINUTES.toMicros(5), 60);
+        credentials = manager.getCredentials(null, auth("auth-1", "sub-1", "s"));
+        assertEquals("token-1", credentials.getToken());
+        assertEquals("token-2", credentials.getToken());
+        assertEquals(2, manager.getTokenAcquireCount());
+    }
+
+    private static AuthCredentialsServiceState auth(String link, String subscription,
+            String secret) {
+        AuthCredentialsServiceState auth = new AuthCredentialsServiceState();
+        auth.documentSelfLink = link;
+        auth.userLink = subscription;
+        auth.privateKeyId = "client";
+        auth.privateKey = secret;
+        auth.customProperties = new HashMap<>();
+        auth.customProperties.put(AzureConstants.AZURE_TENANT_ID, "tenant");
+        return auth;
+    }
+}
@@ -26,13 +26,9 @@ import static com.vmware.photon.controller.model.adapters.gcp.utils.GCPUtils.ass
 import static com.vmware.photon.controller.model.adapters.gcp.utils.GCPUtils.assignPowerState;
 import static com.vmware.photon.controller.model.adapters.gcp.utils.GCPUtils.extractActualInstanceType;
 import static com.vmware.photon.controller.model.adapters.gcp.utils.GCPUtils.extractRegionFromZone;
-import static com.vmware.photon.controller.model.adapters.gcp.utils.GCPUtils.privateKeyFromPkcs8;
 import static com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription.ENVIRONMENT_NAME_GCP;
 
-import java.io.IOException;
 import java.net.URI;
-import java.security.GeneralSecurityException;
-import java.security.PrivateKey;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -54,12 +50,10 @@ import com.vmware.photon.controller.model.UriPaths;
 import com.vmware.photon.controller.model.adapterapi.ComputeEnumerateResourceRequest;
 import com.vmware.photon.controller.model.adapterapi.EnumerationAction;
 import com.vmware.photon.controller.model.adapters.gcp.GCPUriPaths;
-import com.vmware.photon.controller.model.adapters.gcp.podo.authorization.GCPAccessTokenResponse;
 import com.vmware.photon.controller.model.adapters.gcp.podo.vm.GCPDisk;
 import com.vmware.photon.controller.model.adapters.gcp.podo.vm.GCPInstance;
 import com.vmware.photon.controller.model.adapters.gcp.podo.vm.GCPInstancesList;
-import com.vmware.photon.controller.model.adapters.gcp.utils.GCPUtils;
-import com.vmware.photon.controller.model.adapters.gcp.utils.JSONWebToken;
+import com.vmware.photon.controller.model.adapters.gcp.utils.GCPAccessTokenCache;
 import com.vmware.photon.controller.model.adapters.util.AdapterUtils;
 import com.vmware.photon.controller.model.adapters.util.enums.EnumerationStages;
 import com.vmware.photon.controller.model.resources.ComputeDescriptionService;
@@ -190,19 +184,11 @@ public class GCPEnumerationAdapterService extends StatelessService {
             getResourceGroup(ctx, EnumerationStages.CLIENT);
             break;
         case CLIENT:
-            try {
-                // The access token will expire in one hour.
-                // And this access token can be only used for readonly operations.
-                getAccessToken(ctx, ctx.userEmail,
-                        Collections.singleton(ComputeScopes.COMPUTE_READONLY),
-                        privateKeyFromPkcs8(ctx.privateKey), EnumerationStages.ENUMERATE);
-            } catch (Throwable e) {
-                logSevere(e);
-                ctx.error = e;
-                ctx.stage = EnumerationStages.ERROR;
-                handleEnumerationRequest(ctx);
-                return;
-            }
+            // The access token will expire in one hour.
+            // And this access token can be only used for readonly operations.
+            getAccessToken(ctx, ctx.userEmail,
+                    Collections.singleton(ComputeScopes.COMPUTE_READONLY),
+                    ctx.privateKey, EnumerationStages.ENUMERATE);
             break;
         case ENUMERATE:
             switch (ctx.enumRequest.enumerationAction) {
@@ -809,26 +795,26 @@ public class GCPEnumerationAdapterService extends StatelessService {
 
     /**
      * Method to get the access token to send RESTful APIs later.
-     * Every access token is only valid for an hour.
+     * Every access token is only valid for an hour, and is shared with the other requests of
+     * the same service account until shortly before it expires.
      * @param ctx The Enumeration Context.
      * @param clientEmail The client email in service account's credential file.
      * @param scopes The limitation of application's access.
-     * @param privateKey The key generated by private key in service account's credential file.
-     * @throws GeneralSecurityException The exception will be thrown when private key is invalid.
-     * @throws IOException The exception will be thrown when inputs are mal-formatted.
+     * @param privateKey The private key in service account's credential file.
      */
     private void getAccessToken(EnumerationContext ctx, String clientEmail,
-            Collection<String> scopes, PrivateKey privateKey, EnumerationStages next)
-            throws GeneralSecurityException, IOException {
-        Consumer<GCPAccessTokenResponse> onSuccess = response -> {
-            ctx.accessToken = response.access_token;
+            Collection<String> scopes, String privateKey, EnumerationStages next) {
+        Consumer<String> onSuccess = accessToken -> {
+            ctx.accessToken = accessToken;
             ctx.stage = next;
             handleEnumerationRequest(ctx);
         };
 
-        JSONWebToken jwt = new JSONWebToken(clientEmail, scopes, privateKey);
-        String assertion = jwt.getAssertion();
-        GCPUtils.getAccessToken(this, assertion, onSuccess, getFailureConsumer(ctx));
+        GCPAccessTokenCache.getInstance().getAccessToken(this, clientEmail, scopes, privateKey,
+                onSuccess, failure -> {
+                    logSevere(failure);
+                    getFailureConsumer(ctx).accept(failure);
+                });
     }
 
     /**
@@ -13,10 +13,8 @@
 
 package com.vmware.photon.controller.model.adapters.gcp.stats;
 
-import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.GeneralSecurityException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -33,12 +31,10 @@ import com.vmware.photon.controller.model.adapterapi.ComputeStatsRequest;
 import com.vmware.photon.controller.model.adapterapi.ComputeStatsResponse.ComputeStats;
 import com.vmware.photon.controller.model.adapters.gcp.GCPUriPaths;
 import com.vmware.photon.controller.model.adapters.gcp.constants.GCPConstants;
-import com.vmware.photon.controller.model.adapters.gcp.podo.authorization.GCPAccessTokenResponse;
 import com.vmware.photon.controller.model.adapters.gcp.podo.stats.GCPMetricResponse;
 import com.vmware.photon.controller.model.adapters.gcp.podo.stats.TimeSeries;
+import com.vmware.photon.controller.model.adapters.gcp.utils.GCPAccessTokenCache;
 import com.vmware.photon.controller.model.adapters.gcp.utils.GCPStatsNormalizer;
-import com.vmware.photon.controller.model.adapters.gcp.utils.GCPUtils;
-import com.vmware.photon.controller.model.adapters.gcp.utils.JSONWebToken;
 import com.vmware.photon.controller.model.adapters.util.AdapterUtils;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeStateWithDescription;
 import com.vmware.photon.controller.model.resources.ResourceGroupService.ResourceGroupState;
@@ -354,12 +350,7 @@ public class GCPStatsService extends StatelessService {
             getProjectId(statsData, StatsCollectionStage.ACCESS_TOKEN);
             break;
         case ACCESS_TOKEN:
-            try {
-                getAccessToken(statsData, StatsCollectionStage.STATS);
-            } catch (GeneralSecurityException | IOException e) {
-                handleError(statsData, e);
-                return;
-            }
+            getAccessToken(statsData, StatsCollectionStage.STATS);
             break;
         case STATS:
             getStats(statsData, StatsCollectionStage.FINISHED);
@@ -481,23 +472,20 @@ public class GCPStatsService extends StatelessService {
 
     /**
      * Gets the access token required for making requests to the monitoring API.
+     * The token is shared with the other requests of the same service account.
      * @param statsData The GCPStatsDataHolder instance containing statsRequest.
      * @param nextStage The next stage of StatsCollectionStage for the service.
-     * @throws GeneralSecurityException
-     * @throws IOException
      */
-    private void getAccessToken(GCPStatsDataHolder statsData, StatsCollectionStage nextStage)
-            throws GeneralSecurityException, IOException {
-        Consumer<GCPAccessTokenResponse> onSuccess = (response) -> {
-            statsData.accessToken = response.access_token;
+    private void getAccessToken(GCPStatsDataHolder statsData, StatsCollectionStage nextStage) {
+        Consumer<String> onSuccess = (accessToken) -> {
+            statsData.accessToken = accessToken;
             statsData.stage = nextStage;
             handleStatsRequest(statsData);
         };
 
-        JSONWebToken jwt = new JSONWebToken(statsData.userEmail, GCPConstants.SCOPES,
-                GCPUtils.privateKeyFromPkcs8(statsData.privateKey));
-        String assertion = jwt.getAssertion();
-        GCPUtils.getAccessToken(this, assertion, onSuccess, getFailureConsumer(statsData));
+        GCPAccessTokenCache.getInstance().getAccessToken(this, statsData.userEmail,
+                GCPConstants.SCOPES, statsData.privateKey, onSuccess,
+                getFailureConsumer(statsData));
     }
 
     /**
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.gcp.utils;
+
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.photon.controller.model.adapters.gcp.podo.authorization.GCPAccessTokenResponse;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Caches the GCP access tokens by service account email and scopes, so that the private key is
+ * parsed, and a JSON web token signed and exchanged, once per token lifetime instead of once per
+ * stats or enumeration request.
+ *
+ * A token is renewed in the background once it is within {@link #REFRESH_MARGIN_SECONDS_PROPERTY}
+ * of its expiry, while the requests keep using it. Only requests finding no valid token wait,
+ * and concurrent requests for the same account share a single token request.
+ */
+public class GCPAccessTokenCache {
+    public static final String REFRESH_MARGIN_SECONDS_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "GCPAccessTokenCache.refreshMarginSeconds";
+    private static final int DEFAULT_REFRESH_MARGIN_SECONDS = 5 * 60;
+
+    public static final String STAT_NAME_TOKEN_CACHE_HIT_COUNT = "GCPAccessTokenCacheHitCount";
+    public static final String STAT_NAME_TOKEN_CACHE_MISS_COUNT = "GCPAccessTokenCacheMissCount";
+    public static final String STAT_NAME_TOKEN_REFRESH_COUNT = "GCPAccessTokenRefreshCount";
+    public static final String STAT_NAME_TOKEN_CACHE_SIZE = "GCPAccessTokenCacheSize";
+
+    private static final GCPAccessTokenCache INSTANCE = new GCPAccessTokenCache(
+            TimeUnit.SECONDS.toMicros(Integer.getInteger(REFRESH_MARGIN_SECONDS_PROPERTY,
+                    DEFAULT_REFRESH_MARGIN_SECONDS)),
+            GCPUtils::getAccessToken);
+
+    /**
+     * Exchanges a signed JSON web token for an access token.
+     */
+    interface TokenRequester {
+        void requestToken(StatelessService service, String assertion,
+                Consumer<GCPAccessTokenResponse> onSuccess, Consumer<Throwable> onFailure);
+    }
+
+    private static class Waiter {
+        final Consumer<String> onSuccess;
+        final Consumer<Throwable> onFailure;
+
+        Waiter(Consumer<String> onSuccess, Consumer<Throwable> onFailure) {
+            this.onSuccess = onSuccess;
+            this.onFailure = onFailure;
+        }
+    }
+
+    private static class Entry {
+        final String clientEmail;
+        final Collection<String> scopes;
+        final String privateKeyPem;
+        PrivateKey privateKey;
+        String accessToken;
+        long refreshAtMicros;
+        long expiresAtMicros;
+        // not null while a token request is in flight
+        List<Waiter> waiters;
+
+        Entry(String clientEmail, Collection<String> scopes, String privateKeyPem) {
+            this.clientEmail = clientEmail;
+            this.scopes = scopes;
+            this.privateKeyPem = privateKeyPem;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long refreshMarginMicros;
+    private final TokenRequester tokenRequester;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+
+    GCPAccessTokenCache(long refreshMarginMicros, TokenRequester tokenRequester) {
+        this.refreshMarginMicros = refreshMarginMicros;
+        this.tokenRequester = tokenRequester;
+    }
+
+    public static GCPAccessTokenCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets an access token of the service account for the given scopes, from the cache if it
+     * holds a token that has not expired, or else from the GCP OAuth server.
+     *
+     * The counters of the cache are published as stats of the calling service.
+     * @param service The service with which the token request is to be sent.
+     * @param clientEmail The client email in service account's credential file.
+     * @param scopes The limitation of application's access.
+     * @param privateKeyPem The private key in service account's credential file.
+     * @param onSuccess Success handler, receiving the access token.
+     * @param onFailure Failure handler
+     */
+    public void getAccessToken(StatelessService service, String clientEmail,
+            Collection<String> scopes, String privateKeyPem, Consumer<String> onSuccess,
+            Consumer<Throwable> onFailure) {
+        if (service == null) {
+            // the token request is sent with the service, on behalf of every waiting request
+            onFailure.accept(new IllegalArgumentException("service is required"));
+            return;
+        }
+        Collection<String> sortedScopes = new TreeSet<>(scopes);
+        String cacheKey = clientEmail + "~" + String.join(" ", sortedScopes);
+        Entry entry = this.entries.compute(cacheKey, (k, e) -> {
+            if (e != null && Objects.equals(e.privateKeyPem, privateKeyPem)) {
+                return e;
+            }
+            // new account, or the key of the account was changed
+            return new Entry(clientEmail, sortedScopes, privateKeyPem);
+        });
+
+        String accessToken = null;
+        boolean requestToken = false;
+        long now = Utils.getNowMicrosUtc();
+        synchronized (entry) {
+            if (entry.accessToken != null && now < entry.expiresAtMicros) {
+                this.hitCount.incrementAndGet();
+                accessToken = entry.accessToken;
+                if (now >= entry.refreshAtMicros && entry.waiters == null) {
+                    // renew ahead of expiry, while the current token is still handed out
+                    this.refreshCount.incrementAndGet();
+                    entry.waiters = new ArrayList<>();
+                    requestToken = true;
+                }
+            } else {
+                this.missCount.incrementAndGet();
+                if (entry.waiters == null) {
+                    entry.waiters = new ArrayList<>();
+                    requestToken = true;
+                }
+                entry.waiters.add(new Waiter(onSuccess, onFailure));
+            }
+        }
+
+        publishStats(service);
+        if (requestToken) {
+            requestToken(service, cacheKey, entry);
+        }
+        if (accessToken != null) {
+            onSuccess.accept(accessToken);
+        }
+    }
+
+    /**
+     * Drops all the cached tokens.
+     */
+    public void cleanUp() {
+        this.entries.clear();
+    }
+
+    /**
+     * Signs a JSON web token with the private key of the entry, parsed on first use, and
+     * exchanges it for an access token. The requests waiting on the entry are completed with
+     * the outcome.
+     */
+    private void requestToken(StatelessService service, String cacheKey, Entry entry) {
+        String assertion;
+        try {
+            if (entry.privateKey == null) {
+                entry.privateKey = GCPUtils.privateKeyFromPkcs8(entry.privateKeyPem);
+            }
+            assertion = new JSONWebToken(entry.clientEmail, entry.scopes, entry.privateKey)
+                    .getAssertion();
+        } catch (Throwable t) {
+            // the key is invalid, there is no point in keeping it
+            this.entries.remove(cacheKey, entry);
+            completeWaiters(entry, null, t);
+            return;
+        }
+
+        long requestTimeMicros = Utils.getNowMicrosUtc();
+        this.tokenRequester.requestToken(service, assertion, response -> {
+            if (response == null || response.access_token == null) {
+                completeWaiters(entry, null,
+                        new IllegalStateException("No access token in the GCP response"));
+                return;
+            }
+            updateToken(entry, response, requestTimeMicros);
+            completeWaiters(entry, response.access_token, null);
+        }, t -> completeWaiters(entry, null, t));
+    }
+
+    private void updateToken(Entry entry, GCPAccessTokenResponse response,
+            long requestTimeMicros) {
+        // the token lifetime counts from the request, to stay on the safe side
+        long expiresAtMicros = requestTimeMicros
+                + TimeUnit.SECONDS.toMicros(response.expires_in);
+        synchronized (entry) {
+            entry.accessToken = response.access_token;
+            entry.expiresAtMicros = expiresAtMicros;
+            entry.refreshAtMicros = expiresAtMicros - this.refreshMarginMicros;
+        }
+    }
+
+    private void completeWaiters(Entry entry, String accessToken, Throwable failure) {
+        List<Waiter> waiters;
+        synchronized (entry) {
+            waiters = entry.waiters;
+            entry.waiters = null;
+        }
+        if (waiters == null) {
+            return;
+        }
+        for (Waiter waiter : waiters) {
+            if (failure != null) {
+                waiter.onFailure.accept(failure);
+            } else {
+                waiter.onSuccess.accept(accessToken);
+            }
+        }
+    }
+
+    /**
+     * Publishes the counters of the cache as stats of the service.
+     */
+    private void publishStats(StatelessService service) {
+        service.setStat(STAT_NAME_TOKEN_CACHE_HIT_COUNT, this.hitCount.get());
+        service.setStat(STAT_NAME_TOKEN_CACHE_MISS_COUNT, this.missCount.get());
+        service.setStat(STAT_NAME_TOKEN_REFRESH_COUNT, this.refreshCount.get());
+        service.setStat(STAT_NAME_TOKEN_CACHE_SIZE, this.entries.size());
+    }
+}
@@ -80,6 +80,7 @@ public class GCPUtils {
                 .setBody(String.format(TOKEN_REQUEST_BODY_TEMPLATE, assertion)).setCompletion((o, e) -> {
                     if (e != null) {
                         failure.accept(e);
+                        return;
                     }
                     success.accept(o.getBody(GCPAccessTokenResponse.class));
                 }));
@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vmware.photon.controller.model.UriPaths;
+
+import com.vmware.xenon.common.Service.ServiceOption;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.StatelessService;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Thread pool shared by the adapters of a host for the blocking and callback work of the cloud
+ * SDK clients.
+ *
+ * Each adapter (e.g. AWS, Azure), or each account of an adapter, gets its own named queue in front
+ * of the shared pool, with a quota on the number of its tasks running at the same time, so that a
+ * busy adapter or account can not take all the threads. The queues are bounded: once a queue has
+ * too many pending tasks, new tasks overflow according to the {@link OverflowPolicy} of the
+ * executor they are submitted to. By default they run on the submitting thread, since the SDK
+ * clients and the callback executors handed to them can not report a rejected task to the
+ * operation waiting for it. Submitters that handle a {@link RejectedExecutionException}, e.g. by
+ * retrying later, can ask for it instead, which keeps the I/O off the submitting thread.
+ *
+ * The pending and running task counts and the queue wait and execution times of an adapter are
+ * published as stats of the services using its executor.
+ */
+public class AdapterIOExecutor {
+
+    public static final String THREAD_COUNT_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "AdapterIOExecutor.threadCount";
+    public static final String QUEUE_CAPACITY_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "AdapterIOExecutor.queueCapacity";
+    public static final String ADAPTER_QUOTA_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "AdapterIOExecutor.adapterQuota";
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    public static final String STAT_NAME_QUEUE_DEPTH = "AdapterIOQueueDepth";
+    public static final String STAT_NAME_ACTIVE_COUNT = "AdapterIOActiveCount";
+    public static final String STAT_NAME_REJECTED_COUNT = "AdapterIORejectedCount";
+    public static final String STAT_NAME_CALLER_RUNS_COUNT = "AdapterIOCallerRunsCount";
+    public static final String STAT_NAME_QUEUE_LATENCY_MICROS = "AdapterIOQueueLatencyMicros";
+    public static final String STAT_NAME_EXECUTION_LATENCY_MICROS = "AdapterIOExecutionLatencyMicros";
+
+    // weight of the latest sample in the moving average of the latencies
+    private static final double LATENCY_SAMPLE_WEIGHT = 0.1;
+
+    private static final Map<String, AdapterIOExecutor> EXECUTORS = new ConcurrentHashMap<>();
+
+    /**
+     * What happens to the tasks submitted to a full adapter queue.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The task runs on the submitting thread.
+         */
+        CALLER_RUNS,
+
+        /**
+         * The task is rejected with a {@link RejectedExecutionException}.
+         */
+        REJECT
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final int queueCapacity;
+    private final int adapterQuota;
+    private final Map<String, AdapterQueue> queues = new ConcurrentHashMap<>();
+
+    AdapterIOExecutor(String name, int threadCount, int queueCapacity, int adapterQuota) {
+        this.queueCapacity = queueCapacity;
+        this.adapterQuota = adapterQuota;
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadFactory threadFactory = r -> {
+            Thread t = new Thread(r, name + "/adapter-io-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+        // the adapter queues hand at most their quota of tasks over to the pool, which bounds its
+        // own queue
+        this.pool = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the executor of the given host.
+     */
+    public static AdapterIOExecutor getInstance(ServiceHost host) {
+        return EXECUTORS.computeIfAbsent(host.getId(), id -> {
+            int threadCount = Integer.getInteger(THREAD_COUNT_PROPERTY, Utils.DEFAULT_THREAD_COUNT);
+            return new AdapterIOExecutor(host.getPublicUri().toString(), threadCount,
+                    Integer.getInteger(QUEUE_CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY),
+                    Integer.getInteger(ADAPTER_QUOTA_PROPERTY, Math.max(1, threadCount / 2)));
+        });
+    }
+
+    /**
+     * Shuts down the executor of the given host, if any.
+     */
+    public static void shutdown(ServiceHost host) {
+        AdapterIOExecutor executor = EXECUTORS.remove(host.getId());
+        if (executor != null) {
+            executor.pool.shutdown();
+        }
+    }
+
+    /**
+     * Returns an executor running the tasks of the given adapter on the shared pool, or on the
+     * submitting thread once the queue of the adapter is full. Shutting it down only stops it
+     * from accepting new tasks; the shared pool keeps running.
+     *
+     * @param service The service the stats of the adapter are published on, if any.
+     * @param adapterName The name of the adapter the tasks are accounted to.
+     */
+    public AbstractExecutorService getExecutor(StatelessService service, String adapterName) {
+        return getExecutor(service, adapterName, OverflowPolicy.CALLER_RUNS);
+    }
+
+    /**
+     * Returns an executor running the tasks of the given adapter on the shared pool, with the
+     * given policy for the tasks submitted once the queue of the adapter is full.
+     */
+    public AbstractExecutorService getExecutor(StatelessService service, String adapterName,
+            OverflowPolicy overflowPolicy) {
+        AdapterQueue queue = this.queues.computeIfAbsent(adapterName, n -> new AdapterQueue());
+        return new AdapterExecutorService(queue, service, overflowPolicy);
+    }
+
+    /**
+     * Publishes the stats of the given adapter on the service. The stats are only kept by
+     * services with {@link ServiceOption#INSTRUMENTATION}.
+     */
+    public void publishStats(StatelessService service, String adapterName) {
+        AdapterQueue queue = this.queues.get(adapterName);
+        if (queue != null && service != null
+                && service.hasOption(ServiceOption.INSTRUMENTATION)) {
+            queue.publishStats(service);
+        }
+    }
+
+    /**
+     * Queue of the tasks of a single adapter, submitted to the shared pool as long as the
+     * adapter is within its quota.
+     */
+    private class AdapterQueue {
+        private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private final AtomicInteger activeCount = new AtomicInteger();
+        private final AtomicLong rejectedCount = new AtomicLong();
+        private final AtomicLong callerRunsCount = new AtomicLong();
+        private double queueLatencyMicros;
+        private double executionLatencyMicros;
+
+        /**
+         * Queues the given task, unless the queue is full. Returns whether the task was queued.
+         */
+        boolean offer(Runnable task) {
+            if (this.pendingCount.incrementAndGet() > AdapterIOExecutor.this.queueCapacity) {
+                this.pendingCount.decrementAndGet();
+                return false;
+            }
+            this.pending.add(task);
+            drain();
+            return true;
+        }
+
+        /**
+         * Hands the pending tasks over to the shared pool until the quota of the adapter is used.
+         */
+        private void drain() {
+            while (!this.pending.isEmpty()) {
+                int active = this.activeCount.get();
+                if (active >= AdapterIOExecutor.this.adapterQuota) {
+                    // the next task to complete drains the queue
+                    return;
+                }
+                if (!this.activeCount.compareAndSet(active, active + 1)) {
+                    continue;
+                }
+                Runnable task = this.pending.poll();
+                if (task == null) {
+                    this.activeCount.decrementAndGet();
+                    continue;
+                }
+                this.pendingCount.decrementAndGet();
+                AdapterIOExecutor.this.pool.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        this.activeCount.decrementAndGet();
+                        drain();
+                    }
+                });
+            }
+        }
+
+        synchronized void recordLatency(long queueMicros, long executionMicros) {
+            this.queueLatencyMicros = movingAverage(this.queueLatencyMicros, queueMicros);
+            this.executionLatencyMicros = movingAverage(this.executionLatencyMicros,
+                    executionMicros);
+        }
+
+        synchronized void publishStats(StatelessService service) {
+            service.setStat(STAT_NAME_QUEUE_DEPTH, this.pendingCount.get());
+            service.setStat(STAT_NAME_ACTIVE_COUNT, this.activeCount.get());
+            service.setStat(STAT_NAME_REJECTED_COUNT, this.rejectedCount.get());
+            service.setStat(STAT_NAME_CALLER_RUNS_COUNT, this.callerRunsCount.get());
+            service.setStat(STAT_NAME_QUEUE_LATENCY_MICROS, this.queueLatencyMicros);
+            service.setStat(STAT_NAME_EXECUTION_LATENCY_MICROS, this.executionLatencyMicros);
+        }
+
+        private double movingAverage(double average, long sample) {
+            return average == 0 ? sample : average + (sample - average) * LATENCY_SAMPLE_WEIGHT;
+        }
+    }
+
+    /**
+     * Executor of a single adapter. Tracks its own running tasks, so that it can be awaited on
+     * shutdown without shutting down the shared pool.
+     */
+    private static class AdapterExecutorService extends AbstractExecutorService {
+        private final AdapterQueue queue;
+        private final StatelessService service;
+        private final OverflowPolicy overflowPolicy;
+        private final AtomicInteger taskCount = new AtomicInteger();
+        private volatile boolean isShutdown;
+
+        AdapterExecutorService(AdapterQueue queue, StatelessService service,
+                OverflowPolicy overflowPolicy) {
+            this.queue = queue;
+            this.service = service;
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (this.isShutdown) {
+                throw new RejectedExecutionException("Adapter executor is shut down");
+            }
+            this.taskCount.incrementAndGet();
+            submit(command, System.nanoTime());
+        }
+
+        private void submit(Runnable command, long submitTime) {
+            Runnable task = () -> {
+                long startTime = System.nanoTime();
+                try {
+                    command.run();
+                } finally {
+                    long endTime = System.nanoTime();
+                    this.queue.recordLatency(
+                            TimeUnit.NANOSECONDS.toMicros(startTime - submitTime),
+                            TimeUnit.NANOSECONDS.toMicros(endTime - startTime));
+                    if (this.service != null
+                            && this.service.hasOption(ServiceOption.INSTRUMENTATION)) {
+                        this.queue.publishStats(this.service);
+                    }
+                    onTaskCompletion();
+                }
+            };
+            if (this.queue.offer(task)) {
+                return;
+            }
+            if (this.overflowPolicy == OverflowPolicy.REJECT) {
+                // back-pressure: the submitter is told to retry later
+                this.queue.rejectedCount.incrementAndGet();
+                onTaskCompletion();
+                throw new RejectedExecutionException("Adapter queue is full");
+            }
+            this.queue.callerRunsCount.incrementAndGet();
+            task.run();
+        }
+
+        private void onTaskCompletion() {
+            if (this.taskCount.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            this.isShutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            this.isShutdown = true;
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return this.isShutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return this.isShutdown && this.taskCount.get() == 0;
+        }
+
+        @Override
+        public synchronized boolean awaitTermination(long timeout, TimeUnit unit)
+                throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (!isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+    }
+}
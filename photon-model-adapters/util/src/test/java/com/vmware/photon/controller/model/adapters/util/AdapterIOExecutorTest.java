@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.adapters.util.AdapterIOExecutor.OverflowPolicy;
+
+/**
+ * Unit test for {@link AdapterIOExecutor}
+ */
+public class AdapterIOExecutorTest {
+    private static final int THREAD_COUNT = 4;
+    private static final int QUEUE_CAPACITY = 10;
+    private static final int ADAPTER_QUOTA = 2;
+    private static final String ADAPTER = "adapter";
+    private static final String OTHER_ADAPTER = "other-adapter";
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private AdapterIOExecutor executor = new AdapterIOExecutor("test", THREAD_COUNT,
+            QUEUE_CAPACITY, ADAPTER_QUOTA);
+    private CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        this.release.countDown();
+    }
+
+    @Test
+    public void testAdapterQuota() throws Throwable {
+        ExecutorService adapterExecutor = this.executor.getExecutor(null, ADAPTER);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(QUEUE_CAPACITY);
+        for (int i = 0; i < QUEUE_CAPACITY; i++) {
+            adapterExecutor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                await(this.release);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        // the other adapter gets the threads left over by the busy one
+        CountDownLatch otherDone = new CountDownLatch(1);
+        this.executor.getExecutor(null, OTHER_ADAPTER).execute(otherDone::countDown);
+        assertTrue(otherDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        this.release.countDown();
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(ADAPTER_QUOTA, maxRunning.get());
+    }
+
+    @Test
+    public void testFullQueueRunsTasksOnCaller() throws Throwable {
+        ExecutorService adapterExecutor = this.executor.getExecutor(null, ADAPTER);
+        for (int i = 0; i < ADAPTER_QUOTA + QUEUE_CAPACITY; i++) {
+            adapterExecutor.execute(() -> await(this.release));
+        }
+
+        // callback executors must not drop tasks, so the task runs on the caller
+        Thread caller = Thread.currentThread();
+        AtomicReference<Thread> runThread = new AtomicReference<>();
+        adapterExecutor.execute(() -> runThread.set(Thread.currentThread()));
+        assertSame(caller, runThread.get());
+
+        this.release.countDown();
+        adapterExecutor.shutdown();
+        assertTrue(adapterExecutor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFullQueueRejectsTasks() throws Throwable {
+        ExecutorService adapterExecutor = this.executor.getExecutor(null, ADAPTER,
+                OverflowPolicy.REJECT);
+        for (int i = 0; i < ADAPTER_QUOTA + QUEUE_CAPACITY; i++) {
+            adapterExecutor.execute(() -> await(this.release));
+        }
+
+        // the task is neither run on the caller nor queued
+        AtomicInteger runCount = new AtomicInteger();
+        try {
+            adapterExecutor.execute(runCount::incrementAndGet);
+            throw new IllegalStateException("Expected the task to be rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(0, runCount.get());
+
+        // the rejected task can be retried once the queue drains
+        this.release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (runCount.get() == 0 && System.nanoTime() < deadline) {
+            try {
+                adapterExecutor.submit(runCount::incrementAndGet).get();
+            } catch (RejectedExecutionException e) {
+                Thread.sleep(10);
+            }
+        }
+        assertEquals(1, runCount.get());
+    }
+
+    @Test
+    public void testShutdown() throws Throwable {
+        ExecutorService adapterExecutor = this.executor.getExecutor(null, ADAPTER);
+        ExecutorService otherExecutor = this.executor.getExecutor(null, ADAPTER);
+        adapterExecutor.execute(() -> await(this.release));
+        adapterExecutor.shutdown();
+
+        assertTrue(adapterExecutor.isShutdown());
+        assertFalse(adapterExecutor.isTerminated());
+        assertFalse(adapterExecutor.awaitTermination(10, TimeUnit.MILLISECONDS));
+        try {
+            adapterExecutor.execute(() -> {
+            });
+            throw new IllegalStateException("Expected the task to be rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        // the executors sharing the pool keep running
+        CountDownLatch otherDone = new CountDownLatch(1);
+        otherExecutor.execute(otherDone::countDown);
+        assertTrue(otherDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        this.release.countDown();
+        assertTrue(adapterExecutor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(adapterExecutor.isTerminated());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -19,6 +19,8 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
+import javax.xml.ws.WebServiceException;
+
 import com.vmware.photon.controller.model.adapters.vsphere.InstanceClient.ClientException;
 import com.vmware.photon.controller.model.adapters.vsphere.util.VimNames;
 import com.vmware.photon.controller.model.adapters.vsphere.util.VimPath;
@@ -47,6 +49,13 @@ import com.vmware.vim25.WaitOptions;
 public class EnumerationClient extends BaseHelper {
     public static final int DEFAULT_FETCH_PAGE_SIZE = 100;
 
+    public static final int DEFAULT_MAX_WAIT_SECONDS = 10;
+
+    /**
+     * How many times WaitForUpdatesEx is retried after a transport error.
+     */
+    private static final int MAX_WAIT_RETRIES = 3;
+
     private final Finder finder;
 
     private final GetMoRef get;
@@ -297,6 +306,24 @@ public class EnumerationClient extends BaseHelper {
         return filterSpec;
     }
 
+    /**
+     * Same as {@link #createFullFilterSpec()} without the VMs.
+     */
+    public PropertyFilterSpec createResourcesFilterSpec() {
+        PropertyFilterSpec spec = createFullFilterSpec();
+        spec.getPropSet().removeIf(ps -> VimNames.TYPE_VM.equals(ps.getType()));
+        return spec;
+    }
+
+    /**
+     * Same as {@link #createFullFilterSpec()} with only the VMs.
+     */
+    public PropertyFilterSpec createVmFilterSpec() {
+        PropertyFilterSpec spec = createFullFilterSpec();
+        spec.getPropSet().removeIf(ps -> !VimNames.TYPE_VM.equals(ps.getType()));
+        return spec;
+    }
+
     public Iterable<List<ObjectContent>> retrieveObjects(
             PropertyFilterSpec spec) throws RuntimeFaultFaultMsg {
         ManagedObjectReference pc = createPropertyCollector();
@@ -312,6 +339,12 @@ public class EnumerationClient extends BaseHelper {
         }
     }
 
+    /**
+     * Creates a PropertyCollector with a filter for the spec and iterates over its updates. The
+     * first update set reports all objects matched by the spec as entered, the following ones
+     * only the changes since the previous update set. An update set is empty if nothing changed
+     * within {@link #DEFAULT_MAX_WAIT_SECONDS}.
+     */
     public Iterable<UpdateSet> pollForUpdates(PropertyFilterSpec spec)
             throws InvalidPropertyFaultMsg, RuntimeFaultFaultMsg {
         ManagedObjectReference pc = createPropertyCollectorWithFilter(spec);
@@ -354,25 +387,15 @@ public class EnumerationClient extends BaseHelper {
 
         @Override
         public List<ObjectContent> next() {
-            if (this.result == null) {
-                try {
+            try {
+                if (this.result == null) {
                     this.result = getVimPort()
                             .retrievePropertiesEx(this.pc, Collections.singletonList(this.spec),
                                     this.opts);
-                } catch (RuntimeException e) {
-                    destroyCollectorQuietly(this.pc);
-                    throw e;
-                } catch (Exception e) {
-                    destroyCollectorQuietly(this.pc);
-                    throw new RuntimeException(e);
+                } else {
+                    this.result = getVimPort()
+                            .continueRetrievePropertiesEx(this.pc, this.result.getToken());
                 }
-
-                return this.result.getObjects();
-            }
-
-            try {
-                this.result = getVimPort()
-                        .continueRetrievePropertiesEx(this.pc, this.result.getToken());
             } catch (RuntimeException e) {
                 destroyCollectorQuietly(this.pc);
                 throw e;
@@ -381,6 +404,15 @@ public class EnumerationClient extends BaseHelper {
                 throw new RuntimeException(e);
             }
 
+            if (this.result == null) {
+                // nothing matched the spec
+                this.result = new RetrieveResult();
+            }
+            if (this.result.getToken() == null) {
+                // last page
+                destroyCollectorQuietly(this.pc);
+            }
+
             return this.result.getObjects();
         }
     }
@@ -390,6 +422,10 @@ public class EnumerationClient extends BaseHelper {
 
         private final WaitOptions opts;
 
+        /**
+         * Version of the last update set returned, the next call only returns the changes after
+         * it.
+         */
         private String since;
 
         ObjectUpdateIterator(ManagedObjectReference pc) {
@@ -397,7 +433,7 @@ public class EnumerationClient extends BaseHelper {
 
             // don't fetch too much data or block for too long
             this.opts = new WaitOptions();
-            this.opts.setMaxWaitSeconds(10);
+            this.opts.setMaxWaitSeconds(DEFAULT_MAX_WAIT_SECONDS);
             this.opts.setMaxObjectUpdates(DEFAULT_FETCH_PAGE_SIZE);
         }
 
@@ -409,13 +445,29 @@ public class EnumerationClient extends BaseHelper {
 
         @Override
         public UpdateSet next() {
-            try {
-                UpdateSet result = getVimPort().waitForUpdatesEx(this.pc, this.since, this.opts);
-                this.since = result.getVersion();
-                return result;
-            } catch (Exception e) {
-                destroyCollectorQuietly(this.pc);
-                throw new RuntimeException(e);
+            for (int retry = 0; ; retry++) {
+                try {
+                    UpdateSet result = getVimPort()
+                            .waitForUpdatesEx(this.pc, this.since, this.opts);
+                    if (result == null) {
+                        // nothing changed within maxWaitSeconds
+                        result = new UpdateSet();
+                        result.setVersion(this.since);
+                        result.setTruncated(false);
+                    }
+                    this.since = result.getVersion();
+                    return result;
+                } catch (WebServiceException e) {
+                    // the collector lives on the server: after a transport error
+                    // wait again from the last version instead of starting over
+                    if (retry >= MAX_WAIT_RETRIES) {
+                        destroyCollectorQuietly(this.pc);
+                        throw e;
+                    }
+                } catch (Exception e) {
+                    destroyCollectorQuietly(this.pc);
+                    throw new RuntimeException(e);
+                }
             }
         }
     }
@@ -13,6 +13,15 @@
 
 package com.vmware.photon.controller.model.adapters.vsphere;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
 import com.vmware.photon.controller.model.adapterapi.ComputeEnumerateResourceRequest;
 import com.vmware.photon.controller.model.adapters.vsphere.vapi.VapiConnection;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeStateWithDescription;
@@ -20,6 +29,8 @@ import com.vmware.photon.controller.model.resources.ComputeService.ComputeStateW
 /**
  * Stores state/configuration/progress for an enumeration task.
  *
+ * The compute resources and pending hosts are only accessed by the thread retrieving the
+ * objects from vSphere.
  */
 public class EnumerationContext {
     private final ComputeEnumerateResourceRequest request;
@@ -31,6 +42,21 @@ public class EnumerationContext {
     private ResourceTracker computeResourceTracker;
     private ResourceTracker vmTracker;
 
+    /**
+     * Moref values of all compute resources found so far.
+     */
+    private final Set<String> computeResources = new HashSet<>();
+
+    /**
+     * Clusters without DRS by moref value. Their hosts are enumerated instead of the cluster.
+     */
+    private final Map<String, ComputeResourceOverlay> nonDrsClusters = new HashMap<>();
+
+    /**
+     * Hosts found before their parent compute resource.
+     */
+    private final List<HostSystemOverlay> pendingHostSystems = new ArrayList<>();
+
     public EnumerationContext(ComputeEnumerateResourceRequest request,
             ComputeStateWithDescription parent, VapiConnection endpoint) {
         this.request = request;
@@ -54,43 +80,94 @@ public class EnumerationContext {
         return this.parent;
     }
 
-    public void expectNetworkCount(int count) {
-        this.networkTracker = new ResourceTracker(count);
+    /**
+     * Starts tracking a new batch of objects. The new trackers are open and keep the selfLinks
+     * tracked by the previous ones.
+     */
+    public void startTracking() {
+        this.networkTracker = ResourceTracker.open(this.networkTracker);
+        this.datastoreTracker = ResourceTracker.open(this.datastoreTracker);
+        this.hostSystemTracker = ResourceTracker.open(this.hostSystemTracker);
+        this.computeResourceTracker = ResourceTracker.open(this.computeResourceTracker);
+        this.vmTracker = ResourceTracker.open(this.vmTracker);
     }
 
-    public ResourceTracker getNetworkTracker() {
-        return this.networkTracker;
+    /**
+     * @return a future completed once all trackers are done
+     */
+    public CompletableFuture<Void> whenDone() {
+        return CompletableFuture.allOf(
+                this.networkTracker.whenDone(),
+                this.datastoreTracker.whenDone(),
+                this.hostSystemTracker.whenDone(),
+                this.computeResourceTracker.whenDone(),
+                this.vmTracker.whenDone());
     }
 
-    public void expectDatastoreCount(int count) {
-        this.datastoreTracker = new ResourceTracker(count);
+    public ResourceTracker getNetworkTracker() {
+        return this.networkTracker;
     }
 
     public ResourceTracker getDatastoreTracker() {
         return this.datastoreTracker;
     }
 
-    public void expectHostSystemCount(int count) {
-        this.hostSystemTracker = new ResourceTracker(count);
-    }
-
     public ResourceTracker getHostSystemTracker() {
         return this.hostSystemTracker;
     }
 
-    public void expectComputeResourceCount(int count) {
-        this.computeResourceTracker = new ResourceTracker(count);
-    }
-
     public ResourceTracker getComputeResourceTracker() {
         return this.computeResourceTracker;
     }
 
-    public void expectVmCount(int count) {
-        this.vmTracker = new ResourceTracker(count);
-    }
-
     public ResourceTracker getVmTracker() {
         return this.vmTracker;
     }
+
+    public void addComputeResource(ComputeResourceOverlay cr, boolean nonDrsCluster) {
+        String id = cr.getId().getValue();
+        this.computeResources.add(id);
+        if (nonDrsCluster) {
+            this.nonDrsClusters.put(id, cr);
+        } else {
+            this.nonDrsClusters.remove(id);
+        }
+    }
+
+    public void removeComputeResource(String id) {
+        this.computeResources.remove(id);
+        this.nonDrsClusters.remove(id);
+    }
+
+    public ComputeResourceOverlay getNonDrsCluster(String id) {
+        return this.nonDrsClusters.get(id);
+    }
+
+    public void addHostSystems(List<HostSystemOverlay> hosts) {
+        this.pendingHostSystems.addAll(hosts);
+    }
+
+    /**
+     * Returns the pending hosts which are part of a non-DRS cluster. Pending hosts whose
+     * parent is another kind of compute resource are skipped. Hosts whose parent was not found
+     * yet remain pending.
+     */
+    public List<HostSystemOverlay> takeHostSystemsInNonDrsClusters() {
+        List<HostSystemOverlay> res = new ArrayList<>();
+        for (Iterator<HostSystemOverlay> it = this.pendingHostSystems.iterator(); it.hasNext(); ) {
+            HostSystemOverlay hs = it.next();
+            String parentId = hs.getParent().getValue();
+            if (this.computeResources.contains(parentId)) {
+                it.remove();
+                if (this.nonDrsClusters.containsKey(parentId)) {
+                    res.add(hs);
+                }
+            }
+        }
+        return res;
+    }
+
+    public void clearPendingHostSystems() {
+        this.pendingHostSystems.clear();
+    }
 }
@@ -273,12 +273,26 @@ public class InstanceClient extends BaseHelper {
         URI ovfUri = cust.getUri(OvfParser.PROP_OVF_URI);
 
         URI archiveUri = cust.getUri(OvfParser.PROP_OVF_ARCHIVE_URI);
-        if (archiveUri != null) {
-            logger.info("Prefer ova {} uri to ovf {}",  archiveUri, ovfUri);
-            OvfRetriever retriever = deployer.getRetriever();
-            ovfUri = retriever.downloadIfOva(archiveUri);
+        if (archiveUri == null) {
+            return deployOvf(deployer, ovfUri);
         }
 
+        logger.info("Prefer ova {} uri to ovf {}",  archiveUri, ovfUri);
+        OvfRetriever retriever = deployer.getRetriever();
+        URI extractedOvfUri = retriever.downloadIfOva(archiveUri);
+        try {
+            return deployOvf(deployer, extractedOvfUri);
+        } finally {
+            // the disks of the extracted OVA are not needed anymore
+            if (!extractedOvfUri.equals(archiveUri)) {
+                retriever.release(extractedOvfUri);
+            }
+        }
+    }
+
+    private ManagedObjectReference deployOvf(OvfDeployer deployer, URI ovfUri) throws Exception {
+        CustomProperties cust = CustomProperties.of(this.state.description);
+
         ManagedObjectReference host = null;
         ManagedObjectReference folder = getVmFolder();
         List<OvfNetworkMapping> network = Collections.emptyList();
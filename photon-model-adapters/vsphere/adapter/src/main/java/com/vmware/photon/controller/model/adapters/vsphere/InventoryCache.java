@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.vsphere;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.vmware.vim25.DynamicProperty;
+import com.vmware.vim25.ObjectContent;
+import com.vmware.vim25.ObjectUpdate;
+import com.vmware.vim25.PropertyChange;
+import com.vmware.vim25.PropertyFilterUpdate;
+import com.vmware.vim25.UpdateSet;
+
+/**
+ * Keeps the last known properties of every object reported by a PropertyCollector. The
+ * {@link UpdateSet}s returned by WaitForUpdatesEx only carry the properties that changed, they are
+ * merged here so that overlays can be built from the complete object.
+ *
+ * The objects which entered or changed and the objects which left since the last drain are
+ * collected, so that the changes of several truncated update sets can be processed at once.
+ *
+ * Not thread-safe.
+ */
+public class InventoryCache {
+    private final Map<String, ObjectContent> objects = new HashMap<>();
+
+    private final Set<String> updated = new LinkedHashSet<>();
+
+    private final Map<String, ObjectContent> removed = new LinkedHashMap<>();
+
+    public void apply(UpdateSet updateSet) {
+        if (updateSet.getFilterSet() == null) {
+            return;
+        }
+
+        for (PropertyFilterUpdate filterUpdate : updateSet.getFilterSet()) {
+            for (ObjectUpdate update : filterUpdate.getObjectSet()) {
+                apply(update);
+            }
+        }
+    }
+
+    private void apply(ObjectUpdate update) {
+        String key = VimUtils.convertMoRefToString(update.getObj());
+
+        switch (update.getKind()) {
+        case ENTER:
+            this.objects.put(key, newContent(update));
+            this.updated.add(key);
+            this.removed.remove(key);
+            break;
+        case MODIFY:
+            ObjectContent cont = this.objects.computeIfAbsent(key, k -> newContent(update));
+            merge(cont, update.getChangeSet());
+            this.updated.add(key);
+            break;
+        case LEAVE:
+            ObjectContent old = this.objects.remove(key);
+            this.updated.remove(key);
+            if (old != null) {
+                this.removed.put(key, old);
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    private ObjectContent newContent(ObjectUpdate update) {
+        ObjectContent cont = new ObjectContent();
+        cont.setObj(update.getObj());
+        merge(cont, update.getChangeSet());
+        return cont;
+    }
+
+    private void merge(ObjectContent cont, List<PropertyChange> changes) {
+        for (PropertyChange change : changes) {
+            // the filter is created without partial updates so changes are never nested
+            // deeper than the requested property path
+            removeProperty(cont, change.getName());
+
+            switch (change.getOp()) {
+            case ADD:
+            case ASSIGN:
+                if (change.getVal() != null) {
+                    DynamicProperty dp = new DynamicProperty();
+                    dp.setName(change.getName());
+                    dp.setVal(change.getVal());
+                    cont.getPropSet().add(dp);
+                }
+                break;
+            default:
+                // remove and indirectRemove
+                break;
+            }
+        }
+    }
+
+    private void removeProperty(ObjectContent cont, String name) {
+        for (Iterator<DynamicProperty> it = cont.getPropSet().iterator(); it.hasNext(); ) {
+            if (it.next().getName().equals(name)) {
+                it.remove();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the current properties of the objects which entered or changed since the last call
+     */
+    public List<ObjectContent> drainUpdated() {
+        List<ObjectContent> res = new ArrayList<>(this.updated.size());
+        for (String key : this.updated) {
+            res.add(this.objects.get(key));
+        }
+        this.updated.clear();
+        return res;
+    }
+
+    /**
+     * @return the last known properties of the objects which left since the last call
+     */
+    public List<ObjectContent> drainRemoved() {
+        List<ObjectContent> res = new ArrayList<>(this.removed.values());
+        this.removed.clear();
+        return res;
+    }
+
+    public int size() {
+        return this.objects.size();
+    }
+}
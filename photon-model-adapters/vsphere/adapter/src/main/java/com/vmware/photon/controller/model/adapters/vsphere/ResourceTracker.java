@@ -13,10 +13,12 @@
 
 package com.vmware.photon.controller.model.adapters.vsphere;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.vmware.vim25.ManagedObjectReference;
 
@@ -24,22 +26,84 @@ import com.vmware.vim25.ManagedObjectReference;
  * Thread-safe class for tracking progress writing objects to xenon storage.
  * Instances are not reusable. You can associated the selfLink of the xenon resources with
  * a random string describing the found object, most often the moref or name.
+ *
+ * When the number of objects is not known upfront, as when objects are tracked page by page,
+ * create the tracker with {@link #open(ResourceTracker)}, announce the objects of each page with
+ * {@link #expect(int)} and {@link #seal()} the tracker after the last page. Dependent work can be
+ * chained on {@link #whenDone()} instead of blocking in {@link #await()}.
  */
 public class ResourceTracker {
     public static final String ERROR = "ERROR";
 
-    private final CountDownLatch countdownLatch;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    /**
+     * Number of objects not tracked yet. Guarded by this.
+     */
+    private int pending;
 
     private final ConcurrentMap<String, String> mapping;
 
     public ResourceTracker(int count) {
-        this.countdownLatch = new CountDownLatch(count);
+        this(count, null);
+    }
+
+    /**
+     * Creates a tracker which starts with the selfLinks already tracked by a previous one.
+     *
+     * @param count
+     * @param previous may be null
+     */
+    public ResourceTracker(int count, ResourceTracker previous) {
+        this.pending = count;
         this.mapping = new ConcurrentHashMap<>();
+        if (previous != null) {
+            this.mapping.putAll(previous.mapping);
+        }
+        if (count == 0) {
+            this.done.complete(null);
+        }
+    }
+
+    /**
+     * Creates a tracker which is done once it is sealed and all expected objects are tracked.
+     *
+     * @param previous may be null
+     */
+    public static ResourceTracker open(ResourceTracker previous) {
+        // the extra count is released by seal()
+        return new ResourceTracker(1, previous);
+    }
+
+    /**
+     * Announces more objects to be tracked. Must be called before {@link #seal()}.
+     */
+    public synchronized void expect(int count) {
+        this.pending += count;
+    }
+
+    /**
+     * No more objects will be expected.
+     */
+    public void seal() {
+        countDown();
     }
 
     public void track(String key, String selfLink) {
-        String old = this.mapping.put(key, selfLink);
-        this.countdownLatch.countDown();
+        this.mapping.put(key, selfLink);
+        countDown();
+    }
+
+    private void countDown() {
+        boolean completed;
+        synchronized (this) {
+            this.pending--;
+            completed = this.pending == 0;
+            notifyAll();
+        }
+        if (completed) {
+            this.done.complete(null);
+        }
     }
 
     public String getSelfLink(String key) {
@@ -50,11 +114,47 @@ public class ResourceTracker {
         return this.mapping.get(VimUtils.convertMoRefToString(moref));
     }
 
+    /**
+     * Forgets the selfLink of an object, returns the forgotten selfLink or null if it was not
+     * tracked.
+     */
+    public String untrack(String key) {
+        return this.mapping.remove(key);
+    }
+
+    /**
+     * @return a future completed once all objects are tracked
+     */
+    public CompletableFuture<Void> whenDone() {
+        return this.done;
+    }
+
+    /**
+     * Blocks while more than max announced objects are not tracked yet. Used to bound the
+     * objects in flight while pages are still being retrieved.
+     */
+    public synchronized void awaitPendingAtMost(int max) throws InterruptedException {
+        while (this.pending > max) {
+            wait();
+        }
+    }
+
     public void await() throws InterruptedException {
-        this.countdownLatch.await();
+        try {
+            this.done.get();
+        } catch (ExecutionException e) {
+            // never completed exceptionally
+            throw new IllegalStateException(e);
+        }
     }
 
     public void await(long timeout, TimeUnit unit) throws InterruptedException {
-        this.countdownLatch.await(timeout, unit);
+        try {
+            this.done.get(timeout, unit);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        } catch (TimeoutException ignore) {
+
+        }
     }
 }
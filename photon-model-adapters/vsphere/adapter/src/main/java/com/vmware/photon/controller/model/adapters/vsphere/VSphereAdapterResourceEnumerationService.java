@@ -18,6 +18,7 @@ import static com.vmware.xenon.services.common.QueryTask.QuerySpecification.Quer
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -28,6 +29,7 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
@@ -57,6 +59,7 @@ import com.vmware.photon.controller.model.resources.ComputeService;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.photon.controller.model.resources.ComputeService.ComputeStateWithDescription;
 import com.vmware.photon.controller.model.resources.ComputeService.PowerState;
+import com.vmware.photon.controller.model.resources.KnownTagCache;
 import com.vmware.photon.controller.model.resources.NetworkInterfaceService;
 import com.vmware.photon.controller.model.resources.NetworkInterfaceService.NetworkInterfaceState;
 import com.vmware.photon.controller.model.resources.NetworkService;
@@ -100,6 +103,11 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
     private static final int MAX_CONCURRENT_ENUM_PROCESSES = 10;
     private static final String FAKE_SUBNET_CIDR = "0.0.0.0/0";
 
+    /**
+     * How many VMs can wait to be stored before the retrieval of the next page is delayed.
+     */
+    private static final int MAX_PENDING_VMS = 10 * EnumerationClient.DEFAULT_FETCH_PAGE_SIZE;
+
     /**
      * Stores currently running enumeration processes.
      */
@@ -229,7 +237,7 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
             this.enumerationThreadPool.execute(() -> {
                 OperationContext.restoreOperationContext(opContext);
                 try {
-                    startEnumerationProcess(parent, client);
+                    startEnumerationProcess(connection, parent, request, client);
                 } catch (Exception e) {
                     String msg = String.format("Error during enumeration process %s, aborting",
                             parent.documentSelfLink);
@@ -247,27 +255,45 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
     }
 
     /**
-     * This method executes in a thread managed by {@link #enumerationThreadPool}.
+     * This method executes in a thread managed by {@link #enumerationThreadPool}. The first
+     * update set of the PropertyCollector loads the whole inventory, after that only the objects
+     * which entered, changed or left are processed. The PropertyCollector remembers the version
+     * of the last update set so each poll resumes from where the previous one ended.
      *
+     * @param connection
+     * @param parent
+     * @param request
      * @param client
      * @throws Exception
      */
-    private void startEnumerationProcess(ComputeStateWithDescription parent,
+    private void startEnumerationProcess(Connection connection,
+            ComputeStateWithDescription parent, ComputeEnumerateResourceRequest request,
             EnumerationClient client)
             throws Exception {
         PropertyFilterSpec spec = client.createFullFilterSpec();
 
+        VapiConnection vapiConnection = createVapiConnection(connection);
+        EnumerationContext enumerationContext = new EnumerationContext(request, parent,
+                vapiConnection);
+        InventoryCache inventory = new InventoryCache();
+
         try {
             for (UpdateSet updateSet : client.pollForUpdates(spec)) {
-                processUpdates(updateSet);
+                inventory.apply(updateSet);
+                // a truncated update set is continued by the next one, process them together
+                if (!Boolean.TRUE.equals(updateSet.isTruncated())) {
+                    processUpdates(enumerationContext, inventory);
+                    log(Level.FINE, "Processed updates of %s up to version %s",
+                            parent.documentSelfLink, updateSet.getVersion());
+                }
                 if (!this.startedEnumProcessesByHost.containsKey(parent.documentSelfLink)) {
                     break;
                 }
             }
-        } catch (Exception e) {
-            // destroy connection and let global error handler process it further
+        } finally {
+            // destroy connection and let global error handler process any error further
             client.close();
-            throw e;
+            closeQuietly(vapiConnection);
         }
     }
 
@@ -293,141 +319,149 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
             return;
         }
 
-        PropertyFilterSpec spec = client.createFullFilterSpec();
-
-        VapiConnection vapiConnection = new VapiConnection(getVapiUri(connection.getURI()));
-        vapiConnection.setUsername(connection.getUsername());
-        vapiConnection.setPassword(connection.getPassword());
-
-        // TODO manage trust store globally
-        vapiConnection.setClient(VapiConnection.newUnsecureClient());
-
-        try {
-            vapiConnection.login();
-        } catch (IOException | RpcException e) {
-            logInfo("Cannot login into vAPI endpoint");
-        }
+        VapiConnection vapiConnection = createVapiConnection(connection);
 
         EnumerationContext enumerationContext = new EnumerationContext(request, parent,
                 vapiConnection);
+        enumerationContext.startTracking();
 
-        List<NetworkOverlay> networks = new ArrayList<>();
-        List<VmOverlay> vms = new ArrayList<>();
-        List<HostSystemOverlay> hosts = new ArrayList<>();
-        List<DatastoreOverlay> datastores = new ArrayList<>();
-        List<ComputeResourceOverlay> computeResources = new ArrayList<>();
-
-        Map<String, ComputeResourceOverlay> nonDrsClusters = new HashMap<>();
-
-        // put results in different buckets by type
+        // once all the pages are retrieved, the connection is closed when they are stored
+        boolean retrieved = false;
         try {
-            for (List<ObjectContent> page : client.retrieveObjects(spec)) {
-                for (ObjectContent cont : page) {
-                    if (VimUtils.isNetwork(cont.getObj())) {
-                        NetworkOverlay net = new NetworkOverlay(cont);
-                        networks.add(net);
-                    } else if (VimUtils.isVirtualMachine(cont.getObj())) {
-                        VmOverlay vm = new VmOverlay(cont);
-                        if (vm.getInstanceUuid() == null) {
-                            log(Level.INFO, "Cannot process a VM without instanceUuid: %s",
-                                    VimUtils.convertMoRefToString(vm.getId()));
-                        } else {
-                            vms.add(vm);
-                        }
-                    } else if (VimUtils.isHost(cont.getObj())) {
-                        // this includes all standalone and clustered hosts
-                        HostSystemOverlay hs = new HostSystemOverlay(cont);
-                        hosts.add(hs);
-                    } else if (VimUtils.isComputeResource(cont.getObj())) {
-                        ComputeResourceOverlay cr = new ComputeResourceOverlay(cont);
-                        if (cr.isDrsEnabled()) {
-                            // when DRS is enabled add the cluster itself and skip the hosts
-                            computeResources.add(cr);
-                        } else if (VimUtils.isClusterComputeResource(cont.getObj())) {
-                            // when DRS is not enabled, skip the cluster and then
-                            // add the inside hosts instead; when provisioning into a non-DRS
-                            // cluster, specifying a host is mandatory (in addition to the target
-                            // resource pool which always has to be specified)
-                            nonDrsClusters.put(cr.getId().getValue(), cr);
-                        } else {
-                            // add standalone hosts (by their ComputeResource instance instead of
-                            // the inner HostSystem one because the former contains the resource
-                            // pool which we need)
-                            computeResources.add(cr);
-                        }
-                    } else if (VimUtils.isDatastore(cont.getObj())) {
-                        DatastoreOverlay ds = new DatastoreOverlay(cont);
-                        datastores.add(ds);
-                    }
-                }
+            // VMs reference the networks so they are retrieved after everything else
+            for (List<ObjectContent> page : client
+                    .retrieveObjects(client.createResourcesFilterSpec())) {
+                processPage(enumerationContext, page);
+            }
+            // hosts whose parent was not found are skipped, as are their VMs
+            enumerationContext.clearPendingHostSystems();
+            enumerationContext.getNetworkTracker().seal();
+            enumerationContext.getDatastoreTracker().seal();
+            enumerationContext.getHostSystemTracker().seal();
+            enumerationContext.getComputeResourceTracker().seal();
+
+            ResourceTracker vmTracker = enumerationContext.getVmTracker();
+            for (List<ObjectContent> page : client
+                    .retrieveObjects(client.createVmFilterSpec())) {
+                // don't retrieve faster than the pages can be stored
+                vmTracker.awaitPendingAtMost(MAX_PENDING_VMS);
+                processPage(enumerationContext, page);
             }
+            vmTracker.seal();
+            retrieved = true;
+        } catch (InterruptedException e) {
+            threadInterrupted(mgr, e);
+            return;
         } catch (Exception e) {
             String msg = "Error processing PropertyCollector results";
             logWarning(msg);
             mgr.patchTaskToFailure(msg, e);
             return;
+        } finally {
+            if (!retrieved) {
+                closeQuietly(vapiConnection);
+            }
         }
 
-        // process results in topological order
-        enumerationContext.expectNetworkCount(networks.size());
-        for (NetworkOverlay net : networks) {
-            processFoundNetwork(enumerationContext, net, parent.tenantLinks);
-        }
-
-        enumerationContext.expectDatastoreCount(datastores.size());
-        for (DatastoreOverlay ds : datastores) {
-            processFoundDatastore(enumerationContext, ds, parent.tenantLinks);
-        }
+        // the connection is released while the last pages are still being stored
+        enumerationContext.whenDone().thenRun(() -> {
+            closeQuietly(vapiConnection);
+            mgr.patchTask(TaskStage.FINISHED);
+        });
+    }
 
-        // checkpoint net & storage, they are not related currently
+    private static void closeQuietly(VapiConnection vapiConnection) {
         try {
-            enumerationContext.getDatastoreTracker().await();
-            enumerationContext.getNetworkTracker().await();
-        } catch (InterruptedException e) {
-            threadInterrupted(mgr, e);
-            return;
-        }
+            vapiConnection.close();
+        } catch (Exception ignore) {
 
-        // include hosts that are part of a non-DRS enabled cluster
-        hosts.removeIf(hs -> nonDrsClusters.get(hs.getParent().getValue()) == null);
-        enumerationContext.expectHostSystemCount(hosts.size());
-        for (HostSystemOverlay hs : hosts) {
-            ComputeResourceOverlay cr = nonDrsClusters.get(hs.getParent().getValue());
-            processFoundHostSystem(enumerationContext, hs, cr, parent.tenantLinks);
         }
+    }
 
-        enumerationContext.expectComputeResourceCount(computeResources.size());
-        for (ComputeResourceOverlay cs : computeResources) {
-            processFoundComputeResource(enumerationContext, cs, parent.tenantLinks);
-        }
+    private VapiConnection createVapiConnection(Connection connection) {
+        VapiConnection vapiConnection = new VapiConnection(getVapiUri(connection.getURI()));
+        vapiConnection.setUsername(connection.getUsername());
+        vapiConnection.setPassword(connection.getPassword());
 
-        // checkpoint compute
-        try {
-            enumerationContext.getHostSystemTracker().await();
-            enumerationContext.getComputeResourceTracker().await();
-        } catch (InterruptedException e) {
-            threadInterrupted(mgr, e);
-            return;
-        }
+        // TODO manage trust store globally
+        vapiConnection.setClient(VapiConnection.newUnsecureClient());
 
-        enumerationContext.expectVmCount(vms.size());
-        for (VmOverlay vm : vms) {
-            processFoundVm(enumerationContext, vm, parent.tenantLinks);
-        }
         try {
-            enumerationContext.getVmTracker().await();
-        } catch (InterruptedException e) {
-            threadInterrupted(mgr, e);
-            return;
+            vapiConnection.login();
+        } catch (IOException | RpcException e) {
+            logInfo("Cannot login into vAPI endpoint");
         }
+        return vapiConnection;
+    }
 
-        try {
-            vapiConnection.close();
-        } catch (Exception ignore) {
+    /**
+     * Creates or updates the documents for a page of objects found in vSphere, with one query per
+     * type to find the existing documents. Does not wait for the documents to be stored: the
+     * trackers of the context are done once they are. VMs are stored only after the network
+     * tracker is done because their NICs reference the networks.
+     *
+     * @param enumerationContext
+     * @param page objects retrieved from the PropertyCollector
+     */
+    private void processPage(EnumerationContext enumerationContext, List<ObjectContent> page) {
+        List<NetworkOverlay> networks = new ArrayList<>();
+        List<VmOverlay> vms = new ArrayList<>();
+        List<HostSystemOverlay> hosts = new ArrayList<>();
+        List<DatastoreOverlay> datastores = new ArrayList<>();
+        List<ComputeResourceOverlay> computeResources = new ArrayList<>();
 
+        // put results in different buckets by type
+        for (ObjectContent cont : page) {
+            if (VimUtils.isNetwork(cont.getObj())) {
+                NetworkOverlay net = new NetworkOverlay(cont);
+                networks.add(net);
+            } else if (VimUtils.isVirtualMachine(cont.getObj())) {
+                VmOverlay vm = new VmOverlay(cont);
+                if (vm.getInstanceUuid() == null) {
+                    log(Level.INFO, "Cannot process a VM without instanceUuid: %s",
+                            VimUtils.convertMoRefToString(vm.getId()));
+                } else {
+                    vms.add(vm);
+                }
+            } else if (VimUtils.isHost(cont.getObj())) {
+                // this includes all standalone and clustered hosts
+                HostSystemOverlay hs = new HostSystemOverlay(cont);
+                hosts.add(hs);
+            } else if (VimUtils.isComputeResource(cont.getObj())) {
+                ComputeResourceOverlay cr = new ComputeResourceOverlay(cont);
+                if (cr.isDrsEnabled()) {
+                    // when DRS is enabled add the cluster itself and skip the hosts
+                    enumerationContext.addComputeResource(cr, false);
+                    computeResources.add(cr);
+                } else if (VimUtils.isClusterComputeResource(cont.getObj())) {
+                    // when DRS is not enabled, skip the cluster and then
+                    // add the inside hosts instead; when provisioning into a non-DRS
+                    // cluster, specifying a host is mandatory (in addition to the target
+                    // resource pool which always has to be specified)
+                    enumerationContext.addComputeResource(cr, true);
+                } else {
+                    // add standalone hosts (by their ComputeResource instance instead of
+                    // the inner HostSystem one because the former contains the resource
+                    // pool which we need)
+                    enumerationContext.addComputeResource(cr, false);
+                    computeResources.add(cr);
+                }
+            } else if (VimUtils.isDatastore(cont.getObj())) {
+                DatastoreOverlay ds = new DatastoreOverlay(cont);
+                datastores.add(ds);
+            }
         }
 
-        mgr.patchTask(TaskStage.FINISHED);
+        // include hosts that are part of a non-DRS enabled cluster, the cluster may come in a
+        // later page
+        enumerationContext.addHostSystems(hosts);
+        hosts = enumerationContext.takeHostSystemsInNonDrsClusters();
+
+        processFoundNetworks(enumerationContext, networks);
+        processFoundDatastores(enumerationContext, datastores);
+        processFoundHostSystems(enumerationContext, hosts);
+        processFoundComputeResources(enumerationContext, computeResources);
+        processFoundVms(enumerationContext, vms);
     }
 
     private void threadInterrupted(TaskManager mgr, InterruptedException e) {
@@ -441,20 +475,29 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
         return URI.create(uri.toString().replace("/sdk", "/api"));
     }
 
-    private void processFoundNetwork(EnumerationContext enumerationContext, NetworkOverlay net,
-            List<String> tenantLinks) {
-        QueryTask task = queryForNetwork(enumerationContext, net.getName());
+    private void processFoundNetworks(EnumerationContext enumerationContext,
+            List<NetworkOverlay> nets) {
+        if (nets.isEmpty()) {
+            return;
+        }
+        ResourceTracker tracker = enumerationContext.getNetworkTracker();
+        tracker.expect(nets.size());
+
+        List<String> tenantLinks = enumerationContext.getParent().tenantLinks;
+        QueryTask task = queryForNetworks(enumerationContext,
+                nets.stream().map(NetworkOverlay::getName).collect(Collectors.toSet()));
         task.tenantLinks = tenantLinks;
 
-        withTaskResults(task, result -> {
-            if (result.documentLinks.isEmpty()) {
-                createNewNetwork(enumerationContext, net, tenantLinks);
-            } else {
-                NetworkState oldDocument = convertOnlyResultToComputeState(result,
-                        NetworkState.class);
-                updateNetwork(oldDocument, enumerationContext, net, tenantLinks);
+        withDocumentsByKey(task, NetworkState.class, doc -> doc.name, oldDocuments -> {
+            for (NetworkOverlay net : nets) {
+                NetworkState oldDocument = oldDocuments.get(net.getName());
+                if (oldDocument == null) {
+                    createNewNetwork(enumerationContext, net, tenantLinks);
+                } else {
+                    updateNetwork(oldDocument, enumerationContext, net, tenantLinks);
+                }
             }
-        });
+        }, () -> trackErrors(tracker, nets));
     }
 
     private void updateNetwork(NetworkState oldDocument, EnumerationContext enumerationContext,
@@ -575,7 +618,7 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
         return state;
     }
 
-    private QueryTask queryForNetwork(EnumerationContext ctx, String name) {
+    private QueryTask queryForNetworks(EnumerationContext ctx, Collection<String> names) {
         URI adapterManagementReference = ctx.getParent().adapterManagementReference;
         String regionId = ctx.getParent().description.regionId;
 
@@ -588,8 +631,7 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
 
         qs.query.addBooleanClause(
                 Query.Builder.create()
-                        .addFieldClause(NetworkState.FIELD_NAME_NAME,
-                                name)
+                        .addInClause(NetworkState.FIELD_NAME_NAME, names)
                         .build());
 
         qs.query.addBooleanClause(Query.Builder.create()
@@ -602,24 +644,33 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
                 .setDirect(true);
     }
 
-    private void processFoundDatastore(EnumerationContext enumerationContext,
-            DatastoreOverlay ds, List<String> tenantLinks) {
+    private void processFoundDatastores(EnumerationContext enumerationContext,
+            List<DatastoreOverlay> datastores) {
+        if (datastores.isEmpty()) {
+            return;
+        }
+        ResourceTracker tracker = enumerationContext.getDatastoreTracker();
+        tracker.expect(datastores.size());
+
         ComputeEnumerateResourceRequest request = enumerationContext.getRequest();
         String regionId = enumerationContext.getRegionId();
+        List<String> tenantLinks = enumerationContext.getParent().tenantLinks;
 
-        QueryTask task = queryForStorage(request.adapterManagementReference, ds.getName(),
+        QueryTask task = queryForStorage(request.adapterManagementReference,
+                datastores.stream().map(DatastoreOverlay::getName).collect(Collectors.toSet()),
                 regionId);
         task.tenantLinks = tenantLinks;
 
-        withTaskResults(task, result -> {
-            if (result.documentLinks.isEmpty()) {
-                createNewStorageDescription(enumerationContext, ds, tenantLinks);
-            } else {
-                StorageDescription oldDocument = convertOnlyResultToComputeState(result,
-                        StorageDescription.class);
-                updateStorageDescription(oldDocument, enumerationContext, ds, tenantLinks);
+        withDocumentsByKey(task, StorageDescription.class, doc -> doc.name, oldDocuments -> {
+            for (DatastoreOverlay ds : datastores) {
+                StorageDescription oldDocument = oldDocuments.get(ds.getName());
+                if (oldDocument == null) {
+                    createNewStorageDescription(enumerationContext, ds, tenantLinks);
+                } else {
+                    updateStorageDescription(oldDocument, enumerationContext, ds, tenantLinks);
+                }
             }
-        });
+        }, () -> trackErrors(tracker, datastores));
     }
 
     private void updateStorageDescription(StorageDescription oldDocument,
@@ -670,11 +721,11 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
         return res;
     }
 
-    private QueryTask queryForStorage(URI adapterManagementReference, String name,
+    private QueryTask queryForStorage(URI adapterManagementReference, Collection<String> names,
             String regionId) {
         QuerySpecification qs = new QuerySpecification();
         qs.query.addBooleanClause(
-                Query.Builder.create().addFieldClause(StorageDescription.FIELD_NAME_NAME, name)
+                Query.Builder.create().addInClause(StorageDescription.FIELD_NAME_NAME, names)
                         .build());
 
         qs.query.addBooleanClause(Query.Builder.create()
@@ -693,34 +744,37 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
 
     /**
      * Either creates a new Compute or update an already existing one. Existence is checked by
-     * querying for a compute with id equals to moref value of a cluster whose parent is the Compute
+     * querying for computes with id equals to moref value of a cluster whose parent is the Compute
      * from the request.
      *
      * @param enumerationContext
-     * @param cr
-     * @param tenantLinks
+     * @param computeResources
      */
-    private void processFoundComputeResource(EnumerationContext enumerationContext,
-            ComputeResourceOverlay cr, List<String> tenantLinks) {
+    private void processFoundComputeResources(EnumerationContext enumerationContext,
+            List<ComputeResourceOverlay> computeResources) {
+        if (computeResources.isEmpty()) {
+            return;
+        }
+        ResourceTracker tracker = enumerationContext.getComputeResourceTracker();
+        tracker.expect(computeResources.size());
+
         ComputeEnumerateResourceRequest request = enumerationContext.getRequest();
-        QueryTask task = queryForCluster(request.resourceLink(),
-                cr.getId().getValue());
+        List<String> tenantLinks = enumerationContext.getParent().tenantLinks;
+        QueryTask task = queryForClusters(request.resourceLink(),
+                computeResources.stream().map(cr -> cr.getId().getValue())
+                        .collect(Collectors.toSet()));
         task.tenantLinks = tenantLinks;
 
-        withTaskResults(task, result -> {
-            if (result.documentLinks.isEmpty()) {
-                createNewComputeResource(enumerationContext, cr, tenantLinks);
-            } else {
-                ComputeState oldDocument = convertOnlyResultToComputeState(result,
-                        ComputeState.class);
-                updateCluster(oldDocument, enumerationContext, cr, tenantLinks);
+        withDocumentsByKey(task, ComputeState.class, doc -> doc.id, oldDocuments -> {
+            for (ComputeResourceOverlay cr : computeResources) {
+                ComputeState oldDocument = oldDocuments.get(cr.getId().getValue());
+                if (oldDocument == null) {
+                    createNewComputeResource(enumerationContext, cr, tenantLinks);
+                } else {
+                    updateCluster(oldDocument, enumerationContext, cr, tenantLinks);
+                }
             }
-        });
-    }
-
-    private <T> T convertOnlyResultToComputeState(ServiceDocumentQueryResult result,
-            Class<T> type) {
-        return Utils.fromJson(result.documents.values().iterator().next(), type);
+        }, () -> trackErrors(tracker, computeResources));
     }
 
     private void updateCluster(ComputeState oldDocument,
@@ -736,13 +790,13 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
         logInfo("Syncing ComputeResource %s", oldDocument.documentSelfLink);
         Operation.createPatch(UriUtils.buildUri(getHost(), oldDocument.documentSelfLink))
                 .setBody(state)
+                .setCompletion(trackComputeResource(enumerationContext, cr))
                 .sendWith(this);
 
         ComputeDescription desc = makeDescriptionForCluster(enumerationContext, cr);
         desc.documentSelfLink = oldDocument.descriptionLink;
         Operation.createPatch(UriUtils.buildUri(getHost(), desc.documentSelfLink))
                 .setBody(desc)
-                .setCompletion(trackComputeResource(enumerationContext, cr))
                 .sendWith(this);
     }
 
@@ -811,13 +865,23 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
             return new HashSet<>();
         }
 
-        OperationJoin.create(
-                tags.stream()
-                        .map(s -> Operation
-                                .createPost(UriUtils.buildFactoryUri(getHost(), TagService.class))
-                                .setReferer(getUri())
-                                .setBody(s)))
-                .sendWith(this);
+        // only POST the tags not known to exist on this node yet
+        KnownTagCache knownTags = KnownTagCache.getInstance(getHost());
+        List<Operation> operations = tags.stream()
+                .filter(s -> !knownTags.isKnown(s))
+                .map(s -> Operation
+                        .createPost(UriUtils.buildFactoryUri(getHost(), TagService.class))
+                        .setReferer(getUri())
+                        .setBody(s)
+                        .setCompletion((o, e) -> {
+                            if (e == null) {
+                                knownTags.addKnown(s);
+                            }
+                        }))
+                .collect(Collectors.toList());
+        if (!operations.isEmpty()) {
+            OperationJoin.create(operations).sendWith(this);
+        }
 
         return tags.stream().map(s -> s.documentSelfLink).collect(Collectors.toSet());
     }
@@ -890,10 +954,10 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
         return state;
     }
 
-    private QueryTask queryForCluster(String parentComputeLink, String moRefId) {
+    private QueryTask queryForClusters(String parentComputeLink, Collection<String> moRefIds) {
         QuerySpecification qs = new QuerySpecification();
         qs.query.addBooleanClause(
-                Query.Builder.create().addFieldClause(ComputeState.FIELD_NAME_ID, moRefId)
+                Query.Builder.create().addInClause(ComputeState.FIELD_NAME_ID, moRefIds)
                         .build());
 
         qs.query.addBooleanClause(Query.Builder.create()
@@ -906,25 +970,35 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
 
     /**
      * @param enumerationContext
-     * @param hs
-     * @param cr parent ComputeResource
-     * @param tenantLinks
+     * @param hosts hosts whose parent is a known non-DRS cluster
      */
-    private void processFoundHostSystem(EnumerationContext enumerationContext,
-            HostSystemOverlay hs, ComputeResourceOverlay cr, List<String> tenantLinks) {
+    private void processFoundHostSystems(EnumerationContext enumerationContext,
+            List<HostSystemOverlay> hosts) {
+        if (hosts.isEmpty()) {
+            return;
+        }
+        ResourceTracker tracker = enumerationContext.getHostSystemTracker();
+        tracker.expect(hosts.size());
+
         ComputeEnumerateResourceRequest request = enumerationContext.getRequest();
-        QueryTask task = queryForHostSystem(request.resourceLink(),
-                hs.getHardwareUuid());
+        List<String> tenantLinks = enumerationContext.getParent().tenantLinks;
+        QueryTask task = queryForHostSystems(request.resourceLink(),
+                hosts.stream().map(HostSystemOverlay::getHardwareUuid)
+                        .collect(Collectors.toSet()));
         task.tenantLinks = tenantLinks;
-        withTaskResults(task, result -> {
-            if (result.documentLinks.isEmpty()) {
-                createNewHostSystem(enumerationContext, hs, cr, tenantLinks);
-            } else {
-                ComputeState oldDocument = convertOnlyResultToComputeState(result,
-                        ComputeState.class);
-                updateHostSystem(oldDocument, enumerationContext, hs, cr, tenantLinks);
+
+        withDocumentsByKey(task, ComputeState.class, doc -> doc.id, oldDocuments -> {
+            for (HostSystemOverlay hs : hosts) {
+                ComputeResourceOverlay cr = enumerationContext
+                        .getNonDrsCluster(hs.getParent().getValue());
+                ComputeState oldDocument = oldDocuments.get(hs.getHardwareUuid());
+                if (oldDocument == null) {
+                    createNewHostSystem(enumerationContext, hs, cr, tenantLinks);
+                } else {
+                    updateHostSystem(oldDocument, enumerationContext, hs, cr, tenantLinks);
+                }
             }
-        });
+        }, () -> trackErrors(tracker, hosts));
     }
 
     private void updateHostSystem(ComputeState oldDocument, EnumerationContext enumerationContext,
@@ -1011,25 +1085,37 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
     }
 
     /**
+     * The VMs are stored once the network tracker is done, new VMs need the network links for
+     * their NICs.
+     *
      * @param enumerationContext
-     * @param vm
-     * @param tenantLinks
+     * @param vms
      */
-    private void processFoundVm(EnumerationContext enumerationContext, VmOverlay vm,
-            List<String> tenantLinks) {
+    private void processFoundVms(EnumerationContext enumerationContext, List<VmOverlay> vms) {
+        if (vms.isEmpty()) {
+            return;
+        }
+        ResourceTracker tracker = enumerationContext.getVmTracker();
+        tracker.expect(vms.size());
+
         ComputeEnumerateResourceRequest request = enumerationContext.getRequest();
-        QueryTask task = queryForVm(request.resourceLink(), vm.getInstanceUuid());
+        List<String> tenantLinks = enumerationContext.getParent().tenantLinks;
+        QueryTask task = queryForVms(request.resourceLink(),
+                vms.stream().map(VmOverlay::getInstanceUuid).collect(Collectors.toSet()));
         task.tenantLinks = tenantLinks;
 
-        withTaskResults(task, result -> {
-            if (result.documentLinks.isEmpty()) {
-                createNewVm(enumerationContext, vm, tenantLinks);
-            } else {
-                ComputeState oldDocument = convertOnlyResultToComputeState(result,
-                        ComputeState.class);
-                updateVm(oldDocument, enumerationContext, vm, tenantLinks);
-            }
-        });
+        withDocumentsByKey(task, ComputeState.class, doc -> doc.id, oldDocuments -> {
+            enumerationContext.getNetworkTracker().whenDone().thenRun(() -> {
+                for (VmOverlay vm : vms) {
+                    ComputeState oldDocument = oldDocuments.get(vm.getInstanceUuid());
+                    if (oldDocument == null) {
+                        createNewVm(enumerationContext, vm, tenantLinks);
+                    } else {
+                        updateVm(oldDocument, enumerationContext, vm, tenantLinks);
+                    }
+                }
+            });
+        }, () -> trackErrors(tracker, vms));
     }
 
     private void updateVm(ComputeState oldDocument, EnumerationContext enumerationContext,
@@ -1145,39 +1231,59 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
     }
 
     /**
-     * Executes a direct query and invokes the provided handler with the results.
+     * Executes a direct query and invokes the provided handler with the found documents by key.
+     * When several documents have the same key the first one is used.
      *
      * @param task
+     * @param type
+     * @param keyFunction
      * @param handler
+     * @param errorHandler invoked instead of the handler when the query fails
      */
-    private void withTaskResults(QueryTask task, Consumer<ServiceDocumentQueryResult> handler) {
+    private <T extends ServiceDocument> void withDocumentsByKey(QueryTask task, Class<T> type,
+            Function<T, String> keyFunction, Consumer<Map<String, T>> handler,
+            Runnable errorHandler) {
         task.querySpec.options = EnumSet.of(QueryOption.EXPAND_CONTENT);
         Operation.createPost(UriUtils.buildUri(getHost(), ServiceUriPaths.CORE_QUERY_TASKS))
                 .setBody(task)
                 .setCompletion((o, e) -> {
                     if (e != null) {
                         logWarning("Error processing task %s", task.documentSelfLink);
+                        errorHandler.run();
                         return;
                     }
 
-                    QueryTask body = o.getBody(QueryTask.class);
-                    handler.accept(body.results);
+                    ServiceDocumentQueryResult result = o.getBody(QueryTask.class).results;
+                    Map<String, T> documents = new HashMap<>();
+                    if (result.documents != null) {
+                        for (Object json : result.documents.values()) {
+                            T doc = Utils.fromJson(json, type);
+                            documents.putIfAbsent(keyFunction.apply(doc), doc);
+                        }
+                    }
+                    handler.accept(documents);
                 })
                 .sendWith(this);
     }
 
+    private void trackErrors(ResourceTracker tracker, List<? extends AbstractOverlay> objects) {
+        for (AbstractOverlay obj : objects) {
+            tracker.track(VimUtils.convertMoRefToString(obj.getId()), ResourceTracker.ERROR);
+        }
+    }
+
     /**
-     * Builds a query for finding a ComputeState by instanceUuid from vsphere and parent compute
+     * Builds a query for finding ComputeStates by instanceUuid from vsphere and parent compute
      * link.
      *
      * @param parentComputeLink
-     * @param instanceUuid
+     * @param instanceUuids
      * @return
      */
-    private QueryTask queryForVm(String parentComputeLink, String instanceUuid) {
+    private QueryTask queryForVms(String parentComputeLink, Collection<String> instanceUuids) {
         QuerySpecification qs = new QuerySpecification();
         qs.query.addBooleanClause(
-                Query.Builder.create().addFieldClause(ComputeState.FIELD_NAME_ID, instanceUuid)
+                Query.Builder.create().addInClause(ComputeState.FIELD_NAME_ID, instanceUuids)
                         .build());
 
         qs.query.addBooleanClause(Query.Builder.create()
@@ -1189,16 +1295,17 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
     }
 
     /**
-     * Builds a query for finding a HostSystems by their hardwareUuid.
+     * Builds a query for finding HostSystems by their hardwareUuid.
      *
      * @param parentComputeLink
-     * @param hardwareUuid
+     * @param hardwareUuids
      * @return
      */
-    private QueryTask queryForHostSystem(String parentComputeLink, String hardwareUuid) {
+    private QueryTask queryForHostSystems(String parentComputeLink,
+            Collection<String> hardwareUuids) {
         QuerySpecification qs = new QuerySpecification();
         qs.query.addBooleanClause(
-                Query.Builder.create().addFieldClause(ComputeState.FIELD_NAME_ID, hardwareUuid)
+                Query.Builder.create().addInClause(ComputeState.FIELD_NAME_ID, hardwareUuids)
                         .build());
 
         qs.query.addBooleanClause(Query.Builder.create()
@@ -1211,9 +1318,72 @@ public class VSphereAdapterResourceEnumerationService extends StatelessService {
                 .setDirect(true);
     }
 
-    private void processUpdates(UpdateSet updateSet) {
-        // handle PC updates
-        // https://jira-hzn.eng.vmware.com/browse/VCOM-17
+    /**
+     * Applies the changes collected in the inventory since the last call: objects which entered
+     * or changed are created or updated, the documents of objects which left are deleted. Waits
+     * until the documents are stored so that the changes of the next update set are applied
+     * after these ones.
+     *
+     * @param enumerationContext
+     * @param inventory
+     * @throws InterruptedException
+     */
+    private void processUpdates(EnumerationContext enumerationContext, InventoryCache inventory)
+            throws InterruptedException {
+        enumerationContext.startTracking();
+        processPage(enumerationContext, inventory.drainUpdated());
+        // the parents of hosts which are not pending anymore were seen in earlier updates
+        enumerationContext.clearPendingHostSystems();
+        enumerationContext.getNetworkTracker().seal();
+        enumerationContext.getDatastoreTracker().seal();
+        enumerationContext.getHostSystemTracker().seal();
+        enumerationContext.getComputeResourceTracker().seal();
+        enumerationContext.getVmTracker().seal();
+
+        for (ObjectContent cont : inventory.drainRemoved()) {
+            processRemovedObject(enumerationContext, cont.getObj());
+        }
+
+        try {
+            enumerationContext.whenDone().get();
+        } catch (ExecutionException e) {
+            // the trackers are never completed exceptionally
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void processRemovedObject(EnumerationContext enumerationContext,
+            ManagedObjectReference ref) {
+        ResourceTracker tracker;
+        if (VimUtils.isNetwork(ref)) {
+            tracker = enumerationContext.getNetworkTracker();
+        } else if (VimUtils.isVirtualMachine(ref)) {
+            tracker = enumerationContext.getVmTracker();
+        } else if (VimUtils.isHost(ref)) {
+            tracker = enumerationContext.getHostSystemTracker();
+        } else if (VimUtils.isComputeResource(ref)) {
+            enumerationContext.removeComputeResource(ref.getValue());
+            tracker = enumerationContext.getComputeResourceTracker();
+        } else if (VimUtils.isDatastore(ref)) {
+            tracker = enumerationContext.getDatastoreTracker();
+        } else {
+            return;
+        }
+
+        // only objects whose documents were created or updated by this process are tracked
+        String selfLink = tracker.untrack(VimUtils.convertMoRefToString(ref));
+        if (selfLink == null || ResourceTracker.ERROR.equals(selfLink)) {
+            return;
+        }
+
+        logInfo("Removing %s for %s", selfLink, VimUtils.convertMoRefToString(ref));
+        Operation.createDelete(UriUtils.buildUri(getHost(), selfLink))
+                .setCompletion((o, e) -> {
+                    if (e != null) {
+                        logWarning("Error deleting %s: %s", selfLink, e.getMessage());
+                    }
+                })
+                .sendWith(this);
     }
 
     private void validate(ComputeEnumerateResourceRequest request) {
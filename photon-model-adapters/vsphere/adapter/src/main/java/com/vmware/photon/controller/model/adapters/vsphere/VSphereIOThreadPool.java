@@ -33,16 +33,28 @@ import com.vmware.xenon.services.common.AuthCredentialsService.AuthCredentialsSe
 
 /**
  * Manages a threadpool that executes request to vsphere instances. A threadpool is allocated per
- * ServiceHost, not per vSphere.
+ * ServiceHost, not per vSphere. The connections handed to the callbacks come from a
+ * {@link VSphereSessionPool}, so the vSphere sessions are reused across requests.
  */
 public class VSphereIOThreadPool {
     private static final Logger logger = Logger.getLogger(VSphereIOThreadPool.class.getName());
     private final ScheduledExecutorService executorService;
     private final ServiceHost host;
+    private final VSphereSessionPool sessionPool;
 
     public VSphereIOThreadPool(ServiceHost host, ScheduledExecutorService executorService) {
+        this(host, executorService, new VSphereSessionPool());
+    }
+
+    public VSphereIOThreadPool(ServiceHost host, ScheduledExecutorService executorService,
+            VSphereSessionPool sessionPool) {
         this.host = host;
         this.executorService = executorService;
+        this.sessionPool = sessionPool;
+
+        long keepAliveMicros = sessionPool.getKeepAliveMicros();
+        this.executorService.scheduleWithFixedDelay(sessionPool::keepAlive, keepAliveMicros,
+                keepAliveMicros, TimeUnit.MICROSECONDS);
     }
 
     public static VSphereIOThreadPool createDefault(ServiceHost host, int concurrency) {
@@ -66,7 +78,7 @@ public class VSphereIOThreadPool {
     public void submit(Service sender, URI adapterReference, AuthCredentialsServiceState auth,
             ConnectionCallback callback) {
 
-        execute(adapterReference, auth, callback, null);
+        execute(sender, adapterReference, auth, callback, null);
     }
 
     /**
@@ -88,7 +100,7 @@ public class VSphereIOThreadPool {
     public void submit(Service sender, URI adapterReference, AuthCredentialsServiceState auth,
             ConnectionCallback callback, Consumer<Connection> connectionEnhancer) {
 
-        execute(adapterReference, auth, callback, connectionEnhancer);
+        execute(sender, adapterReference, auth, callback, connectionEnhancer);
     }
 
     /**
@@ -115,7 +127,7 @@ public class VSphereIOThreadPool {
                     }
 
                     AuthCredentialsServiceState auth = o.getBody(AuthCredentialsServiceState.class);
-                    execute(adapterReference, auth, callback, null);
+                    execute(sender, adapterReference, auth, callback, null);
                 });
 
         sender.sendRequest(op);
@@ -130,56 +142,35 @@ public class VSphereIOThreadPool {
         this.executorService.submit(task);
     }
 
-    private void execute(URI adapterReference, AuthCredentialsServiceState auth,
+    private void execute(Service sender, URI adapterReference, AuthCredentialsServiceState auth,
             ConnectionCallback callback, Consumer<Connection> connectionEnhancer) {
-        BasicConnection connection = new BasicConnection();
-
-        // TODO control sslErrors policy externally
-        connection.setIgnoreSslErrors(true);
-
-        connection.setUsername(auth.privateKeyId);
-        connection.setPassword(auth.privateKey);
-
-        connection.setURI(adapterReference);
-
-        if (connectionEnhancer != null) {
-            connectionEnhancer.accept(connection);
-        }
-
-        // don't connect now, but as late as possible as the session can expire
-        executeCallback(connection, callback);
-    }
-
-    private void executeCallback(BasicConnection connection, ConnectionCallback callback) {
         OperationContext opContext = OperationContext.getOperationContext();
+        // don't borrow a session now, but as late as possible as the session can expire
         this.executorService.submit(() -> {
             OperationContext.restoreOperationContext(opContext);
+            BasicConnection connection;
             try {
-                // login and session creation
-                connection.connect();
+                connection = this.sessionPool.borrow(adapterReference, auth.privateKeyId,
+                        auth.privateKey);
             } catch (ConnectionException e) {
                 callback.doInConnection(null, e);
                 return;
             }
 
             try {
+                if (connectionEnhancer != null) {
+                    connectionEnhancer.accept(connection);
+                }
                 callback.doInConnection(connection, null);
             } catch (Exception e) {
                 logger.log(Level.WARNING, "Uncaught exception in vSphere IO Pool", e);
             } finally {
-                closeQuietly(connection);
+                this.sessionPool.release(connection);
+                this.sessionPool.publishStats(sender);
             }
         });
     }
 
-    private void closeQuietly(BasicConnection connection) {
-        try {
-            connection.close();
-        } catch (Exception e) {
-            logger.log(Level.WARNING, "Error closing connection to " + connection.getURI(), e);
-        }
-    }
-
     public void schedule(Runnable task, int timeout, TimeUnit unit) {
         this.executorService.schedule(task, timeout, unit);
     }
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.vsphere;
+
+import java.net.URI;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.photon.controller.model.adapters.vsphere.util.connection.BasicConnection;
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.Service.ServiceOption;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Pool of logged in vSphere sessions, keyed by the SDK url and the credentials they were
+ * created with. Reusing a session saves the login and logout round trips and keeps the number of
+ * sessions open on the vCenter low.
+ *
+ * A session is checked before it is handed out if it was not used for a while, and the idle
+ * sessions are periodically pinged so that they do not time out on the server. Sessions which
+ * have expired are logged out and replaced by a new login.
+ */
+public class VSphereSessionPool {
+    private static final Logger logger = Logger.getLogger(VSphereSessionPool.class.getName());
+
+    public static final String MAX_IDLE_SESSIONS_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "VSphereSessionPool.maxIdleSessions";
+    public static final String KEEP_ALIVE_SECONDS_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "VSphereSessionPool.keepAliveSeconds";
+    public static final String MAX_IDLE_SECONDS_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "VSphereSessionPool.maxIdleSeconds";
+    public static final String VALIDATE_AFTER_IDLE_SECONDS_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "VSphereSessionPool.validateAfterIdleSeconds";
+
+    // vCenter expires sessions after 30 minutes of inactivity by default
+    private static final int DEFAULT_KEEP_ALIVE_SECONDS = 5 * 60;
+    private static final int DEFAULT_MAX_IDLE_SECONDS = 30 * 60;
+    private static final int DEFAULT_VALIDATE_AFTER_IDLE_SECONDS = 60;
+
+    public static final String STAT_NAME_LOGIN_COUNT = "VSphereSessionLoginCount";
+    public static final String STAT_NAME_REUSE_COUNT = "VSphereSessionReuseCount";
+    public static final String STAT_NAME_EXPIRED_COUNT = "VSphereSessionExpiredCount";
+    public static final String STAT_NAME_ACTIVE_COUNT = "VSphereSessionActiveCount";
+    public static final String STAT_NAME_IDLE_COUNT = "VSphereSessionIdleCount";
+
+    private final int maxIdleSessions;
+    private final long keepAliveMicros;
+    private final long maxIdleMicros;
+    private final long validateAfterIdleMicros;
+
+    private final Map<SessionKey, Deque<PooledSession>> idleSessions = new ConcurrentHashMap<>();
+    private final Map<BasicConnection, PooledSession> activeSessions = new ConcurrentHashMap<>();
+
+    private final AtomicLong loginCount = new AtomicLong();
+    private final AtomicLong reuseCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    public VSphereSessionPool() {
+        this(Integer.getInteger(MAX_IDLE_SESSIONS_PROPERTY,
+                VSphereIOThreadPoolAllocator.DEFAULT_THREAD_POOL_SIZE),
+                TimeUnit.SECONDS.toMicros(Integer.getInteger(KEEP_ALIVE_SECONDS_PROPERTY,
+                        DEFAULT_KEEP_ALIVE_SECONDS)),
+                TimeUnit.SECONDS.toMicros(Integer.getInteger(MAX_IDLE_SECONDS_PROPERTY,
+                        DEFAULT_MAX_IDLE_SECONDS)),
+                TimeUnit.SECONDS.toMicros(Integer.getInteger(VALIDATE_AFTER_IDLE_SECONDS_PROPERTY,
+                        DEFAULT_VALIDATE_AFTER_IDLE_SECONDS)));
+    }
+
+    /**
+     * @param maxIdleSessions how many idle sessions are kept per SDK url and credentials
+     * @param keepAliveMicros how often the idle sessions are pinged
+     * @param maxIdleMicros how long a session is kept unused before it is logged out
+     * @param validateAfterIdleMicros how long a session can be unused before it has to be checked
+     *        when it is borrowed
+     */
+    VSphereSessionPool(int maxIdleSessions, long keepAliveMicros, long maxIdleMicros,
+            long validateAfterIdleMicros) {
+        this.maxIdleSessions = maxIdleSessions;
+        this.keepAliveMicros = keepAliveMicros;
+        this.maxIdleMicros = maxIdleMicros;
+        this.validateAfterIdleMicros = validateAfterIdleMicros;
+    }
+
+    public long getKeepAliveMicros() {
+        return this.keepAliveMicros;
+    }
+
+    /**
+     * Returns a logged in connection, either an idle one or a new one. The connection must be
+     * given back with {@link #release(BasicConnection)} once it is not used anymore.
+     *
+     * @throws com.vmware.photon.controller.model.adapters.vsphere.util.connection.ConnectionException
+     *         if the login fails
+     */
+    public BasicConnection borrow(URI adapterReference, String username, String password) {
+        SessionKey key = new SessionKey(adapterReference, username, password);
+        Deque<PooledSession> idle = this.idleSessions.get(key);
+        PooledSession session;
+        while (idle != null && (session = idle.pollFirst()) != null) {
+            if (Utils.getNowMicrosUtc() - session.lastCheckedMicros < this.validateAfterIdleMicros
+                    || session.connection.isAlive()) {
+                this.reuseCount.incrementAndGet();
+                return activate(session);
+            }
+            this.expiredCount.incrementAndGet();
+            closeQuietly(session.connection);
+        }
+
+        BasicConnection connection = createConnection(adapterReference, username, password);
+        // login and session creation
+        connection.connect();
+        this.loginCount.incrementAndGet();
+        return activate(new PooledSession(key, connection));
+    }
+
+    /**
+     * Gives a borrowed connection back to the pool. Connections closed by their user are
+     * dropped.
+     */
+    public void release(BasicConnection connection) {
+        PooledSession session = this.activeSessions.remove(connection);
+        if (session == null) {
+            closeQuietly(connection);
+            return;
+        }
+        if (connection.getUserSession() == null) {
+            return;
+        }
+
+        // undo any customization by the previous user
+        connection.setRequestTimeout(-1, TimeUnit.MILLISECONDS);
+
+        session.lastUsedMicros = Utils.getNowMicrosUtc();
+        session.lastCheckedMicros = session.lastUsedMicros;
+        Deque<PooledSession> idle = this.idleSessions.computeIfAbsent(session.key,
+                k -> new ConcurrentLinkedDeque<>());
+        idle.offerFirst(session);
+        if (idle.size() > this.maxIdleSessions) {
+            // keep the most recently used sessions
+            PooledSession eldest = idle.pollLast();
+            if (eldest != null) {
+                closeQuietly(eldest.connection);
+            }
+        }
+    }
+
+    /**
+     * Pings the sessions which have been idle for longer than the keep alive interval, and logs
+     * out the ones which have been idle for too long or have expired.
+     */
+    public void keepAlive() {
+        for (Deque<PooledSession> idle : this.idleSessions.values()) {
+            for (PooledSession session : idle) {
+                long now = Utils.getNowMicrosUtc();
+                if (now - session.lastCheckedMicros < this.keepAliveMicros) {
+                    continue;
+                }
+                // take the session out, so that it is not borrowed while being checked
+                if (!idle.remove(session)) {
+                    continue;
+                }
+                if (now - session.lastUsedMicros >= this.maxIdleMicros) {
+                    closeQuietly(session.connection);
+                    continue;
+                }
+                if (!session.connection.isAlive()) {
+                    this.expiredCount.incrementAndGet();
+                    closeQuietly(session.connection);
+                    continue;
+                }
+                session.lastCheckedMicros = now;
+                idle.offerLast(session);
+            }
+        }
+    }
+
+    /**
+     * Publishes the pool stats on the service. The stats are only kept by services with
+     * {@link ServiceOption#INSTRUMENTATION}.
+     */
+    public void publishStats(Service service) {
+        if (service == null || !service.hasOption(ServiceOption.INSTRUMENTATION)) {
+            return;
+        }
+        service.setStat(STAT_NAME_LOGIN_COUNT, this.loginCount.get());
+        service.setStat(STAT_NAME_REUSE_COUNT, this.reuseCount.get());
+        service.setStat(STAT_NAME_EXPIRED_COUNT, this.expiredCount.get());
+        service.setStat(STAT_NAME_ACTIVE_COUNT, this.activeSessions.size());
+        service.setStat(STAT_NAME_IDLE_COUNT, getIdleCount());
+    }
+
+    long getLoginCount() {
+        return this.loginCount.get();
+    }
+
+    long getReuseCount() {
+        return this.reuseCount.get();
+    }
+
+    long getExpiredCount() {
+        return this.expiredCount.get();
+    }
+
+    int getIdleCount() {
+        int count = 0;
+        for (Deque<PooledSession> idle : this.idleSessions.values()) {
+            count += idle.size();
+        }
+        return count;
+    }
+
+    protected BasicConnection createConnection(URI adapterReference, String username,
+            String password) {
+        BasicConnection connection = new BasicConnection();
+
+        // TODO control sslErrors policy externally
+        connection.setIgnoreSslErrors(true);
+
+        connection.setUsername(username);
+        connection.setPassword(password);
+
+        connection.setURI(adapterReference);
+
+        return connection;
+    }
+
+    private BasicConnection activate(PooledSession session) {
+        this.activeSessions.put(session.connection, session);
+        return session.connection;
+    }
+
+    private void closeQuietly(BasicConnection connection) {
+        try {
+            connection.close();
+        } catch (Exception e) {
+            logger.log(Level.WARNING, "Error closing connection to " + connection.getURI(), e);
+        }
+    }
+
+    private static class PooledSession {
+        final SessionKey key;
+        final BasicConnection connection;
+        volatile long lastUsedMicros;
+        volatile long lastCheckedMicros;
+
+        PooledSession(SessionKey key, BasicConnection connection) {
+            this.key = key;
+            this.connection = connection;
+            this.lastUsedMicros = Utils.getNowMicrosUtc();
+            this.lastCheckedMicros = this.lastUsedMicros;
+        }
+    }
+
+    private static class SessionKey {
+        final URI adapterReference;
+        final String username;
+        final String password;
+
+        SessionKey(URI adapterReference, String username, String password) {
+            this.adapterReference = adapterReference;
+            this.username = username;
+            this.password = password;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SessionKey)) {
+                return false;
+            }
+            SessionKey other = (SessionKey) o;
+            return Objects.equals(this.adapterReference, other.adapterReference)
+                    && Objects.equals(this.username, other.username)
+                    && Objects.equals(this.password, other.password);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.adapterReference, this.username, this.password);
+        }
+    }
+}
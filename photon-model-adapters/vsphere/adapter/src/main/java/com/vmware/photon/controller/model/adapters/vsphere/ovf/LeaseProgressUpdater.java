@@ -34,7 +34,8 @@ import com.vmware.vim25.TimedoutFaultMsg;
 import com.vmware.vim25.VimPortType;
 
 /**
- * Keeps an HttpNfcLease alive, updating the progress every few seconds.
+ * Keeps an HttpNfcLease alive, updating the progress every few seconds. The progress is the sum
+ * of the bytes reported by all the uploads, which may run concurrently.
  */
 public class LeaseProgressUpdater {
     public static final int LEASE_UPDATE_INTERVAL_MILLIS = 10000;
@@ -64,6 +65,9 @@ public class LeaseProgressUpdater {
         this.get = new GetMoRef(this.connection);
     }
 
+    /**
+     * Adds to the uploaded bytes. Thread-safe.
+     */
     public void advance(long delta) {
         this.reported.addAndGet(delta);
     }
@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.vsphere.ovf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vmware.photon.controller.model.UriPaths;
+
+/**
+ * Keeps extracted OVA archives on the local disk so that deploying the same OVA again does not
+ * download it again. Every archive is extracted to its own folder named after a key the caller
+ * derives from the archive identity, e.g. its uri and ETag.
+ *
+ * The size and SHA-256 of every extracted file are recorded in a marker file, and files listed in
+ * the manifest (.mf) of the OVA are checked against it while extracting. An entry whose files do
+ * not match the size or the SHA-256 recorded in the marker is discarded.
+ *
+ * The total size of the cache is bounded: the least recently used archives are deleted once a new
+ * one takes the cache over the limit. Entries returned by {@link #lookup(String)} and
+ * {@link #store(String, URI, InputStream)} are pinned until {@link #release(File)} is called, and
+ * are neither evicted nor replaced in the meantime. Use {@link #getInstance(File)} so that all
+ * the users of a folder share the pins.
+ */
+public class OvaCache {
+    public static final String MAX_SIZE_BYTES_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "OvaCache.maxSizeBytes";
+
+    private static final long DEFAULT_MAX_SIZE_BYTES = 50L * 1024 * 1024 * 1024;
+
+    private static final Logger logger = LoggerFactory.getLogger(OvaCache.class.getName());
+
+    private static final String MARKER_FILE = "status.properties";
+    private static final String PROP_SIZE = "size";
+    private static final String PROP_FILE_SIZE_PREFIX = "size.";
+    private static final String PROP_FILE_SHA256_PREFIX = "sha256.";
+
+    private static final String MANIFEST_EXTENSION = ".mf";
+    private static final Pattern MANIFEST_LINE = Pattern.compile("(SHA1|SHA256)\\((.+)\\)\\s*=\\s*([0-9a-fA-F]+)");
+
+    private static final Map<File, OvaCache> INSTANCES = new ConcurrentHashMap<>();
+
+    private final File baseDir;
+    private final long maxSizeBytes;
+
+    // number of users of each entry in use, guarded by this
+    private final Map<String, Integer> pins = new HashMap<>();
+
+    public OvaCache(File baseDir) {
+        this(baseDir, Long.getLong(MAX_SIZE_BYTES_PROPERTY, DEFAULT_MAX_SIZE_BYTES));
+    }
+
+    public OvaCache(File baseDir, long maxSizeBytes) {
+        this.baseDir = baseDir;
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Returns the cache shared by all the users of the given folder.
+     */
+    public static OvaCache getInstance(File baseDir) {
+        return INSTANCES.computeIfAbsent(baseDir.getAbsoluteFile(), OvaCache::new);
+    }
+
+    /**
+     * Returns the folder of a previously extracted archive, pinned, and marks it as recently
+     * used.
+     *
+     * @param key
+     * @return null if the archive is not cached or the cached files are damaged
+     */
+    public File lookup(String key) {
+        File folder = new File(this.baseDir, key);
+        Properties props = readMarker(folder);
+        if (props == null || props.getProperty(PROP_SIZE) == null) {
+            return null;
+        }
+
+        // pinned before the files are checked, so that the entry is not evicted meanwhile
+        pin(key);
+        String damaged;
+        try {
+            damaged = findDamagedFile(folder, props);
+        } catch (IOException e) {
+            damaged = e.getMessage();
+        }
+        if (damaged != null) {
+            synchronized (this) {
+                // another user may have checked the entry before it got damaged
+                if (unpin(key)) {
+                    logger.warn("Cached file {} is damaged, discarding {}", damaged, folder);
+                    FileUtils.deleteQuietly(folder);
+                }
+            }
+            return null;
+        }
+
+        // the marker modification time orders the entries for eviction
+        new File(folder, MARKER_FILE).setLastModified(System.currentTimeMillis());
+        return folder;
+    }
+
+    /**
+     * Unpins an entry returned by {@link #lookup(String)} or
+     * {@link #store(String, URI, InputStream)}, so that it can be evicted again.
+     */
+    public void release(File folder) {
+        if (this.baseDir.getAbsoluteFile().equals(folder.getAbsoluteFile().getParentFile())) {
+            unpin(folder.getName());
+        }
+    }
+
+    synchronized boolean isPinned(String key) {
+        return this.pins.containsKey(key);
+    }
+
+    /**
+     * Extracts a tar archive into the cache. The archive is extracted to a temporary folder which
+     * is renamed once complete, so a concurrent {@link #lookup(String)} never sees a partial
+     * archive. If the entry was stored meanwhile and is in use, that entry is kept and returned.
+     *
+     * @param key
+     * @param source where the archive comes from, recorded in the marker file
+     * @param tar the archive content
+     * @return the folder of the extracted archive, pinned
+     * @throws IOException if the archive cannot be extracted or does not match its manifest
+     */
+    public File store(String key, URI source, InputStream tar) throws IOException {
+        File destination = new File(this.baseDir, key);
+        File tmp = new File(this.baseDir, key + ".tmp-" + UUID.randomUUID());
+        tmp.mkdirs();
+
+        logger.info("Extracting OVA {} to {}", source, destination);
+        try {
+            Properties props = extract(tar, tmp);
+            props.setProperty("download-uri", source.toString());
+            props.setProperty("download-date", new Date().toString());
+            props.setProperty("download-folder", destination.getAbsolutePath());
+            writeMarker(tmp, props);
+
+            synchronized (this) {
+                if (!isPinned(key)) {
+                    FileUtils.deleteQuietly(destination);
+                    if (!tmp.renameTo(destination)) {
+                        throw new IOException("Cannot move " + tmp + " to " + destination);
+                    }
+                }
+                pin(key);
+                evict();
+            }
+        } finally {
+            FileUtils.deleteQuietly(tmp);
+        }
+
+        return destination;
+    }
+
+    private Properties extract(InputStream in, File destination) throws IOException {
+        Properties props = new Properties();
+        Map<String, String> sha1s = new HashMap<>();
+        Map<String, String> sha256s = new HashMap<>();
+        List<File> manifests = new ArrayList<>();
+        long total = 0;
+
+        TarArchiveInputStream tar = new TarArchiveInputStream(in);
+        TarArchiveEntry entry;
+        while ((entry = tar.getNextTarEntry()) != null) {
+            File file = new File(destination, entry.getName());
+            if (!file.getCanonicalPath().startsWith(destination.getCanonicalPath())) {
+                throw new IOException("Invalid entry in OVA: " + entry.getName());
+            }
+            if (entry.isDirectory()) {
+                file.mkdirs();
+                continue;
+            }
+            file.getParentFile().mkdirs();
+
+            MessageDigest sha1 = newDigest("SHA-1");
+            MessageDigest sha256 = newDigest("SHA-256");
+            long size;
+            try (OutputStream os = new DigestOutputStream(new DigestOutputStream(
+                    new FileOutputStream(file), sha1), sha256)) {
+                logger.debug("Extracting {} to {}", entry.getName(), file.getAbsoluteFile());
+                size = IOUtils.copyLarge(tar, os);
+            }
+
+            String sha256Hex = Hex.encodeHexString(sha256.digest());
+            sha1s.put(entry.getName(), Hex.encodeHexString(sha1.digest()));
+            sha256s.put(entry.getName(), sha256Hex);
+            props.setProperty(PROP_FILE_SIZE_PREFIX + entry.getName(), Long.toString(size));
+            props.setProperty(PROP_FILE_SHA256_PREFIX + entry.getName(), sha256Hex);
+            total += size;
+
+            if (entry.getName().endsWith(MANIFEST_EXTENSION)) {
+                manifests.add(file);
+            }
+        }
+
+        for (File manifest : manifests) {
+            verifyManifest(manifest, sha1s, sha256s);
+        }
+
+        props.setProperty(PROP_SIZE, Long.toString(total));
+        return props;
+    }
+
+    private void verifyManifest(File manifest, Map<String, String> sha1s,
+            Map<String, String> sha256s) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(manifest), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher m = MANIFEST_LINE.matcher(line.trim());
+                if (!m.matches()) {
+                    continue;
+                }
+                String name = m.group(2);
+                String actual = m.group(1).equals("SHA1") ? sha1s.get(name) : sha256s.get(name);
+                if (actual != null && !actual.equalsIgnoreCase(m.group(3))) {
+                    throw new IOException("Checksum of " + name + " does not match "
+                            + manifest.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first file of the entry which does not match the size or the SHA-256 recorded
+     * in the marker, or null if all of them match.
+     */
+    private String findDamagedFile(File folder, Properties props) throws IOException {
+        for (String name : props.stringPropertyNames()) {
+            if (!name.startsWith(PROP_FILE_SIZE_PREFIX)) {
+                continue;
+            }
+            String fileName = name.substring(PROP_FILE_SIZE_PREFIX.length());
+            File file = new File(folder, fileName);
+            if (!file.isFile() || file.length() != Long.parseLong(props.getProperty(name))) {
+                return file.getPath();
+            }
+            String sha256 = props.getProperty(PROP_FILE_SHA256_PREFIX + fileName);
+            if (sha256 != null && !sha256.equalsIgnoreCase(sha256Hex(file))) {
+                return file.getPath();
+            }
+        }
+        return null;
+    }
+
+    private static String sha256Hex(File file) throws IOException {
+        MessageDigest sha256 = newDigest("SHA-256");
+        try (InputStream is = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                sha256.update(buffer, 0, read);
+            }
+        }
+        return Hex.encodeHexString(sha256.digest());
+    }
+
+    private synchronized void pin(String key) {
+        this.pins.merge(key, 1, Integer::sum);
+    }
+
+    /**
+     * Returns whether the entry is not pinned anymore.
+     */
+    private synchronized boolean unpin(String key) {
+        Integer count = this.pins.get(key);
+        if (count == null || count <= 1) {
+            this.pins.remove(key);
+            return true;
+        }
+        this.pins.put(key, count - 1);
+        return false;
+    }
+
+    /**
+     * Deletes the least recently used archives until the cache fits its limit. Pinned archives
+     * are never deleted, even if they alone are over the limit.
+     */
+    private synchronized void evict() {
+        File[] folders = this.baseDir.listFiles(File::isDirectory);
+        if (folders == null) {
+            return;
+        }
+
+        List<File> entries = new ArrayList<>();
+        Map<File, Long> sizes = new HashMap<>();
+        long total = 0;
+        for (File folder : folders) {
+            Properties props = readMarker(folder);
+            if (props == null || props.getProperty(PROP_SIZE) == null) {
+                continue;
+            }
+            long size = Long.parseLong(props.getProperty(PROP_SIZE));
+            sizes.put(folder, size);
+            entries.add(folder);
+            total += size;
+        }
+
+        entries.sort((a, b) -> Long.compare(new File(a, MARKER_FILE).lastModified(),
+                new File(b, MARKER_FILE).lastModified()));
+
+        for (File folder : entries) {
+            if (total <= this.maxSizeBytes) {
+                break;
+            }
+            if (isPinned(folder.getName())) {
+                continue;
+            }
+            logger.info("Evicting OVA {} from the cache", folder);
+            FileUtils.deleteQuietly(folder);
+            total -= sizes.get(folder);
+        }
+    }
+
+    private Properties readMarker(File folder) {
+        File marker = new File(folder, MARKER_FILE);
+        if (!marker.isFile()) {
+            return null;
+        }
+
+        Properties props = new Properties();
+        try (InputStream is = new FileInputStream(marker)) {
+            props.load(is);
+        } catch (IOException e) {
+            return null;
+        }
+        return props;
+    }
+
+    private void writeMarker(File folder, Properties props) throws IOException {
+        File propFile = new File(folder, MARKER_FILE);
+        try (FileOutputStream fos = new FileOutputStream(propFile)) {
+            props.store(fos, null);
+            logger.debug("Stored OVA download progress to {}", propFile.getAbsoluteFile());
+        }
+    }
+
+    private static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
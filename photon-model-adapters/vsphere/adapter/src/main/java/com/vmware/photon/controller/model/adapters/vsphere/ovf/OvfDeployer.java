@@ -16,8 +16,14 @@ package com.vmware.photon.controller.model.adapters.vsphere.ovf;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.apache.http.HttpEntity;
@@ -33,6 +39,7 @@ import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.vmware.photon.controller.model.UriPaths;
 import com.vmware.photon.controller.model.adapters.vsphere.InstanceClient.ClientException;
 import com.vmware.photon.controller.model.adapters.vsphere.VimUtils;
 import com.vmware.photon.controller.model.adapters.vsphere.util.connection.BaseHelper;
@@ -52,20 +59,43 @@ import com.vmware.vim25.VirtualMachineConfigSpec;
 import com.vmware.vim25.VmConfigSpec;
 import com.vmware.xenon.common.Operation;
 
+/**
+ * Deploys an OVF to a vCenter. The disks are uploaded concurrently, up to
+ * {@link #UPLOAD_PARALLELISM_PROPERTY} at a time per deploy, on threads shared by all the
+ * deploys.
+ */
 public class OvfDeployer extends BaseHelper {
     public static final String CONTENT_TYPE_VMDK = "application/x-vnd.vmware-streamVmdk";
 
+    public static final String UPLOAD_PARALLELISM_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "OvfDeployer.uploadParallelism";
+    private static final int DEFAULT_UPLOAD_PARALLELISM = 4;
+
     private static final Logger logger = LoggerFactory.getLogger(OvfDeployer.class.getName());
     private static final String PROP_INFO = "info";
 
+    // the uploads block on I/O, the number of threads is bounded by the number of concurrent
+    // deploys times the upload parallelism
+    private static final ExecutorService UPLOAD_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ovf-upload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public static final String TRANSPORT_GUESTINFO = "com.vmware.guestInfo";
     public static final String TRANSPORT_ISO = "iso";
     private OvfRetriever ovfRetriever;
+    private final int uploadParallelism;
 
     public OvfDeployer(Connection connection) throws ClientException, FinderException {
         super(connection);
 
-        CloseableHttpClient client = OvfRetriever.newInsecureClient();
+        this.uploadParallelism = Math.max(1, Integer.getInteger(UPLOAD_PARALLELISM_PROPERTY,
+                DEFAULT_UPLOAD_PARALLELISM));
+
+        // each upload may also hold a connection to download its source
+        CloseableHttpClient client = OvfRetriever
+                .newInsecureClient(Math.max(4, this.uploadParallelism));
         this.ovfRetriever = new OvfRetriever(client);
     }
 
@@ -156,20 +186,22 @@ public class OvfDeployer extends BaseHelper {
 
             String basePath = extractParentPath(ovfUri);
 
+            List<VmdkUpload> uploads = new ArrayList<>();
             for (HttpNfcLeaseDeviceUrl deviceUrl : deviceUrls) {
                 String deviceKey = deviceUrl.getImportKey();
 
                 for (OvfFileItem ovfFileItem : importSpecResult.getFileItem()) {
                     if (deviceKey.equals(ovfFileItem.getDeviceId())) {
-                        logger.debug("Importing device id: {}", deviceKey);
                         String sourceUri = basePath + ovfFileItem.getPath();
                         String uploadUri = makUploadUri(ip, deviceUrl);
-                        uploadVmdkFile(ovfFileItem, sourceUri, uploadUri, leaseUpdater, this.ovfRetriever.getClient());
-                        logger.info("Completed uploading VMDK file {}", sourceUri);
+                        uploads.add(new VmdkUpload(ovfFileItem.isCreate(), sourceUri, uploadUri));
                     }
                 }
             }
 
+            uploadVmdkFiles(uploads, leaseUpdater, this.ovfRetriever.getClient(),
+                    this.uploadParallelism);
+
             // complete lease
             leaseUpdater.complete();
         } catch (Exception e) {
@@ -205,47 +237,111 @@ public class OvfDeployer extends BaseHelper {
                 .substring(0, ovfUri.toString().lastIndexOf("/") + 1);
     }
 
-    private void uploadVmdkFile(
-            OvfFileItem ovfFileItem,
-            String sourceUri,
-            String uploadUri,
+    /**
+     * Uploads the disks, at most parallelism at a time. If an upload fails the others are
+     * aborted and the failure is rethrown.
+     */
+    static void uploadVmdkFiles(
+            List<VmdkUpload> uploads,
+            LeaseProgressUpdater leaseUpdater,
+            HttpClient client,
+            int parallelism) throws Exception {
+        if (uploads.isEmpty()) {
+            return;
+        }
+
+        // each worker uploads the pending disks one after the other
+        Queue<VmdkUpload> pending = new ConcurrentLinkedQueue<>(uploads);
+        int workerCount = Math.min(parallelism, uploads.size());
+        List<Future<?>> futures = new ArrayList<>(workerCount);
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                futures.add(UPLOAD_EXECUTOR.submit(() -> {
+                    VmdkUpload upload;
+                    while ((upload = pending.poll()) != null) {
+                        logger.debug("Uploading VMDK file {}", upload.sourceUri);
+                        uploadVmdkFile(upload, leaseUpdater, client);
+                        logger.info("Completed uploading VMDK file {}", upload.sourceUri);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    pending.clear();
+                    for (VmdkUpload upload : uploads) {
+                        upload.abort();
+                    }
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            // stops the workers left if the deploy failed or was interrupted
+            pending.clear();
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static void uploadVmdkFile(
+            VmdkUpload vmdkUpload,
             LeaseProgressUpdater leaseUpdater,
             HttpClient client) throws IOException {
 
         //prepare upload method
         HttpEntityEnclosingRequestBase upload;
-        if (ovfFileItem.isCreate()) {
-            upload = new HttpPut(uploadUri);
+        if (vmdkUpload.create) {
+            upload = new HttpPut(vmdkUpload.uploadUri);
         } else {
-            upload = new HttpPost(uploadUri);
+            upload = new HttpPost(vmdkUpload.uploadUri);
         }
 
         upload.setHeader(Operation.CONTENT_TYPE_HEADER, CONTENT_TYPE_VMDK);
 
         HttpEntity entityToUpload;
 
-        if (sourceUri.startsWith("file:/")) {
-            entityToUpload = new FileEntity(new File(URI.create(sourceUri)));
+        if (vmdkUpload.sourceUri.startsWith("file:/")) {
+            // extracted OVAs are uploaded straight from the cache
+            entityToUpload = new FileEntity(new File(URI.create(vmdkUpload.sourceUri)));
         } else {
             //prepare download method
-            HttpGet download = new HttpGet(sourceUri);
+            HttpGet download = new HttpGet(vmdkUpload.sourceUri);
+            vmdkUpload.download = download;
 
             //start download
             HttpResponse downloadResponse = client.execute(download);
+            if (downloadResponse.getStatusLine().getStatusCode() != 200) {
+                EntityUtils.consumeQuietly(downloadResponse.getEntity());
+                throw new IOException("Cannot download " + vmdkUpload.sourceUri + ": "
+                        + downloadResponse.getStatusLine());
+            }
             entityToUpload = downloadResponse.getEntity();
         }
 
         //chain download to upload
         upload.setEntity(newCountingEntity(entityToUpload, leaseUpdater));
+        vmdkUpload.upload = upload;
 
         //start chained upload
         HttpResponse uploadResponse = client.execute(upload);
 
         //block until upload completes
         EntityUtils.consume(uploadResponse.getEntity());
+
+        if (uploadResponse.getStatusLine().getStatusCode() >= 300) {
+            throw new IOException("Cannot upload " + vmdkUpload.sourceUri + ": "
+                    + uploadResponse.getStatusLine());
+        }
     }
 
-    private CountingEntityWrapper newCountingEntity(HttpEntity httpEntity,
+    private static CountingEntityWrapper newCountingEntity(HttpEntity httpEntity,
             LeaseProgressUpdater leaseUpdater) {
         return new CountingEntityWrapper(httpEntity, leaseUpdater);
     }
@@ -253,4 +349,33 @@ public class OvfDeployer extends BaseHelper {
     public OvfRetriever getRetriever() {
         return this.ovfRetriever;
     }
+
+    /**
+     * A disk to upload to the nfcLease.
+     */
+    static class VmdkUpload {
+        final boolean create;
+        final String sourceUri;
+        final String uploadUri;
+
+        volatile HttpGet download;
+        volatile HttpEntityEnclosingRequestBase upload;
+
+        VmdkUpload(boolean create, String sourceUri, String uploadUri) {
+            this.create = create;
+            this.sourceUri = sourceUri;
+            this.uploadUri = uploadUri;
+        }
+
+        void abort() {
+            HttpGet download = this.download;
+            if (download != null) {
+                download.abort();
+            }
+            HttpEntityEnclosingRequestBase upload = this.upload;
+            if (upload != null) {
+                upload.abort();
+            }
+        }
+    }
 }
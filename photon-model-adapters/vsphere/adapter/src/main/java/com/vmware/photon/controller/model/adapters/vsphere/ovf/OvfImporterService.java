@@ -60,10 +60,20 @@ public class OvfImporterService extends StatelessService {
             Document doc;
             try {
                 ovfUri = retriever.downloadIfOva(req.ovfUri);
+            } catch (Exception e) {
+                patch.fail(e);
+                return;
+            }
+            try {
                 doc = parser.retrieveDescriptor(ovfUri);
             } catch (Exception e) {
                 patch.fail(e);
                 return;
+            } finally {
+                // only the descriptor is read here, the disks are read again when deploying
+                if (!Objects.equals(ovfUri, req.ovfUri)) {
+                    retriever.release(ovfUri);
+                }
             }
 
             CustomProperties.of(req.template)
@@ -16,7 +16,6 @@ package com.vmware.photon.controller.model.adapters.vsphere.ovf;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -27,8 +26,6 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.util.Date;
-import java.util.Properties;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.SSLContext;
@@ -42,9 +39,9 @@ import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
-import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
@@ -65,7 +62,7 @@ import com.vmware.xenon.common.Utils;
 public class OvfRetriever {
 
     public static final int TAR_MAGIC_OFFSET = 0x101;
-    private static final String MARKER_FILE = "status.properties";
+    private static final String OVA_CACHE_DIR = "ova-cache";
 
     private static final Logger logger = LoggerFactory.getLogger(OvfRetriever.class.getName());
 
@@ -88,11 +85,20 @@ public class OvfRetriever {
      * @return
      */
     public static CloseableHttpClient newInsecureClient() {
+        return newInsecureClient(4);
+    }
+
+    /**
+     * Same as {@link #newInsecureClient()} allowing more concurrent connections per host.
+     * @param maxConnPerRoute
+     * @return
+     */
+    public static CloseableHttpClient newInsecureClient(int maxConnPerRoute) {
         return HttpClientBuilder.create()
                 .setHostnameVerifier(newNaiveVerifier())
                 .setSslcontext(newNaiveSslContext())
-                .setMaxConnPerRoute(4)
-                .setMaxConnTotal(8)
+                .setMaxConnPerRoute(maxConnPerRoute)
+                .setMaxConnTotal(2 * maxConnPerRoute)
                 .build();
     }
 
@@ -217,7 +223,9 @@ public class OvfRetriever {
 
     /**
      * If ovaOrOvfUri points to a OVA it will be download locally and extracted. The uri is considered OVA if it is
-     * in tar format and there is at least one .ovf inside.
+     * in tar format and there is at least one .ovf inside. Extracted OVAs are kept in an {@link OvaCache}, keyed by
+     * the uri and the ETag, Last-Modified and Content-Length returned by the server. The extracted OVA is kept in
+     * the cache until it is released with {@link #release(URI)}.
      *
      * @param ovaOrOvfUri
      * @return the first .ovf file from the extracted tar of the input parameter if it's a local file or not a
@@ -231,6 +239,7 @@ public class OvfRetriever {
 
         HttpGet get = new HttpGet(ovaOrOvfUri);
         HttpResponse check = null;
+        String cacheKey;
 
         logger.debug("Downloading ovf/ova from {}", ovaOrOvfUri);
 
@@ -250,6 +259,10 @@ public class OvfRetriever {
                     return ovaOrOvfUri;
                 }
             }
+            cacheKey = hash(ovaOrOvfUri,
+                    check.getFirstHeader(HttpHeaders.ETAG),
+                    check.getFirstHeader(HttpHeaders.LAST_MODIFIED),
+                    check.getFirstHeader(HttpHeaders.CONTENT_LENGTH));
         } finally {
             get.abort();
             if (check != null) {
@@ -258,36 +271,34 @@ public class OvfRetriever {
         }
 
         // it's an OVA (at least a tar file), download to a local folder
-        String folderName = hash(ovaOrOvfUri);
-        File destination = new File(getBaseOvaExtractionDir(), folderName);
-        if (new File(destination, MARKER_FILE).isFile()) {
-            // marker file exists so the archive is already downloaded
-            logger.info("Marker file for {} exists in {}, not downloading again", ovaOrOvfUri, destination);
-            return findFirstOvfInFolder(destination);
+        OvaCache cache = getOvaCache();
+        File destination = cache.lookup(cacheKey);
+        if (destination != null) {
+            logger.info("OVA {} is cached in {}, not downloading again", ovaOrOvfUri, destination);
+            return findFirstOvfInPinnedFolder(cache, destination);
         }
 
-        destination.mkdirs();
-        logger.info("Downloading OVA to {}", destination);
-
         get = new HttpGet(ovaOrOvfUri);
         HttpResponse response = null;
         try {
             response = this.client.execute(get);
-            TarArchiveInputStream tarStream = new TarArchiveInputStream(response.getEntity().getContent());
-            TarArchiveEntry entry;
-            while ((entry = tarStream.getNextTarEntry()) != null) {
-                extractEntry(tarStream, destination, entry);
-            }
+            destination = cache.store(cacheKey, ovaOrOvfUri, response.getEntity().getContent());
         } finally {
             if (response != null) {
                 EntityUtils.consumeQuietly(response.getEntity());
             }
         }
 
-        // store download progress
-        writeMarkerFile(destination, ovaOrOvfUri);
+        return findFirstOvfInPinnedFolder(cache, destination);
+    }
 
-        return findFirstOvfInFolder(destination);
+    private URI findFirstOvfInPinnedFolder(OvaCache cache, File destination) throws IOException {
+        try {
+            return findFirstOvfInFolder(destination);
+        } catch (IOException e) {
+            cache.release(destination);
+            throw e;
+        }
     }
 
     protected URI findFirstOvfInFolder(File destination) throws IOException {
@@ -299,48 +310,37 @@ public class OvfRetriever {
         return files[0].toURI();
     }
 
-    private void writeMarkerFile(File destination, URI ovaOrOvfUri) {
-        Properties props = new Properties();
-        props.setProperty("download-uri", ovaOrOvfUri.toString());
-        props.setProperty("download-date", new Date().toString());
-        props.setProperty("download-folder", destination.getAbsolutePath());
-
-        try {
-            File propFile = new File(destination, MARKER_FILE);
-            try (FileOutputStream fos = new FileOutputStream(propFile)) {
-                try {
-                    props.store(fos, null);
-                    logger.debug("Stored OVA download progress to {}", propFile.getAbsoluteFile());
-                } catch (IOException ignore) {
-
-                }
-            }
-        } catch (IOException e) {
-
+    /**
+     * Releases the OVA extracted by {@link #downloadIfOva(URI)}, so that it can be evicted from the cache. Only to
+     * be called if the returned uri differs from the one passed to {@link #downloadIfOva(URI)}, i.e. an OVA was
+     * extracted, and once per call.
+     *
+     * @param ovfUri the uri returned by {@link #downloadIfOva(URI)}
+     */
+    public void release(URI ovfUri) {
+        if (ovfUri != null && "file".equals(ovfUri.getScheme())) {
+            getOvaCache().release(new File(ovfUri).getParentFile());
         }
     }
 
+    private OvaCache getOvaCache() {
+        return OvaCache.getInstance(new File(getBaseOvaExtractionDir(), OVA_CACHE_DIR));
+    }
+
     protected String getBaseOvaExtractionDir() {
         // good idea to make this configurable
         return System.getProperty("java.io.tmpdir");
     }
 
-    private void extractEntry(TarArchiveInputStream tar, File destination, TarArchiveEntry entry) throws IOException {
-        File file = new File(destination, entry.getName());
-        if (entry.isDirectory()) {
-            file.mkdirs();
-        } else {
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                logger.debug("Extracting {} to {}", entry.getName(), file.getAbsoluteFile());
-                IOUtils.copy(tar, fos);
-            }
-        }
-    }
-
-    private String hash(URI ovaOrOvfUri) {
+    private String hash(URI ovaOrOvfUri, Header... validators) {
         try {
             MessageDigest sha256 = MessageDigest.getInstance("SHA-1");
             sha256.update(ovaOrOvfUri.toString().getBytes(Utils.CHARSET));
+            for (Header validator : validators) {
+                if (validator != null) {
+                    sha256.update(validator.toString().getBytes(Utils.CHARSET));
+                }
+            }
             byte[] digest = sha256.digest();
             return Hex.encodeHexString(digest);
         } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
@@ -52,6 +52,25 @@ public class StatCollectionContext {
         this.spec.setIntervalId(intervalId);
     }
 
+    /**
+     * Only the samples after the given time are returned. Unlike
+     * {@link #limitResults(int, long, TimeUnit)} the start time is not moved back, as it comes
+     * from a previous sample of vCenter.
+     * @param intervalId
+     * @param sinceMillis
+     */
+    public void limitResultsSince(int intervalId, long sinceMillis) {
+        long now = System.currentTimeMillis();
+        // allow for some clock drift
+        int clockDrift = 30 * 60 * 1000;
+
+        this.spec.setStartTime(VimUtils.convertMillisToXmlCalendar(sinceMillis));
+
+        this.spec.setEndTime(VimUtils.convertMillisToXmlCalendar(now + clockDrift));
+
+        this.spec.setIntervalId(intervalId);
+    }
+
     /**
      * Add a metric to the query and an aggregator to process it later.
      * @param metric
@@ -23,11 +23,18 @@ import static com.vmware.vim25.PerformanceManagerUnit.PERCENT;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+
+import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.photon.controller.model.adapters.vsphere.VimUtils;
 import com.vmware.photon.controller.model.adapters.vsphere.util.VimNames;
 import com.vmware.photon.controller.model.adapters.vsphere.util.connection.BaseHelper;
 import com.vmware.photon.controller.model.adapters.vsphere.util.connection.Connection;
@@ -38,9 +45,14 @@ import com.vmware.vim25.ManagedObjectReference;
 import com.vmware.vim25.PerfCounterInfo;
 import com.vmware.vim25.PerfEntityMetric;
 import com.vmware.vim25.PerfEntityMetricBase;
+import com.vmware.vim25.PerfEntityMetricCSV;
+import com.vmware.vim25.PerfFormat;
 import com.vmware.vim25.PerfMetricId;
 import com.vmware.vim25.PerfMetricIntSeries;
 import com.vmware.vim25.PerfMetricSeries;
+import com.vmware.vim25.PerfMetricSeriesCSV;
+import com.vmware.vim25.PerfQuerySpec;
+import com.vmware.vim25.PerfSampleInfo;
 import com.vmware.vim25.PerfStatsType;
 import com.vmware.vim25.PerfSummaryType;
 import com.vmware.vim25.PerformanceManagerUnit;
@@ -76,9 +88,25 @@ public class StatsClient extends BaseHelper {
     private static final int DEFAULT_INTERVAL_ID = 300;
     private static final int COLLECT_INTERVAL_HOURS = 24;
 
+    /**
+     * vCenter rejects historical queries for more than config.vpxd.stats.maxQueryMetrics
+     * entity/counter pairs, 64 by default. Batches are split to stay under this limit.
+     */
+    public static final String MAX_QUERY_METRICS_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "StatsClient.maxQueryMetrics";
+    private static final int DEFAULT_MAX_QUERY_METRICS = 64;
+
+    private static final DatatypeFactory DATATYPE_FACTORY;
+
     static {
         PERF_MGR_MOREF.setType(VimNames.TYPE_PERFORMANCE_MANAGER);
         PERF_MGR_MOREF.setValue("PerfMgr");
+
+        try {
+            DATATYPE_FACTORY = DatatypeFactory.newInstance();
+        } catch (DatatypeConfigurationException e) {
+            throw new AssertionError(e);
+        }
     }
 
     private static final ConcurrentHashMap<URI, PerfCounterLookup> lookups = new ConcurrentHashMap<>();
@@ -145,51 +173,175 @@ public class StatsClient extends BaseHelper {
 
     /**
      * See <a href="https://www.vmware.com/support/developer/vc-sdk/visdk41pubs/ApiReference/vim.PerformanceManager.html#queryStats">queryStats method</a>
-     * @param ctx
-     * @return
+     *
+     * Queries the metrics of all contexts at once, in as few calls as the maxQueryMetrics limit
+     * of vCenter allows.
+     *
+     * @param contexts
+     * @return the stats of each entity by moref
      * @throws RuntimeFaultFaultMsg
      */
-    private List<ServiceStat> querySingleEntity(StatCollectionContext ctx)
+    private Map<String, List<ServiceStat>> queryEntities(List<StatCollectionContext> contexts)
             throws RuntimeFaultFaultMsg {
-        List<PerfEntityMetricBase> metrics = getVimPort().queryPerf(PERF_MGR_MOREF,
-                Collections.singletonList(ctx.getSpec()));
+        Map<String, List<ServiceStat>> res = new HashMap<>();
+        if (contexts.isEmpty()) {
+            return res;
+        }
+
+        int metricsPerEntity = Math.max(1, contexts.get(0).getSpec().getMetricId().size());
+        int entitiesPerQuery = Math.max(1, Integer.getInteger(MAX_QUERY_METRICS_PROPERTY,
+                DEFAULT_MAX_QUERY_METRICS) / metricsPerEntity);
+
+        Map<String, StatCollectionContext> contextsByEntity = new HashMap<>();
+        for (int from = 0; from < contexts.size(); from += entitiesPerQuery) {
+            List<PerfQuerySpec> specs = new ArrayList<>();
+            for (StatCollectionContext ctx : contexts.subList(from,
+                    Math.min(from + entitiesPerQuery, contexts.size()))) {
+                contextsByEntity.put(VimUtils.convertMoRefToString(ctx.getSpec().getEntity()),
+                        ctx);
+                specs.add(ctx.getSpec());
+            }
+
+            List<PerfEntityMetricBase> metrics = getVimPort().queryPerf(PERF_MGR_MOREF, specs);
+            for (PerfEntityMetricBase m : metrics) {
+                String entity = VimUtils.convertMoRefToString(m.getEntity());
+                StatCollectionContext ctx = contextsByEntity.get(entity);
+                if (ctx != null) {
+                    res.put(entity, createStats(ctx, m));
+                }
+            }
+        }
+
+        return res;
+    }
 
+    private List<ServiceStat> createStats(StatCollectionContext ctx, PerfEntityMetricBase m) {
         List<ServiceStat> res = new ArrayList<>();
 
-        if (metrics.isEmpty()) {
-            // nothing fetched
-            return Collections.emptyList();
+        if (m instanceof PerfEntityMetricCSV) {
+            PerfEntityMetricCSV csv = (PerfEntityMetricCSV) m;
+            List<PerfSampleInfo> infos = parseSampleInfoCsv(csv.getSampleInfoCSV());
+            for (PerfMetricSeriesCSV series : csv.getValue()) {
+                ServiceStat stat = createStat(ctx, series.getId(), infos,
+                        parseValuesCsv(series.getValue()));
+                if (stat != null) {
+                    res.add(stat);
+                }
+            }
+        } else {
+            PerfEntityMetric metric = (PerfEntityMetric) m;
+            for (PerfMetricSeries pms : metric.getValue()) {
+                PerfMetricIntSeries series = (PerfMetricIntSeries) pms;
+                ServiceStat stat = createStat(ctx, pms.getId(), metric.getSampleInfo(),
+                        series.getValue());
+                if (stat != null) {
+                    res.add(stat);
+                }
+            }
         }
 
-        // the metrics for the single entity
-        PerfEntityMetric m = (PerfEntityMetric) metrics.get(0);
+        return res;
+    }
 
-        for (PerfMetricSeries pms : m.getValue()) {
-            PerfMetricId metricId = pms.getId();
-            PerfMetricIntSeries series = (PerfMetricIntSeries) pms;
-            SamplesAggregator factory = ctx.getFactory(metricId.getCounterId());
+    private ServiceStat createStat(StatCollectionContext ctx, PerfMetricId metricId,
+            List<PerfSampleInfo> infos, List<Long> values) {
+        SamplesAggregator factory = ctx.getFactory(metricId.getCounterId());
 
-            PerfCounterInfo counter = this.perfCounterLookup
-                    .getCounterByKey(metricId.getCounterId());
+        PerfCounterInfo counter = this.perfCounterLookup
+                .getCounterByKey(metricId.getCounterId());
 
-            ServiceStat stat = factory.createStat(counter, m.getSampleInfo(), series.getValue());
-            if (stat != null) {
-                res.add(stat);
-            }
+        return factory.createStat(counter, infos, values);
+    }
+
+    /**
+     * Parses the sample info of the CSV format: the interval and timestamp of each sample,
+     * e.g. "300,2016-12-01T10:00:00Z,300,2016-12-01T10:05:00Z".
+     */
+    static List<PerfSampleInfo> parseSampleInfoCsv(String csv) {
+        List<PerfSampleInfo> res = new ArrayList<>();
+        if (csv == null || csv.isEmpty()) {
+            return res;
         }
 
+        String[] parts = csv.split(",");
+        for (int i = 0; i + 1 < parts.length; i += 2) {
+            PerfSampleInfo info = new PerfSampleInfo();
+            info.setInterval(Integer.parseInt(parts[i]));
+            info.setTimestamp(DATATYPE_FACTORY.newXMLGregorianCalendar(parts[i + 1]));
+            res.add(info);
+        }
+        return res;
+    }
+
+    /**
+     * Parses the values of a series in the CSV format, e.g. "120,-1,98".
+     */
+    static List<Long> parseValuesCsv(String csv) {
+        List<Long> res = new ArrayList<>();
+        if (csv == null || csv.isEmpty()) {
+            return res;
+        }
+
+        for (String value : csv.split(",")) {
+            res.add(Long.parseLong(value));
+        }
         return res;
     }
 
     public List<ServiceStat> retrieveMetricsForVm(ManagedObjectReference vm)
             throws RuntimeFaultFaultMsg {
+        return retrieveMetrics(vm);
+    }
 
-        StatCollectionContext ctx = new StatCollectionContext(vm);
+    /**
+     * Retrieves the default metrics of many entities, VMs, hosts or clusters, with one
+     * queryPerf call per batch of entities. Only the samples after lastCollectionTimeMicrosUtc
+     * are fetched. If it is null or older than a day the samples of the last day are fetched.
+     *
+     * @param entities
+     * @param lastCollectionTimeMicrosUtc may be null
+     * @return the stats of each entity by moref, as returned by
+     *         {@link VimUtils#convertMoRefToString(ManagedObjectReference)}. Entities without
+     *         samples are missing.
+     * @throws RuntimeFaultFaultMsg
+     */
+    public Map<String, List<ServiceStat>> retrieveMetrics(List<ManagedObjectReference> entities,
+            Long lastCollectionTimeMicrosUtc) throws RuntimeFaultFaultMsg {
+        long sinceMillis = System.currentTimeMillis()
+                - TimeUnit.HOURS.toMillis(COLLECT_INTERVAL_HOURS);
+        if (lastCollectionTimeMicrosUtc != null) {
+            sinceMillis = Math.max(sinceMillis,
+                    TimeUnit.MICROSECONDS.toMillis(lastCollectionTimeMicrosUtc));
+        }
+
+        List<StatCollectionContext> contexts = new ArrayList<>(entities.size());
+        for (ManagedObjectReference entity : entities) {
+            StatCollectionContext ctx = new StatCollectionContext(entity);
+            ctx.limitResultsSince(DEFAULT_INTERVAL_ID, sinceMillis);
+            // a few bytes per sample instead of an xml element
+            ctx.getSpec().setFormat(PerfFormat.CSV.value());
+            addDefaultMetrics(ctx);
+            contexts.add(ctx);
+        }
+
+        return queryEntities(contexts);
+    }
+
+    private List<ServiceStat> retrieveMetrics(ManagedObjectReference entity)
+            throws RuntimeFaultFaultMsg {
+        StatCollectionContext ctx = new StatCollectionContext(entity);
 
         ctx.limitResults(DEFAULT_INTERVAL_ID, COLLECT_INTERVAL_HOURS, TimeUnit.HOURS);
 
         addDefaultMetrics(ctx);
-        return querySingleEntity(ctx);
+
+        List<ServiceStat> res = queryEntities(Collections.singletonList(ctx))
+                .get(VimUtils.convertMoRefToString(entity));
+        if (res == null) {
+            // nothing fetched
+            return Collections.emptyList();
+        }
+        return res;
     }
 
     private void addDefaultMetrics(StatCollectionContext ctx) {
@@ -216,23 +368,11 @@ public class StatsClient extends BaseHelper {
 
     public List<ServiceStat> retrieveMetricsForHost(ManagedObjectReference host)
             throws RuntimeFaultFaultMsg {
-        StatCollectionContext ctx = new StatCollectionContext(host);
-
-        ctx.limitResults(DEFAULT_INTERVAL_ID, COLLECT_INTERVAL_HOURS, TimeUnit.HOURS);
-
-        addDefaultMetrics(ctx);
-
-        return querySingleEntity(ctx);
+        return retrieveMetrics(host);
     }
 
     public List<ServiceStat> retrieveMetricsForCluster(ManagedObjectReference cluster)
             throws RuntimeFaultFaultMsg {
-        StatCollectionContext ctx = new StatCollectionContext(cluster);
-
-        ctx.limitResults(DEFAULT_INTERVAL_ID, COLLECT_INTERVAL_HOURS, TimeUnit.HOURS);
-
-        addDefaultMetrics(ctx);
-
-        return querySingleEntity(ctx);
+        return retrieveMetrics(cluster);
     }
 }
@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.vmware.photon.controller.model.adapterapi.ComputeStatsRequest;
 import com.vmware.photon.controller.model.adapterapi.ComputeStatsResponse.ComputeStats;
@@ -25,23 +26,42 @@ import com.vmware.photon.controller.model.adapters.vsphere.CustomProperties;
 import com.vmware.photon.controller.model.adapters.vsphere.ProvisionContext;
 import com.vmware.photon.controller.model.adapters.vsphere.VSphereIOThreadPoolAllocator;
 import com.vmware.photon.controller.model.adapters.vsphere.VSphereUriPaths;
+import com.vmware.photon.controller.model.adapters.vsphere.VimUtils;
 import com.vmware.photon.controller.model.adapters.vsphere.util.VimNames;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService.SingleResourceStatsCollectionTaskState;
 import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService.SingleResourceTaskCollectionStage;
+import com.vmware.photon.controller.model.tasks.monitoring.StatsCollectionTaskService;
 
 import com.vmware.vim25.ManagedObjectReference;
 import com.vmware.vim25.RuntimeFaultFaultMsg;
 
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationJoin;
 import com.vmware.xenon.common.ServiceStats.ServiceStat;
 import com.vmware.xenon.common.StatelessService;
 import com.vmware.xenon.common.TaskState.TaskStage;
 import com.vmware.xenon.common.UriUtils;
 
+/**
+ * Collects the stats of VMs, hosts and clusters from the PerformanceManager of the vCenter.
+ *
+ * A request listing several {@link ComputeStatsRequest#resourceLinks} is served in batch: the
+ * metrics of all the computes are retrieved with one queryPerf call and returned as one
+ * {@link ComputeStats} per compute in a single patch. Only the samples after
+ * {@link ComputeStatsRequest#lastCollectionTimeMicrosUtc} are fetched.
+ */
 public class VSphereAdapterStatsService extends StatelessService {
 
     public static final String SELF_LINK = VSphereUriPaths.STATS_SERVICE;
 
+    @Override
+    public void handleStart(Operation startPost) {
+        // the stats of all the computes of ComputeStatsRequest.resourceLinks are reported
+        StatsCollectionTaskService.registerBatchStatsAdapter(getSelfLink());
+        super.handleStart(startPost);
+    }
+
     @Override
     public void handlePatch(Operation op) {
         if (!op.hasBody()) {
@@ -60,10 +80,39 @@ public class VSphereAdapterStatsService extends StatelessService {
                 mgr.patchTask(TaskStage.FINISHED);
                 return;
             }
-            collectStats(ctx, statsRequest);
+            if (statsRequest.resourceLinks != null && statsRequest.resourceLinks.size() > 1) {
+                collectBatchStats(ctx, statsRequest);
+            } else {
+                collectStats(ctx, statsRequest);
+            }
         });
     }
 
+    /**
+     * Fetches all the computes of the batch and collects their stats at once. They share the
+     * parent, and so the vCenter and credentials, of the first one.
+     */
+    private void collectBatchStats(ProvisionContext ctx, ComputeStatsRequest statsRequest) {
+        List<Operation> getOps = new ArrayList<>(statsRequest.resourceLinks.size());
+        for (String resourceLink : statsRequest.resourceLinks) {
+            getOps.add(Operation.createGet(this, resourceLink));
+        }
+
+        OperationJoin.create(getOps).setCompletion((ops, exs) -> {
+            if (exs != null) {
+                ctx.fail(exs.values().iterator().next());
+                return;
+            }
+
+            // keep the order of the request
+            List<ComputeState> computes = new ArrayList<>(ops.size());
+            for (Operation getOp : getOps) {
+                computes.add(ops.get(getOp.getId()).getBody(ComputeState.class));
+            }
+            collectStats(ctx, statsRequest, computes);
+        }).sendWith(this);
+    }
+
     private List<ServiceStat> mockStats() {
         List<ServiceStat> res = new ArrayList<>(2);
         ServiceStat m1 = new ServiceStat();
@@ -80,6 +129,94 @@ public class VSphereAdapterStatsService extends StatelessService {
         return res;
     }
 
+    private void collectStats(ProvisionContext ctx, ComputeStatsRequest statsRequest,
+            List<ComputeState> computes) {
+        ctx.pool.submit(this, ctx.getAdapterManagementReference(), ctx.vSphereCredentials,
+                (conn, ce) -> {
+                    if (ctx.fail(ce)) {
+                        return;
+                    }
+
+                    // the moref of each compute, skipping the types without metrics
+                    List<ManagedObjectReference> entities = new ArrayList<>();
+                    for (ComputeState compute : computes) {
+                        ManagedObjectReference obj = getSupportedMoRef(compute);
+                        if (obj == null) {
+                            logInfo("Cannot retrieve metrics for %s of type %s",
+                                    compute.documentSelfLink, CustomProperties.of(compute)
+                                            .getString(CustomProperties.TYPE));
+                            continue;
+                        }
+                        entities.add(obj);
+                    }
+
+                    StatsClient client;
+                    try {
+                        client = new StatsClient(conn);
+                    } catch (Exception e) {
+                        ctx.failWithMessage("Error connecting to PerformanceManager", e);
+                        return;
+                    }
+
+                    Map<String, List<ServiceStat>> stats;
+                    try {
+                        stats = client.retrieveMetrics(entities,
+                                statsRequest.lastCollectionTimeMicrosUtc);
+                    } catch (Exception e) {
+                        ctx.failWithMessage("Error retrieving stats", e);
+                        return;
+                    }
+
+                    try {
+                        patchStats(toComputeStats(computes, stats), statsRequest);
+                    } catch (Exception e) {
+                        ctx.failWithMessage("Error persisting stats", e);
+                        return;
+                    }
+                });
+    }
+
+    /**
+     * Maps the metrics retrieved per moref back to the computes, in the order of the computes.
+     * Computes without metrics get empty stats.
+     */
+    static List<ComputeStats> toComputeStats(List<ComputeState> computes,
+            Map<String, List<ServiceStat>> statsByMoRef) {
+        List<ComputeStats> statsList = new ArrayList<>(computes.size());
+        for (ComputeState compute : computes) {
+            ManagedObjectReference obj = getSupportedMoRef(compute);
+            List<ServiceStat> computeStats = obj == null ? null
+                    : statsByMoRef.get(VimUtils.convertMoRefToString(obj));
+            statsList.add(toComputeStats(compute.documentSelfLink,
+                    computeStats == null ? Collections.emptyList() : computeStats));
+        }
+        return statsList;
+    }
+
+    /**
+     * Returns the moref of the compute, or null if its type has no metrics.
+     */
+    private static ManagedObjectReference getSupportedMoRef(ComputeState compute) {
+        CustomProperties props = CustomProperties.of(compute);
+        String type = props.getString(CustomProperties.TYPE);
+        if (type == null || !isSupportedType(type)) {
+            return null;
+        }
+        return props.getMoRef(CustomProperties.MOREF);
+    }
+
+    private static boolean isSupportedType(String type) {
+        switch (type) {
+        case VimNames.TYPE_VM:
+        case VimNames.TYPE_COMPUTE_RESOURCE:
+        case VimNames.TYPE_CLUSTER_COMPUTE_RESOURCE:
+        case VimNames.TYPE_HOST:
+            return true;
+        default:
+            return false;
+        }
+    }
+
     private void collectStats(ProvisionContext ctx, ComputeStatsRequest statsRequest) {
         ctx.pool.submit(this, ctx.getAdapterManagementReference(), ctx.vSphereCredentials,
                 (conn, ce) -> {
@@ -107,7 +244,8 @@ public class VSphereAdapterStatsService extends StatelessService {
 
                     List<ServiceStat> stats;
                     try {
-                        stats = getStats(client, type, obj);
+                        stats = getStats(client, type, obj,
+                                statsRequest.lastCollectionTimeMicrosUtc);
                     } catch (Exception e) {
                         ctx.failWithMessage("Error retrieving stats", e);
                         return;
@@ -123,17 +261,24 @@ public class VSphereAdapterStatsService extends StatelessService {
     }
 
     private void persistStats(List<ServiceStat> stats, ComputeStatsRequest statsRequest) {
+        patchStats(Collections.singletonList(
+                toComputeStats(statsRequest.resourceReference.toString(), stats)), statsRequest);
+    }
+
+    private static ComputeStats toComputeStats(String computeLink, List<ServiceStat> stats) {
         ComputeStats cs = new ComputeStats();
-        cs.computeLink = statsRequest.resourceReference.toString();
+        cs.computeLink = computeLink;
         cs.statValues = new HashMap<>();
 
         for (ServiceStat stat : stats) {
             cs.statValues.put(stat.name, Collections.singletonList(stat));
         }
+        return cs;
+    }
 
+    private void patchStats(List<ComputeStats> statsList, ComputeStatsRequest statsRequest) {
         SingleResourceStatsCollectionTaskState respBody = new SingleResourceStatsCollectionTaskState();
-        respBody.statsList = new ArrayList<>();
-        respBody.statsList.add(cs);
+        respBody.statsList = new ArrayList<>(statsList);
         respBody.taskStage = SingleResourceTaskCollectionStage.valueOf(statsRequest.nextStage);
         respBody.statsAdapterReference = UriUtils.buildUri(getHost(), SELF_LINK);
 
@@ -141,24 +286,19 @@ public class VSphereAdapterStatsService extends StatelessService {
                 .setBody(respBody));
     }
 
-    private List<ServiceStat> getStats(StatsClient client, String type, ManagedObjectReference obj)
-            throws RuntimeFaultFaultMsg {
-        List<ServiceStat> metrics = null;
-        switch (type) {
-        case VimNames.TYPE_VM:
-            metrics = client.retrieveMetricsForVm(obj);
-            break;
-        case VimNames.TYPE_COMPUTE_RESOURCE:
-        case VimNames.TYPE_CLUSTER_COMPUTE_RESOURCE:
-            metrics = client.retrieveMetricsForCluster(obj);
-            break;
-        case VimNames.TYPE_HOST:
-            metrics = client.retrieveMetricsForHost(obj);
-            break;
-        default:
+    private List<ServiceStat> getStats(StatsClient client, String type, ManagedObjectReference obj,
+            Long lastCollectionTimeMicrosUtc) throws RuntimeFaultFaultMsg {
+        if (!isSupportedType(type)) {
             logInfo("Cannot retrieve metrics for type " + type);
+            return null;
         }
 
+        List<ServiceStat> metrics = client.retrieveMetrics(Collections.singletonList(obj),
+                lastCollectionTimeMicrosUtc).get(VimUtils.convertMoRefToString(obj));
+        if (metrics == null) {
+            // nothing fetched
+            return Collections.emptyList();
+        }
         return metrics;
     }
 
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.vsphere;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.adapters.vsphere.util.VimNames;
+import com.vmware.vim25.DynamicProperty;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.ObjectContent;
+import com.vmware.vim25.ObjectUpdate;
+import com.vmware.vim25.ObjectUpdateKind;
+import com.vmware.vim25.PropertyChange;
+import com.vmware.vim25.PropertyChangeOp;
+import com.vmware.vim25.PropertyFilterUpdate;
+import com.vmware.vim25.UpdateSet;
+
+/**
+ * Unit test for {@link InventoryCache}
+ */
+public class InventoryCacheTest {
+
+    @Test
+    public void testModifyIsMergedWithEnter() {
+        InventoryCache cache = new InventoryCache();
+        ManagedObjectReference vm = vm("vm-1");
+
+        cache.apply(updateSet(update(ObjectUpdateKind.ENTER, vm,
+                change("name", PropertyChangeOp.ASSIGN, "old"),
+                change("config.instanceUuid", PropertyChangeOp.ASSIGN, "uuid"),
+                change("guest.ipAddress", PropertyChangeOp.ASSIGN, "10.0.0.1"))));
+        assertEquals(1, cache.drainUpdated().size());
+
+        cache.apply(updateSet(update(ObjectUpdateKind.MODIFY, vm,
+                change("name", PropertyChangeOp.ASSIGN, "new"),
+                change("guest.ipAddress", PropertyChangeOp.REMOVE, null))));
+
+        List<ObjectContent> updated = cache.drainUpdated();
+        assertEquals(1, updated.size());
+        ObjectContent cont = updated.get(0);
+        assertEquals(2, cont.getPropSet().size());
+        assertEquals("new", valueOf(cont, "name"));
+        assertEquals("uuid", valueOf(cont, "config.instanceUuid"));
+        assertEquals(null, valueOf(cont, "guest.ipAddress"));
+
+        assertTrue(cache.drainUpdated().isEmpty());
+        assertTrue(cache.drainRemoved().isEmpty());
+    }
+
+    @Test
+    public void testLeave() {
+        InventoryCache cache = new InventoryCache();
+        ManagedObjectReference vm1 = vm("vm-1");
+        ManagedObjectReference vm2 = vm("vm-2");
+
+        cache.apply(updateSet(
+                update(ObjectUpdateKind.ENTER, vm1, change("name", PropertyChangeOp.ASSIGN, "1")),
+                update(ObjectUpdateKind.ENTER, vm2, change("name", PropertyChangeOp.ASSIGN, "2"))));
+        cache.drainUpdated();
+
+        // an object changed and then removed in the same batch is only reported as removed
+        cache.apply(updateSet(
+                update(ObjectUpdateKind.MODIFY, vm1, change("name", PropertyChangeOp.ASSIGN, "x")),
+                update(ObjectUpdateKind.LEAVE, vm1)));
+
+        assertTrue(cache.drainUpdated().isEmpty());
+        List<ObjectContent> removed = cache.drainRemoved();
+        assertEquals(1, removed.size());
+        assertEquals(vm1, removed.get(0).getObj());
+        assertEquals("x", valueOf(removed.get(0), "name"));
+        assertEquals(1, cache.size());
+    }
+
+    private static ManagedObjectReference vm(String value) {
+        ManagedObjectReference ref = new ManagedObjectReference();
+        ref.setType(VimNames.TYPE_VM);
+        ref.setValue(value);
+        return ref;
+    }
+
+    private static PropertyChange change(String name, PropertyChangeOp op, Object val) {
+        PropertyChange change = new PropertyChange();
+        change.setName(name);
+        change.setOp(op);
+        change.setVal(val);
+        return change;
+    }
+
+    private static ObjectUpdate update(ObjectUpdateKind kind, ManagedObjectReference ref,
+            PropertyChange... changes) {
+        ObjectUpdate update = new ObjectUpdate();
+        update.setKind(kind);
+        update.setObj(ref);
+        for (PropertyChange change : changes) {
+            update.getChangeSet().add(change);
+        }
+        return update;
+    }
+
+    private static UpdateSet updateSet(ObjectUpdate... updates) {
+        PropertyFilterUpdate filterUpdate = new PropertyFilterUpdate();
+        for (ObjectUpdate update : updates) {
+            filterUpdate.getObjectSet().add(update);
+        }
+        UpdateSet updateSet = new UpdateSet();
+        updateSet.getFilterSet().add(filterUpdate);
+        return updateSet;
+    }
+
+    private static Object valueOf(ObjectContent cont, String name) {
+        for (DynamicProperty dp : cont.getPropSet()) {
+            if (dp.getName().equals(name)) {
+                return dp.getVal();
+            }
+        }
+        return null;
+    }
+}
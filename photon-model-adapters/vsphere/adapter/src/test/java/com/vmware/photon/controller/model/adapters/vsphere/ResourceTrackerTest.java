@@ -14,6 +14,8 @@
 package com.vmware.photon.controller.model.adapters.vsphere;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.concurrent.TimeUnit;
 
@@ -38,4 +40,26 @@ public class ResourceTrackerTest {
         assertEquals(v1, tracker.getSelfLink(k1));
         assertEquals(v2, tracker.getSelfLink(k2));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testOpenTracker() {
+        ResourceTracker previous = new ResourceTracker(1);
+        previous.track("moref", "/link");
+
+        ResourceTracker tracker = ResourceTracker.open(previous);
+        assertEquals("/link", tracker.getSelfLink("moref"));
+
+        tracker.expect(1);
+        tracker.track("moref2", "/link2");
+        // more pages may follow
+        assertFalse(tracker.whenDone().isDone());
+
+        tracker.expect(1);
+        tracker.seal();
+        assertFalse(tracker.whenDone().isDone());
+
+        tracker.track("moref3", ResourceTracker.ERROR);
+        assertTrue(tracker.whenDone().isDone());
+        assertEquals("/link2", tracker.getSelfLink("moref2"));
+    }
+}
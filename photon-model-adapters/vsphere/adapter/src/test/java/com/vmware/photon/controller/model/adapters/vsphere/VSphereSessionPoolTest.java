@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.vsphere;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.adapters.vsphere.util.connection.BasicConnection;
+import com.vmware.vim25.UserSession;
+
+/**
+ * Unit test for {@link VSphereSessionPool}
+ */
+public class VSphereSessionPoolTest {
+    private static final URI SDK_URI = URI.create("https://vcenter.local/sdk");
+    private static final String USERNAME = "user";
+    private static final String PASSWORD = "password";
+    private static final long HOUR_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    private VSphereSessionPool createPool(int maxIdleSessions, long keepAliveMicros,
+            long validateAfterIdleMicros) {
+        return new VSphereSessionPool(maxIdleSessions, keepAliveMicros, HOUR_MICROS,
+                validateAfterIdleMicros) {
+            @Override
+            protected BasicConnection createConnection(URI adapterReference, String username,
+                    String password) {
+                FakeConnection connection = new FakeConnection();
+                connection.setURI(adapterReference);
+                connection.setUsername(username);
+                connection.setPassword(password);
+                return connection;
+            }
+        };
+    }
+
+    @Test
+    public void testSessionIsReused() {
+        VSphereSessionPool pool = createPool(2, HOUR_MICROS, HOUR_MICROS);
+        BasicConnection connection = pool.borrow(SDK_URI, USERNAME, PASSWORD);
+        pool.release(connection);
+
+        assertSame(connection, pool.borrow(SDK_URI, USERNAME, PASSWORD));
+        // other credentials get their own session
+        assertNotSame(connection, pool.borrow(SDK_URI, USERNAME, "other"));
+        assertEquals(2, pool.getLoginCount());
+        assertEquals(1, pool.getReuseCount());
+        assertEquals(0, ((FakeConnection) connection).pingCount);
+    }
+
+    @Test
+    public void testExpiredSessionIsReplaced() {
+        VSphereSessionPool pool = createPool(2, HOUR_MICROS, 0);
+        FakeConnection connection = (FakeConnection) pool.borrow(SDK_URI, USERNAME, PASSWORD);
+        pool.release(connection);
+        connection.expired = true;
+
+        BasicConnection newConnection = pool.borrow(SDK_URI, USERNAME, PASSWORD);
+        assertNotSame(connection, newConnection);
+        assertFalse(connection.loggedIn);
+        assertEquals(1, pool.getExpiredCount());
+        assertEquals(2, pool.getLoginCount());
+    }
+
+    @Test
+    public void testClosedSessionIsNotPooled() {
+        VSphereSessionPool pool = createPool(2, HOUR_MICROS, HOUR_MICROS);
+        BasicConnection connection = pool.borrow(SDK_URI, USERNAME, PASSWORD);
+        connection.close();
+        pool.release(connection);
+
+        assertEquals(0, pool.getIdleCount());
+        assertNotSame(connection, pool.borrow(SDK_URI, USERNAME, PASSWORD));
+    }
+
+    @Test
+    public void testIdleSessionsAreBounded() {
+        VSphereSessionPool pool = createPool(1, HOUR_MICROS, HOUR_MICROS);
+        FakeConnection first = (FakeConnection) pool.borrow(SDK_URI, USERNAME, PASSWORD);
+        FakeConnection second = (FakeConnection) pool.borrow(SDK_URI, USERNAME, PASSWORD);
+        pool.release(first);
+        pool.release(second);
+
+        assertEquals(1, pool.getIdleCount());
+        // the eldest idle session is logged out
+        assertFalse(first.loggedIn);
+        assertTrue(second.loggedIn);
+    }
+
+    @Test
+    public void testKeepAlive() {
+        VSphereSessionPool pool = createPool(2, 0, HOUR_MICROS);
+        FakeConnection alive = (FakeConnection) pool.borrow(SDK_URI, USERNAME, PASSWORD);
+        FakeConnection expired = (FakeConnection) pool.borrow(SDK_URI, USERNAME, PASSWORD);
+        pool.release(alive);
+        pool.release(expired);
+        expired.expired = true;
+
+        pool.keepAlive();
+
+        assertEquals(1, alive.pingCount);
+        assertTrue(alive.loggedIn);
+        assertFalse(expired.loggedIn);
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(1, pool.getExpiredCount());
+    }
+
+    private static class FakeConnection extends BasicConnection {
+        boolean loggedIn;
+        boolean expired;
+        int pingCount;
+
+        @Override
+        public void connect() {
+            this.loggedIn = true;
+        }
+
+        @Override
+        public UserSession getUserSession() {
+            return this.loggedIn ? new UserSession() : null;
+        }
+
+        @Override
+        public boolean isAlive() {
+            this.pingCount++;
+            return this.loggedIn && !this.expired;
+        }
+
+        @Override
+        public void close() {
+            this.loggedIn = false;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.vsphere.ovf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OvaCacheTest {
+    private static final URI SOURCE = URI.create("http://example.com/test.ova");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStoreAndLookup() throws Exception {
+        OvaCache cache = new OvaCache(this.folder.getRoot(), Long.MAX_VALUE);
+        assertNull(cache.lookup("a"));
+
+        File stored = cache.store("a", SOURCE, new ByteArrayInputStream(tar(ova("disk"))));
+        assertTrue(new File(stored, "test.ovf").isFile());
+        assertEquals(stored, cache.lookup("a"));
+        cache.release(stored);
+        cache.release(stored);
+
+        // a damaged file invalidates the entry
+        try (RandomAccessFile disk = new RandomAccessFile(new File(stored, "disk.vmdk"), "rw")) {
+            disk.setLength(1);
+        }
+        assertNull(cache.lookup("a"));
+        assertFalse(stored.exists());
+    }
+
+    @Test
+    public void testModifiedFileIsDetected() throws Exception {
+        OvaCache cache = new OvaCache(this.folder.getRoot(), Long.MAX_VALUE);
+        File stored = cache.store("a", SOURCE, new ByteArrayInputStream(tar(ova("disk"))));
+        cache.release(stored);
+
+        // same size, different content
+        try (RandomAccessFile disk = new RandomAccessFile(new File(stored, "disk.vmdk"), "rw")) {
+            disk.write(bytes("DISK"));
+        }
+        assertNull(cache.lookup("a"));
+        assertFalse(stored.exists());
+    }
+
+    @Test
+    public void testPinnedEntryIsNotEvicted() throws Exception {
+        Map<String, byte[]> ova = ova("disk");
+        byte[] tar = tar(ova);
+        long size = 0;
+        for (byte[] content : ova.values()) {
+            size += content.length;
+        }
+        // room for a single archive
+        OvaCache cache = new OvaCache(this.folder.getRoot(), size);
+
+        File a = cache.store("a", SOURCE, new ByteArrayInputStream(tar));
+        File b = cache.store("b", SOURCE, new ByteArrayInputStream(tar));
+        // both are in use
+        assertTrue(a.exists());
+        assertTrue(b.exists());
+
+        // storing an entry in use keeps the existing files
+        assertEquals(a, cache.store("a", SOURCE, new ByteArrayInputStream(tar)));
+        cache.release(a);
+        assertTrue(cache.isPinned("a"));
+        cache.release(a);
+        assertFalse(cache.isPinned("a"));
+
+        // a is evicted once released, b is still in use
+        File c = cache.store("c", SOURCE, new ByteArrayInputStream(tar));
+        assertFalse(a.exists());
+        assertTrue(b.exists());
+        assertTrue(c.exists());
+    }
+
+    @Test
+    public void testManifestMismatch() throws Exception {
+        OvaCache cache = new OvaCache(this.folder.getRoot(), Long.MAX_VALUE);
+        Map<String, byte[]> ova = ova("disk");
+        ova.put("disk.vmdk", bytes("other"));
+
+        try {
+            cache.store("a", SOURCE, new ByteArrayInputStream(tar(ova)));
+            fail("manifest mismatch not detected");
+        } catch (IOException expected) {
+        }
+        assertNull(cache.lookup("a"));
+        assertEquals(0, this.folder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        Map<String, byte[]> ova = ova("disk");
+        byte[] tar = tar(ova);
+        long size = 0;
+        for (byte[] content : ova.values()) {
+            size += content.length;
+        }
+        // room for two archives
+        OvaCache cache = new OvaCache(this.folder.getRoot(), 2 * size);
+
+        File a = cache.store("a", SOURCE, new ByteArrayInputStream(tar));
+        File b = cache.store("b", SOURCE, new ByteArrayInputStream(tar));
+        cache.release(a);
+        cache.release(b);
+        a.listFiles(f -> f.getName().equals("status.properties"))[0]
+                .setLastModified(System.currentTimeMillis() - 60000);
+        b.listFiles(f -> f.getName().equals("status.properties"))[0]
+                .setLastModified(System.currentTimeMillis() - 120000);
+        // a was used after b
+        cache.release(cache.lookup("a"));
+
+        cache.store("c", SOURCE, new ByteArrayInputStream(tar));
+
+        assertNotNull(cache.lookup("a"));
+        assertNull(cache.lookup("b"));
+        assertNotNull(cache.lookup("c"));
+    }
+
+    private static Map<String, byte[]> ova(String disk) throws NoSuchAlgorithmException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("test.ovf", bytes("<Envelope/>"));
+        files.put("test.mf", bytes("SHA1(disk.vmdk)= " + digest("SHA-1", disk) + "\n"
+                + "SHA256(test.ovf)= " + digest("SHA-256", "<Envelope/>") + "\n"));
+        files.put("disk.vmdk", bytes(disk));
+        return files;
+    }
+
+    private static byte[] tar(Map<String, byte[]> files) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tar = new TarArchiveOutputStream(out)) {
+            for (Map.Entry<String, byte[]> e : files.entrySet()) {
+                TarArchiveEntry entry = new TarArchiveEntry(e.getKey());
+                entry.setSize(e.getValue().length);
+                tar.putArchiveEntry(entry);
+                tar.write(e.getValue());
+                tar.closeArchiveEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static String digest(String algorithm, String s) throws NoSuchAlgorithmException {
+        return Hex.encodeHexString(MessageDigest.getInstance(algorithm).digest(bytes(s)));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.vsphere.ovf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.vmware.photon.controller.model.adapters.vsphere.ovf.OvfDeployer.VmdkUpload;
+
+/**
+ * Uploads the disks of a multi-disk appliance to a local http server standing in for the
+ * nfcLease, one at a time and concurrently. The server reads every upload at a bounded rate, like
+ * a single NFC stream to an ESX host.
+ *
+ * Run with:
+ * <pre>
+ * cd photon-model-adapters/vsphere/adapter
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     com.vmware.photon.controller.model.adapters.vsphere.ovf.OvfDeployerBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class OvfDeployerBenchmark {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    @Param("4")
+    public int diskCount;
+
+    @Param("64")
+    public int diskSizeMb;
+
+    /**
+     * Per stream bandwidth of the stand-in.
+     */
+    @Param("32")
+    public int streamMbPerSecond;
+
+    private Path workingDirPath;
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private CloseableHttpClient client;
+    private List<Path> disks = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.workingDirPath = Files.createTempDirectory("ovf-deploy-benchmark");
+        for (int i = 0; i < this.diskCount; i++) {
+            Path disk = this.workingDirPath.resolve("disk" + i + ".vmdk");
+            try (RandomAccessFile file = new RandomAccessFile(disk.toFile(), "rw")) {
+                file.setLength(this.diskSizeMb * 1024L * 1024L);
+            }
+            this.disks.add(disk);
+        }
+
+        long bytesPerSecond = this.streamMbPerSecond * 1024L * 1024L;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/nfc", exchange -> {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            long start = System.nanoTime();
+            long total = 0;
+            int read;
+            try (InputStream is = exchange.getRequestBody()) {
+                while ((read = is.read(buffer)) >= 0) {
+                    total += read;
+                    // do not read faster than the stream bandwidth
+                    long due = start + TimeUnit.SECONDS.toNanos(1) * total / bytesPerSecond;
+                    TimeUnit.NANOSECONDS.sleep(due - System.nanoTime());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        this.serverExecutor = Executors.newCachedThreadPool();
+        this.server.setExecutor(this.serverExecutor);
+        this.server.start();
+
+        this.client = OvfRetriever.newInsecureClient(this.diskCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.client.close();
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+        for (Path disk : this.disks) {
+            Files.deleteIfExists(disk);
+        }
+        Files.deleteIfExists(this.workingDirPath);
+    }
+
+    @Benchmark
+    public void sequential() throws Exception {
+        upload(1);
+    }
+
+    @Benchmark
+    public void parallel() throws Exception {
+        upload(this.diskCount);
+    }
+
+    private void upload(int parallelism) throws Exception {
+        List<VmdkUpload> uploads = new ArrayList<>();
+        for (int i = 0; i < this.disks.size(); i++) {
+            uploads.add(new VmdkUpload(true, this.disks.get(i).toUri().toString(), "http://localhost:"
+                    + this.server.getAddress().getPort() + "/nfc/disk-" + i));
+        }
+
+        LeaseProgressUpdater leaseUpdater = new LeaseProgressUpdater(null, null, 0);
+        OvfDeployer.uploadVmdkFiles(uploads, leaseUpdater, this.client, parallelism);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(OvfDeployerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
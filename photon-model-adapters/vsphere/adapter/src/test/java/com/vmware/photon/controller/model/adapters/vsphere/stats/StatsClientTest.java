@@ -13,7 +13,10 @@
 
 package com.vmware.photon.controller.model.adapters.vsphere.stats;
 
+import static org.junit.Assert.assertEquals;
+
 import java.net.URI;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
@@ -25,6 +28,7 @@ import com.vmware.photon.controller.model.adapters.vsphere.TestProperties;
 import com.vmware.photon.controller.model.adapters.vsphere.util.VimNames;
 import com.vmware.photon.controller.model.adapters.vsphere.util.connection.BasicConnection;
 import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.vim25.PerfSampleInfo;
 import com.vmware.xenon.common.ServiceStats.ServiceStat;
 
 public class StatsClientTest {
@@ -67,5 +71,23 @@ public class StatsClientTest {
 
         metrics = client.retrieveMetricsForHost(host);
         this.logger.info("host metrics " + metrics);
+
+        this.logger.info("batch metrics " + client.retrieveMetrics(Arrays.asList(vm, host),
+                System.currentTimeMillis() * 1000 - TimeUnit.HOURS.toMicros(1)));
+    }
+
+    @Test
+    public void testParseCsv() {
+        List<PerfSampleInfo> infos = StatsClient
+                .parseSampleInfoCsv("300,2016-12-01T10:00:00Z,300,2016-12-01T10:05:00Z");
+        assertEquals(2, infos.size());
+        assertEquals(300, infos.get(1).getInterval());
+        assertEquals(1480586700000L,
+                infos.get(1).getTimestamp().toGregorianCalendar().getTimeInMillis());
+
+        assertEquals(Arrays.asList(120L, -1L, 98L), StatsClient.parseValuesCsv("120,-1,98"));
+
+        assertEquals(0, StatsClient.parseSampleInfoCsv("").size());
+        assertEquals(0, StatsClient.parseValuesCsv(null).size());
     }
 }
\ No newline at end of file
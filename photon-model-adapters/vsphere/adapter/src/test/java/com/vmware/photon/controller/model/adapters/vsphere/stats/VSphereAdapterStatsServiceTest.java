@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.adapters.vsphere.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.adapterapi.ComputeStatsResponse.ComputeStats;
+import com.vmware.photon.controller.model.adapters.vsphere.CustomProperties;
+import com.vmware.photon.controller.model.adapters.vsphere.VimUtils;
+import com.vmware.photon.controller.model.adapters.vsphere.util.VimNames;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
+import com.vmware.vim25.ManagedObjectReference;
+import com.vmware.xenon.common.ServiceStats.ServiceStat;
+
+public class VSphereAdapterStatsServiceTest {
+
+    @Test
+    public void testBatchStatsAreMappedToTheirComputes() {
+        ComputeState vm1 = compute("vm-1", VimNames.TYPE_VM, "vm-1");
+        ComputeState host = compute("host-1", VimNames.TYPE_HOST, "host-1");
+        ComputeState network = compute("network-1", VimNames.TYPE_NETWORK, "network-1");
+        ComputeState vm2 = compute("vm-2", VimNames.TYPE_VM, "vm-2");
+
+        // the metrics are keyed by moref, in no particular order
+        Map<String, List<ServiceStat>> statsByMoRef = new HashMap<>();
+        statsByMoRef.put(moRefKey(VimNames.TYPE_VM, "vm-2"), Collections.singletonList(stat(2)));
+        statsByMoRef.put(moRefKey(VimNames.TYPE_HOST, "host-1"),
+                Collections.singletonList(stat(3)));
+        statsByMoRef.put(moRefKey(VimNames.TYPE_VM, "vm-1"), Collections.singletonList(stat(1)));
+
+        List<ComputeStats> statsList = VSphereAdapterStatsService.toComputeStats(
+                Arrays.asList(vm1, host, network, vm2), statsByMoRef);
+
+        assertEquals(4, statsList.size());
+        assertStat(statsList.get(0), vm1, 1);
+        assertStat(statsList.get(1), host, 3);
+        // types without metrics are reported with empty stats
+        assertEquals(network.documentSelfLink, statsList.get(2).computeLink);
+        assertTrue(statsList.get(2).statValues.isEmpty());
+        assertStat(statsList.get(3), vm2, 2);
+    }
+
+    @Test
+    public void testComputesWithoutMetricsGetEmptyStats() {
+        ComputeState vm1 = compute("vm-1", VimNames.TYPE_VM, "vm-1");
+        ComputeState vm2 = compute("vm-2", VimNames.TYPE_VM, "vm-2");
+
+        Map<String, List<ServiceStat>> statsByMoRef = new HashMap<>();
+        statsByMoRef.put(moRefKey(VimNames.TYPE_VM, "vm-2"), Collections.singletonList(stat(2)));
+
+        List<ComputeStats> statsList = VSphereAdapterStatsService.toComputeStats(
+                Arrays.asList(vm1, vm2), statsByMoRef);
+
+        assertEquals(vm1.documentSelfLink, statsList.get(0).computeLink);
+        assertTrue(statsList.get(0).statValues.isEmpty());
+        assertStat(statsList.get(1), vm2, 2);
+    }
+
+    private static void assertStat(ComputeStats stats, ComputeState compute, double value) {
+        assertEquals(compute.documentSelfLink, stats.computeLink);
+        assertEquals(1, stats.statValues.size());
+        assertEquals(value, stats.statValues.get("cpu").get(0).latestValue, 0);
+    }
+
+    private static ComputeState compute(String id, String type, String moRefValue) {
+        ComputeState compute = new ComputeState();
+        compute.documentSelfLink = "/resources/compute/" + id;
+        CustomProperties.of(compute)
+                .put(CustomProperties.TYPE, type)
+                .put(CustomProperties.MOREF, moRef(type, moRefValue));
+        return compute;
+    }
+
+    private static ManagedObjectReference moRef(String type, String value) {
+        ManagedObjectReference obj = new ManagedObjectReference();
+        obj.setType(type);
+        obj.setValue(value);
+        return obj;
+    }
+
+    private static String moRefKey(String type, String value) {
+        return VimUtils.convertMoRefToString(moRef(type, value));
+    }
+
+    private static ServiceStat stat(double value) {
+        ServiceStat stat = new ServiceStat();
+        stat.name = "cpu";
+        stat.latestValue = value;
+        return stat;
+    }
+}
@@ -163,9 +163,15 @@ public class BasicConnection implements Connection {
     }
 
     private void updateRequestTimeout() {
-        if (this.requestTimeoutMillis > 0 && getBindingsProvider() != null) {
+        if (getBindingsProvider() == null) {
+            return;
+        }
+        if (this.requestTimeoutMillis > 0) {
             getBindingsProvider().getRequestContext()
                     .put(REQUEST_TIMEOUT, (int) this.requestTimeoutMillis);
+        } else {
+            // back to the default of the JAX-WS provider
+            getBindingsProvider().getRequestContext().remove(REQUEST_TIMEOUT);
         }
     }
 
@@ -173,6 +179,25 @@ public class BasicConnection implements Connection {
         return (BindingProvider) this.vimPort;
     }
 
+    /**
+     * Checks that the session is still valid by retrieving the current time of the server. As
+     * any other call, this also keeps the session from timing out.
+     *
+     * @return false if the connection is closed or its session has expired
+     */
+    public boolean isAlive() {
+        if (this.userSession == null) {
+            return false;
+        }
+
+        try {
+            this.vimPort.currentTime(getServiceInstanceReference());
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
     @Override
     public void close() {
         if (this.userSession == null) {
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.tasks.monitoring;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.vmware.photon.controller.model.UriPaths;
+
+import com.vmware.xenon.common.ServiceHost;
+
+/**
+ * Node local cache of the last successful stats collection time of a compute for a given stats
+ * adapter. The cache is bounded and evicts the least recently used entries. It saves the stats
+ * collection the lookup of the in memory stats of the compute and the query of the persisted
+ * metrics before each call to the adapter.
+ *
+ * Entries are updated after every successful collection and warmed in bulk, one query per page
+ * of computes, by the {@link StatsCollectionTaskService}.
+ *
+ * The cache is disabled unless {@link #MAX_SIZE_PROPERTY} is set: a node does not see the
+ * collections run by the other nodes, so its cached time can be older than the last collection
+ * of the compute and the data points in between would be collected again. Enable it only where
+ * the stats of a compute are always collected by the same node.
+ *
+ * The cache of a host is dropped when the host stops.
+ */
+public class LastCollectionTimeCache {
+
+    public static final String MAX_SIZE_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "LastCollectionTimeCache.maxSize";
+    private static final int DEFAULT_MAX_SIZE = 0;
+
+    private static final String SEPARATOR = "|";
+
+    private static final Map<String, LastCollectionTimeCache> CACHES = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+    private final Map<String, Long> entries;
+
+    LastCollectionTimeCache(int maxSize) {
+        this.maxSize = maxSize;
+        // access ordered, so that the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > LastCollectionTimeCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cache of the given host.
+     */
+    public static LastCollectionTimeCache getInstance(ServiceHost host) {
+        return CACHES.computeIfAbsent(host.getId(), id -> new LastCollectionTimeCache(
+                Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE)));
+    }
+
+    /**
+     * Drops the cache of the given host, once the host stops.
+     */
+    static void remove(ServiceHost host) {
+        CACHES.remove(host.getId());
+    }
+
+    /**
+     * Returns whether the cache holds any entry at all; a maximum size of 0 disables it.
+     */
+    public boolean isEnabled() {
+        return this.maxSize > 0;
+    }
+
+    /**
+     * Returns the last collection time of the compute for the stats adapter, or null if not
+     * cached.
+     */
+    public synchronized Long get(String computeLink, String statsAdapterLink) {
+        return this.entries.get(buildKey(computeLink, statsAdapterLink));
+    }
+
+    /**
+     * Records the last collection time of the compute for the stats adapter. An older time
+     * than the cached one is ignored.
+     */
+    public synchronized void put(String computeLink, String statsAdapterLink,
+            long lastCollectionTimeMicrosUtc) {
+        if (!isEnabled()) {
+            return;
+        }
+        String key = buildKey(computeLink, statsAdapterLink);
+        Long current = this.entries.get(key);
+        if (current == null || current < lastCollectionTimeMicrosUtc) {
+            this.entries.put(key, lastCollectionTimeMicrosUtc);
+        }
+    }
+
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    private static String buildKey(String computeLink, String statsAdapterLink) {
+        return computeLink + SEPARATOR + statsAdapterLink;
+    }
+}
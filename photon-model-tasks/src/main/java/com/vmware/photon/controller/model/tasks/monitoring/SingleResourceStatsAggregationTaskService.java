@@ -35,8 +35,10 @@ import com.vmware.photon.controller.model.monitoring.InMemoryResourceMetricServi
 import com.vmware.photon.controller.model.monitoring.InMemoryResourceMetricService.InMemoryResourceMetric;
 import com.vmware.photon.controller.model.monitoring.ResourceAggregateMetricService;
 import com.vmware.photon.controller.model.monitoring.ResourceAggregateMetricService.ResourceAggregateMetric;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsBlockService.ResourceMetricsBlock;
 import com.vmware.photon.controller.model.monitoring.ResourceMetricsService;
 import com.vmware.photon.controller.model.monitoring.ResourceMetricsService.ResourceMetrics;
+import com.vmware.photon.controller.model.monitoring.TimeBinUtils;
 import com.vmware.photon.controller.model.resources.util.PhotonModelUtils;
 import com.vmware.photon.controller.model.tasks.TaskUtils;
 
@@ -548,9 +550,14 @@ public class SingleResourceStatsAggregationTaskService extends
             InMemoryResourceMetric metric) {
         String metricKey = UriUtils.getLastPathSegment(metric.documentSelfLink);
         String resourceId = stripRollupKey(metricKey);
+        boolean incrementalRollup = StatsUtil.isIncrementalRollupEnabled();
 
         for (Entry<String, Long> metricEntry : currentState.lastRollupTimeForMetric
                 .entrySet()) {
+            // hourly rollups are computed from the hourly in-memory metrics only, and so on
+            if (lookupBinSize(metricEntry.getKey()) != lookupBinSize(metricKey)) {
+                continue;
+            }
             String rawMetricKey = stripRollupKey(metricEntry.getKey());
 
             TimeSeriesStats timeSeriesStats = metric.timeSeriesStats.get(rawMetricKey);
@@ -568,8 +575,11 @@ public class SingleResourceStatsAggregationTaskService extends
             Long lastRollupTime = metricEntry.getValue();
 
             // Check if we have any last rollup time or if rollup time is older than what we
-            // have in memory.
-            if (lastRollupTime == null || lastRollupTime < earliestBinId) {
+            // have in memory. In incremental mode the in-memory metrics are the running
+            // accumulators of the resource, so if nothing was rolled up yet they are used as is
+            // instead of rescanning the raw metrics history.
+            boolean useAccumulators = incrementalRollup && lastRollupTime == null;
+            if (!useAccumulators && (lastRollupTime == null || lastRollupTime < earliestBinId)) {
                 Set<String> metricList = metricsToBeQueried.get(resourceId);
                 if (metricList == null) {
                     metricList = new HashSet<>();
@@ -601,7 +611,7 @@ public class SingleResourceStatsAggregationTaskService extends
             Long binId = TimeUnit.MILLISECONDS.toMicros(binEntry.getKey());
             binId += TimeUnit.MILLISECONDS.toMicros(timeSeriesStats.binDurationMillis);
 
-            if (binId < lastRollupTime) {
+            if (lastRollupTime != null && binId < lastRollupTime) {
                 continue;
             }
 
@@ -663,6 +673,27 @@ public class SingleResourceStatsAggregationTaskService extends
             return;
         }
 
+        // create a set of rollup metric keys we are interested in and the timestamp
+        // to rollup from for each
+        Set<RollupMetricHolder> rollupMetricHolder = new HashSet<>();
+        for (Entry<String, Long> metricEntry : currentState.lastRollupTimeForMetric
+                .entrySet()) {
+            RollupMetricHolder metric = new RollupMetricHolder();
+            metric.rollupKey = metricEntry.getKey();
+            if (metricEntry.getValue() != null) {
+                metric.beginTimestampMicros = StatsUtil.computeIntervalBeginMicros(
+                        metricEntry.getValue() - 1,
+                        lookupBinSize(metricEntry.getKey()));
+            }
+            rollupMetricHolder.add(metric);
+        }
+
+        if (StatsUtil.isMetricsBlocksEnabled()) {
+            getRawMetricsFromBlocks(currentState, resourceQueryTask, metricsToBeQueried,
+                    inMemoryStats, rollupMetricHolder);
+            return;
+        }
+
         Query.Builder overallQueryBuilder = Query.Builder.create();
         for (Entry<String, Set<String>> entry : metricsToBeQueried.entrySet()) {
             String resourceId = entry.getKey();
@@ -672,6 +703,11 @@ public class SingleResourceStatsAggregationTaskService extends
                 int binSize = 0;
                 for (Entry<String, Long> metricEntry : currentState.lastRollupTimeForMetric.entrySet()) {
                     if (metricEntry.getKey().startsWith(metricKey)) {
+                        if (metricEntry.getValue() == null) {
+                            // nothing was rolled up yet for one of the intervals
+                            range = null;
+                            break;
+                        }
                         if (range == null || range > metricEntry.getValue()) {
                             binSize = lookupBinSize(metricEntry.getKey());
                             range = metricEntry.getValue();
@@ -695,21 +731,6 @@ public class SingleResourceStatsAggregationTaskService extends
             }
         }
 
-        // create a set of rollup metric keys we are interested in and the timestamp
-        // to rollup from for each
-        Set<RollupMetricHolder> rollupMetricHolder = new HashSet<>();
-        for (Entry<String, Long> metricEntry : currentState.lastRollupTimeForMetric
-                .entrySet()) {
-            RollupMetricHolder metric = new RollupMetricHolder();
-            metric.rollupKey = metricEntry.getKey();
-            if (metricEntry.getValue() != null) {
-                metric.beginTimestampMicros = StatsUtil.computeIntervalBeginMicros(
-                        metricEntry.getValue() - 1,
-                        lookupBinSize(metricEntry.getKey()));
-            }
-            rollupMetricHolder.add(metric);
-        }
-
         QueryTask task = QueryTask.Builder.createDirectTask()
                 .addOption(QueryOption.EXPAND_CONTENT)
                 .addOption(QueryOption.TOP_RESULTS)
@@ -726,34 +747,118 @@ public class SingleResourceStatsAggregationTaskService extends
                         sendSelfFailurePatch(currentState, queryEx.getMessage());
                         return;
                     }
-                    Map<String, List<ResourceMetrics>> rawMetricsForKey = new HashMap<>();
+                    List<ResourceMetrics> rawMetrics = new ArrayList<>();
                     QueryTask response = queryOp.getBody(QueryTask.class);
                     for (Object obj : response.results.documents.values()) {
-                        ResourceMetrics rawMetric = Utils.fromJson(obj, ResourceMetrics.class);
-                        for (RollupMetricHolder metric : rollupMetricHolder) {
-                            for (String rawMetricKey: rawMetric.entries.keySet()) {
-                                if (!rawMetricKey.contains(stripRollupKey(metric.rollupKey))) {
-                                    continue;
-                                }
-                                // we want to consider raw metrics with the specified key and the appropriate timestamp
-                                if ((metric.beginTimestampMicros == null ||
-                                        rawMetric.timestampMicrosUtc >= metric.beginTimestampMicros)) {
-                                    List<ResourceMetrics> rawMetricResultSet = rawMetricsForKey
-                                            .get(metric.rollupKey);
-                                    if (rawMetricResultSet == null) {
-                                        rawMetricResultSet = new ArrayList<>();
-                                        rawMetricsForKey.put(metric.rollupKey, rawMetricResultSet);
-                                    }
-                                    rawMetricResultSet.add(rawMetric);
-                                }
-                            }
+                        rawMetrics.add(Utils.fromJson(obj, ResourceMetrics.class));
+                    }
+                    aggregateMetrics(currentState, resourceQueryTask,
+                            groupRawMetrics(rawMetrics, rollupMetricHolder), inMemoryStats);
+                }));
+    }
+
+    /**
+     * Looks up the raw metrics from the ResourceMetricsBlock documents of the resources. Only the
+     * resource link and the time range of the blocks are queried; the data points are decoded
+     * and filtered by metric name in memory.
+     */
+    private void getRawMetricsFromBlocks(SingleResourceStatsAggregationTaskState currentState,
+            QueryTask resourceQueryTask, Map<String, Set<String>> metricsToBeQueried,
+            Map<String, SortedMap<Long, List<TimeBin>>> inMemoryStats,
+            Set<RollupMetricHolder> rollupMetricHolder) {
+        List<String> resourceLinks = new ArrayList<>();
+        Set<String> metricNames = new HashSet<>();
+        for (String resourceLink : resourceQueryTask.results.documentLinks) {
+            Set<String> metricKeys = metricsToBeQueried.get(UriUtils.getLastPathSegment(resourceLink));
+            if (metricKeys != null) {
+                resourceLinks.add(resourceLink);
+                metricNames.addAll(metricKeys);
+            }
+        }
+        if (resourceLinks.isEmpty()) {
+            aggregateMetrics(currentState, resourceQueryTask, null, inMemoryStats);
+            return;
+        }
+
+        // blocks ending before the earliest rollup interval of interest can be skipped
+        Long beginTimestampMicros = null;
+        for (RollupMetricHolder metric : rollupMetricHolder) {
+            if (metric.beginTimestampMicros == null) {
+                beginTimestampMicros = null;
+                break;
+            }
+            if (beginTimestampMicros == null || beginTimestampMicros > metric.beginTimestampMicros) {
+                beginTimestampMicros = metric.beginTimestampMicros;
+            }
+        }
+
+        Query.Builder builder = Query.Builder.create()
+                .addKindFieldClause(ResourceMetricsBlock.class)
+                .addInClause(ResourceMetricsBlock.FIELD_NAME_RESOURCE_LINK, resourceLinks);
+        if (beginTimestampMicros != null) {
+            builder.addRangeClause(ResourceMetricsBlock.FIELD_NAME_BLOCK_END,
+                    NumericRange.createGreaterThanRange(beginTimestampMicros));
+        }
+        // without TOP_RESULTS the result limit would make the query paginated; the most recent
+        // blocks are kept if there are more than the limit
+        QueryTask task = QueryTask.Builder.createDirectTask()
+                .addOption(QueryOption.EXPAND_CONTENT)
+                .addOption(QueryOption.TOP_RESULTS)
+                .addOption(QueryOption.SORT)
+                .orderDescending(ResourceMetricsBlock.FIELD_NAME_BLOCK_END, TypeName.LONG)
+                .setResultLimit(RAW_METRICS_LIMIT)
+                .setQuery(builder.build()).build();
+        sendRequest(Operation
+                .createPost(getHost(), ServiceUriPaths.CORE_QUERY_TASKS)
+                .setBody(task)
+                .setConnectionSharing(true)
+                .setCompletion((queryOp, queryEx) -> {
+                    if (queryEx != null) {
+                        sendSelfFailurePatch(currentState, queryEx.getMessage());
+                        return;
+                    }
+                    QueryTask response = queryOp.getBody(QueryTask.class);
+                    List<ResourceMetricsBlock> blocks = new ArrayList<>();
+                    if (response.results.documents != null) {
+                        for (Object obj : response.results.documents.values()) {
+                            blocks.add(Utils.fromJson(obj, ResourceMetricsBlock.class));
                         }
                     }
-                    aggregateMetrics(currentState, resourceQueryTask, rawMetricsForKey,
+                    aggregateMetrics(currentState, resourceQueryTask,
+                            groupRawMetrics(StatsUtil.toResourceMetrics(blocks, metricNames),
+                                    rollupMetricHolder),
                             inMemoryStats);
                 }));
     }
 
+    /**
+     * Groups the given raw metrics by the rollup keys they contribute to.
+     */
+    private Map<String, List<ResourceMetrics>> groupRawMetrics(List<ResourceMetrics> rawMetrics,
+            Set<RollupMetricHolder> rollupMetricHolder) {
+        Map<String, List<ResourceMetrics>> rawMetricsForKey = new HashMap<>();
+        for (RollupMetricHolder metric : rollupMetricHolder) {
+            String rawMetricKey = stripRollupKey(metric.rollupKey);
+            List<ResourceMetrics> rawMetricResultSet = null;
+            for (ResourceMetrics rawMetric : rawMetrics) {
+                // we want to consider raw metrics with the specified key and the appropriate timestamp
+                if (!rawMetric.entries.containsKey(rawMetricKey)) {
+                    continue;
+                }
+                if (metric.beginTimestampMicros != null &&
+                        rawMetric.timestampMicrosUtc < metric.beginTimestampMicros) {
+                    continue;
+                }
+                if (rawMetricResultSet == null) {
+                    rawMetricResultSet = new ArrayList<>();
+                    rawMetricsForKey.put(metric.rollupKey, rawMetricResultSet);
+                }
+                rawMetricResultSet.add(rawMetric);
+            }
+        }
+        return rawMetricsForKey;
+    }
+
     private void aggregateMetrics(SingleResourceStatsAggregationTaskState currentState,
             QueryTask resourceQueryTask, Map<String, List<ResourceMetrics>> rawMetricsForKey,
             Map<String, SortedMap<Long, List<TimeBin>>> inMemoryStats) {
@@ -1012,7 +1117,11 @@ public class SingleResourceStatsAggregationTaskService extends
         List<String> returnList = new ArrayList<>();
         returnList.add(baseKey + StatsConstants.HOUR_SUFFIX);
         // TODO VSYM-3109: Re-enable this once we fix daily rollup performance.
-        // returnList.add(baseKey + StatsConstants.DAILY_SUFFIX);
+        // Daily rollups are only computed in incremental mode, where they are finalized from the
+        // in-memory daily accumulators instead of a week worth of raw metrics.
+        if (StatsUtil.isIncrementalRollupEnabled()) {
+            returnList.add(baseKey + StatsConstants.DAILY_SUFFIX);
+        }
         return returnList;
     }
 
@@ -1041,35 +1150,7 @@ public class SingleResourceStatsAggregationTaskService extends
      */
     private TimeBin updateBin(TimeBin inputBin, double value,
             Set<AggregationType> aggregationTypes) {
-        if (aggregationTypes.contains(AggregationType.MAX)) {
-            if (inputBin.max == null || inputBin.max < value) {
-                inputBin.max = value;
-            }
-        }
-
-        if (aggregationTypes.contains(AggregationType.MIN)) {
-            if (inputBin.min == null || inputBin.min > value) {
-                inputBin.min = value;
-            }
-        }
-
-        if (aggregationTypes.contains(AggregationType.AVG)) {
-            if (inputBin.avg == null) {
-                inputBin.avg = value;
-            } else {
-                inputBin.avg = ((inputBin.avg * inputBin.count) + value) / (inputBin.count + 1);
-            }
-        }
-
-        if (aggregationTypes.contains(AggregationType.SUM)) {
-            if (inputBin.sum == null) {
-                inputBin.sum = value;
-            } else {
-                inputBin.sum += value;
-            }
-        }
-        inputBin.count++;
-        return inputBin;
+        return TimeBinUtils.add(inputBin, value, aggregationTypes);
     }
 
     /**
@@ -1077,36 +1158,6 @@ public class SingleResourceStatsAggregationTaskService extends
      */
     private TimeBin updateBin(TimeBin currentBin, TimeBin value,
             Set<AggregationType> aggregationTypes) {
-        if (aggregationTypes.contains(AggregationType.MAX)) {
-            if (currentBin.max == null || currentBin.max < value.max) {
-                currentBin.max = value.max;
-            }
-        }
-
-        if (aggregationTypes.contains(AggregationType.MIN)) {
-            if (currentBin.min == null || currentBin.min > value.min) {
-                currentBin.min = value.min;
-            }
-        }
-
-        if (aggregationTypes.contains(AggregationType.AVG)) {
-            if (currentBin.avg == null) {
-                currentBin.avg = value.avg;
-            } else {
-                currentBin.avg =
-                        ((currentBin.avg * currentBin.count) + (value.avg * value.count)) /
-                                (currentBin.count + value.count);
-            }
-        }
-
-        if (aggregationTypes.contains(AggregationType.SUM)) {
-            if (currentBin.sum == null) {
-                currentBin.sum = value.sum;
-            } else {
-                currentBin.sum += value.sum;
-            }
-        }
-        currentBin.count += value.count;
-        return currentBin;
+        return TimeBinUtils.merge(currentBin, value, aggregationTypes);
     }
 }
@@ -15,12 +15,17 @@ package com.vmware.photon.controller.model.tasks.monitoring;
 
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 import com.vmware.photon.controller.model.UriPaths;
@@ -29,6 +34,8 @@ import com.vmware.photon.controller.model.adapterapi.ComputeStatsResponse.Comput
 import com.vmware.photon.controller.model.constants.PhotonModelConstants;
 import com.vmware.photon.controller.model.monitoring.InMemoryResourceMetricService;
 import com.vmware.photon.controller.model.monitoring.InMemoryResourceMetricService.InMemoryResourceMetric;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsBlockService;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsBlockService.ResourceMetricsBlock;
 import com.vmware.photon.controller.model.monitoring.ResourceMetricsService;
 import com.vmware.photon.controller.model.monitoring.ResourceMetricsService.ResourceMetrics;
 import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
@@ -39,7 +46,7 @@ import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCo
 
 import com.vmware.xenon.common.FactoryService;
 import com.vmware.xenon.common.Operation;
-import com.vmware.xenon.common.OperationSequence;
+import com.vmware.xenon.common.OperationJoin;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption;
@@ -82,6 +89,23 @@ public class SingleResourceStatsCollectionTaskService
     private static final long EXPIRATION_INTERVAL = Integer
             .getInteger(RESOURCE_METRIC_RETENTION_LIMIT_DAYS, DEFAULT_RETENTION_LIMIT_DAYS);
 
+    public static final String PERSIST_STATS_BATCH_SIZE_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "SingleResourceStatsCollectionTaskService.persist.batchSize";
+    private static final int DEFAULT_PERSIST_STATS_BATCH_SIZE = 50;
+
+    // maximum number of metric documents persisted concurrently by a single task
+    private static final int PERSIST_STATS_BATCH_SIZE = Integer
+            .getInteger(PERSIST_STATS_BATCH_SIZE_PROPERTY, DEFAULT_PERSIST_STATS_BATCH_SIZE);
+
+    public static final String LAST_COLLECTION_TIME_LOOKUP_CONCURRENCY_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "SingleResourceStatsCollectionTaskService.lastCollectionTime.lookupConcurrency";
+    private static final int DEFAULT_LAST_COLLECTION_TIME_LOOKUP_CONCURRENCY = 20;
+
+    // maximum number of in memory stats of a batch looked up concurrently by a single task
+    private static final int LAST_COLLECTION_TIME_LOOKUP_CONCURRENCY = Integer.getInteger(
+            LAST_COLLECTION_TIME_LOOKUP_CONCURRENCY_PROPERTY,
+            DEFAULT_LAST_COLLECTION_TIME_LOOKUP_CONCURRENCY);
+
     public static FactoryService createFactory() {
         TaskFactoryService fs = new TaskFactoryService(
                 SingleResourceStatsCollectionTaskState.class) {
@@ -133,6 +157,13 @@ public class SingleResourceStatsCollectionTaskService
         @Documentation(description = "The stats adapter reference")
         public URI statsAdapterReference;
 
+        /**
+         * Links of all the computes to collect stats for when a batch of computes sharing the
+         * stats adapter and the parent of computeLink is collected with a single adapter
+         * request; computeLink is one of them. If not set, only computeLink is collected.
+         */
+        public List<String> computeLinks;
+
     }
 
     public SingleResourceStatsCollectionTaskService() {
@@ -248,6 +279,9 @@ public class SingleResourceStatsCollectionTaskService
         if (patchState.statsAdapterReference != null) {
             currentState.statsAdapterReference = patchState.statsAdapterReference;
         }
+        if (patchState.computeLinks != null) {
+            currentState.computeLinks = patchState.computeLinks;
+        }
     }
 
     private void handleStagePatch(SingleResourceStatsCollectionTaskState currentState) {
@@ -286,18 +320,8 @@ public class SingleResourceStatsCollectionTaskService
                             List<String> tenantLinks = new ArrayList<>();
                             if (description != null) {
                                 tenantLinks = description.tenantLinks;
-                                // Only look in adapter references if statsAdapterReference is
-                                // provided
-                                if (currentState.statsAdapterReference == null) {
-                                    statsAdapterReference = description.statsAdapterReference;
-                                } else if (description.statsAdapterReferences != null) {
-                                    for (URI uri : description.statsAdapterReferences) {
-                                        if (uri.equals(currentState.statsAdapterReference)) {
-                                            statsAdapterReference = uri;
-                                            break;
-                                        }
-                                    }
-                                }
+                                statsAdapterReference = getStatsAdapterReference(description,
+                                        currentState.statsAdapterReference);
                             }
 
                             if (statsAdapterReference != null) {
@@ -307,8 +331,14 @@ public class SingleResourceStatsCollectionTaskService
                                         .buildUri(getHost(), computeStateWithDesc.documentSelfLink);
                                 statsRequest.taskReference = getUri();
                                 patchUri = statsAdapterReference;
-                                populateLastCollectionTimeForMetricsInStatsRequest(currentState,
-                                        statsRequest, patchUri, tenantLinks);
+                                if (currentState.computeLinks != null) {
+                                    statsRequest.resourceLinks = currentState.computeLinks;
+                                    populateLastCollectionTimeForBatchInStatsRequest(currentState,
+                                            statsRequest, patchUri);
+                                } else {
+                                    populateLastCollectionTimeForMetricsInStatsRequest(
+                                            currentState, statsRequest, patchUri, tenantLinks);
+                                }
                             } else {
                                 // no adapter associated with this resource, just patch completion
                                 SingleResourceStatsCollectionTaskState nextStageState = new SingleResourceStatsCollectionTaskState();
@@ -323,6 +353,27 @@ public class SingleResourceStatsCollectionTaskService
                         }));
     }
 
+    /**
+     * Returns the stats adapter to collect the stats of computes with the given description. If
+     * an adapter is requested explicitly, it is only used if listed in the adapter references
+     * of the description.
+     */
+    static URI getStatsAdapterReference(ComputeDescription description,
+            URI requestedStatsAdapterReference) {
+        // Only look in adapter references if statsAdapterReference is provided
+        if (requestedStatsAdapterReference == null) {
+            return description.statsAdapterReference;
+        }
+        if (description.statsAdapterReferences != null) {
+            for (URI uri : description.statsAdapterReferences) {
+                if (uri.equals(requestedStatsAdapterReference)) {
+                    return uri;
+                }
+            }
+        }
+        return null;
+    }
+
     private void updateAndPersistStats(SingleResourceStatsCollectionTaskState currentState) {
         if (currentState.statsAdapterReference == null) {
             throw new IllegalStateException("stats adapter reference should not be null");
@@ -339,92 +390,167 @@ public class SingleResourceStatsCollectionTaskService
         minuteStats.sourceTimeMicrosUtc = Utils.getNowMicrosUtc();
         minuteStats.unit = PhotonModelConstants.UNIT_MICROSECONDS;
 
-        Collection<Operation> operations = new ArrayList<>();
-        URI inMemoryStatsUri = UriUtils.buildStatsUri(getHost(), currentState.computeLink);
-        operations.add(Operation.createPost(inMemoryStatsUri).setBody(minuteStats));
-        List<ResourceMetrics> metricsList = new ArrayList<>();
-        populateResourceMetrics(metricsList,
-                getLastCollectionMetricKeyForAdapterLink(statsLink, false),
-                minuteStats, currentState.computeLink, expirationTime);
-
-        // TODO: Support case when stats list has data for multiple resources
-        // https://jira-hzn.eng.vmware.com/browse/VSYM-3121
-        String computeId = UriUtils.getLastPathSegment(currentState.computeLink);
-
-        InMemoryResourceMetric hourlyMemoryState = new InMemoryResourceMetric();
-        hourlyMemoryState.timeSeriesStats = new HashMap<>();
-        hourlyMemoryState.documentSelfLink = computeId.concat(StatsConstants.HOUR_SUFFIX);
-
-        InMemoryResourceMetric dailyMemoryState = new InMemoryResourceMetric();
-        dailyMemoryState.timeSeriesStats = new HashMap<>();
-        dailyMemoryState.documentSelfLink = computeId.concat(StatsConstants.DAILY_SUFFIX);
+        List<String> computeLinks = currentState.computeLinks != null
+                ? currentState.computeLinks
+                : Collections.singletonList(currentState.computeLink);
+
+        // in incremental rollup mode the in-memory metrics keep enough closed bins for the
+        // aggregation to finalize them without going back to the raw metrics
+        boolean incrementalRollup = StatsUtil.isIncrementalRollupEnabled();
+        int hourlyBins = incrementalRollup ? StatsConstants.NUM_BUCKETS_HOURLY_DATA
+                : StatsConstants.NUM_BUCKETS_DEFAULT;
+        int dailyBins = incrementalRollup ? StatsConstants.NUM_BUCKETS_DAILY_DATA
+                : StatsConstants.NUM_BUCKETS_DEFAULT;
+
+        // in-memory metrics keyed by the collected compute; stats reported for resources that
+        // were not requested (e.g. the VMs of a host) are accounted to the requested compute
+        Map<String, InMemoryResourceMetric> hourlyMemoryStates = new LinkedHashMap<>();
+        Map<String, InMemoryResourceMetric> dailyMemoryStates = new LinkedHashMap<>();
+        for (String computeLink : computeLinks) {
+            String computeId = UriUtils.getLastPathSegment(computeLink);
+            InMemoryResourceMetric hourlyMemoryState = new InMemoryResourceMetric();
+            hourlyMemoryState.timeSeriesStats = new HashMap<>();
+            hourlyMemoryState.documentSelfLink = computeId.concat(StatsConstants.HOUR_SUFFIX);
+            hourlyMemoryStates.put(computeLink, hourlyMemoryState);
+
+            InMemoryResourceMetric dailyMemoryState = new InMemoryResourceMetric();
+            dailyMemoryState.timeSeriesStats = new HashMap<>();
+            dailyMemoryState.documentSelfLink = computeId.concat(StatsConstants.DAILY_SUFFIX);
+            dailyMemoryStates.put(computeLink, dailyMemoryState);
+        }
 
+        // raw metrics keyed by resource id and timestamp, so that data points reported for the
+        // same instant are merged into a single document
+        Map<String, ResourceMetrics> metricsByKey = new LinkedHashMap<>();
+        // raw metric blocks keyed by self link, used instead of metricsByKey if enabled
+        boolean metricsBlocksEnabled = StatsUtil.isMetricsBlocksEnabled();
+        Map<String, ResourceMetricsBlock> metricsBlocks = new LinkedHashMap<>();
+        // in batch mode, the computes the adapter actually returned stats for; adapters that do
+        // not support batches only report the stats of the requested compute
+        Set<String> collectedLinks = new LinkedHashSet<>();
+        if (currentState.computeLinks == null) {
+            collectedLinks.add(currentState.computeLink);
+        }
         for (ComputeStats stats : currentState.statsList) {
+            String computeLink = stats.computeLink;
+            if (computeLink == null) {
+                computeLink = currentState.computeLink;
+            }
+            String inMemoryLink = hourlyMemoryStates.containsKey(computeLink) ? computeLink
+                    : currentState.computeLink;
+            collectedLinks.add(inMemoryLink);
+            InMemoryResourceMetric hourlyMemoryState = hourlyMemoryStates.get(inMemoryLink);
+            InMemoryResourceMetric dailyMemoryState = dailyMemoryStates.get(inMemoryLink);
             // TODO: https://jira-hzn.eng.vmware.com/browse/VSYM-330
             for (Entry<String, List<ServiceStat>> entries : stats.statValues.entrySet()) {
                 // sort stats by source time
                 Collections.sort(entries.getValue(),
                         (o1, o2) -> o1.sourceTimeMicrosUtc.compareTo(o2.sourceTimeMicrosUtc));
+                SortedMap<Long, Double> dataPoints = new TreeMap<>();
                 // Persist every data point
                 for (ServiceStat serviceStat : entries.getValue()) {
-                    String computeLink = stats.computeLink;
-                    if (computeLink == null) {
-                        computeLink = currentState.computeLink;
-                    }
                     // update in-memory stats
                     updateInMemoryStats(hourlyMemoryState, entries.getKey(), serviceStat,
-                            StatsConstants.BUCKET_SIZE_HOURS_IN_MILLIS);
+                            hourlyBins, StatsConstants.BUCKET_SIZE_HOURS_IN_MILLIS);
                     updateInMemoryStats(dailyMemoryState, entries.getKey(), serviceStat,
-                            StatsConstants.BUCKET_SIZE_DAYS_IN_MILLIS);
+                            dailyBins, StatsConstants.BUCKET_SIZE_DAYS_IN_MILLIS);
 
-                    populateResourceMetrics(metricsList, entries.getKey(),
-                            serviceStat, computeLink, expirationTime);
+                    if (!metricsBlocksEnabled) {
+                        populateResourceMetrics(metricsByKey, entries.getKey(),
+                                serviceStat, computeLink, expirationTime);
+                    } else if (!Double.isNaN(serviceStat.latestValue)) {
+                        dataPoints.put(serviceStat.sourceTimeMicrosUtc, serviceStat.latestValue);
+                    }
+                }
+                if (!dataPoints.isEmpty()) {
+                    StatsUtil.addToResourceMetricsBlocks(metricsBlocks, computeLink,
+                            entries.getKey(), dataPoints, expirationTime);
                 }
             }
         }
-        for (ResourceMetrics metrics : metricsList) {
-            operations.add(Operation.createPost(getHost(), ResourceMetricsService.FACTORY_LINK)
+
+        // The data points do not depend on each other: raw metric links are generated up front
+        // and the in-memory rollups are merged by their owner, so they are persisted in parallel.
+        List<Operation> dataOperations = new ArrayList<>();
+        for (ResourceMetrics metrics : metricsByKey.values()) {
+            dataOperations.add(Operation.createPost(getHost(), ResourceMetricsService.FACTORY_LINK)
                     .setBodyNoCloning(metrics));
         }
-        operations.add(Operation.createPost(getHost(), InMemoryResourceMetricService.FACTORY_LINK)
-                .setBodyNoCloning(hourlyMemoryState));
-        operations.add(Operation.createPost(getHost(), InMemoryResourceMetricService.FACTORY_LINK)
-                .setBodyNoCloning(dailyMemoryState));
-
-        // If there are no stats reported, just finish the task.
-        if (operations.size() == 0) {
-            SingleResourceStatsCollectionTaskState nextStatePatch = new SingleResourceStatsCollectionTaskState();
-            nextStatePatch.taskInfo = TaskUtils.createTaskState(TaskStage.FINISHED);
-            TaskUtils.sendPatch(this, nextStatePatch);
-            return;
+        for (ResourceMetricsBlock block : metricsBlocks.values()) {
+            dataOperations.add(Operation
+                    .createPost(getHost(), ResourceMetricsBlockService.FACTORY_LINK)
+                    .setBodyNoCloning(block));
+        }
+        for (String computeLink : collectedLinks) {
+            dataOperations.add(Operation
+                    .createPost(getHost(), InMemoryResourceMetricService.FACTORY_LINK)
+                    .setBodyNoCloning(hourlyMemoryStates.get(computeLink)));
+            dataOperations.add(Operation
+                    .createPost(getHost(), InMemoryResourceMetricService.FACTORY_LINK)
+                    .setBodyNoCloning(dailyMemoryStates.get(computeLink)));
+        }
+
+        // The last collection time is published only after all the data points are persisted,
+        // otherwise a partially failed run would not be re-collected on the next cycle. Computes
+        // without stats keep their last collection time, so that their window is not skipped.
+        Map<String, ResourceMetrics> lastCollectionMetrics = new HashMap<>();
+        List<Operation> lastCollectionOperations = new ArrayList<>();
+        for (String computeLink : collectedLinks) {
+            populateResourceMetrics(lastCollectionMetrics,
+                    getLastCollectionMetricKeyForAdapterLink(statsLink, false),
+                    minuteStats, computeLink, expirationTime);
+            lastCollectionOperations.add(Operation
+                    .createPost(UriUtils.buildStatsUri(getHost(), computeLink))
+                    .setBody(minuteStats));
+        }
+        for (ResourceMetrics metrics : lastCollectionMetrics.values()) {
+            lastCollectionOperations.add(Operation
+                    .createPost(getHost(), ResourceMetricsService.FACTORY_LINK)
+                    .setBodyNoCloning(metrics));
         }
 
-        // Save each data point sequentially to create time based monotonically increasing sequence.
-        OperationSequence.create(operations.toArray(new Operation[operations.size()]))
+        OperationJoin.create(dataOperations)
                 .setCompletion((ops, exc) -> {
                     if (exc != null) {
-                        logWarning("Failed stats collection: %s",
-                                exc.values().iterator().next().getMessage());
-                        TaskUtils.sendFailurePatch(this,
-                                new SingleResourceStatsCollectionTaskState(), exc.values());
+                        handlePersistStatsFailure(exc);
                         return;
                     }
-                    SingleResourceStatsCollectionTaskState nextStatePatch = new SingleResourceStatsCollectionTaskState();
-                    nextStatePatch.taskInfo = TaskUtils.createTaskState(TaskStage.FINISHED);
-                    TaskUtils.sendPatch(this, nextStatePatch);
+                    OperationJoin.create(lastCollectionOperations)
+                            .setCompletion((lastOps, lastExc) -> {
+                                if (lastExc != null) {
+                                    handlePersistStatsFailure(lastExc);
+                                    return;
+                                }
+                                LastCollectionTimeCache cache = LastCollectionTimeCache
+                                        .getInstance(getHost());
+                                for (String computeLink : collectedLinks) {
+                                    cache.put(computeLink, statsLink,
+                                            minuteStats.sourceTimeMicrosUtc);
+                                }
+                                SingleResourceStatsCollectionTaskState nextStatePatch = new SingleResourceStatsCollectionTaskState();
+                                nextStatePatch.taskInfo = TaskUtils.createTaskState(TaskStage.FINISHED);
+                                TaskUtils.sendPatch(this, nextStatePatch);
+                            })
+                            .sendWith(this, PERSIST_STATS_BATCH_SIZE);
                 })
-                .sendWith(this);
+                .sendWith(this, PERSIST_STATS_BATCH_SIZE);
+    }
+
+    private void handlePersistStatsFailure(Map<Long, Throwable> exc) {
+        logWarning("Failed stats collection: %s", exc.values().iterator().next().getMessage());
+        TaskUtils.sendFailurePatch(this, new SingleResourceStatsCollectionTaskState(),
+                exc.values());
     }
 
     private void updateInMemoryStats(InMemoryResourceMetric inMemoryMetric, String metricKey,
-            ServiceStat serviceStat, int bucketSize) {
+            ServiceStat serviceStat, int numBuckets, int bucketSize) {
         // update in-memory stats
         if (inMemoryMetric.timeSeriesStats.containsKey(metricKey)) {
             inMemoryMetric.timeSeriesStats.get(metricKey)
                     .add(serviceStat.sourceTimeMicrosUtc, serviceStat.latestValue,
                             serviceStat.latestValue);
         } else {
-            TimeSeriesStats tStats = new TimeSeriesStats(2, bucketSize,
+            TimeSeriesStats tStats = new TimeSeriesStats(numBuckets, bucketSize,
                     EnumSet.allOf(AggregationType.class));
             tStats.add(serviceStat.sourceTimeMicrosUtc, serviceStat.latestValue,
                     serviceStat.latestValue);
@@ -432,35 +558,30 @@ public class SingleResourceStatsCollectionTaskService
         }
     }
 
-    private void populateResourceMetrics(List<ResourceMetrics> metricsList,
+    private void populateResourceMetrics(Map<String, ResourceMetrics> metricsByKey,
             String metricName,
             ServiceStat serviceStat,
             String computeLink, long expirationTime) {
         if (Double.isNaN(serviceStat.latestValue)) {
             return;
         }
-        ResourceMetrics metricsObjToUpdate = null;
-        for (ResourceMetrics metricsObj : metricsList) {
-            if (metricsObj.documentSelfLink.startsWith(UriUtils.getLastPathSegment(computeLink)) &&
-                    metricsObj.timestampMicrosUtc.equals(serviceStat.sourceTimeMicrosUtc)) {
-                metricsObjToUpdate = metricsObj;
-                break;
-            }
-        }
+        String key = StatsUtil.getMetricKey(computeLink, serviceStat.sourceTimeMicrosUtc);
+        ResourceMetrics metricsObjToUpdate = metricsByKey.get(key);
         if (metricsObjToUpdate == null) {
             metricsObjToUpdate = new ResourceMetrics();
             metricsObjToUpdate.documentSelfLink = StatsUtil.getMetricKey(computeLink, Utils.getNowMicrosUtc());
             metricsObjToUpdate.entries = new HashMap<>();
             metricsObjToUpdate.timestampMicrosUtc = serviceStat.sourceTimeMicrosUtc;
             metricsObjToUpdate.documentExpirationTimeMicros = expirationTime;
-            metricsList.add(metricsObjToUpdate);
+            metricsByKey.put(key, metricsObjToUpdate);
         }
         metricsObjToUpdate.entries.put(metricName, serviceStat.latestValue);
     }
 
     /**
      * Gets the last collection for a compute for a given adapter URI.
-     * As a first step, the in memory stats for the compute are queried and if the metric
+     * As a first step, the node local {@link LastCollectionTimeCache} is looked up. On a miss,
+     * the in memory stats for the compute are queried and if the metric
      * for the last collection time is found, then the timestamp for that is returned.
      *
      * Else, the ResoureMetric table is queried and the latest version of the metric is used
@@ -469,6 +590,14 @@ public class SingleResourceStatsCollectionTaskService
     private void populateLastCollectionTimeForMetricsInStatsRequest(
             SingleResourceStatsCollectionTaskState currentState,
             ComputeStatsRequest computeStatsRequest, URI patchUri, List<String> tenantLinks) {
+        LastCollectionTimeCache cache = LastCollectionTimeCache.getInstance(getHost());
+        Long cachedLastCollectionTime = cache.get(currentState.computeLink,
+                getAdapterLinkFromURI(patchUri));
+        if (cachedLastCollectionTime != null) {
+            computeStatsRequest.lastCollectionTimeMicrosUtc = cachedLastCollectionTime;
+            sendStatsRequestToAdapter(currentState, patchUri, computeStatsRequest);
+            return;
+        }
         URI computeStatsUri = UriUtils
                 .buildStatsUri(UriUtils.buildUri(getHost(), currentState.computeLink));
         Operation.createGet(computeStatsUri)
@@ -490,6 +619,8 @@ public class SingleResourceStatsCollectionTaskService
                                 .get(lastSuccessfulRunMetricKey);
                         computeStatsRequest.lastCollectionTimeMicrosUtc =
                                 lastRunStat.sourceTimeMicrosUtc;
+                        cache.put(currentState.computeLink, statsAdapterLink,
+                                lastRunStat.sourceTimeMicrosUtc);
                         sendStatsRequestToAdapter(currentState, patchUri, computeStatsRequest);
                     } else {
                         populateLastCollectionTimeFromPersistenceStore(currentState,
@@ -552,12 +683,83 @@ public class SingleResourceStatsCollectionTaskService
                                 ResourceMetrics.class);
                         computeStatsRequest.lastCollectionTimeMicrosUtc =
                                 rawMetrics.timestampMicrosUtc;
+                        LastCollectionTimeCache.getInstance(getHost()).put(
+                                currentState.computeLink, statsAdapterLink,
+                                rawMetrics.timestampMicrosUtc);
                     }
                     sendStatsRequestToAdapter(currentState, patchUri, computeStatsRequest);
                 })
                 .sendWith(this);
     }
 
+    /**
+     * Sets the last collection time of a batch of computes, that is the earliest of the last
+     * collection times of the computes, so that no compute misses data points. The times are
+     * looked up in the {@link LastCollectionTimeCache} and, if any of them is not cached, in the
+     * in memory stats of the computes. If any of the computes has no last collection time in
+     * memory, none is set and the adapter falls back to its default collection window.
+     */
+    private void populateLastCollectionTimeForBatchInStatsRequest(
+            SingleResourceStatsCollectionTaskState currentState,
+            ComputeStatsRequest computeStatsRequest, URI patchUri) {
+        String statsAdapterLink = getAdapterLinkFromURI(patchUri);
+        LastCollectionTimeCache cache = LastCollectionTimeCache.getInstance(getHost());
+        Long cachedLastCollectionTime = null;
+        for (String computeLink : currentState.computeLinks) {
+            Long lastCollectionTime = cache.get(computeLink, statsAdapterLink);
+            if (lastCollectionTime == null) {
+                cachedLastCollectionTime = null;
+                break;
+            }
+            if (cachedLastCollectionTime == null
+                    || lastCollectionTime < cachedLastCollectionTime) {
+                cachedLastCollectionTime = lastCollectionTime;
+            }
+        }
+        if (cachedLastCollectionTime != null) {
+            computeStatsRequest.lastCollectionTimeMicrosUtc = cachedLastCollectionTime;
+            sendStatsRequestToAdapter(currentState, patchUri, computeStatsRequest);
+            return;
+        }
+
+        String lastSuccessfulRunMetricKey = getLastCollectionMetricKeyForAdapterLink(
+                statsAdapterLink, true);
+        List<Operation> statsOperations = new ArrayList<>();
+        for (String computeLink : currentState.computeLinks) {
+            statsOperations.add(Operation.createGet(UriUtils.buildStatsUri(
+                    UriUtils.buildUri(getHost(), computeLink))));
+        }
+        OperationJoin.create(statsOperations)
+                .setCompletion((ops, exc) -> {
+                    if (exc != null) {
+                        logWarning("Could not get the last collection time from in memory stats: %s",
+                                Utils.toString(exc.values().iterator().next()));
+                        sendStatsRequestToAdapter(currentState, patchUri, computeStatsRequest);
+                        return;
+                    }
+                    Long lastCollectionTime = null;
+                    boolean missing = false;
+                    for (Operation op : ops.values()) {
+                        ServiceStat lastRunStat = op.getBody(ServiceStats.class).entries
+                                .get(lastSuccessfulRunMetricKey);
+                        if (lastRunStat == null) {
+                            missing = true;
+                            continue;
+                        }
+                        cache.put(UriUtils.getParentPath(op.getUri().getPath()),
+                                statsAdapterLink, lastRunStat.sourceTimeMicrosUtc);
+                        if (lastCollectionTime == null
+                                || lastRunStat.sourceTimeMicrosUtc < lastCollectionTime) {
+                            lastCollectionTime = lastRunStat.sourceTimeMicrosUtc;
+                        }
+                    }
+                    computeStatsRequest.lastCollectionTimeMicrosUtc = missing ? null
+                            : lastCollectionTime;
+                    sendStatsRequestToAdapter(currentState, patchUri, computeStatsRequest);
+                })
+                .sendWith(this, LAST_COLLECTION_TIME_LOOKUP_CONCURRENCY);
+    }
+
     /**
      * Sends the Stats request to the Stats adapter
      */
@@ -14,10 +14,24 @@
 package com.vmware.photon.controller.model.tasks.monitoring;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.photon.controller.model.constants.PhotonModelConstants;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsService;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsService.ResourceMetrics;
+import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
+import com.vmware.photon.controller.model.resources.ComputeService.ComputeState;
 import com.vmware.photon.controller.model.resources.ResourcePoolService.ResourcePoolState;
 import com.vmware.photon.controller.model.resources.util.PhotonModelUtils;
 import com.vmware.photon.controller.model.tasks.ServiceTaskCallback;
@@ -28,12 +42,22 @@ import com.vmware.photon.controller.model.tasks.TaskUtils;
 import com.vmware.photon.controller.model.tasks.monitoring.SingleResourceStatsCollectionTaskService.SingleResourceStatsCollectionTaskState;
 import com.vmware.xenon.common.FactoryService;
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.OperationJoin;
 import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption;
+import com.vmware.xenon.common.ServiceDocumentDescription.TypeName;
 import com.vmware.xenon.common.TaskState;
 import com.vmware.xenon.common.TaskState.TaskStage;
 import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
 import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.NumericRange;
+import com.vmware.xenon.services.common.QueryTask.Query;
+import com.vmware.xenon.services.common.QueryTask.Query.Occurance;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification;
+import com.vmware.xenon.services.common.QueryTask.QuerySpecification.QueryOption;
+import com.vmware.xenon.services.common.QueryTask.QueryTerm.MatchType;
 import com.vmware.xenon.services.common.ServiceUriPaths;
 import com.vmware.xenon.services.common.TaskFactoryService;
 import com.vmware.xenon.services.common.TaskService;
@@ -54,6 +78,13 @@ public class StatsCollectionTaskService extends TaskService<StatsCollectionTaskS
             public Service createServiceInstance() throws Throwable {
                 return new StatsCollectionTaskService();
             }
+
+            @Override
+            public void handleStop(Operation stop) {
+                // the factory stops with the host, along with the collections of the host
+                LastCollectionTimeCache.remove(getHost());
+                super.handleStop(stop);
+            }
         };
         fs.setPeerNodeSelectorPath(ServiceUriPaths.DEFAULT_1X_NODE_SELECTOR);
         return fs;
@@ -64,6 +95,19 @@ public class StatsCollectionTaskService extends TaskService<StatsCollectionTaskS
     private static final int DEFAULT_QUERY_RESULT_LIMIT = 50;
     private static final String PROP_NEXT_PAGE_LINK = "__nextPageLink";
 
+    public static final String LAST_COLLECTION_TIME_WARMUP_WINDOW_MINUTES = UriPaths.PROPERTY_PREFIX
+            + "StatsCollectionTaskService.lastCollectionTime.warmupWindowMinutes";
+    private static final int DEFAULT_LAST_COLLECTION_TIME_WARMUP_WINDOW_MINUTES = 60;
+
+    public static final String LAST_COLLECTION_TIME_WARMUP_RESULTS_PER_COMPUTE = UriPaths.PROPERTY_PREFIX
+            + "StatsCollectionTaskService.lastCollectionTime.warmupResultsPerCompute";
+    // one collection every 5 minutes over the default warm-up window
+    private static final int DEFAULT_LAST_COLLECTION_TIME_WARMUP_RESULTS_PER_COMPUTE = 12;
+
+    // paths of the stats adapters that report the stats of all the computes of a request; this
+    // is a property of the adapter implementations, so it is shared by the hosts of the process
+    private static final Set<String> BATCH_STATS_ADAPTER_LINKS = ConcurrentHashMap.newKeySet();
+
     public enum StatsCollectionStage {
         INIT, GET_RESOURCES
     }
@@ -83,6 +127,15 @@ public class StatsCollectionTaskService extends TaskService<StatsCollectionTaskS
 
         public URI statsAdapterReference;
 
+        /**
+         * If set, the computes of each page that share a stats adapter and a parent are
+         * collected by a single task with a single request to the adapter, instead of one task
+         * and one request per compute. Only the adapters registered with
+         * {@link StatsCollectionTaskService#registerBatchStatsAdapter(String)} are sent batches,
+         * the computes of the other adapters are still collected one by one.
+         */
+        public boolean batchCollection;
+
         /**
          * cursor for obtaining compute services
          */
@@ -95,6 +148,18 @@ public class StatsCollectionTaskService extends TaskService<StatsCollectionTaskS
         super.toggleOption(ServiceOption.IDEMPOTENT_POST, true);
     }
 
+    /**
+     * Declares that the stats adapter with the given path reports the stats of all the computes
+     * listed in {@code ComputeStatsRequest.resourceLinks}, so that it can be sent batches.
+     */
+    public static void registerBatchStatsAdapter(String statsAdapterLink) {
+        BATCH_STATS_ADAPTER_LINKS.add(statsAdapterLink);
+    }
+
+    static boolean isBatchStatsAdapter(URI statsAdapterReference) {
+        return BATCH_STATS_ADAPTER_LINKS.contains(statsAdapterReference.getPath());
+    }
+
     @Override
     public void handleStart(Operation start) {
         try {
@@ -217,6 +282,11 @@ public class StatsCollectionTaskService extends TaskService<StatsCollectionTaskS
         QueryTask.Builder queryTaskBuilder = QueryTask.Builder.createDirectTask()
                 .setQuery(resourcePoolState.query)
                 .setResultLimit(resultLimit);
+        if (currentState.batchCollection
+                || LastCollectionTimeCache.getInstance(getHost()).isEnabled()) {
+            // the stats adapters of the computes are resolved per page
+            queryTaskBuilder.addOption(QueryOption.EXPAND_CONTENT);
+        }
 
         sendRequest(Operation
                 .createPost(this, ServiceUriPaths.CORE_QUERY_TASKS)
@@ -256,13 +326,245 @@ public class StatsCollectionTaskService extends TaskService<StatsCollectionTaskS
                                 TaskUtils.sendPatch(this, patchBody);
                                 return;
                             }
+                            if (currentState.batchCollection
+                                    || LastCollectionTimeCache.getInstance(getHost()).isEnabled()) {
+                                getStatsAdapters(page, currentState);
+                                return;
+                            }
                             createSubTask(page.results.documentLinks, page.results.nextPageLink,
                                     currentState);
                         }));
     }
 
-    private void createSubTask(List<String> computeResources, String nextPageLink,
+    /**
+     * Resolves the stats adapter of every compute of the page, warms the
+     * {@link LastCollectionTimeCache} for them and starts the collection tasks.
+     */
+    private void getStatsAdapters(QueryTask page, StatsCollectionTaskState currentState) {
+        List<ComputeState> computes = new ArrayList<>();
+        Set<String> descriptionLinks = new HashSet<>();
+        for (String computeLink : page.results.documentLinks) {
+            ComputeState compute = Utils.fromJson(page.results.documents.get(computeLink),
+                    ComputeState.class);
+            computes.add(compute);
+            if (compute.descriptionLink != null) {
+                descriptionLinks.add(compute.descriptionLink);
+            }
+        }
+
+        List<Operation> getDescriptionOps = new ArrayList<>();
+        for (String descriptionLink : descriptionLinks) {
+            getDescriptionOps.add(Operation.createGet(this, descriptionLink));
+        }
+
+        OperationJoin.JoinedCompletionHandler handler = (ops, exc) -> {
+            if (exc != null) {
+                TaskUtils.sendFailurePatch(this, new StatsCollectionTaskState(),
+                        exc.values());
+                return;
+            }
+            Map<String, URI> adapterByDescription = new HashMap<>();
+            if (ops != null) {
+                for (Operation op : ops.values()) {
+                    ComputeDescription description = op.getBody(ComputeDescription.class);
+                    URI statsAdapterReference = SingleResourceStatsCollectionTaskService
+                            .getStatsAdapterReference(description,
+                                    currentState.statsAdapterReference);
+                    if (statsAdapterReference != null) {
+                        adapterByDescription.put(description.documentSelfLink,
+                                statsAdapterReference);
+                    }
+                }
+            }
+
+            warmLastCollectionTimes(computes, adapterByDescription, () -> {
+                if (currentState.batchCollection) {
+                    createBatchSubTask(computes, adapterByDescription, page.results.nextPageLink,
+                            currentState);
+                } else {
+                    createSubTask(page.results.documentLinks, page.results.nextPageLink,
+                            currentState);
+                }
+            });
+        };
+
+        if (getDescriptionOps.isEmpty()) {
+            handler.handle(null, null);
+            return;
+        }
+        OperationJoin.create(getDescriptionOps).setCompletion(handler).sendWith(this);
+    }
+
+    /**
+     * Loads the last collection time of the computes missing from the
+     * {@link LastCollectionTimeCache}, with a single query per stats adapter over the last
+     * collection metrics persisted in the warm-up window. The query returns a bounded number of
+     * metrics per compute, the most recent ones. Computes not found are looked up individually by
+     * their collection task.
+     */
+    private void warmLastCollectionTimes(List<ComputeState> computes,
+            Map<String, URI> adapterByDescription, Runnable next) {
+        LastCollectionTimeCache cache = LastCollectionTimeCache.getInstance(getHost());
+        if (!cache.isEnabled()) {
+            next.run();
+            return;
+        }
+
+        Map<String, Map<String, String>> missingComputesByAdapter = new HashMap<>();
+        for (ComputeState compute : computes) {
+            URI statsAdapterReference = adapterByDescription.get(compute.descriptionLink);
+            if (statsAdapterReference == null) {
+                continue;
+            }
+            String statsAdapterLink = statsAdapterReference.getPath();
+            if (cache.get(compute.documentSelfLink, statsAdapterLink) == null) {
+                missingComputesByAdapter.computeIfAbsent(statsAdapterLink, k -> new HashMap<>())
+                        .put(UriUtils.getLastPathSegment(compute.documentSelfLink),
+                                compute.documentSelfLink);
+            }
+        }
+        if (missingComputesByAdapter.isEmpty()) {
+            next.run();
+            return;
+        }
+
+        long windowStartMicros = Utils.getNowMicrosUtc() - TimeUnit.MINUTES.toMicros(Integer
+                .getInteger(LAST_COLLECTION_TIME_WARMUP_WINDOW_MINUTES,
+                        DEFAULT_LAST_COLLECTION_TIME_WARMUP_WINDOW_MINUTES));
+        int resultsPerCompute = Math.max(1, Integer.getInteger(
+                LAST_COLLECTION_TIME_WARMUP_RESULTS_PER_COMPUTE,
+                DEFAULT_LAST_COLLECTION_TIME_WARMUP_RESULTS_PER_COMPUTE));
+        List<Operation> queryOps = new ArrayList<>();
+        Map<Long, String> adapterLinkByOperationId = new HashMap<>();
+        for (Entry<String, Map<String, String>> entry : missingComputesByAdapter.entrySet()) {
+            String lastSuccessfulRunMetricKey = StatsUtil.getMetricKeyPrefix(entry.getKey(),
+                    PhotonModelConstants.LAST_SUCCESSFUL_STATS_COLLECTION_TIME);
+            Query.Builder computesQuery = Query.Builder.create(Occurance.MUST_OCCUR);
+            for (String computeId : entry.getValue().keySet()) {
+                computesQuery.addFieldClause(ServiceDocument.FIELD_NAME_SELF_LINK,
+                        UriUtils.buildUriPath(ResourceMetricsService.FACTORY_LINK, computeId),
+                        MatchType.PREFIX, Occurance.SHOULD_OCCUR);
+            }
+            Query query = Query.Builder.create()
+                    .addKindFieldClause(ResourceMetrics.class)
+                    .addRangeClause(QuerySpecification.buildCompositeFieldName(
+                            ResourceMetrics.FIELD_NAME_ENTRIES, lastSuccessfulRunMetricKey),
+                            NumericRange.createDoubleRange(Double.MIN_VALUE, Double.MAX_VALUE,
+                                    true, true))
+                    .addRangeClause(ResourceMetrics.FIELD_NAME_TIMESTAMP,
+                            NumericRange.createGreaterThanOrEqualRange(windowStartMicros))
+                    .addClause(computesQuery.build())
+                    .build();
+            // the most recent metrics are kept if the computes have more than the limit
+            QueryTask task = QueryTask.Builder.createDirectTask()
+                    .addOption(QueryOption.SORT)
+                    .orderDescending(ServiceDocument.FIELD_NAME_SELF_LINK, TypeName.STRING)
+                    .addOption(QueryOption.TOP_RESULTS)
+                    // No-op in photon-model. Required for special handling of immutable documents.
+                    .addOption(QueryOption.INCLUDE_ALL_VERSIONS)
+                    .setResultLimit(entry.getValue().size() * resultsPerCompute)
+                    .addOption(QueryOption.EXPAND_CONTENT)
+                    .setQuery(query)
+                    .build();
+            Operation queryOp = Operation.createPost(this, ServiceUriPaths.CORE_QUERY_TASKS)
+                    .setBody(task)
+                    .setConnectionSharing(true);
+            queryOps.add(queryOp);
+            adapterLinkByOperationId.put(queryOp.getId(), entry.getKey());
+        }
+
+        OperationJoin.create(queryOps)
+                .setCompletion((ops, exc) -> {
+                    if (exc != null) {
+                        // the collection tasks look up the missing times themselves
+                        logWarning("Could not warm up the last collection times: %s",
+                                Utils.toString(exc.values().iterator().next()));
+                        next.run();
+                        return;
+                    }
+                    for (Operation op : ops.values()) {
+                        String statsAdapterLink = adapterLinkByOperationId.get(op.getId());
+                        Map<String, String> computeLinkById = missingComputesByAdapter
+                                .get(statsAdapterLink);
+                        QueryTask result = op.getBody(QueryTask.class);
+                        if (computeLinkById == null || result.results.documents == null) {
+                            continue;
+                        }
+                        for (Object document : result.results.documents.values()) {
+                            ResourceMetrics metrics = Utils.fromJson(document,
+                                    ResourceMetrics.class);
+                            String metricKey = UriUtils
+                                    .getLastPathSegment(metrics.documentSelfLink);
+                            int separatorIndex = metricKey.lastIndexOf(StatsUtil.SEPARATOR);
+                            String computeLink = separatorIndex < 0 ? null : computeLinkById
+                                    .get(metricKey.substring(0, separatorIndex));
+                            if (computeLink != null) {
+                                cache.put(computeLink, statsAdapterLink,
+                                        metrics.timestampMicrosUtc);
+                            }
+                        }
+                    }
+                    next.run();
+                })
+                .sendWith(this);
+    }
+
+    /**
+     * Groups the computes of the page by the stats adapter and the parent, which holds the
+     * credentials of the endpoint, they are collected with, and starts one collection task per
+     * group. The computes of adapters that do not support batches get one task each.
+     */
+    private void createBatchSubTask(List<ComputeState> computes,
+            Map<String, URI> adapterByDescription, String nextPageLink,
             StatsCollectionTaskState currentState) {
+        // computes without a stats adapter have nothing to collect
+        Map<String, List<String>> computeLinksByAdapter = new LinkedHashMap<>();
+        for (ComputeState compute : computes) {
+            URI statsAdapterReference = adapterByDescription.get(compute.descriptionLink);
+            if (statsAdapterReference == null) {
+                continue;
+            }
+            String key = isBatchStatsAdapter(statsAdapterReference)
+                    ? statsAdapterReference + "|" + compute.parentLink
+                    : compute.documentSelfLink;
+            computeLinksByAdapter.computeIfAbsent(key, k -> new ArrayList<>())
+                    .add(compute.documentSelfLink);
+        }
+
+        if (computeLinksByAdapter.isEmpty()) {
+            StatsCollectionTaskState patchBody = new StatsCollectionTaskState();
+            if (nextPageLink == null) {
+                patchBody.taskInfo = TaskUtils.createTaskState(TaskStage.FINISHED);
+            } else {
+                patchBody.taskInfo = TaskUtils.createTaskState(TaskStage.STARTED);
+                patchBody.taskSubStage = StatsCollectionStage.GET_RESOURCES;
+                patchBody.nextPageLink = nextPageLink;
+            }
+            TaskUtils.sendPatch(this, patchBody);
+            return;
+        }
+
+        List<List<String>> computeLinkBatches = new ArrayList<>(computeLinksByAdapter.values());
+        Operation startPost = createSubTaskPost(computeLinkBatches.size(), nextPageLink)
+                .setCompletion((postOp, postEx) -> {
+                    if (postEx != null) {
+                        TaskUtils.sendFailurePatch(this, new StatsCollectionTaskState(), postEx);
+                        return;
+                    }
+                    SubTaskState<?> body = postOp
+                            .getBody(SubTaskState.class);
+                    // kick off a collection task for each batch and track completion
+                    // via the compute subtask
+                    for (List<String> computeLinks : computeLinkBatches) {
+                        createSingleResourceComputeTask(computeLinks.get(0),
+                                computeLinks.size() > 1 ? computeLinks : null,
+                                body.documentSelfLink, currentState.statsAdapterReference);
+                    }
+                });
+        getHost().startService(startPost, new SubTaskService<StatsCollectionStage>());
+    }
+
+    private Operation createSubTaskPost(int completionsRemaining, String nextPageLink) {
         ServiceTaskCallback<StatsCollectionStage> callback = ServiceTaskCallback
                 .create(getSelfLink());
         if (nextPageLink != null) {
@@ -274,11 +576,16 @@ public class StatsCollectionTaskService extends TaskService<StatsCollectionTaskS
 
         SubTaskState<StatsCollectionStage> subTaskInitState = new SubTaskState<StatsCollectionStage>();
         subTaskInitState.errorThreshold = 0;
-        subTaskInitState.completionsRemaining = computeResources.size();
+        subTaskInitState.completionsRemaining = completionsRemaining;
         subTaskInitState.serviceTaskCallback = callback;
-        Operation startPost = Operation
+        return Operation
                 .createPost(this, UUID.randomUUID().toString())
-                .setBody(subTaskInitState)
+                .setBody(subTaskInitState);
+    }
+
+    private void createSubTask(List<String> computeResources, String nextPageLink,
+            StatsCollectionTaskState currentState) {
+        Operation startPost = createSubTaskPost(computeResources.size(), nextPageLink)
                 .setCompletion((postOp, postEx) -> {
                     if (postEx != null) {
                         TaskUtils.sendFailurePatch(this, new StatsCollectionTaskState(), postEx);
@@ -289,17 +596,19 @@ public class StatsCollectionTaskService extends TaskService<StatsCollectionTaskS
                     // kick off a collection task for each resource and track completion
                     // via the compute subtask
                     for (String computeLink : computeResources) {
-                        createSingleResourceComputeTask(computeLink, body.documentSelfLink, currentState.statsAdapterReference);
+                        createSingleResourceComputeTask(computeLink, null, body.documentSelfLink,
+                                currentState.statsAdapterReference);
                     }
                 });
         getHost().startService(startPost, new SubTaskService<StatsCollectionStage>());
     }
 
-    private void createSingleResourceComputeTask(String computeLink, String subtaskLink,
-            URI statsAdapterReference) {
+    private void createSingleResourceComputeTask(String computeLink, List<String> computeLinks,
+            String subtaskLink, URI statsAdapterReference) {
         SingleResourceStatsCollectionTaskState initState = new SingleResourceStatsCollectionTaskState();
         initState.parentTaskReference = UriUtils.buildPublicUri(getHost(), subtaskLink);
         initState.computeLink = computeLink;
+        initState.computeLinks = computeLinks;
         initState.statsAdapterReference = statsAdapterReference;
         SubTaskState<StatsCollectionStage> patchState = new SubTaskState<StatsCollectionStage>();
         patchState.taskInfo = TaskUtils.createTaskState(TaskStage.FINISHED);
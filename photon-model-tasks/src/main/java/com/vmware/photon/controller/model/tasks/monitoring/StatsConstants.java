@@ -13,12 +13,27 @@
 
 package com.vmware.photon.controller.model.tasks.monitoring;
 
+import com.vmware.photon.controller.model.UriPaths;
+
 public class StatsConstants {
 
+    // when set to true raw metrics are persisted and read as ResourceMetricsBlock documents
+    // instead of one ResourceMetrics document per timestamp
+    public static final String METRICS_BLOCKS_ENABLED_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "StatsConstants.metricsBlocks.enabled";
+
+    // when set to true the in-memory hourly and daily metrics are used as running accumulators
+    // and the aggregation only falls back to the raw metrics when they are missing
+    public static final String INCREMENTAL_ROLLUP_ENABLED_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "StatsConstants.incrementalRollup.enabled";
+
     public static final String DAILY_SUFFIX = "(Daily)";
     public static final String HOUR_SUFFIX = "(Hourly)";
     public static final String MIN_SUFFIX = "(Minutes)";
 
+    // number of buckets kept by the in-memory hourly and daily metrics by default
+    public static final int NUM_BUCKETS_DEFAULT = 2;
+
     // number of buckets to keep data for an hour at one minute intervals
     public static final int NUM_BUCKETS_MINUTE_DATA = 60;
     // size of the bucket in milliseconds for maintaining data at a minute granularity
@@ -13,9 +13,22 @@
 
 package com.vmware.photon.controller.model.tasks.monitoring;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsBlockService;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsBlockService.MetricSeries;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsBlockService.ResourceMetricsBlock;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsService.ResourceMetrics;
+
 import com.vmware.xenon.common.UriUtils;
 
 /**
@@ -123,6 +136,89 @@ public class StatsUtil {
         return (timestampMicros + TimeUnit.MILLISECONDS.toMicros(bucketDurationMillis));
     }
 
+    /**
+     * Returns true if raw metrics are persisted as {@link ResourceMetricsBlock} documents.
+     */
+    public static boolean isMetricsBlocksEnabled() {
+        return Boolean.getBoolean(StatsConstants.METRICS_BLOCKS_ENABLED_PROPERTY);
+    }
+
+    /**
+     * Returns true if the in-memory hourly and daily metrics are used as running rollup
+     * accumulators.
+     */
+    public static boolean isIncrementalRollupEnabled() {
+        return Boolean.getBoolean(StatsConstants.INCREMENTAL_ROLLUP_ENABLED_PROPERTY);
+    }
+
+    /**
+     * Expands the given blocks into one {@link ResourceMetrics} per resource and timestamp, the
+     * way they are stored by the ResourceMetricsService. Only the given metric names are
+     * decoded; if metricNames is null all the metrics are decoded.
+     */
+    public static List<ResourceMetrics> toResourceMetrics(Collection<ResourceMetricsBlock> blocks,
+            Collection<String> metricNames) {
+        List<ResourceMetrics> result = new ArrayList<>();
+        for (ResourceMetricsBlock block : blocks) {
+            if (block.series == null) {
+                continue;
+            }
+            SortedMap<Long, ResourceMetrics> metricsByTimestamp = new TreeMap<>();
+            for (Entry<String, MetricSeries> series : block.series.entrySet()) {
+                if (metricNames != null && !metricNames.contains(series.getKey())) {
+                    continue;
+                }
+                for (Entry<Long, Double> dataPoint : series.getValue().decode().entrySet()) {
+                    ResourceMetrics metrics = metricsByTimestamp.get(dataPoint.getKey());
+                    if (metrics == null) {
+                        metrics = new ResourceMetrics();
+                        metrics.documentSelfLink = getMetricKey(block.resourceLink,
+                                dataPoint.getKey());
+                        metrics.timestampMicrosUtc = dataPoint.getKey();
+                        metrics.documentExpirationTimeMicros = block.documentExpirationTimeMicros;
+                        metrics.entries = new HashMap<>();
+                        metricsByTimestamp.put(dataPoint.getKey(), metrics);
+                    }
+                    metrics.entries.put(series.getKey(), dataPoint.getValue());
+                }
+            }
+            result.addAll(metricsByTimestamp.values());
+        }
+        return result;
+    }
+
+    /**
+     * Groups the given data points of a metric, keyed by timestamp, in the block of the
+     * resource they belong to. Blocks are keyed by their self link.
+     */
+    public static void addToResourceMetricsBlocks(Map<String, ResourceMetricsBlock> blocks,
+            String resourceLink, String metricName, SortedMap<Long, Double> dataPoints,
+            long expirationTimeMicros) {
+        Map<String, SortedMap<Long, Double>> dataPointsByBlock = new HashMap<>();
+        for (Entry<Long, Double> dataPoint : dataPoints.entrySet()) {
+            String blockLink = ResourceMetricsBlockService.buildBlockLink(resourceLink,
+                    dataPoint.getKey());
+            SortedMap<Long, Double> blockDataPoints = dataPointsByBlock.get(blockLink);
+            if (blockDataPoints == null) {
+                blockDataPoints = new TreeMap<>();
+                dataPointsByBlock.put(blockLink, blockDataPoints);
+            }
+            blockDataPoints.put(dataPoint.getKey(), dataPoint.getValue());
+        }
+        for (Entry<String, SortedMap<Long, Double>> entry : dataPointsByBlock.entrySet()) {
+            ResourceMetricsBlock block = blocks.get(entry.getKey());
+            if (block == null) {
+                block = ResourceMetricsBlockService.createBlock(resourceLink,
+                        entry.getValue().firstKey());
+                block.documentExpirationTimeMicros = expirationTimeMicros;
+                blocks.put(entry.getKey(), block);
+            }
+            SortedMap<Long, Double> merged = block.getDataPoints(metricName);
+            merged.putAll(entry.getValue());
+            block.setDataPoints(metricName, merged);
+        }
+    }
+
     private static class MetricKeyComponents {
         public String resourceId;
         public String metricName;
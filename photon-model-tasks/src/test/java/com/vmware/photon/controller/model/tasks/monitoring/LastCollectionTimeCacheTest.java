@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.tasks.monitoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.vmware.xenon.common.test.VerificationHost;
+
+/**
+ * Unit test for {@link LastCollectionTimeCache}
+ */
+public class LastCollectionTimeCacheTest {
+    private static final int MAXIMUM_SIZE = 5;
+    private static final String COMPUTE_LINK = "/resources/compute/compute-";
+    private static final String ADAPTER_LINK = "/mock-stats-adapter";
+    private static final String OTHER_ADAPTER_LINK = "/other-stats-adapter";
+
+    @Test
+    public void testCacheIsKeyedByComputeAndAdapter() {
+        LastCollectionTimeCache cache = new LastCollectionTimeCache(MAXIMUM_SIZE);
+        cache.put(COMPUTE_LINK + 0, ADAPTER_LINK, 10L);
+        assertEquals(Long.valueOf(10L), cache.get(COMPUTE_LINK + 0, ADAPTER_LINK));
+        assertNull(cache.get(COMPUTE_LINK + 0, OTHER_ADAPTER_LINK));
+        assertNull(cache.get(COMPUTE_LINK + 1, ADAPTER_LINK));
+    }
+
+    @Test
+    public void testOlderTimeIsIgnored() {
+        LastCollectionTimeCache cache = new LastCollectionTimeCache(MAXIMUM_SIZE);
+        cache.put(COMPUTE_LINK + 0, ADAPTER_LINK, 10L);
+        cache.put(COMPUTE_LINK + 0, ADAPTER_LINK, 5L);
+        assertEquals(Long.valueOf(10L), cache.get(COMPUTE_LINK + 0, ADAPTER_LINK));
+        cache.put(COMPUTE_LINK + 0, ADAPTER_LINK, 20L);
+        assertEquals(Long.valueOf(20L), cache.get(COMPUTE_LINK + 0, ADAPTER_LINK));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        LastCollectionTimeCache cache = new LastCollectionTimeCache(MAXIMUM_SIZE);
+        for (int i = 0; i < MAXIMUM_SIZE; i++) {
+            cache.put(COMPUTE_LINK + i, ADAPTER_LINK, i);
+        }
+        // accessing the eldest entry keeps it in the cache when a new entry is added
+        assertNotNull(cache.get(COMPUTE_LINK + 0, ADAPTER_LINK));
+        cache.put(COMPUTE_LINK + MAXIMUM_SIZE, ADAPTER_LINK, MAXIMUM_SIZE);
+        assertEquals(MAXIMUM_SIZE, cache.size());
+        assertNotNull(cache.get(COMPUTE_LINK + 0, ADAPTER_LINK));
+        assertNull(cache.get(COMPUTE_LINK + 1, ADAPTER_LINK));
+    }
+
+    @Test
+    public void testDisabledCache() {
+        LastCollectionTimeCache cache = new LastCollectionTimeCache(0);
+        assertFalse(cache.isEnabled());
+        cache.put(COMPUTE_LINK + 0, ADAPTER_LINK, 10L);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCacheIsDroppedWhenHostStops() throws Throwable {
+        VerificationHost host = VerificationHost.create(0);
+        LastCollectionTimeCache cache;
+        try {
+            host.start();
+            host.startServiceAndWait(StatsCollectionTaskService.createFactory(),
+                    StatsCollectionTaskService.FACTORY_LINK, null);
+            cache = LastCollectionTimeCache.getInstance(host);
+            assertSame(cache, LastCollectionTimeCache.getInstance(host));
+            // the cache is disabled by default
+            assertFalse(cache.isEnabled());
+        } finally {
+            host.tearDown();
+        }
+        assertNotSame(cache, LastCollectionTimeCache.getInstance(host));
+        LastCollectionTimeCache.remove(host);
+    }
+}
@@ -44,6 +44,7 @@ public class MockStatsAdapter extends StatelessService {
     @Override
     public void handleStart(Operation startPost) {
         this.counter = new AtomicLong(0);
+        StatsCollectionTaskService.registerBatchStatsAdapter(getSelfLink());
         super.handleStart(startPost);
     }
 
@@ -58,24 +59,29 @@ public class MockStatsAdapter extends StatelessService {
             op.complete();
             ComputeStatsRequest statsRequest = op.getBody(ComputeStatsRequest.class);
             SingleResourceStatsCollectionTaskState statsResponse = new SingleResourceStatsCollectionTaskState();
-            Map<String, List<ServiceStat>> statValues = new HashMap<>();
             double currentCounter = this.counter.incrementAndGet();
-            ServiceStat key1 = new ServiceStat();
-            key1.latestValue = currentCounter;
             long timestampMicros = Utils.getNowMicrosUtc();
-            key1.sourceTimeMicrosUtc = timestampMicros;
-            key1.unit = UNIT_1;
-            statValues.put(KEY_1, Collections.singletonList(key1));
-            ServiceStat key2 = new ServiceStat();
-            key2.latestValue = currentCounter;
-            key2.sourceTimeMicrosUtc = timestampMicros;
-            key2.unit = UNIT_2;
-            statValues.put(KEY_2, Collections.singletonList(key2));
-            ComputeStats cStat = new ComputeStats();
-            cStat.statValues = statValues;
-            cStat.computeLink = statsRequest.resourceReference.getPath();
+            List<String> computeLinks = statsRequest.resourceLinks != null
+                    ? statsRequest.resourceLinks
+                    : Collections.singletonList(statsRequest.resourceReference.getPath());
             statsResponse.statsList = new ArrayList<>();
-            statsResponse.statsList.add(cStat);
+            for (String computeLink : computeLinks) {
+                Map<String, List<ServiceStat>> statValues = new HashMap<>();
+                ServiceStat key1 = new ServiceStat();
+                key1.latestValue = currentCounter;
+                key1.sourceTimeMicrosUtc = timestampMicros;
+                key1.unit = UNIT_1;
+                statValues.put(KEY_1, Collections.singletonList(key1));
+                ServiceStat key2 = new ServiceStat();
+                key2.latestValue = currentCounter;
+                key2.sourceTimeMicrosUtc = timestampMicros;
+                key2.unit = UNIT_2;
+                statValues.put(KEY_2, Collections.singletonList(key2));
+                ComputeStats cStat = new ComputeStats();
+                cStat.statValues = statValues;
+                cStat.computeLink = computeLink;
+                statsResponse.statsList.add(cStat);
+            }
             statsResponse.taskStage = SingleResourceTaskCollectionStage.valueOf(statsRequest.nextStage);
             statsResponse.statsAdapterReference = UriUtils.buildUri(getHost(), SELF_LINK);
             this.sendRequest(Operation.createPatch(statsRequest.taskReference)
@@ -28,8 +28,12 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import com.vmware.photon.controller.model.helpers.BaseModelTest;
+import com.vmware.photon.controller.model.monitoring.InMemoryResourceMetricService;
+import com.vmware.photon.controller.model.monitoring.InMemoryResourceMetricService.InMemoryResourceMetric;
 import com.vmware.photon.controller.model.monitoring.ResourceAggregateMetricService;
 import com.vmware.photon.controller.model.monitoring.ResourceAggregateMetricService.ResourceAggregateMetric;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsBlockService;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsBlockService.ResourceMetricsBlock;
 import com.vmware.photon.controller.model.resources.ComputeDescriptionService;
 import com.vmware.photon.controller.model.resources.ComputeDescriptionService.ComputeDescription;
 import com.vmware.photon.controller.model.resources.ComputeService;
@@ -46,6 +50,7 @@ import com.vmware.xenon.common.ServiceDocumentQueryResult;
 import com.vmware.xenon.common.ServiceHost;
 import com.vmware.xenon.common.ServiceStats;
 import com.vmware.xenon.common.ServiceStats.ServiceStat;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats;
 import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.AggregationType;
 import com.vmware.xenon.common.TaskState;
 import com.vmware.xenon.common.UriUtils;
@@ -331,4 +336,187 @@ public class SingleResourceStatsAggregationTaskServiceTest extends BaseModelTest
         });
 
     }
+
+    @Test
+    public void testIncrementalResourceStatsAggregation() throws Throwable {
+        System.setProperty(StatsConstants.INCREMENTAL_ROLLUP_ENABLED_PROPERTY,
+                Boolean.TRUE.toString());
+        try {
+            ResourcePoolState rpState = new ResourcePoolState();
+            rpState.name = "incrementalRollup";
+            ResourcePoolState rpReturnState = postServiceSynchronously(
+                    ResourcePoolService.FACTORY_LINK, rpState,
+                    ResourcePoolState.class);
+
+            ComputeDescription cDesc = new ComputeDescription();
+            cDesc.name = rpState.name;
+            cDesc.statsAdapterReference = UriUtils.buildUri(this.host, MockStatsAdapter.SELF_LINK);
+            ComputeDescription descReturnState = postServiceSynchronously(
+                    ComputeDescriptionService.FACTORY_LINK, cDesc,
+                    ComputeDescription.class);
+            ComputeState computeState = new ComputeState();
+            computeState.name = rpState.name;
+            computeState.descriptionLink = descReturnState.documentSelfLink;
+            computeState.resourcePoolLink = rpReturnState.documentSelfLink;
+            ComputeState computeReturnState = postServiceSynchronously(
+                    ComputeService.FACTORY_LINK, computeState,
+                    ComputeState.class);
+            String computeId = UriUtils.getLastPathSegment(computeReturnState.documentSelfLink);
+
+            StatsCollectionTaskState collectionTaskState = new StatsCollectionTaskState();
+            collectionTaskState.resourcePoolLink = rpReturnState.documentSelfLink;
+            collectionTaskState.taskInfo = TaskState.createDirect();
+            for (int i = 0; i < NUM_COLLECTIONS; i++) {
+                this.postServiceSynchronously(StatsCollectionTaskService.FACTORY_LINK,
+                        collectionTaskState, StatsCollectionTaskState.class);
+            }
+
+            // wait for all the collections to be accumulated in the in-memory metrics
+            for (String suffix : Arrays.asList(StatsConstants.HOUR_SUFFIX,
+                    StatsConstants.DAILY_SUFFIX)) {
+                String inMemoryLink = UriUtils.buildUriPath(
+                        InMemoryResourceMetricService.FACTORY_LINK, computeId + suffix);
+                this.host.waitFor("Error waiting for in-memory stats", () -> {
+                    InMemoryResourceMetric metric = getServiceSynchronously(inMemoryLink,
+                            InMemoryResourceMetric.class);
+                    TimeSeriesStats stats = metric.timeSeriesStats.get(MockStatsAdapter.KEY_1);
+                    return stats != null && stats.bins.values().stream()
+                            .mapToDouble(bin -> bin.count).sum() == NUM_COLLECTIONS;
+                });
+                InMemoryResourceMetric metric = getServiceSynchronously(inMemoryLink,
+                        InMemoryResourceMetric.class);
+                Assert.assertEquals(suffix.equals(StatsConstants.HOUR_SUFFIX)
+                                ? StatsConstants.NUM_BUCKETS_HOURLY_DATA
+                                : StatsConstants.NUM_BUCKETS_DAILY_DATA,
+                        metric.timeSeriesStats.get(MockStatsAdapter.KEY_1).numBins);
+            }
+
+            SingleResourceStatsAggregationTaskState aggregationTaskState = new SingleResourceStatsAggregationTaskState();
+            aggregationTaskState.resourceLink = computeReturnState.documentSelfLink;
+            aggregationTaskState.metricNames = new HashSet<>(
+                    Arrays.asList(MockStatsAdapter.KEY_1, MockStatsAdapter.KEY_2));
+            postServiceSynchronously(SingleResourceStatsAggregationTaskService.FACTORY_LINK,
+                    aggregationTaskState,
+                    SingleResourceStatsAggregationTaskState.class);
+
+            // hourly and daily rollups are computed from the in-memory accumulators
+            this.host.waitFor("Error waiting for rolled up stats", () -> {
+                QuerySpecification querySpec = new QuerySpecification();
+                querySpec.query = Query.Builder.create()
+                        .addKindFieldClause(ResourceAggregateMetric.class)
+                        .addFieldClause(ServiceDocument.FIELD_NAME_SELF_LINK,
+                                UriUtils.buildUriPath(ResourceAggregateMetricService.FACTORY_LINK,
+                                        computeId),
+                                MatchType.PREFIX).build();
+                querySpec.options.add(QueryOption.EXPAND_CONTENT);
+                ServiceDocumentQueryResult result = this.host
+                        .createAndWaitSimpleDirectQuery(querySpec, 4, 4);
+                for (Object aggrDocument : result.documents.values()) {
+                    ResourceAggregateMetric aggrMetric = Utils
+                            .fromJson(aggrDocument, ResourceAggregateMetric.class);
+                    if (aggrMetric.timeBin.count != NUM_COLLECTIONS) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+        } finally {
+            System.clearProperty(StatsConstants.INCREMENTAL_ROLLUP_ENABLED_PROPERTY);
+        }
+    }
+
+    @Test
+    public void testResourceStatsAggregationFromBlocks() throws Throwable {
+        System.setProperty(StatsConstants.METRICS_BLOCKS_ENABLED_PROPERTY,
+                Boolean.TRUE.toString());
+        try {
+            ResourcePoolState rpState = new ResourcePoolState();
+            rpState.name = "metricsBlocks";
+            ResourcePoolState rpReturnState = postServiceSynchronously(
+                    ResourcePoolService.FACTORY_LINK, rpState,
+                    ResourcePoolState.class);
+
+            ComputeDescription cDesc = new ComputeDescription();
+            cDesc.name = rpState.name;
+            cDesc.statsAdapterReference = UriUtils.buildUri(this.host, MockStatsAdapter.SELF_LINK);
+            ComputeDescription descReturnState = postServiceSynchronously(
+                    ComputeDescriptionService.FACTORY_LINK, cDesc,
+                    ComputeDescription.class);
+            ComputeState computeState = new ComputeState();
+            computeState.name = rpState.name;
+            computeState.descriptionLink = descReturnState.documentSelfLink;
+            computeState.resourcePoolLink = rpReturnState.documentSelfLink;
+            ComputeState computeReturnState = postServiceSynchronously(
+                    ComputeService.FACTORY_LINK, computeState,
+                    ComputeState.class);
+            String computeId = UriUtils.getLastPathSegment(computeReturnState.documentSelfLink);
+
+            StatsCollectionTaskState collectionTaskState = new StatsCollectionTaskState();
+            collectionTaskState.resourcePoolLink = rpReturnState.documentSelfLink;
+            collectionTaskState.taskInfo = TaskState.createDirect();
+            for (int i = 0; i < NUM_COLLECTIONS; i++) {
+                this.postServiceSynchronously(StatsCollectionTaskService.FACTORY_LINK,
+                        collectionTaskState, StatsCollectionTaskState.class);
+            }
+
+            // wait for all the collections to be persisted in metrics blocks
+            List<Double> values = new ArrayList<>();
+            this.host.waitFor("Error waiting for metrics blocks", () -> {
+                ServiceDocumentQueryResult result = this.host
+                        .getExpandedFactoryState(UriUtils.buildUri(this.host,
+                                ResourceMetricsBlockService.FACTORY_LINK));
+                values.clear();
+                for (Object document : result.documents.values()) {
+                    ResourceMetricsBlock block = Utils.fromJson(document,
+                            ResourceMetricsBlock.class);
+                    if (block.resourceLink.equals(computeReturnState.documentSelfLink)) {
+                        values.addAll(block.getDataPoints(MockStatsAdapter.KEY_1).values());
+                    }
+                }
+                return values.size() == NUM_COLLECTIONS;
+            });
+
+            SingleResourceStatsAggregationTaskState aggregationTaskState = new SingleResourceStatsAggregationTaskState();
+            aggregationTaskState.resourceLink = computeReturnState.documentSelfLink;
+            aggregationTaskState.metricNames = new HashSet<>(
+                    Arrays.asList(MockStatsAdapter.KEY_1, MockStatsAdapter.KEY_2));
+            postServiceSynchronously(SingleResourceStatsAggregationTaskService.FACTORY_LINK,
+                    aggregationTaskState,
+                    SingleResourceStatsAggregationTaskState.class);
+
+            // nothing was rolled up yet, so the hourly rollups are computed from the blocks
+            double expectedSum = values.stream().mapToDouble(Double::doubleValue).sum();
+            double expectedMax = values.stream().mapToDouble(Double::doubleValue).max()
+                    .getAsDouble();
+            double expectedMin = values.stream().mapToDouble(Double::doubleValue).min()
+                    .getAsDouble();
+            this.host.waitFor("Error waiting for rolled up stats", () -> {
+                QuerySpecification querySpec = new QuerySpecification();
+                querySpec.query = Query.Builder.create()
+                        .addKindFieldClause(ResourceAggregateMetric.class)
+                        .addFieldClause(ServiceDocument.FIELD_NAME_SELF_LINK,
+                                UriUtils.buildUriPath(ResourceAggregateMetricService.FACTORY_LINK,
+                                        computeId),
+                                MatchType.PREFIX).build();
+                querySpec.options.add(QueryOption.EXPAND_CONTENT);
+                ServiceDocumentQueryResult result = this.host
+                        .createAndWaitSimpleDirectQuery(querySpec, 2, 2);
+                for (Object aggrDocument : result.documents.values()) {
+                    ResourceAggregateMetric aggrMetric = Utils
+                            .fromJson(aggrDocument, ResourceAggregateMetric.class);
+                    if (aggrMetric.timeBin.count != NUM_COLLECTIONS) {
+                        return false;
+                    }
+                    Assert.assertEquals(expectedSum, aggrMetric.timeBin.sum, 0.0);
+                    Assert.assertEquals(expectedMax, aggrMetric.timeBin.max, 0.0);
+                    Assert.assertEquals(expectedMin, aggrMetric.timeBin.min, 0.0);
+                    Assert.assertEquals(expectedSum / NUM_COLLECTIONS, aggrMetric.timeBin.avg,
+                            0.0001);
+                }
+                return true;
+            });
+        } finally {
+            System.clearProperty(StatsConstants.METRICS_BLOCKS_ENABLED_PROPERTY);
+        }
+    }
 }
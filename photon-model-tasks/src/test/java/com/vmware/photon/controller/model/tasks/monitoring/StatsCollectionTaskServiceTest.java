@@ -26,6 +26,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -259,6 +260,123 @@ public class StatsCollectionTaskServiceTest extends BaseModelTest {
         return resourceMetric;
     }
 
+    @Test
+    public void testBatchStatsCollection() throws Throwable {
+        ComputeDescription cDesc = new ComputeDescription();
+        cDesc.name = UUID.randomUUID().toString();
+        cDesc.statsAdapterReference = UriUtils.buildUri(this.host, MockStatsAdapter.SELF_LINK);
+        ComputeDescription descReturnState = postServiceSynchronously(
+                ComputeDescriptionService.FACTORY_LINK, cDesc,
+                ComputeDescription.class);
+
+        // create computes under two parents, all fitting in a single page
+        int numBatchResources = 20;
+        List<String> computeLinks = new ArrayList<>(numBatchResources);
+        for (int i = 0; i < numBatchResources; i++) {
+            ComputeState computeState = new ComputeState();
+            computeState.name = UUID.randomUUID().toString();
+            computeState.descriptionLink = descReturnState.documentSelfLink;
+            computeState.parentLink = "/resources/compute/parent-" + (i % 2);
+            ComputeState res = postServiceSynchronously(
+                    ComputeService.FACTORY_LINK, computeState,
+                    ComputeState.class);
+            computeLinks.add(res.documentSelfLink);
+        }
+
+        ResourcePoolState rpState = new ResourcePoolState();
+        rpState.name = UUID.randomUUID().toString();
+        rpState.properties = EnumSet.of(ResourcePoolProperty.ELASTIC);
+        rpState.query = Query.Builder.create().addKindFieldClause(ComputeState.class)
+                .addInClause(ServiceDocument.FIELD_NAME_SELF_LINK, computeLinks).build();
+        ResourcePoolState rpReturnState = postServiceSynchronously(
+                ResourcePoolService.FACTORY_LINK, rpState,
+                ResourcePoolState.class);
+
+        StatsCollectionTaskState statCollectionState = new StatsCollectionTaskState();
+        statCollectionState.resourcePoolLink = rpReturnState.documentSelfLink;
+        statCollectionState.batchCollection = true;
+        postServiceSynchronously(StatsCollectionTaskService.FACTORY_LINK, statCollectionState,
+                StatsCollectionTaskState.class);
+
+        String lastSuccessfulRunMetricKey = StatsUtil.getMetricKeyPrefix(
+                MockStatsAdapter.SELF_LINK,
+                PhotonModelConstants.LAST_SUCCESSFUL_STATS_COLLECTION_TIME);
+        for (String computeLink : computeLinks) {
+            String statsUriPath = UriUtils.buildUriPath(computeLink,
+                    ServiceHost.SERVICE_URI_SUFFIX_STATS);
+            this.host.waitFor("Error waiting for in memory stats", () -> {
+                ServiceStats resStats = getServiceSynchronously(statsUriPath, ServiceStats.class);
+                return resStats.entries.containsKey(
+                        lastSuccessfulRunMetricKey + StatsConstants.MIN_SUFFIX);
+            });
+        }
+
+        // the computes of each parent are collected with a single adapter request, so they
+        // all report the value of the same request
+        Set<Double> values = new HashSet<>();
+        for (String computeLink : computeLinks) {
+            ResourceMetrics metric = getResourceMetrics(computeLink, MockStatsAdapter.KEY_1);
+            assertNotNull("The resource metric for" + MockStatsAdapter.KEY_1 +
+                    " should not be null ", metric);
+            values.add(metric.entries.get(MockStatsAdapter.KEY_1));
+            assertNotNull(getResourceMetrics(computeLink, lastSuccessfulRunMetricKey));
+        }
+        assertEquals(2, values.size());
+    }
+
+    @Test
+    public void testBatchStatsCollectionWithUnbatchedAdapter() throws Throwable {
+        // the custom adapter is not registered for batches as it ignores the resource links
+        ComputeDescription cDesc = new ComputeDescription();
+        cDesc.name = UUID.randomUUID().toString();
+        cDesc.statsAdapterReference = UriUtils.buildUri(this.host, CustomStatsAdapter.SELF_LINK);
+        ComputeDescription descReturnState = postServiceSynchronously(
+                ComputeDescriptionService.FACTORY_LINK, cDesc,
+                ComputeDescription.class);
+
+        int numBatchResources = 5;
+        List<String> computeLinks = new ArrayList<>(numBatchResources);
+        for (int i = 0; i < numBatchResources; i++) {
+            ComputeState computeState = new ComputeState();
+            computeState.name = UUID.randomUUID().toString();
+            computeState.descriptionLink = descReturnState.documentSelfLink;
+            computeState.parentLink = "/resources/compute/unbatched-parent";
+            ComputeState res = postServiceSynchronously(
+                    ComputeService.FACTORY_LINK, computeState,
+                    ComputeState.class);
+            computeLinks.add(res.documentSelfLink);
+        }
+
+        ResourcePoolState rpState = new ResourcePoolState();
+        rpState.name = UUID.randomUUID().toString();
+        rpState.properties = EnumSet.of(ResourcePoolProperty.ELASTIC);
+        rpState.query = Query.Builder.create().addKindFieldClause(ComputeState.class)
+                .addInClause(ServiceDocument.FIELD_NAME_SELF_LINK, computeLinks).build();
+        ResourcePoolState rpReturnState = postServiceSynchronously(
+                ResourcePoolService.FACTORY_LINK, rpState,
+                ResourcePoolState.class);
+
+        StatsCollectionTaskState statCollectionState = new StatsCollectionTaskState();
+        statCollectionState.resourcePoolLink = rpReturnState.documentSelfLink;
+        statCollectionState.batchCollection = true;
+        postServiceSynchronously(StatsCollectionTaskService.FACTORY_LINK, statCollectionState,
+                StatsCollectionTaskState.class);
+
+        // the adapter does not support batches, so every compute is collected on its own
+        String lastSuccessfulRunMetricKey = StatsUtil.getMetricKeyPrefix(
+                CustomStatsAdapter.SELF_LINK,
+                PhotonModelConstants.LAST_SUCCESSFUL_STATS_COLLECTION_TIME)
+                + StatsConstants.MIN_SUFFIX;
+        for (String computeLink : computeLinks) {
+            String statsUriPath = UriUtils.buildUriPath(computeLink,
+                    ServiceHost.SERVICE_URI_SUFFIX_STATS);
+            this.host.waitFor("Error waiting for in memory stats", () -> {
+                ServiceStats resStats = getServiceSynchronously(statsUriPath, ServiceStats.class);
+                return resStats.entries.containsKey(lastSuccessfulRunMetricKey);
+            });
+        }
+    }
+
     @Test
     public void testCustomStatsAdapter() throws Throwable {
         ResourcePoolState rpState = new ResourcePoolState();
@@ -15,6 +15,7 @@ package com.vmware.photon.controller.model;
 
 import com.vmware.photon.controller.model.monitoring.InMemoryResourceMetricService;
 import com.vmware.photon.controller.model.monitoring.ResourceAggregateMetricService;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsBlockService;
 import com.vmware.photon.controller.model.monitoring.ResourceMetricsService;
 import com.vmware.photon.controller.model.resources.ComputeDescriptionService;
 import com.vmware.photon.controller.model.resources.ComputeService;
@@ -57,6 +58,7 @@ public class PhotonModelServices {
             FirewallService.FACTORY_LINK,
             StorageDescriptionService.FACTORY_LINK,
             ResourceMetricsService.FACTORY_LINK,
+            ResourceMetricsBlockService.FACTORY_LINK,
             InMemoryResourceMetricService.FACTORY_LINK,
             EndpointService.FACTORY_LINK,
             ResourceAggregateMetricService.FACTORY_LINK,
@@ -82,6 +84,8 @@ public class PhotonModelServices {
         host.startFactory(TagService.class, TagFactoryService::new);
         host.startFactory(ResourceMetricsService.class, ResourceMetricsService::createFactory);
         setFactoryToAvailable(host, ResourceMetricsService.FACTORY_LINK);
+        host.startFactory(ResourceMetricsBlockService.class, ResourceMetricsBlockService::createFactory);
+        setFactoryToAvailable(host, ResourceMetricsBlockService.FACTORY_LINK);
         host.startFactory(ResourceAggregateMetricService.class, ResourceAggregateMetricService::createFactory);
         setFactoryToAvailable(host, ResourceAggregateMetricService.FACTORY_LINK);
     }
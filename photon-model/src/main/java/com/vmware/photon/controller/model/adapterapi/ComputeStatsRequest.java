@@ -13,6 +13,8 @@
 
 package com.vmware.photon.controller.model.adapterapi;
 
+import java.util.List;
+
 /**
  * Defines the request body for getting statistics from a Compute instance.
  */
@@ -27,4 +29,11 @@ public class ComputeStatsRequest extends ResourceRequest {
      * Time, in microseconds since UNIX epoch, for the last time stats collection succeeded.
      */
     public Long lastCollectionTimeMicrosUtc;
+
+    /**
+     * Links of all the resources to collect stats for, when a single request covers several
+     * resources sharing the same adapter and parent. The resourceReference then points to the
+     * first of them and the adapter reports one ComputeStats entry per resource.
+     */
+    public List<String> resourceLinks;
 }
@@ -15,14 +15,12 @@ package com.vmware.photon.controller.model.monitoring;
 
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.TimeUnit;
 
 import com.vmware.photon.controller.model.UriPaths;
 import com.vmware.xenon.common.FactoryService;
 import com.vmware.xenon.common.Operation;
 import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceStats.TimeSeriesStats;
-import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.TimeBin;
 import com.vmware.xenon.common.StatefulService;
 
 /**
@@ -58,17 +56,14 @@ public class InMemoryResourceMetricService extends StatefulService {
         }
         InMemoryResourceMetric currentState = getState(put);
         InMemoryResourceMetric updatedState = getBody(put);
-        // merge the state
+        // merge the state; bins are combined as a whole so the cost does not depend on the
+        // number of data points they hold
         for (Entry<String, TimeSeriesStats> tsStats : updatedState.timeSeriesStats.entrySet()) {
-            for (Entry<Long, TimeBin> bin : tsStats.getValue().bins.entrySet()) {
-                if (currentState.timeSeriesStats.get(tsStats.getKey()) == null) {
-                    currentState.timeSeriesStats.put(tsStats.getKey(), tsStats.getValue());
-                } else {
-                    TimeSeriesStats currentStats = currentState.timeSeriesStats.get(tsStats.getKey());
-                    for (int i = 0; i < bin.getValue().count; i++) {
-                        currentStats.add(TimeUnit.MILLISECONDS.toMicros(bin.getKey()), bin.getValue().avg, bin.getValue().avg);
-                    }
-                }
+            TimeSeriesStats currentStats = currentState.timeSeriesStats.get(tsStats.getKey());
+            if (currentStats == null) {
+                currentState.timeSeriesStats.put(tsStats.getKey(), tsStats.getValue());
+            } else {
+                TimeBinUtils.merge(currentStats, tsStats.getValue());
             }
         }
         setState(put, currentState);
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.monitoring;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.photon.controller.model.UriPaths;
+
+import com.vmware.xenon.common.FactoryService;
+import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceDocumentDescription.PropertyIndexingOption;
+import com.vmware.xenon.common.ServiceDocumentDescription.PropertyUsageOption;
+import com.vmware.xenon.common.StatefulService;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Stores the raw metrics of a single resource for a fixed time window (a block) in a columnar
+ * format. Unlike {@link ResourceMetricsService}, which creates one document per timestamp and
+ * indexes every metric name, a block holds all the data points of the window and only the
+ * resource link and the window boundaries are indexed.
+ *
+ * Blocks are identified by the resource id and the beginning of the window, so every writer
+ * for the same window ends up on the same document: a POST to an existing block is converted
+ * to a PUT which merges the posted data points into the current ones.
+ */
+public class ResourceMetricsBlockService extends StatefulService {
+
+    public static final String FACTORY_LINK = UriPaths.MONITORING + "/resource-metrics-blocks";
+
+    /**
+     * Size of the time window covered by a single block.
+     */
+    public static final long BLOCK_DURATION_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    /**
+     * A block is rewritten on every collection within its window, keep only a few of the older
+     * versions in the index.
+     */
+    public static final long VERSION_RETENTION_LIMIT = 5;
+    public static final long VERSION_RETENTION_FLOOR = 2;
+
+    private static final String SEPARATOR = "_";
+
+    public static FactoryService createFactory() {
+        return FactoryService.createIdempotent(ResourceMetricsBlockService.class);
+    }
+
+    public ResourceMetricsBlockService() {
+        super(ResourceMetricsBlock.class);
+        super.toggleOption(ServiceOption.PERSISTENCE, true);
+        super.toggleOption(ServiceOption.ON_DEMAND_LOAD, true);
+        super.toggleOption(ServiceOption.REPLICATION, true);
+        super.toggleOption(ServiceOption.OWNER_SELECTION, true);
+        super.toggleOption(ServiceOption.IDEMPOTENT_POST, true);
+    }
+
+    /**
+     * Data points of a single metric. Timestamps are delta-encoded: the first element is the
+     * absolute timestamp and every following element is the difference to the previous one.
+     * Values are XOR-encoded: the first element holds the raw bits of the first value and every
+     * following element holds the XOR of the raw bits of the value and the previous value. Both
+     * arrays are sorted by timestamp and have the same length.
+     */
+    public static class MetricSeries {
+        public long[] timestampDeltas;
+        public long[] valueXors;
+
+        /**
+         * Encodes the given data points, keyed and sorted by timestamp.
+         */
+        public static MetricSeries encode(SortedMap<Long, Double> dataPoints) {
+            MetricSeries series = new MetricSeries();
+            series.timestampDeltas = new long[dataPoints.size()];
+            series.valueXors = new long[dataPoints.size()];
+            long previousTimestamp = 0;
+            long previousBits = 0;
+            int i = 0;
+            for (Entry<Long, Double> dataPoint : dataPoints.entrySet()) {
+                long bits = Double.doubleToRawLongBits(dataPoint.getValue());
+                series.timestampDeltas[i] = dataPoint.getKey() - previousTimestamp;
+                series.valueXors[i] = bits ^ previousBits;
+                previousTimestamp = dataPoint.getKey();
+                previousBits = bits;
+                i++;
+            }
+            return series;
+        }
+
+        /**
+         * Decodes the data points of this series, keyed and sorted by timestamp.
+         */
+        public SortedMap<Long, Double> decode() {
+            SortedMap<Long, Double> dataPoints = new TreeMap<>();
+            if (this.timestampDeltas == null || this.valueXors == null) {
+                return dataPoints;
+            }
+            long timestamp = 0;
+            long bits = 0;
+            int length = Math.min(this.timestampDeltas.length, this.valueXors.length);
+            for (int i = 0; i < length; i++) {
+                timestamp += this.timestampDeltas[i];
+                bits ^= this.valueXors[i];
+                dataPoints.put(timestamp, Double.longBitsToDouble(bits));
+            }
+            return dataPoints;
+        }
+    }
+
+    public static class ResourceMetricsBlock extends ServiceDocument {
+        public static final String FIELD_NAME_RESOURCE_LINK = "resourceLink";
+        public static final String FIELD_NAME_BLOCK_START = "blockStartMicrosUtc";
+        public static final String FIELD_NAME_BLOCK_END = "blockEndMicrosUtc";
+
+        @Documentation(description = "The resource the metrics belong to")
+        @UsageOption(option = PropertyUsageOption.REQUIRED)
+        public String resourceLink;
+
+        @Documentation(description = "Beginning of the time window (inclusive) covered by this block")
+        @UsageOption(option = PropertyUsageOption.REQUIRED)
+        public Long blockStartMicrosUtc;
+
+        @Documentation(description = "End of the time window (exclusive) covered by this block")
+        @UsageOption(option = PropertyUsageOption.REQUIRED)
+        @PropertyOptions(indexing = PropertyIndexingOption.SORT)
+        public Long blockEndMicrosUtc;
+
+        @Documentation(description = "Data points keyed by metric name. The series are stored"
+                + " but not indexed")
+        @PropertyOptions(indexing = PropertyIndexingOption.STORE_ONLY)
+        public Map<String, MetricSeries> series;
+
+        /**
+         * Adds a data point to this block, replacing any value already recorded for the same
+         * metric and timestamp.
+         */
+        public void addDataPoint(String metricName, long timestampMicrosUtc, double value) {
+            SortedMap<Long, Double> dataPoints = getDataPoints(metricName);
+            dataPoints.put(timestampMicrosUtc, value);
+            setDataPoints(metricName, dataPoints);
+        }
+
+        /**
+         * Returns the decoded data points for the given metric, keyed and sorted by timestamp.
+         */
+        public SortedMap<Long, Double> getDataPoints(String metricName) {
+            if (this.series == null || !this.series.containsKey(metricName)) {
+                return new TreeMap<>();
+            }
+            return this.series.get(metricName).decode();
+        }
+
+        /**
+         * Replaces the data points of the given metric.
+         */
+        public void setDataPoints(String metricName, SortedMap<Long, Double> dataPoints) {
+            if (this.series == null) {
+                this.series = new HashMap<>();
+            }
+            this.series.put(metricName, MetricSeries.encode(dataPoints));
+        }
+    }
+
+    /**
+     * Returns the beginning of the block that contains the given timestamp.
+     */
+    public static long computeBlockStartMicros(long timestampMicrosUtc) {
+        return timestampMicrosUtc - (timestampMicrosUtc % BLOCK_DURATION_MICROS);
+    }
+
+    /**
+     * Returns the self link of the block for the given resource and the given timestamp.
+     */
+    public static String buildBlockLink(String resourceLink, long timestampMicrosUtc) {
+        return UriUtils.buildUriPath(FACTORY_LINK, UriUtils.getLastPathSegment(resourceLink)
+                + SEPARATOR + computeBlockStartMicros(timestampMicrosUtc));
+    }
+
+    /**
+     * Creates an empty block for the given resource and the window containing the given timestamp.
+     */
+    public static ResourceMetricsBlock createBlock(String resourceLink, long timestampMicrosUtc) {
+        ResourceMetricsBlock block = new ResourceMetricsBlock();
+        block.documentSelfLink = buildBlockLink(resourceLink, timestampMicrosUtc);
+        block.resourceLink = resourceLink;
+        block.blockStartMicrosUtc = computeBlockStartMicros(timestampMicrosUtc);
+        block.blockEndMicrosUtc = block.blockStartMicrosUtc + BLOCK_DURATION_MICROS;
+        block.series = new HashMap<>();
+        return block;
+    }
+
+    @Override
+    public void handleStart(Operation start) {
+        try {
+            processInput(start);
+            start.complete();
+        } catch (Throwable t) {
+            start.fail(t);
+        }
+    }
+
+    @Override
+    public void handlePut(Operation put) {
+        ResourceMetricsBlock body;
+        try {
+            body = processInput(put);
+        } catch (Throwable t) {
+            put.fail(t);
+            return;
+        }
+
+        if (!put.hasPragmaDirective(Operation.PRAGMA_DIRECTIVE_POST_TO_PUT)) {
+            setState(put, body);
+            put.complete();
+            return;
+        }
+
+        // converted PUT due to IDEMPOTENT_POST option - merge the data points
+        ResourceMetricsBlock currentState = getState(put);
+        mergeBlocks(currentState, body);
+        setState(put, currentState);
+        put.setBody(currentState).complete();
+    }
+
+    @Override
+    public void handlePatch(Operation patch) {
+        if (!patch.hasBody()) {
+            patch.fail(new IllegalArgumentException("body is required"));
+            return;
+        }
+        ResourceMetricsBlock currentState = getState(patch);
+        mergeBlocks(currentState, patch.getBody(ResourceMetricsBlock.class));
+        patch.setBody(currentState).complete();
+    }
+
+    @Override
+    public ServiceDocument getDocumentTemplate() {
+        ServiceDocument template = super.getDocumentTemplate();
+        template.documentDescription.versionRetentionLimit = VERSION_RETENTION_LIMIT;
+        template.documentDescription.versionRetentionFloor = VERSION_RETENTION_FLOOR;
+        return template;
+    }
+
+    private void mergeBlocks(ResourceMetricsBlock currentState, ResourceMetricsBlock update) {
+        if (update.series != null) {
+            for (Entry<String, MetricSeries> entry : update.series.entrySet()) {
+                SortedMap<Long, Double> dataPoints = currentState.getDataPoints(entry.getKey());
+                dataPoints.putAll(entry.getValue().decode());
+                currentState.setDataPoints(entry.getKey(), dataPoints);
+            }
+        }
+        if (update.documentExpirationTimeMicros > currentState.documentExpirationTimeMicros) {
+            currentState.documentExpirationTimeMicros = update.documentExpirationTimeMicros;
+        }
+    }
+
+    private ResourceMetricsBlock processInput(Operation op) {
+        if (!op.hasBody()) {
+            throw (new IllegalArgumentException("body is required"));
+        }
+        ResourceMetricsBlock state = op.getBody(ResourceMetricsBlock.class);
+        Utils.validateState(getStateDescription(), state);
+        if (state.blockEndMicrosUtc <= state.blockStartMicrosUtc) {
+            throw (new IllegalArgumentException(
+                    "blockEndMicrosUtc must be greater than blockStartMicrosUtc"));
+        }
+        return state;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.monitoring;
+
+import java.util.EnumSet;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.AggregationType;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.TimeBin;
+
+/**
+ * Helpers to combine {@link TimeBin}s. A time bin holds the count, sum, min, max, average and
+ * latest value of the data points in its interval, so two bins of the same interval can be
+ * combined in constant time regardless of the number of data points they represent.
+ */
+public class TimeBinUtils {
+
+    private static final Set<AggregationType> ALL_AGGREGATIONS = EnumSet
+            .allOf(AggregationType.class);
+
+    /**
+     * Adds a single data point to the given bin.
+     */
+    public static TimeBin add(TimeBin bin, double value, Set<AggregationType> aggregationTypes) {
+        TimeBin dataPoint = new TimeBin();
+        dataPoint.avg = dataPoint.min = dataPoint.max = dataPoint.sum = dataPoint.latest = value;
+        dataPoint.count = 1;
+        return merge(bin, dataPoint, aggregationTypes);
+    }
+
+    /**
+     * Combines the source bin into the target bin, keeping only the given aggregations. The
+     * source bin is assumed to be the most recent one, so its latest value wins.
+     */
+    public static TimeBin merge(TimeBin target, TimeBin source,
+            Set<AggregationType> aggregationTypes) {
+        if (source == null || source.count == 0) {
+            return target;
+        }
+
+        if (aggregationTypes.contains(AggregationType.MAX) && source.max != null) {
+            if (target.max == null || target.max < source.max) {
+                target.max = source.max;
+            }
+        }
+
+        if (aggregationTypes.contains(AggregationType.MIN) && source.min != null) {
+            if (target.min == null || target.min > source.min) {
+                target.min = source.min;
+            }
+        }
+
+        if (aggregationTypes.contains(AggregationType.AVG) && source.avg != null) {
+            if (target.avg == null || target.count == 0) {
+                target.avg = source.avg;
+            } else {
+                target.avg = ((target.avg * target.count) + (source.avg * source.count))
+                        / (target.count + source.count);
+            }
+        }
+
+        if (aggregationTypes.contains(AggregationType.SUM) && source.sum != null) {
+            if (target.sum == null) {
+                target.sum = source.sum;
+            } else {
+                target.sum += source.sum;
+            }
+        }
+
+        if (source.latest != null) {
+            target.latest = source.latest;
+        }
+        target.count += source.count;
+        return target;
+    }
+
+    /**
+     * Combines the bins of the source series into the target series. Bins of the same interval
+     * are merged, the other ones are added and the oldest bins are dropped once the target holds
+     * more than the larger of the configured numbers of bins of both series.
+     */
+    public static TimeSeriesStats merge(TimeSeriesStats target, TimeSeriesStats source) {
+        Set<AggregationType> aggregationTypes = target.aggregationType != null
+                ? target.aggregationType : ALL_AGGREGATIONS;
+        for (Entry<Long, TimeBin> binEntry : source.bins.entrySet()) {
+            long binId = binEntry.getKey() - (binEntry.getKey() % target.binDurationMillis);
+            TimeBin bin = target.bins.get(binId);
+            if (bin == null) {
+                bin = new TimeBin();
+                target.bins.put(binId, bin);
+            }
+            merge(bin, binEntry.getValue(), aggregationTypes);
+        }
+        target.numBins = Math.max(target.numBins, source.numBins);
+        while (target.bins.size() > target.numBins) {
+            target.bins.remove(target.bins.firstKey());
+        }
+        return target;
+    }
+}
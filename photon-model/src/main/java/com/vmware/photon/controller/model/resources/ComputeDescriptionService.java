@@ -222,6 +222,10 @@ public class ComputeDescriptionService extends StatefulService {
     public void handlePut(Operation put) {
         try {
             ComputeDescription returnState = processInput(put);
+            if (ResourceUtils.completePutIfNotModified(put, getState(put), returnState,
+                    getStateDescription())) {
+                return;
+            }
             setState(put, returnState);
             put.complete();
         } catch (Throwable t) {
@@ -248,7 +248,12 @@ public class ComputeService extends StatefulService {
     @Override
     public void handlePut(Operation put) {
         try {
-            ComputeState returnState = validatePut(put);
+            ComputeState currentState = getState(put);
+            ComputeState returnState = validatePut(put, currentState);
+            if (ResourceUtils.completePutIfNotModified(put, currentState, returnState,
+                    getStateDescription())) {
+                return;
+            }
             setState(put, returnState);
             put.complete();
         } catch (Throwable t) {
@@ -268,11 +273,15 @@ public class ComputeService extends StatefulService {
         return state;
     }
 
-    private ComputeState validatePut(Operation op) {
+    private ComputeState validatePut(Operation op, ComputeState currentState) {
         if (!op.hasBody()) {
             throw (new IllegalArgumentException("body is required"));
         }
         ComputeState state = op.getBody(ComputeState.class);
+        if (state.creationTimeMicros == null) {
+            // keep the creation time, e.g. on idempotent POSTs which do not set it
+            state.creationTimeMicros = currentState.creationTimeMicros;
+        }
         Utils.validateState(getStateDescription(), state);
         return state;
     }
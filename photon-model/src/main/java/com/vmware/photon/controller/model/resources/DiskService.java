@@ -224,6 +224,10 @@ public class DiskService extends StatefulService {
     public void handlePut(Operation put) {
         try {
             DiskState returnState = processInput(put);
+            if (ResourceUtils.completePutIfNotModified(put, getState(put), returnState,
+                    getStateDescription())) {
+                return;
+            }
             setState(put, returnState);
             put.complete();
         } catch (Throwable t) {
@@ -127,6 +127,10 @@ public class FirewallService extends StatefulService {
     public void handlePut(Operation put) {
         try {
             FirewallState returnState = processInput(put);
+            if (ResourceUtils.completePutIfNotModified(put, getState(put), returnState,
+                    getStateDescription())) {
+                return;
+            }
             setState(put, returnState);
             put.complete();
         } catch (Throwable t) {
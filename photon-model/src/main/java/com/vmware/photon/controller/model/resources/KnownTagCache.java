@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.resources;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.photon.controller.model.UriPaths;
+import com.vmware.photon.controller.model.resources.TagService.TagState;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.Utils;
+
+/**
+ * Remembers, per host, the self links of the tags known to exist, so that enumeration adapters
+ * POST only the tags they have not seen yet instead of every tag on every page. The self links
+ * are built with {@link TagFactoryService#generateSelfLink}, which takes the tenant links into
+ * account, so that a tag is known per tenant.
+ *
+ * Tags deleted through this node are dropped by {@link TagService}. Since deletes processed by
+ * other nodes are not seen, links are also forgotten after {@link #MAX_AGE_MINUTES_PROPERTY}, and
+ * at most {@link #MAX_SIZE_PROPERTY} of them, the most recently used, are kept. The cache of a
+ * host is dropped when the tag factory of the host stops.
+ */
+public class KnownTagCache {
+    public static final String MAX_SIZE_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "KnownTagCache.maxSize";
+    private static final int DEFAULT_MAX_SIZE = 10000;
+
+    public static final String MAX_AGE_MINUTES_PROPERTY = UriPaths.PROPERTY_PREFIX
+            + "KnownTagCache.maxAgeMinutes";
+    private static final int DEFAULT_MAX_AGE_MINUTES = 60;
+
+    private static final Map<String, KnownTagCache> CACHES = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> knownSinceMicros;
+    private final long maxAgeMicros;
+
+    KnownTagCache(int maxSize, long maxAgeMicros) {
+        this.maxAgeMicros = maxAgeMicros;
+        this.knownSinceMicros = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cache of the given host.
+     */
+    public static KnownTagCache getInstance(ServiceHost host) {
+        return CACHES.computeIfAbsent(host.getId(), id -> new KnownTagCache(
+                Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE),
+                TimeUnit.MINUTES.toMicros(Integer.getInteger(MAX_AGE_MINUTES_PROPERTY,
+                        DEFAULT_MAX_AGE_MINUTES))));
+    }
+
+    /**
+     * Drops the cache of the given host, once the host stops.
+     */
+    static void remove(ServiceHost host) {
+        CACHES.remove(host.getId());
+    }
+
+    /**
+     * Returns whether the tag is known to exist.
+     */
+    public boolean isKnown(TagState tagState) {
+        return isKnown(TagFactoryService.generateSelfLink(tagState));
+    }
+
+    public synchronized boolean isKnown(String tagLink) {
+        Long since = this.knownSinceMicros.get(tagLink);
+        if (since == null) {
+            return false;
+        }
+        if (Utils.getNowMicrosUtc() - since > this.maxAgeMicros) {
+            this.knownSinceMicros.remove(tagLink);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records that the tag exists, e.g. once it was created.
+     */
+    public void addKnown(TagState tagState) {
+        addKnown(TagFactoryService.generateSelfLink(tagState));
+    }
+
+    public synchronized void addKnown(String tagLink) {
+        this.knownSinceMicros.put(tagLink, Utils.getNowMicrosUtc());
+    }
+
+    /**
+     * Forgets the tag, e.g. because it was deleted.
+     */
+    public synchronized void remove(String tagLink) {
+        this.knownSinceMicros.remove(tagLink);
+    }
+
+    public synchronized void clear() {
+        this.knownSinceMicros.clear();
+    }
+
+    synchronized int size() {
+        return this.knownSinceMicros.size();
+    }
+}
@@ -100,6 +100,10 @@ public class NetworkInterfaceDescriptionService extends StatefulService {
     @Override
     public void handlePut(Operation put) {
         NetworkInterfaceDescription returnState = processInput(put);
+        if (ResourceUtils.completePutIfNotModified(put, getState(put), returnState,
+                getStateDescription())) {
+            return;
+        }
         setState(put, returnState);
         put.complete();
     }
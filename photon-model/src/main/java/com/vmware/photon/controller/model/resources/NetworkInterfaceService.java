@@ -177,6 +177,10 @@ public class NetworkInterfaceService extends StatefulService {
     public void handlePut(Operation put) {
         try {
             NetworkInterfaceState returnState = processInput(put);
+            if (ResourceUtils.completePutIfNotModified(put, getState(put), returnState,
+                    getStateDescription())) {
+                return;
+            }
             setState(put, returnState);
             put.complete();
         } catch (Throwable t) {
@@ -103,6 +103,10 @@ public class NetworkService extends StatefulService {
     public void handlePut(Operation put) {
         try {
             NetworkState returnState = processInput(put);
+            if (ResourceUtils.completePutIfNotModified(put, getState(put), returnState,
+                    getStateDescription())) {
+                return;
+            }
             setState(put, returnState);
             put.complete();
         } catch (Throwable t) {
@@ -85,6 +85,10 @@ public class ResourceDescriptionService extends StatefulService {
     public void handlePut(Operation put) {
         try {
             ResourceDescription returnState = processInput(put);
+            if (ResourceUtils.completePutIfNotModified(put, getState(put), returnState,
+                    getStateDescription())) {
+                return;
+            }
             setState(put, returnState);
             put.complete();
         } catch (Throwable t) {
@@ -62,6 +62,10 @@ public class ResourceGroupService extends StatefulService {
     public void handlePut(Operation put) {
         try {
             ResourceGroupState returnState = processInput(put);
+            if (ResourceUtils.completePutIfNotModified(put, getState(put), returnState,
+                    getStateDescription())) {
+                return;
+            }
             setState(put, returnState);
             put.complete();
         } catch (Throwable t) {
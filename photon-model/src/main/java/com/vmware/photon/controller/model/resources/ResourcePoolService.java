@@ -166,6 +166,10 @@ public class ResourcePoolService extends StatefulService {
     public void handlePut(Operation put) {
         try {
             ResourcePoolState returnState = processInput(put);
+            if (ResourceUtils.completePutIfNotModified(put, getState(put), returnState,
+                    getStateDescription())) {
+                return;
+            }
             setState(put, returnState);
             put.complete();
         } catch (Throwable t) {
@@ -17,6 +17,7 @@ import java.util.EnumSet;
 import java.util.function.Function;
 
 import com.vmware.xenon.common.Operation;
+import com.vmware.xenon.common.ServiceDocument;
 import com.vmware.xenon.common.ServiceDocumentDescription;
 import com.vmware.xenon.common.Utils;
 
@@ -73,6 +74,33 @@ public class ResourceUtils {
         }
     }
 
+    /**
+     * Completes a PUT with a response code {@code NOT_MODIFIED} if its body does not differ from
+     * the current state, ignoring the system fields such as version and update time. The state is
+     * then not updated, so neither a new version is indexed nor the state replicated.
+     *
+     * <p>Idempotent POSTs to an existing document are converted to PUTs, so this spares the
+     * rewrite of documents that are POSTed again unchanged, e.g. on every enumeration cycle.
+     *
+     * @param put Input PUT operation
+     * @param currentState The current state of the service
+     * @param newState The validated state from the PUT body
+     * @param description The service description
+     * @return whether the PUT was completed
+     */
+    public static <T extends ServiceDocument> boolean completePutIfNotModified(Operation put,
+            T currentState, T newState, ServiceDocumentDescription description) {
+        if (currentState == null
+                || currentState.documentExpirationTimeMicros != newState.documentExpirationTimeMicros
+                || !ServiceDocument.equals(description, currentState, newState)) {
+            return false;
+        }
+        put.setBody(currentState);
+        put.setStatusCode(Operation.STATUS_CODE_NOT_MODIFIED);
+        put.complete();
+        return true;
+    }
+
     /**
      * Updates the state of the service based on the input patch.
      *
@@ -70,6 +70,10 @@ public class SnapshotService extends StatefulService {
     public void handlePut(Operation put) {
         try {
             SnapshotState returnState = processInput(put);
+            if (ResourceUtils.completePutIfNotModified(put, getState(put), returnState,
+                    getStateDescription())) {
+                return;
+            }
             setState(put, returnState);
             put.complete();
         } catch (Throwable t) {
@@ -99,6 +99,10 @@ public class StorageDescriptionService extends StatefulService {
     public void handlePut(Operation put) {
         try {
             StorageDescription returnState = processInput(put);
+            if (ResourceUtils.completePutIfNotModified(put, getState(put), returnState,
+                    getStateDescription())) {
+                return;
+            }
             setState(put, returnState);
             put.complete();
         } catch (Throwable t) {
@@ -98,6 +98,10 @@ public class SubnetService extends StatefulService {
     @Override
     public void handlePut(Operation put) {
         SubnetState returnState = processInput(put);
+        if (ResourceUtils.completePutIfNotModified(put, getState(put), returnState,
+                getStateDescription())) {
+            return;
+        }
         setState(put, returnState);
         put.complete();
     }
@@ -37,6 +37,13 @@ public class TagFactoryService extends FactoryService {
         return new TagService();
     }
 
+    @Override
+    public void handleStop(Operation stop) {
+        // the factory stops with the host, the tags known to the host are dropped with it
+        KnownTagCache.remove(getHost());
+        super.handleStop(stop);
+    }
+
     /**
      * Override the handlePost method to set the documentSelfLink. We don't want to have multiple
      * tags with the same values, so we build the documentSelfLink ourselves taking into account all
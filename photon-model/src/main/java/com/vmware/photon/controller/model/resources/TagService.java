@@ -82,15 +82,18 @@ public class TagService extends StatefulService {
         TagState currentState = getState(put);
         TagState newTagState = put.getBody(TagState.class);
 
-        if (!ServiceDocument.equals(getStateDescription(), currentState, newTagState)) {
+        if (!ResourceUtils.completePutIfNotModified(put, currentState, newTagState,
+                getStateDescription())) {
             put.fail(new UnsupportedOperationException("Tags may not be modified"));
-        } else {
-            //Do nothing
-            put.setBody(currentState);
-            put.complete();
         }
     }
 
+    @Override
+    public void handleDelete(Operation delete) {
+        KnownTagCache.getInstance(getHost()).remove(getSelfLink());
+        super.handleDelete(delete);
+    }
+
     @Override
     public ServiceDocument getDocumentTemplate() {
         ServiceDocument td = super.getDocumentTemplate();
@@ -36,6 +36,7 @@ import com.vmware.photon.controller.model.helpers.BaseModelTest;
 import com.vmware.xenon.common.Service;
 import com.vmware.xenon.common.ServiceStats.TimeSeriesStats;
 import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.AggregationType;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.TimeBin;
 import com.vmware.xenon.common.UriUtils;
 import com.vmware.xenon.common.Utils;
 
@@ -131,5 +132,41 @@ public class InMemoryResourceMetricServiceTest extends Suite {
             assertTrue(returnState.timeSeriesStats.get("key1").bins.values().iterator().next().count == 2);
             assertTrue(returnState.timeSeriesStats.get("key1").bins.values().iterator().next().avg == 1.5);
         }
+
+        @Test
+        public void testIdempotentPostMergesBins() throws Throwable {
+            long now = Utils.getNowMicrosUtc();
+            InMemoryResourceMetricService.InMemoryResourceMetric metric = new InMemoryResourceMetricService.InMemoryResourceMetric();
+            metric.documentSelfLink = "merge";
+            metric.timeSeriesStats = new HashMap<>();
+            TimeSeriesStats statsEntry = new TimeSeriesStats(2, HOUR_IN_MILLIS,
+                    EnumSet.allOf(AggregationType.class));
+            statsEntry.add(now, 1, 1);
+            statsEntry.add(now, 5, 5);
+            metric.timeSeriesStats.put("key1", statsEntry);
+            postServiceSynchronously(InMemoryResourceMetricService.FACTORY_LINK,
+                    metric, InMemoryResourceMetricService.InMemoryResourceMetric.class);
+
+            // merge a bin that already holds several data points
+            statsEntry = new TimeSeriesStats(2, HOUR_IN_MILLIS,
+                    EnumSet.allOf(AggregationType.class));
+            statsEntry.add(now, 0, 0);
+            statsEntry.add(now, 2, 2);
+            statsEntry.add(now, 10, 10);
+            metric.timeSeriesStats.put("key1", statsEntry);
+            postServiceSynchronously(InMemoryResourceMetricService.FACTORY_LINK,
+                    metric, InMemoryResourceMetricService.InMemoryResourceMetric.class);
+
+            InMemoryResourceMetricService.InMemoryResourceMetric returnState =
+                    getServiceSynchronously(UriUtils.buildUriPath(InMemoryResourceMetricService.FACTORY_LINK, metric.documentSelfLink),
+                    InMemoryResourceMetricService.InMemoryResourceMetric.class);
+            TimeBin bin = returnState.timeSeriesStats.get("key1").bins.values().iterator().next();
+            assertEquals(5, bin.count, 0);
+            assertEquals(0, bin.min, 0);
+            assertEquals(10, bin.max, 0);
+            assertEquals(18, bin.sum, 0);
+            assertEquals(3.6, bin.avg, 0.0001);
+            assertEquals(10, bin.latest, 0);
+        }
     }
 }
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.monitoring;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.EnumSet;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+import org.junit.runners.Suite.SuiteClasses;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+
+import com.vmware.photon.controller.model.helpers.BaseModelTest;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsBlockService.MetricSeries;
+import com.vmware.photon.controller.model.monitoring.ResourceMetricsBlockService.ResourceMetricsBlock;
+
+import com.vmware.xenon.common.Service;
+import com.vmware.xenon.common.ServiceDocument;
+import com.vmware.xenon.common.ServiceHost;
+import com.vmware.xenon.common.UriUtils;
+import com.vmware.xenon.common.Utils;
+import com.vmware.xenon.services.common.QueryTask;
+import com.vmware.xenon.services.common.QueryTask.NumericRange;
+import com.vmware.xenon.services.common.QueryTask.Query;
+
+/**
+ * This class implements tests for the {@link ResourceMetricsBlockService} class.
+ */
+@RunWith(ResourceMetricsBlockServiceTest.class)
+@SuiteClasses({ ResourceMetricsBlockServiceTest.ConstructorTest.class,
+        ResourceMetricsBlockServiceTest.EncodingTest.class,
+        ResourceMetricsBlockServiceTest.HandleStartTest.class })
+public class ResourceMetricsBlockServiceTest extends Suite {
+
+    private static final String RESOURCE_LINK = "/resources/compute/block-test";
+    private static final String KEY1 = "key1";
+    private static final String KEY2 = "key2";
+    private static final long EXPIRATION_TIME = Utils.getNowMicrosUtc()
+            + TimeUnit.DAYS.toMicros(7);
+
+    public ResourceMetricsBlockServiceTest(Class<?> klass, RunnerBuilder builder)
+            throws InitializationError {
+        super(klass, builder);
+    }
+
+    private static ResourceMetricsBlock buildValidStartState(long timestampMicros) {
+        ResourceMetricsBlock block = ResourceMetricsBlockService.createBlock(RESOURCE_LINK,
+                timestampMicros);
+        block.addDataPoint(KEY1, timestampMicros, 1.0);
+        block.addDataPoint(KEY1, timestampMicros + 1, 2.5);
+        block.documentExpirationTimeMicros = EXPIRATION_TIME;
+        return block;
+    }
+
+    /**
+     * This class implements tests for the constructor.
+     */
+    public static class ConstructorTest {
+        private ResourceMetricsBlockService blockService;
+
+        @Before
+        public void setupTest() {
+            this.blockService = new ResourceMetricsBlockService();
+        }
+
+        @Test
+        public void testServiceOptions() {
+            EnumSet<Service.ServiceOption> expected = EnumSet.of(
+                    Service.ServiceOption.CONCURRENT_GET_HANDLING,
+                    Service.ServiceOption.PERSISTENCE,
+                    Service.ServiceOption.ON_DEMAND_LOAD,
+                    Service.ServiceOption.REPLICATION,
+                    Service.ServiceOption.OWNER_SELECTION,
+                    Service.ServiceOption.IDEMPOTENT_POST);
+            assertThat(this.blockService.getOptions(), is(expected));
+        }
+    }
+
+    /**
+     * This class implements tests for the encoding of the metric series.
+     */
+    public static class EncodingTest {
+        @Test
+        public void testEncodeDecode() {
+            SortedMap<Long, Double> dataPoints = new TreeMap<>();
+            dataPoints.put(1000L, 1.5);
+            dataPoints.put(2000L, 1.5);
+            dataPoints.put(2500L, -3.0);
+            dataPoints.put(9000L, Double.MAX_VALUE);
+
+            MetricSeries series = MetricSeries.encode(dataPoints);
+            assertEquals(1000L, series.timestampDeltas[0]);
+            assertEquals(1000L, series.timestampDeltas[1]);
+            // identical consecutive values are encoded as 0
+            assertEquals(0L, series.valueXors[1]);
+            assertEquals(dataPoints, series.decode());
+        }
+
+        @Test
+        public void testBlockBoundaries() {
+            long timestamp = TimeUnit.HOURS.toMicros(10) + 5;
+            ResourceMetricsBlock block = ResourceMetricsBlockService.createBlock(RESOURCE_LINK,
+                    timestamp);
+            assertEquals(TimeUnit.HOURS.toMicros(10), block.blockStartMicrosUtc.longValue());
+            assertEquals(TimeUnit.HOURS.toMicros(11), block.blockEndMicrosUtc.longValue());
+            assertEquals(block.documentSelfLink, ResourceMetricsBlockService
+                    .buildBlockLink(RESOURCE_LINK, TimeUnit.HOURS.toMicros(11) - 1));
+        }
+    }
+
+    /**
+     * This class implements tests for the handleStart method.
+     */
+    public static class HandleStartTest extends BaseModelTest {
+        @Test
+        public void testValidStartState() throws Throwable {
+            long now = Utils.getNowMicrosUtc();
+            ResourceMetricsBlock startState = buildValidStartState(now);
+            ResourceMetricsBlock returnState = postServiceSynchronously(
+                    ResourceMetricsBlockService.FACTORY_LINK, startState,
+                    ResourceMetricsBlock.class);
+
+            assertNotNull(returnState);
+            assertThat(returnState.documentSelfLink, is(startState.documentSelfLink));
+            assertThat(returnState.getDataPoints(KEY1), is(startState.getDataPoints(KEY1)));
+
+            QueryTask.QuerySpecification querySpec = new QueryTask.QuerySpecification();
+            querySpec.query = Query.Builder.create()
+                    .addKindFieldClause(ResourceMetricsBlock.class)
+                    .addFieldClause(ResourceMetricsBlock.FIELD_NAME_RESOURCE_LINK, RESOURCE_LINK)
+                    .addRangeClause(ResourceMetricsBlock.FIELD_NAME_BLOCK_END,
+                            NumericRange.createGreaterThanRange(now))
+                    .build();
+            this.host.createAndWaitSimpleDirectQuery(querySpec, 1, 1);
+        }
+
+        @Test
+        public void testVersionRetention() throws Throwable {
+            ResourceMetricsBlock returnState = postServiceSynchronously(
+                    ResourceMetricsBlockService.FACTORY_LINK,
+                    buildValidStartState(TimeUnit.HOURS.toMicros(2000)),
+                    ResourceMetricsBlock.class);
+
+            ServiceDocument template = getServiceSynchronously(
+                    UriUtils.buildUriPath(returnState.documentSelfLink,
+                            ServiceHost.SERVICE_URI_SUFFIX_TEMPLATE),
+                    ResourceMetricsBlock.class);
+            assertEquals(ResourceMetricsBlockService.VERSION_RETENTION_LIMIT,
+                    template.documentDescription.versionRetentionLimit);
+            assertEquals(ResourceMetricsBlockService.VERSION_RETENTION_FLOOR,
+                    template.documentDescription.versionRetentionFloor);
+        }
+
+        @Test
+        public void testIdempotentPostMergesDataPoints() throws Throwable {
+            // use a fixed block in the past so that the test does not depend on the current time
+            long timestamp = TimeUnit.HOURS.toMicros(1000);
+            ResourceMetricsBlock block = buildValidStartState(timestamp);
+            postServiceSynchronously(ResourceMetricsBlockService.FACTORY_LINK, block,
+                    ResourceMetricsBlock.class);
+
+            ResourceMetricsBlock update = ResourceMetricsBlockService.createBlock(RESOURCE_LINK,
+                    timestamp);
+            update.addDataPoint(KEY1, timestamp + 1, 4.0);
+            update.addDataPoint(KEY1, timestamp + 2, 5.0);
+            update.addDataPoint(KEY2, timestamp, 6.0);
+            update.documentExpirationTimeMicros = EXPIRATION_TIME;
+            postServiceSynchronously(ResourceMetricsBlockService.FACTORY_LINK, update,
+                    ResourceMetricsBlock.class);
+
+            ResourceMetricsBlock returnState = getServiceSynchronously(block.documentSelfLink,
+                    ResourceMetricsBlock.class);
+            SortedMap<Long, Double> key1 = returnState.getDataPoints(KEY1);
+            assertEquals(3, key1.size());
+            assertEquals(1.0, key1.get(timestamp), 0);
+            assertEquals(4.0, key1.get(timestamp + 1), 0);
+            assertEquals(5.0, key1.get(timestamp + 2), 0);
+            assertEquals(6.0, returnState.getDataPoints(KEY2).get(timestamp), 0);
+        }
+
+        @Test
+        public void testMissingBody() throws Throwable {
+            postServiceSynchronously(
+                    ResourceMetricsBlockService.FACTORY_LINK,
+                    null,
+                    ResourceMetricsBlock.class,
+                    IllegalArgumentException.class);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.monitoring;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats;
+import com.vmware.xenon.common.ServiceStats.TimeSeriesStats.AggregationType;
+
+/**
+ * Tests for the {@link TimeBinUtils} class.
+ */
+public class TimeBinUtilsTest {
+    private static final long HOUR_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long HOUR_IN_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    @Test
+    public void testMergeLargerSourceIntoSmallerTarget() {
+        long start = TimeUnit.HOURS.toMicros(1000);
+        TimeSeriesStats target = new TimeSeriesStats(2, HOUR_IN_MILLIS,
+                EnumSet.of(AggregationType.AVG));
+        target.add(start, 1, 1);
+
+        TimeSeriesStats source = new TimeSeriesStats(4, HOUR_IN_MILLIS,
+                EnumSet.of(AggregationType.AVG));
+        for (int i = 0; i < 4; i++) {
+            source.add(start + i * HOUR_IN_MICROS, 3, 1);
+        }
+
+        TimeBinUtils.merge(target, source);
+
+        // none of the newer bins of the source are dropped
+        assertEquals(4, target.numBins);
+        assertEquals(4, target.bins.size());
+        assertEquals(TimeUnit.MICROSECONDS.toMillis(start + 3 * HOUR_IN_MICROS),
+                target.bins.lastKey().longValue());
+        assertEquals(2.0, target.bins.get(target.bins.firstKey()).avg, 0);
+    }
+}
@@ -453,6 +453,33 @@ public class ComputeServiceTest extends Suite {
             // make sure launchTimeMicros was preserved
             assertEquals(getState.creationTimeMicros, returnState.creationTimeMicros);
         }
+
+        @Test
+        public void testIdempotentPostWithoutChanges() throws Throwable {
+            ComputeDescriptionService.ComputeDescription cd = ComputeDescriptionServiceTest
+                    .createComputeDescription(this);
+            ComputeService.ComputeState startState = buildValidStartState(cd);
+            startState.documentSelfLink = UUID.randomUUID().toString();
+
+            ComputeService.ComputeState returnState = postServiceSynchronously(
+                    ComputeService.FACTORY_LINK,
+                    startState, ComputeService.ComputeState.class);
+
+            // the unchanged state is not written again
+            postServiceSynchronously(ComputeService.FACTORY_LINK,
+                    startState, ComputeService.ComputeState.class);
+            ComputeService.ComputeState getState = getServiceSynchronously(
+                    returnState.documentSelfLink, ComputeService.ComputeState.class);
+            assertEquals(returnState.documentVersion, getState.documentVersion);
+
+            startState.address = "10.0.0.2";
+            postServiceSynchronously(ComputeService.FACTORY_LINK,
+                    startState, ComputeService.ComputeState.class);
+            getState = getServiceSynchronously(
+                    returnState.documentSelfLink, ComputeService.ComputeState.class);
+            assertThat(getState.address, is(startState.address));
+            assertEquals(returnState.documentVersion + 1, getState.documentVersion);
+        }
     }
 
     /**
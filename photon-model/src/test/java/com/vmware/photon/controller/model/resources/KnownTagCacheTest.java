@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2015-2016 VMware, Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License.  You may obtain a copy of
+ * the License at http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed
+ * under the License is distributed on an "AS IS" BASIS, without warranties or
+ * conditions of any kind, EITHER EXPRESS OR IMPLIED.  See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+
+package com.vmware.photon.controller.model.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.vmware.photon.controller.model.resources.TagService.TagState;
+import com.vmware.xenon.common.test.VerificationHost;
+
+/**
+ * Tests for the {@link KnownTagCache} class.
+ */
+public class KnownTagCacheTest {
+
+    @Test
+    public void testTagsAreKnownPerTenant() {
+        KnownTagCache cache = new KnownTagCache(10, TimeUnit.HOURS.toMicros(1));
+        cache.addKnown(tag("tenant-1"));
+
+        assertTrue(cache.isKnown(tag("tenant-1")));
+        assertFalse(cache.isKnown(tag("tenant-2")));
+
+        cache.remove(TagFactoryService.generateSelfLink(tag("tenant-1")));
+        assertFalse(cache.isKnown(tag("tenant-1")));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedTagsAreEvicted() {
+        KnownTagCache cache = new KnownTagCache(2, TimeUnit.HOURS.toMicros(1));
+        cache.addKnown("/tags/1");
+        cache.addKnown("/tags/2");
+        assertTrue(cache.isKnown("/tags/1"));
+
+        cache.addKnown("/tags/3");
+        assertEquals(2, cache.size());
+        assertTrue(cache.isKnown("/tags/1"));
+        assertFalse(cache.isKnown("/tags/2"));
+    }
+
+    @Test
+    public void testOldTagsAreForgotten() throws InterruptedException {
+        KnownTagCache cache = new KnownTagCache(10, TimeUnit.MILLISECONDS.toMicros(10));
+        cache.addKnown("/tags/1");
+        Thread.sleep(50);
+
+        assertFalse(cache.isKnown("/tags/1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCacheIsDroppedWhenHostStops() throws Throwable {
+        VerificationHost host = VerificationHost.create(0);
+        VerificationHost otherHost = VerificationHost.create(0);
+        KnownTagCache cache;
+        try {
+            host.start();
+            host.startServiceAndWait(TagFactoryService.class, TagService.FACTORY_LINK);
+            cache = KnownTagCache.getInstance(host);
+            assertSame(cache, KnownTagCache.getInstance(host));
+            assertNotSame(cache, KnownTagCache.getInstance(otherHost));
+        } finally {
+            host.tearDown();
+            KnownTagCache.remove(otherHost);
+        }
+        assertNotSame(cache, KnownTagCache.getInstance(host));
+        KnownTagCache.remove(host);
+    }
+
+    private static TagState tag(String tenantLink) {
+        TagState tag = new TagState();
+        tag.key = "key-1";
+        tag.value = "value-1";
+        tag.tenantLinks = Arrays.asList(tenantLink);
+        return tag;
+    }
+}
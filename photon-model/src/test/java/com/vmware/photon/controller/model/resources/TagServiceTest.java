@@ -16,6 +16,7 @@ package com.vmware.photon.controller.model.resources;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
 import java.util.ArrayList;
@@ -40,7 +41,8 @@ import com.vmware.xenon.common.Service;
 @SuiteClasses({ TagServiceTest.ConstructorTest.class,
         TagServiceTest.HandleStartTest.class,
         TagServiceTest.HandlePatchTest.class,
-        TagServiceTest.HandlePutTest.class })
+        TagServiceTest.HandlePutTest.class,
+        TagServiceTest.HandleDeleteTest.class })
 public class TagServiceTest extends Suite {
 
     public TagServiceTest(Class<?> klass, RunnerBuilder builder)
@@ -162,7 +164,8 @@ public class TagServiceTest extends Suite {
                     TagService.TagState.class);
 
             assertThat(newReturnState.documentSelfLink, is(returnState.documentSelfLink));
-            assertThat(newReturnState.documentVersion, is(1L));
+            // the unchanged tag is not written again
+            assertThat(newReturnState.documentVersion, is(0L));
         }
     }
 
@@ -216,4 +219,21 @@ public class TagServiceTest extends Suite {
             assertEquals(newState.tenantLinks, startState.tenantLinks);
         }
     }
+
+    /**
+     * This class implements tests for the handleDelete method.
+     */
+    public static class HandleDeleteTest extends BaseModelTest {
+        @Test
+        public void testDeleteForgetsKnownTag() throws Throwable {
+            TagService.TagState startState = postServiceSynchronously(
+                    TagService.FACTORY_LINK, buildValidStartState(),
+                    TagService.TagState.class);
+            KnownTagCache knownTags = KnownTagCache.getInstance(this.host);
+            knownTags.addKnown(startState.documentSelfLink);
+
+            deleteServiceSynchronously(startState.documentSelfLink);
+            assertFalse(knownTags.isKnown(startState.documentSelfLink));
+        }
+    }
 }